@@ -0,0 +1,73 @@
+package org.multiverse.stms.alpha;
+
+import static java.lang.String.format;
+
+/**
+ * A single change that was made on a transactional object by a commit. It contains the tranlocal that was
+ * committed before (the old state) and the tranlocal that was committed by the commit (the new state). Because
+ * committed tranlocals are immutable, they can be read without needing a transaction.
+ * <p/>
+ * AlphaChange is immutable and thread-safe.
+ *
+ * @author Peter Veentjer.
+ * @see AlphaCommit
+ */
+public final class AlphaChange {
+
+    private final AlphaTransactionalObject transactionalObject;
+    private final AlphaTranlocal oldTranlocal;
+    private final AlphaTranlocal newTranlocal;
+
+    /**
+     * Creates a new AlphaChange.
+     *
+     * @param transactionalObject the transactional object that was changed.
+     * @param oldTranlocal        the tranlocal that was committed before, is allowed to be null if the
+     *                            transactional object was committed for the first time.
+     * @param newTranlocal        the tranlocal that was committed.
+     * @throws NullPointerException if transactionalObject or newTranlocal is null.
+     */
+    public AlphaChange(AlphaTransactionalObject transactionalObject, AlphaTranlocal oldTranlocal,
+                       AlphaTranlocal newTranlocal) {
+        if (transactionalObject == null || newTranlocal == null) {
+            throw new NullPointerException();
+        }
+
+        this.transactionalObject = transactionalObject;
+        this.oldTranlocal = oldTranlocal;
+        this.newTranlocal = newTranlocal;
+    }
+
+    /**
+     * Returns the transactional object that was changed.
+     *
+     * @return the changed transactional object.
+     */
+    public AlphaTransactionalObject getTransactionalObject() {
+        return transactionalObject;
+    }
+
+    /**
+     * Returns the tranlocal that was committed before this change. Returns null if the transactional object was
+     * committed for the first time (so it was constructed in the committing transaction).
+     *
+     * @return the old committed tranlocal, can be null.
+     */
+    public AlphaTranlocal getOldTranlocal() {
+        return oldTranlocal;
+    }
+
+    /**
+     * Returns the tranlocal that was committed by this change.
+     *
+     * @return the new committed tranlocal.
+     */
+    public AlphaTranlocal getNewTranlocal() {
+        return newTranlocal;
+    }
+
+    @Override
+    public String toString() {
+        return format("AlphaChange(transactionalObject=%s)", AlphaStmUtils.toTxObjectString(transactionalObject));
+    }
+}
@@ -0,0 +1,62 @@
+package org.multiverse.stms.alpha;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static java.lang.String.format;
+
+/**
+ * All the changes made by a single successful commit of an update transaction (or by an atomic operation on a
+ * programmatic reference). The commits are published on the {@link AlphaCommitStream} after the commit locks are
+ * released, so concurrent commits could be published out of order. The write version of the commits that change
+ * the same transactional object always is increasing, so it can be used to order them.
+ * <p/>
+ * AlphaCommit is immutable and thread-safe.
+ *
+ * @author Peter Veentjer.
+ */
+public final class AlphaCommit {
+
+    private final long writeVersion;
+    private final List<AlphaChange> changes;
+
+    /**
+     * Creates a new AlphaCommit.
+     *
+     * @param writeVersion the version of the commit.
+     * @param changes      the changes made by the commit.
+     * @throws NullPointerException if changes is null.
+     */
+    public AlphaCommit(long writeVersion, AlphaChange... changes) {
+        if (changes == null) {
+            throw new NullPointerException();
+        }
+
+        this.writeVersion = writeVersion;
+        this.changes = Collections.unmodifiableList(Arrays.asList(changes));
+    }
+
+    /**
+     * Returns the version of the commit.
+     *
+     * @return the write version.
+     */
+    public long getWriteVersion() {
+        return writeVersion;
+    }
+
+    /**
+     * Returns an unmodifiable list containing the changes made by the commit. The list never is empty.
+     *
+     * @return the list of changes.
+     */
+    public List<AlphaChange> getChanges() {
+        return changes;
+    }
+
+    @Override
+    public String toString() {
+        return format("AlphaCommit(writeVersion=%s, changes=%s)", writeVersion, changes.size());
+    }
+}
@@ -0,0 +1,27 @@
+package org.multiverse.stms.alpha;
+
+import java.util.List;
+
+/**
+ * A subscriber on the {@link AlphaCommitStream} of an {@link AlphaStm}. It can be used for change data capture;
+ * for example to update a cache, replicate the changes or write them to some kind of log.
+ * <p/>
+ * The listener is notified asynchronously by the delivery thread of the commit stream, so it is not notified in
+ * the thread that did the commit and it is not notified while the locks of the commit are held. Commits are
+ * delivered in batches to reduce the overhead. A listener should not block for a long time: no commit is dropped,
+ * so as long as the commit stream is full, committing threads block after their commit until there is space
+ * again.
+ *
+ * @author Peter Veentjer.
+ */
+public interface AlphaCommitListener {
+
+    /**
+     * Is called when one or more commits have been made. The list never is empty and should not be modified.
+     * <p/>
+     * If an exception or error is thrown, it is logged and the listener will be notified of later commits.
+     *
+     * @param commits the commits.
+     */
+    void notify(List<AlphaCommit> commits);
+}
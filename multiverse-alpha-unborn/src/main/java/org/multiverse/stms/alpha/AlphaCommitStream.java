@@ -0,0 +1,336 @@
+package org.multiverse.stms.alpha;
+
+import org.multiverse.api.Listeners;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.lang.String.format;
+
+/**
+ * A stream of {@link AlphaCommit} objects that makes it possible to subscribe on the commits made on an
+ * {@link AlphaStm} (change data capture). Each AlphaStm has a single AlphaCommitStream.
+ * <p/>
+ * <h3>Publishing</h3>
+ * When there are no subscribers, the committing transactions don't collect their changes, so there is no overhead
+ * apart from a single volatile read per commit. When there are subscribers, the committing transaction collects
+ * the old and new tranlocal of each transactional object that was written and publishes them after the commit
+ * locks have been released, so publishing doesn't make other transactions wait. The consequence is that commits
+ * that are made concurrently could be published in a different order than they were made; if a listener needs
+ * the exact order, it can order the commits on their write version (the write version of the commits that change
+ * the same transactional object always is increasing).
+ * <p/>
+ * <h3>Delivery</h3>
+ * The commits are placed in a bounded ring buffer and are delivered in batches to the
+ * {@link AlphaCommitListener}s by a single daemon thread, so the listeners are notified asynchronously. No commit
+ * is lost: if the ring buffer is full, the committing thread blocks until there is space (backpressure). Because
+ * publishing happens after the commit locks have been released, this only slows down the committing thread and
+ * not other transactions; but a listener that blocks for a long time will eventually slow down all committers.
+ * Commits that are published by a listener itself (so from the delivery thread) never block, else the delivery
+ * thread would wait for itself. They are placed in an overflow buffer with the same capacity as the ring buffer;
+ * if that one also is full, the commit is dropped and counted (see {@link #getDroppedCount()}).
+ * <p/>
+ * The retry latches of a commit are opened before the commit is published, so transactions waiting on a retry
+ * don't wait for a slow listener.
+ * <p/>
+ * When the delivery thread is interrupted, and so no one is left to make space, commits that don't fit are
+ * dropped and counted as well.
+ * <p/>
+ * AlphaCommitStream is thread-safe.
+ *
+ * @author Peter Veentjer.
+ */
+public final class AlphaCommitStream {
+
+    private final static Logger logger = Logger.getLogger(AlphaCommitStream.class.getName());
+
+    private final List<AlphaCommitListener> listeners = new CopyOnWriteArrayList<AlphaCommitListener>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmptyCondition = lock.newCondition();
+    private final Condition notFullCondition = lock.newCondition();
+
+    private final AlphaCommit[] ring;
+    private final int maxBatchSize;
+
+    //all guarded by the lock.
+    private int takeIndex;
+    private int size;
+    private long droppedCount;
+    private Thread deliveryThread;
+    private boolean deliveryStopped;
+    //commits published by the delivery thread while the ring buffer was full, at most capacity commits.
+    private final List<AlphaCommit> overflow = new ArrayList<AlphaCommit>();
+
+    private volatile boolean hasSubscribers = false;
+
+    /**
+     * Creates a new AlphaCommitStream.
+     *
+     * @param capacity     the maximum number of commits that can be buffered before committers block.
+     * @param maxBatchSize the maximum number of commits that are delivered to a listener in a single batch.
+     * @throws IllegalArgumentException if capacity or maxBatchSize is smaller than 1.
+     */
+    public AlphaCommitStream(int capacity, int maxBatchSize) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity can't be smaller than 1, capacity was " + capacity);
+        }
+
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException(
+                    "maxBatchSize can't be smaller than 1, maxBatchSize was " + maxBatchSize);
+        }
+
+        this.ring = new AlphaCommit[capacity];
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Returns the maximum number of commits that can be buffered.
+     *
+     * @return the capacity.
+     */
+    public int getCapacity() {
+        return ring.length;
+    }
+
+    /**
+     * Returns the maximum number of commits a listener receives in a single batch.
+     *
+     * @return the maximum batch size.
+     */
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * Returns the number of commits that are buffered and not yet delivered.
+     *
+     * @return the number of buffered commits.
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of commits that were dropped because the delivery thread was stopped, or because a
+     * listener published more commits than fit in the ring buffer and the overflow buffer.
+     *
+     * @return the number of dropped commits.
+     */
+    public long getDroppedCount() {
+        lock.lock();
+        try {
+            return droppedCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Checks if there are subscribers. If there are no subscribers, commits don't need to be published.
+     *
+     * @return true if there are subscribers, false otherwise.
+     */
+    public boolean hasSubscribers() {
+        return hasSubscribers;
+    }
+
+    /**
+     * Subscribes the listener. It will receive all commits that are published after the subscribe completes.
+     * The same listener can be subscribed multiple times, and will be notified multiple times.
+     *
+     * @param listener the AlphaCommitListener to subscribe.
+     * @throws NullPointerException if listener is null.
+     */
+    public void subscribe(AlphaCommitListener listener) {
+        if (listener == null) {
+            throw new NullPointerException();
+        }
+
+        lock.lock();
+        try {
+            listeners.add(listener);
+            hasSubscribers = true;
+
+            if (deliveryThread == null) {
+                deliveryThread = new Thread(new DeliveryTask(), "AlphaCommitStream-delivery");
+                deliveryThread.setDaemon(true);
+                deliveryThread.start();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Unsubscribes the listener. Commits that already are buffered could still be delivered to the listener.
+     * If the listener is not subscribed, the call is ignored.
+     *
+     * @param listener the AlphaCommitListener to unsubscribe.
+     * @throws NullPointerException if listener is null.
+     */
+    public void unsubscribe(AlphaCommitListener listener) {
+        if (listener == null) {
+            throw new NullPointerException();
+        }
+
+        lock.lock();
+        try {
+            listeners.remove(listener);
+            hasSubscribers = !listeners.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Publishes a commit. If there are no subscribers, the commit is ignored. If the ring buffer is full, this call
+     * blocks until the delivery thread has made space. The wait is not interruptible because the commit already
+     * has been made and can't be undone; the interrupt status of the thread is restored afterwards.
+     * <p/>
+     * If it is called by the delivery thread (so by a listener), it never blocks: if the ring buffer is full the
+     * commit is placed in the overflow buffer, and if that one is full as well, the commit is dropped.
+     *
+     * @param commit the AlphaCommit to publish.
+     * @throws NullPointerException if commit is null.
+     */
+    public void publish(AlphaCommit commit) {
+        if (commit == null) {
+            throw new NullPointerException();
+        }
+
+        if (!hasSubscribers) {
+            return;
+        }
+
+        lock.lock();
+        try {
+            if (Thread.currentThread() == deliveryThread) {
+                if (size < ring.length) {
+                    put(commit);
+                } else if (overflow.size() < ring.length) {
+                    overflow.add(commit);
+                } else {
+                    droppedCount++;
+                }
+                return;
+            }
+
+            while (size == ring.length && !deliveryStopped) {
+                notFullCondition.awaitUninterruptibly();
+            }
+
+            if (size == ring.length) {
+                //the delivery thread has stopped, so there never will be space.
+                droppedCount++;
+                return;
+            }
+
+            put(commit);
+            notEmptyCondition.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void put(AlphaCommit commit) {
+        ring[(takeIndex + size) % ring.length] = commit;
+        size++;
+    }
+
+    /**
+     * Stores an update on a transactional object that was done without a transaction (so an atomic operation on
+     * a programmatic reference), notifies the Listeners waiting on the write, and publishes it if there are
+     * subscribers. The lock of the transactional object should be owned by the caller and it is released by the
+     * store. The Listeners are notified before the update is published, because the publish can block.
+     *
+     * @param txObject     the transactional object to store the update on.
+     * @param update       the tranlocal containing the update.
+     * @param writeVersion the version of the write.
+     */
+    public void storeAtomicUpdate(AlphaTransactionalObject txObject, AlphaTranlocal update, long writeVersion) {
+        boolean publish = hasSubscribers;
+        AlphaTranlocal old = publish ? txObject.___load() : null;
+        Listeners listeners = txObject.___storeUpdate(update, writeVersion, true);
+        if (listeners != null) {
+            listeners.openAll();
+        }
+
+        if (publish) {
+            publish(new AlphaCommit(writeVersion, new AlphaChange(txObject, old, update)));
+        }
+    }
+
+    private List<AlphaCommit> takeBatch() throws InterruptedException {
+        lock.lock();
+        try {
+            while (size == 0) {
+                notEmptyCondition.await();
+            }
+
+            int batchSize = Math.min(size, maxBatchSize);
+            List<AlphaCommit> batch = new ArrayList<AlphaCommit>(batchSize);
+            for (int k = 0; k < batchSize; k++) {
+                batch.add(ring[takeIndex]);
+                ring[takeIndex] = null;
+                takeIndex = (takeIndex + 1) % ring.length;
+            }
+            size -= batchSize;
+
+            //commits published by a listener are moved to the ring buffer as soon as there is space.
+            int overflowSize = Math.min(overflow.size(), ring.length - size);
+            for (int k = 0; k < overflowSize; k++) {
+                put(overflow.get(k));
+            }
+            overflow.subList(0, overflowSize).clear();
+
+            notFullCondition.signalAll();
+            return batch;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private class DeliveryTask implements Runnable {
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    List<AlphaCommit> batch = takeBatch();
+                    for (AlphaCommitListener listener : listeners) {
+                        try {
+                            listener.notify(batch);
+                        } catch (Throwable ex) {
+                            //a failing listener should not kill the delivery thread, else the other listeners
+                            //would not be notified anymore.
+                            String msg = format("Failed to notify AlphaCommitListener '%s'", listener);
+                            logger.log(Level.WARNING, msg, ex);
+                        }
+                    }
+                }
+            } catch (InterruptedException ex) {
+                logger.warning("AlphaCommitStream delivery thread was interrupted and is going to stop, "
+                        + "commits that can't be buffered anymore will be dropped");
+                lock.lock();
+                try {
+                    deliveryStopped = true;
+                    notFullCondition.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+}
@@ -70,6 +70,10 @@ public final class AlphaStm implements Stm<AlphaStm.AlphaTransactionFactoryBuild
 
     private final int syncToClock;
 
+    private final AlphaCommitStream commitStream;
+
+    private final Transaction atomicLockOwner;
+
     public static AlphaStm createFast() {
         return new AlphaStm(AlphaStmConfig.createFastConfig());
     }
@@ -116,11 +120,19 @@ public final class AlphaStm implements Stm<AlphaStm.AlphaTransactionFactoryBuild
         this.maxReadSpinCount = config.maxReadSpinCount;
         this.traceLevel = config.traceLevel;
         this.syncToClock = 0;
+        this.commitStream = new AlphaCommitStream(config.commitStreamCapacity, config.commitStreamMaxBatchSize);
 
         if (clock.getVersion() == 0) {
             clock.tick();
         }
 
+        this.atomicLockOwner = getTransactionFactoryBuilder()
+                .setReadonly(true)
+                .setSpeculativeConfigurationEnabled(false)
+                .setFamilyName("AtomicLockOwner")
+                .build()
+                .create();
+
         logger.info("Created a new AlphaStm instance");
     }
 
@@ -194,6 +206,50 @@ public final class AlphaStm implements Stm<AlphaStm.AlphaTransactionFactoryBuild
         return clock;
     }
 
+    /**
+     * Returns the Transaction that is used as lock owner by commits that are done without a transaction, like the
+     * commits of transactional methods that have their transaction elided. It is a real (readonly) transaction of
+     * this AlphaStm, but it is never used for anything else than locking; only its identity matters. A lock is only
+     * released by the one that acquired it, so a single lock owner can be shared. Returned value will never be null.
+     *
+     * @return the lock owner for commits without a transaction.
+     */
+    public Transaction getAtomicLockOwner() {
+        return atomicLockOwner;
+    }
+
+    /**
+     * Returns the AlphaCommitStream the commits of this AlphaStm are published on. Returned value will never be
+     * null.
+     *
+     * @return the AlphaCommitStream.
+     */
+    public AlphaCommitStream getCommitStream() {
+        return commitStream;
+    }
+
+    /**
+     * Subscribes an AlphaCommitListener on the commits made on this AlphaStm.
+     *
+     * @param listener the AlphaCommitListener to subscribe.
+     * @throws NullPointerException if listener is null.
+     * @see AlphaCommitStream#subscribe(AlphaCommitListener)
+     */
+    public void subscribe(AlphaCommitListener listener) {
+        commitStream.subscribe(listener);
+    }
+
+    /**
+     * Unsubscribes an AlphaCommitListener.
+     *
+     * @param listener the AlphaCommitListener to unsubscribe.
+     * @throws NullPointerException if listener is null.
+     * @see AlphaCommitStream#unsubscribe(AlphaCommitListener)
+     */
+    public void unsubscribe(AlphaCommitListener listener) {
+        commitStream.unsubscribe(listener);
+    }
+
 
     public class AlphaTransactionFactoryBuilder
             implements TransactionFactoryBuilder<AlphaTransaction, AlphaTransactionFactoryBuilder> {
@@ -214,6 +270,7 @@ public final class AlphaStm implements Stm<AlphaStm.AlphaTransactionFactoryBuild
         private final int maxReadSpinCount;
         private final TraceLevel traceLevel;
         private final PropagationLevel propagationLevel;
+        private final boolean relaxedReadsEnabled;
 
         @Override
         public AlphaStm getStm() {
@@ -236,7 +293,8 @@ public final class AlphaStm implements Stm<AlphaStm.AlphaTransactionFactoryBuild
                     Long.MAX_VALUE,
                     AlphaStm.this.maxReadSpinCount,
                     AlphaStm.this.traceLevel,
-                    PropagationLevel.Requires);
+                    PropagationLevel.Requires,
+                    false);
         }
 
         public AlphaTransactionFactoryBuilder(
@@ -246,7 +304,7 @@ public final class AlphaStm implements Stm<AlphaStm.AlphaTransactionFactoryBuild
                 SpeculativeConfiguration speculativeConfig, boolean interruptible,
                 boolean dirtyCheck, boolean quickReleaseEnabled,
                 boolean explicitRetryAllowed, long timeoutNs, int maxReadSpinCount, TraceLevel traceLevel,
-                PropagationLevel propagationLevel) {
+                PropagationLevel propagationLevel, boolean relaxedReadsEnabled) {
             this.readonly = readonly;
             this.familyName = familyName;
             this.maxRetries = maxRetries;
@@ -263,6 +321,7 @@ public final class AlphaStm implements Stm<AlphaStm.AlphaTransactionFactoryBuild
             this.maxReadSpinCount = maxReadSpinCount;
             this.traceLevel = traceLevel;
             this.propagationLevel = propagationLevel;
+            this.relaxedReadsEnabled = relaxedReadsEnabled;
         }
 
         @Override
@@ -350,7 +409,7 @@ public final class AlphaStm implements Stm<AlphaStm.AlphaTransactionFactoryBuild
                     readonly, readTrackingEnabled, familyName, maxRetries,
                     writeSkewAllowed, commitLockPolicy, backoffPolicy,
                     speculativeConfig, interruptible, dirtyCheck, quickReleaseEnabled,
-                    explicitRetryAllowed, timeoutNs, maxReadSpinCount, traceLevel,level);
+                    explicitRetryAllowed, timeoutNs, maxReadSpinCount, traceLevel, level, relaxedReadsEnabled);
         }
 
         @Override
@@ -363,7 +422,7 @@ public final class AlphaStm implements Stm<AlphaStm.AlphaTransactionFactoryBuild
                     readonly, readTrackingEnabled, familyName, maxRetries,
                     writeSkewAllowed, commitLockPolicy, backoffPolicy,
                     speculativeConfig, interruptible, dirtyCheck, quickReleaseEnabled,
-                    explicitRetryAllowed, timeoutNs, maxReadSpinCount, traceLevel,propagationLevel);
+                    explicitRetryAllowed, timeoutNs, maxReadSpinCount, traceLevel, propagationLevel, relaxedReadsEnabled);
         }
 
         @Override
@@ -381,7 +440,7 @@ public final class AlphaStm implements Stm<AlphaStm.AlphaTransactionFactoryBuild
                     readonly, readTrackingEnabled, familyName, maxRetries,
                     writeSkewAllowed, commitLockPolicy, backoffPolicy,
                     speculativeConfig, interruptible, dirtyCheck, quickReleaseEnabled,
-                    explicitRetryAllowed, timeoutNs, maxReadSpinCount, traceLevel,propagationLevel);
+                    explicitRetryAllowed, timeoutNs, maxReadSpinCount, traceLevel, propagationLevel, relaxedReadsEnabled);
         }
 
         @Override
@@ -394,7 +453,7 @@ public final class AlphaStm implements Stm<AlphaStm.AlphaTransactionFactoryBuild
                     readonly, readTrackingEnabled, familyName, maxRetries,
                     writeSkewAllowed, commitLockPolicy, backoffPolicy,
                     speculativeConfig, interruptible, dirtyCheck, quickReleaseEnabled,
-                    explicitRetryAllowed, timeoutNs, maxReadSpinCount, traceLevel,propagationLevel);
+                    explicitRetryAllowed, timeoutNs, maxReadSpinCount, traceLevel, propagationLevel, relaxedReadsEnabled);
         }
 
         @Override
@@ -403,7 +462,7 @@ public final class AlphaStm implements Stm<AlphaStm.AlphaTransactionFactoryBuild
                     readonly, readTrackingEnabled, familyName, maxRetries,
                     writeSkewAllowed, commitLockPolicy, backoffPolicy,
                     speculativeConfig, interruptible, dirtyCheck, quickReleaseEnabled,
-                    explicitRetryAllowed, timeoutNs, maxReadSpinCount, traceLevel,propagationLevel);
+                    explicitRetryAllowed, timeoutNs, maxReadSpinCount, traceLevel, propagationLevel, relaxedReadsEnabled);
         }
 
         @Override
@@ -412,7 +471,7 @@ public final class AlphaStm implements Stm<AlphaStm.AlphaTransactionFactoryBuild
                     readonly, readTrackingEnabled, familyName, maxRetries,
                     writeSkewAllowed, commitLockPolicy, backoffPolicy,
                     speculativeConfig, interruptible, dirtyCheck, quickReleaseEnabled,
-                    explicitRetryAllowed, timeoutNs, maxReadSpinCount, traceLevel,propagationLevel);
+                    explicitRetryAllowed, timeoutNs, maxReadSpinCount, traceLevel, propagationLevel, relaxedReadsEnabled);
         }
 
         @Override
@@ -425,7 +484,7 @@ public final class AlphaStm implements Stm<AlphaStm.AlphaTransactionFactoryBuild
                     readonly, readTrackingEnabled, familyName, maxRetries,
                     writeSkewAllowed, commitLockPolicy, backoffPolicy,
                     speculativeConfig, interruptible, dirtyCheck, quickReleaseEnabled,
-                    explicitRetryAllowed, timeoutNs, maxReadSpinCount, traceLevel,propagationLevel);
+                    explicitRetryAllowed, timeoutNs, maxReadSpinCount, traceLevel, propagationLevel, relaxedReadsEnabled);
         }
 
         @Override
@@ -436,7 +495,7 @@ public final class AlphaStm implements Stm<AlphaStm.AlphaTransactionFactoryBuild
                     readonly, readTrackingEnabled, familyName, maxRetries,
                     writeSkewAllowed, commitLockPolicy, backoffPolicy,
                     newSpeculativeConfig, interruptible, dirtyCheck, quickReleaseEnabled,
-                    explicitRetryAllowed, timeoutNs, maxReadSpinCount, traceLevel,propagationLevel);
+                    explicitRetryAllowed, timeoutNs, maxReadSpinCount, traceLevel, propagationLevel, relaxedReadsEnabled);
         }
 
         public AlphaTransactionFactoryBuilder setReadTrackingEnabled(boolean readTrackingEnabled) {
@@ -446,7 +505,7 @@ public final class AlphaStm implements Stm<AlphaStm.AlphaTransactionFactoryBuild
                     readonly, readTrackingEnabled, familyName, maxRetries,
                     writeSkewAllowed, commitLockPolicy, backoffPolicy,
                     newSpeculativeConfig, interruptible, dirtyCheck, quickReleaseEnabled,
-                    explicitRetryAllowed, timeoutNs, maxReadSpinCount, traceLevel,propagationLevel);
+                    explicitRetryAllowed, timeoutNs, maxReadSpinCount, traceLevel, propagationLevel, relaxedReadsEnabled);
         }
 
         @Override
@@ -455,7 +514,7 @@ public final class AlphaStm implements Stm<AlphaStm.AlphaTransactionFactoryBuild
                     readonly, readTrackingEnabled, familyName, maxRetries,
                     writeSkewAllowed, commitLockPolicy, backoffPolicy,
                     speculativeConfig, interruptible, dirtyCheck, quickReleaseEnabled,
-                    explicitRetryAllowed, timeoutNs, maxReadSpinCount, traceLevel,propagationLevel);
+                    explicitRetryAllowed, timeoutNs, maxReadSpinCount, traceLevel, propagationLevel, relaxedReadsEnabled);
         }
 
         @Override
@@ -468,7 +527,7 @@ public final class AlphaStm implements Stm<AlphaStm.AlphaTransactionFactoryBuild
                     readonly, readTrackingEnabled, familyName, maxRetries,
                     writeSkewAllowed, commitLockPolicy, backoffPolicy,
                     speculativeConfig, interruptible, dirtyCheck, quickReleaseEnabled,
-                    explicitRetryAllowed, timeoutNs, maxReadSpinCount, traceLevel,propagationLevel);
+                    explicitRetryAllowed, timeoutNs, maxReadSpinCount, traceLevel, propagationLevel, relaxedReadsEnabled);
         }
 
         @Override
@@ -479,7 +538,33 @@ public final class AlphaStm implements Stm<AlphaStm.AlphaTransactionFactoryBuild
                     readonly, readTrackingEnabled, familyName, maxRetries,
                     writeSkewAllowed, commitLockPolicy, backoffPolicy, newSpeculativeConfig,
                     interruptible, dirtyCheck, quickReleaseEnabled, explicitRetryAllowed,
-                    timeoutNs, maxReadSpinCount, traceLevel,propagationLevel);
+                    timeoutNs, maxReadSpinCount, traceLevel, propagationLevel, relaxedReadsEnabled);
+        }
+
+        /**
+         * Sets the number of transactional objects a transaction is expected to access, so that the speculative
+         * configuration starts with the right transaction type (mono, array or map) instead of upgrading it after
+         * failures. It only has effect if speculative configuration is enabled, and the transaction still is
+         * upgraded if more transactional objects are accessed.
+         * <p/>
+         * Setting the readonly, readtracking or speculative configuration afterwards, resets the hint.
+         *
+         * @param sizeHint the expected number of transactional objects.
+         * @return the updated AlphaTransactionFactoryBuilder.
+         * @throws IllegalArgumentException if sizeHint smaller than 1.
+         */
+        public AlphaTransactionFactoryBuilder setSpeculativeSizeHint(int sizeHint) {
+            if (sizeHint < 1) {
+                throw new IllegalArgumentException(format("sizeHint can't be smaller than 1, found %s", sizeHint));
+            }
+
+            SpeculativeConfiguration newSpeculativeConfig = speculativeConfig.withOptimalSize(sizeHint);
+
+            return new AlphaTransactionFactoryBuilder(
+                    readonly, readTrackingEnabled, familyName, maxRetries,
+                    writeSkewAllowed, commitLockPolicy, backoffPolicy, newSpeculativeConfig,
+                    interruptible, dirtyCheck, quickReleaseEnabled, explicitRetryAllowed,
+                    timeoutNs, maxReadSpinCount, traceLevel, propagationLevel, relaxedReadsEnabled);
         }
 
         @Override
@@ -488,7 +573,7 @@ public final class AlphaStm implements Stm<AlphaStm.AlphaTransactionFactoryBuild
                     readonly, readTrackingEnabled, familyName, maxRetries,
                     allowWriteSkew, commitLockPolicy, backoffPolicy, speculativeConfig,
                     interruptible, dirtyCheck, quickReleaseEnabled, explicitRetryAllowed,
-                    timeoutNs, maxReadSpinCount, traceLevel,propagationLevel);
+                    timeoutNs, maxReadSpinCount, traceLevel, propagationLevel, relaxedReadsEnabled);
         }
 
         @Override
@@ -501,7 +586,21 @@ public final class AlphaStm implements Stm<AlphaStm.AlphaTransactionFactoryBuild
                     readonly, readTrackingEnabled, familyName, maxRetries,
                     writeSkewAllowed, commitLockPolicy, backoffPolicy,
                     speculativeConfig, interruptible, dirtyCheck, quickReleaseEnabled,
-                    explicitRetryAllowed, timeoutNs, maxReadSpinCount, traceLevel,propagationLevel);
+                    explicitRetryAllowed, timeoutNs, maxReadSpinCount, traceLevel, propagationLevel, relaxedReadsEnabled);
+        }
+
+        @Override
+        public boolean isRelaxedReadsEnabled() {
+            return relaxedReadsEnabled;
+        }
+
+        @Override
+        public AlphaTransactionFactoryBuilder setRelaxedReadsEnabled(boolean relaxedReadsEnabled) {
+            return new AlphaTransactionFactoryBuilder(
+                    readonly, readTrackingEnabled, familyName, maxRetries,
+                    writeSkewAllowed, commitLockPolicy, backoffPolicy,
+                    speculativeConfig, interruptible, dirtyCheck, quickReleaseEnabled,
+                    explicitRetryAllowed, timeoutNs, maxReadSpinCount, traceLevel, propagationLevel, relaxedReadsEnabled);
         }
 
         @Override
@@ -510,7 +609,7 @@ public final class AlphaStm implements Stm<AlphaStm.AlphaTransactionFactoryBuild
                     readonly, readTrackingEnabled, familyName, maxRetries,
                     writeSkewAllowed, commitLockPolicy, backoffPolicy,
                     speculativeConfig, interruptible, dirtyCheckEnabled, quickReleaseEnabled,
-                    explicitRetryAllowed, timeoutNs, maxReadSpinCount, traceLevel,propagationLevel);
+                    explicitRetryAllowed, timeoutNs, maxReadSpinCount, traceLevel, propagationLevel, relaxedReadsEnabled);
         }
 
         @Override
@@ -519,12 +618,14 @@ public final class AlphaStm implements Stm<AlphaStm.AlphaTransactionFactoryBuild
                     readonly, readTrackingEnabled, familyName, maxRetries,
                     writeSkewAllowed, commitLockPolicy, backoffPolicy,
                     speculativeConfig, interruptible, dirtyCheck, quickReleaseEnabled,
-                    explicitRetryAllowed, timeoutNs, maxReadSpinCount, traceLevel,propagationLevel);
+                    explicitRetryAllowed, timeoutNs, maxReadSpinCount, traceLevel, propagationLevel, relaxedReadsEnabled);
         }
 
         @Override
         public TransactionFactory<AlphaTransaction> build() {
-            if (speculativeConfig.isEnabled()) {
+            if (relaxedReadsEnabled) {
+                return createRelaxedReadonlyTxFactory();
+            } else if (speculativeConfig.isEnabled()) {
                 return createSpeculativeTxFactory();
             } else if (readonly) {
                 return createNonSpeculativeReadonlyTxFactory();
@@ -545,21 +646,21 @@ public final class AlphaStm implements Stm<AlphaStm.AlphaTransactionFactoryBuild
                         new ReadonlyConfiguration(
                                 clock, backoffPolicy, familyName, speculativeConfig, maxRetries,
                                 interruptible, true, explicitRetryAllowed, timeoutNs, maxReadSpinCount,
-                                this, traceLevel, syncToClock,propagationLevel);
+                                this, traceLevel, syncToClock, propagationLevel);
                 final UpdateConfiguration up_rt =
                         new UpdateConfiguration(
                                 clock, backoffPolicy, commitLockPolicy, familyName, speculativeConfig,
                                 maxRetries, interruptible, true, writeSkewAllowed,
                                 optimizeConflictDetectionEnabled, true, quickReleaseEnabled,
                                 explicitRetryAllowed, timeoutNs, maxReadSpinCount,
-                                this, traceLevel, syncToClock,propagationLevel);
+                                this, traceLevel, syncToClock, propagationLevel, commitStream);
                 final UpdateConfiguration up_nort =
                         new UpdateConfiguration(
                                 clock, backoffPolicy, commitLockPolicy, familyName,
                                 speculativeConfig, maxRetries, interruptible, false, true,
                                 optimizeConflictDetectionEnabled, true, quickReleaseEnabled,
                                 explicitRetryAllowed, timeoutNs, maxReadSpinCount,
-                                this, traceLevel, syncToClock,propagationLevel);
+                                this, traceLevel, syncToClock, propagationLevel, commitStream);
 
                 @Override
                 public Stm getStm() {
@@ -689,6 +790,55 @@ public final class AlphaStm implements Stm<AlphaStm.AlphaTransactionFactoryBuild
             };
         }
 
+        private TransactionFactory<AlphaTransaction> createRelaxedReadonlyTxFactory() {
+            if (!readonly) {
+                String msg = format("Can't create transactionfactory for transaction family '%s' because an update "
+                        + "transaction with relaxed reads is not possible", familyName);
+                throw new IllegalStateException(msg);
+            }
+
+            //a relaxed transaction never speculates on becoming an update transaction, and it never tracks reads.
+            final SpeculativeConfiguration relaxedSpeculativeConfig = speculativeConfig
+                    .withSpeculativeReadonlyDisabled()
+                    .withSpeculativeNonAutomaticReadTrackingDisabled();
+
+            return new TransactionFactory<AlphaTransaction>() {
+
+                ReadonlyConfiguration config =
+                        new ReadonlyConfiguration(
+                                clock, backoffPolicy, familyName, relaxedSpeculativeConfig, maxRetries,
+                                interruptible, false, explicitRetryAllowed, timeoutNs,
+                                maxReadSpinCount, this, traceLevel, syncToClock, propagationLevel);
+
+                @Override
+                public Stm getStm() {
+                    return AlphaStm.this;
+                }
+
+                @Override
+                public TransactionConfiguration getTransactionConfiguration() {
+                    return config;
+                }
+
+                @Override
+                public TransactionFactoryBuilder getTransactionFactoryBuilder() {
+                    return AlphaTransactionFactoryBuilder.this;
+                }
+
+                @Override
+                public AlphaTransaction create() {
+                    return new RelaxedReadonlyAlphaTransaction(config);
+                }
+
+                @Override
+                public AlphaTransaction start() {
+                    AlphaTransaction tx = create();
+                    tx.start();
+                    return tx;
+                }
+            };
+        }
+
         private TransactionFactory<AlphaTransaction> createNonSpeculativeUpdateTxFactory() {
             if (!readTrackingEnabled && !writeSkewAllowed) {
                 String msg = format("Can't createReference transactionfactory for transaction family '%s' because an update "
@@ -706,7 +856,7 @@ public final class AlphaStm implements Stm<AlphaStm.AlphaTransactionFactoryBuild
                                 maxRetries, interruptible, readTrackingEnabled, writeSkewAllowed,
                                 optimizeConflictDetectionEnabled, true, quickReleaseEnabled,
                                 explicitRetryAllowed, timeoutNs, maxReadSpinCount, this,
-                                traceLevel, syncToClock,propagationLevel);
+                                traceLevel, syncToClock, propagationLevel, commitStream);
 
                 @Override
                 public TransactionConfiguration getTransactionConfiguration() {
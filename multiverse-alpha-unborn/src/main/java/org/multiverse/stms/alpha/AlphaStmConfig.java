@@ -76,6 +76,10 @@ public final class AlphaStmConfig {
 
     public TraceLevel traceLevel = TraceLevel.none;
 
+    public int commitStreamCapacity = 1024;
+
+    public int commitStreamMaxBatchSize = 64;
+
     /**
      * Check if the AlphaStmConfig has been configured correctly.
      *
@@ -113,5 +117,14 @@ public final class AlphaStmConfig {
         if (traceLevel == null) {
             throw new IllegalStateException("Invalid configuration, traceLevel can't be null");
         }
+
+        if (commitStreamCapacity < 1) {
+            throw new IllegalStateException("Invalid configuration, commitStreamCapacity can't be smaller than 1");
+        }
+
+        if (commitStreamMaxBatchSize < 1) {
+            throw new IllegalStateException(
+                    "Invalid configuration, commitStreamMaxBatchSize can't be smaller than 1");
+        }
     }
 }
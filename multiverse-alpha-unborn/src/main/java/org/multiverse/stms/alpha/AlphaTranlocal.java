@@ -38,6 +38,10 @@ public abstract class AlphaTranlocal implements CommitLock, MultiverseConstants
 
     public AlphaTransactionalObject ___transactionalObject;
 
+    //true if the transactional object of this (uncommitted) tranlocal is locked by the owning
+    //transaction for the remainder of that transaction. See AlphaTransaction.openForEnsure.
+    public boolean ___ensured;
+
     /**
      * Returns the AlphaTransactionalObject that belongs to this AlphaTranlocal.
      *
@@ -168,6 +172,16 @@ public abstract class AlphaTranlocal implements CommitLock, MultiverseConstants
         return ___writeVersion;
     }
 
+    /**
+     * Checks if the transactional object of this AlphaTranlocal has been pessimistically locked by the
+     * transaction that opened it. An ensured tranlocal doesn't need to be locked or validated on commit.
+     *
+     * @return true if ensured, false otherwise.
+     */
+    public final boolean isEnsured() {
+        return ___ensured;
+    }
+
     public final boolean hasWriteConflict() {
         if (isCommuting()) {
             return false;
@@ -28,6 +28,11 @@ public final class UncommittedFilter implements CommitLockFilter {
             return false;
         }
 
+        if (tranlocal.isEnsured()) {
+            //the lock already is owned by the transaction.
+            return false;
+        }
+
         if (tranlocal.isCommuting()) {
             return true;
         }
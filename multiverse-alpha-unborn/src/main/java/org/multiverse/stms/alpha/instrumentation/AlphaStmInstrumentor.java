@@ -1,15 +1,21 @@
 package org.multiverse.stms.alpha.instrumentation;
 
+import org.multiverse.api.TransactionConfiguration;
+import org.multiverse.api.TransactionFactory;
 import org.multiverse.instrumentation.PreventReinstrumentationInstrumentationPhase;
 import org.multiverse.instrumentation.StandardInstrumentor;
 import org.multiverse.instrumentation.asm.JSRInlineInstrumentationPhase;
+import org.multiverse.instrumentation.metadata.MethodProfile;
 import org.multiverse.stms.alpha.instrumentation.fieldaccess.NonTransactionalObjectFieldAccessInstrumentationPhase;
 import org.multiverse.stms.alpha.instrumentation.fieldgranularity.FieldGranularityInstrumentationPhase;
 import org.multiverse.stms.alpha.instrumentation.gettersetter.GetterSetterInlineInstrumentationPhase;
 import org.multiverse.stms.alpha.instrumentation.tranlocal.TranlocalInstrumentationPhase;
 import org.multiverse.stms.alpha.instrumentation.tranlocal.TranlocalSnapshotInstrumentationPhase;
+import org.multiverse.stms.alpha.instrumentation.transactionalarray.TransactionalArrayFieldInstrumentationPhase;
 import org.multiverse.stms.alpha.instrumentation.transactionalmethod.TransactionalMethodInstrumentationPhase;
 import org.multiverse.stms.alpha.instrumentation.transactionalobject.TransactionalObjectInstrumentationPhase;
+import org.multiverse.stms.alpha.transactions.AbstractAlphaTransactionConfiguration;
+import org.multiverse.stms.alpha.transactions.SpeculativeConfiguration;
 
 /**
  * The {@link org.multiverse.instrumentation.Instrumentor} for the Alpha Stm.
@@ -24,6 +30,7 @@ public final class AlphaStmInstrumentor extends StandardInstrumentor {
         add(new PreventReinstrumentationInstrumentationPhase(this));
         add(new JSRInlineInstrumentationPhase());
         add(new GetterSetterInlineInstrumentationPhase());
+        add(new TransactionalArrayFieldInstrumentationPhase());
         add(new FieldGranularityInstrumentationPhase());
         add(new TranlocalInstrumentationPhase());
         add(new TranlocalSnapshotInstrumentationPhase());
@@ -31,4 +38,36 @@ public final class AlphaStmInstrumentor extends StandardInstrumentor {
         add(new TransactionalObjectInstrumentationPhase());
         add(new TransactionalMethodInstrumentationPhase());
     }
+
+    /**
+     * Creates a MethodProfile using the {@link SpeculativeConfiguration} of the TransactionFactory. Only the
+     * settings that are learned speculatively are part of the profile.
+     *
+     * @param transactionFactory the TransactionFactory of a transactional method.
+     * @return the created MethodProfile, or null if the TransactionFactory doesn't learn anything.
+     * @throws NullPointerException if transactionFactory is null.
+     */
+    @Override
+    public MethodProfile createProfile(TransactionFactory transactionFactory) {
+        if (transactionFactory == null) {
+            throw new NullPointerException();
+        }
+
+        TransactionConfiguration config = transactionFactory.getTransactionConfiguration();
+        if (!(config instanceof AbstractAlphaTransactionConfiguration)) {
+            return null;
+        }
+
+        SpeculativeConfiguration speculativeConfig =
+                ((AbstractAlphaTransactionConfiguration) config).speculativeConfiguration;
+        if (!speculativeConfig.isEnabled()) {
+            return null;
+        }
+
+        boolean update = speculativeConfig.isSpeculativeReadonlyEnabled() && !speculativeConfig.isReadonly();
+        boolean readTrackingEnabled = speculativeConfig.isSpeculativeNoReadTrackingEnabled()
+                && speculativeConfig.isReadTrackingEnabled();
+        int size = speculativeConfig.isSpeculativeSizeEnabled() ? speculativeConfig.getOptimalSize() : 1;
+        return new MethodProfile(update, readTrackingEnabled, size);
+    }
 }
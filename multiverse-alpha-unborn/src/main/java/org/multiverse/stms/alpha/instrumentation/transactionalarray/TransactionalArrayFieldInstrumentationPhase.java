@@ -0,0 +1,41 @@
+package org.multiverse.stms.alpha.instrumentation.transactionalarray;
+
+import org.multiverse.instrumentation.AbstractInstrumentationPhase;
+import org.multiverse.instrumentation.Clazz;
+import org.multiverse.instrumentation.Environment;
+import org.multiverse.instrumentation.metadata.ClassMetadata;
+import org.objectweb.asm.tree.ClassNode;
+
+import static org.multiverse.instrumentation.asm.AsmUtils.loadAsClassNode;
+import static org.multiverse.instrumentation.asm.AsmUtils.toBytecode;
+
+/**
+ * An InstrumentationPhase that transforms the array fields of transactional objects to transactional arrays (see
+ * the {@link org.multiverse.instrumentation.asm.TransactionalArrayFieldAnalyzer}).
+ *
+ * @author Peter Veentjer
+ */
+public final class TransactionalArrayFieldInstrumentationPhase extends AbstractInstrumentationPhase {
+
+    public TransactionalArrayFieldInstrumentationPhase() {
+        super("TransactionalArrayFieldInstrumentationPhase");
+    }
+
+    @Override
+    protected Clazz doInstrument(Environment environment, Clazz originalClazz) {
+        ClassMetadata metadata = environment.getMetadataRepository().loadClassMetadata(
+                originalClazz.getClassLoader(), originalClazz.getName());
+
+        if (!metadata.hasTransactionalArrayFields()) {
+            return originalClazz;
+        }
+
+        ClassNode originalNode = loadAsClassNode(originalClazz.getBytecode());
+
+        TransactionalArrayFieldTransformer transformer = new TransactionalArrayFieldTransformer(originalNode, metadata);
+
+        ClassNode transformed = transformer.transform();
+
+        return new Clazz(originalClazz, toBytecode(transformed));
+    }
+}
@@ -0,0 +1,191 @@
+package org.multiverse.stms.alpha.instrumentation.transactionalarray;
+
+import org.multiverse.instrumentation.asm.TransactionalArrayFieldAnalyzer;
+import org.multiverse.instrumentation.metadata.ClassMetadata;
+import org.multiverse.instrumentation.metadata.FieldMetadata;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.lang.String.format;
+import static org.multiverse.instrumentation.asm.TransactionalArrayFieldAnalyzer.getTransactionalArrayName;
+
+/**
+ * Transforms the array fields of a transactional object to transactional arrays:
+ * <ol>
+ * <li>the type of the field is changed to the transactional array</li>
+ * <li>the creation of an array that is stored in the field is replaced by the creation of a transactional
+ * array</li>
+ * <li>the element reads and writes on the array are replaced by a get and set on the transactional array, and
+ * the ARRAYLENGTH by a call to length.</li>
+ * </ol>
+ * The instructions that need to be transformed are found by the {@link TransactionalArrayFieldAnalyzer}.
+ *
+ * @author Peter Veentjer
+ */
+public final class TransactionalArrayFieldTransformer implements Opcodes {
+
+    private final ClassNode classNode;
+    private final ClassMetadata classMetadata;
+
+    //the transactional array fields mapped to the desc of the original array.
+    private final Map<String, String> fields = new HashMap<String, String>();
+
+    public TransactionalArrayFieldTransformer(ClassNode classNode, ClassMetadata classMetadata) {
+        if (classNode == null || classMetadata == null) {
+            throw new NullPointerException();
+        }
+
+        this.classNode = classNode;
+        this.classMetadata = classMetadata;
+    }
+
+    public ClassNode transform() {
+        for (FieldNode fieldNode : (List<FieldNode>) classNode.fields) {
+            FieldMetadata fieldMetadata = classMetadata.getFieldMetadata(fieldNode.name);
+            if (fieldMetadata != null && fieldMetadata.isTransactionalArray()) {
+                fields.put(fieldNode.name, fieldNode.desc);
+            }
+        }
+
+        for (MethodNode methodNode : (List<MethodNode>) classNode.methods) {
+            fixMethod(methodNode);
+        }
+
+        fixFields();
+        return classNode;
+    }
+
+    private void fixFields() {
+        for (FieldNode fieldNode : (List<FieldNode>) classNode.fields) {
+            String arrayDesc = fields.get(fieldNode.name);
+            if (arrayDesc != null) {
+                fieldNode.desc = getTransactionalArrayDesc(arrayDesc);
+                //the signature of a generic array can't be used for the transactional array.
+                fieldNode.signature = null;
+            }
+        }
+    }
+
+    private void fixMethod(MethodNode methodNode) {
+        TransactionalArrayFieldAnalyzer.MethodAnalysis analysis =
+                TransactionalArrayFieldAnalyzer.analyze(classNode.name, methodNode, fields);
+
+        if (!analysis.getRejectedFields().isEmpty()) {
+            //the analysis of the original bytecode (when the metadata was created) found no problems, so
+            //a previous instrumentation phase changed the use of the arrays.
+            String msg = format("Method %s.%s%s can't be transformed, it doesn't use transactional array fields %s " +
+                    "like the original bytecode", classNode.name, methodNode.name, methodNode.desc,
+                    analysis.getRejectedFields());
+            throw new IllegalStateException(msg);
+        }
+
+        for (Map.Entry<AbstractInsnNode, String> entry : analysis.getCreations().entrySet()) {
+            String arrayName = getTransactionalArrayName(entry.getValue());
+
+            //[length, ..
+            InsnList creation = new InsnList();
+            creation.add(new TypeInsnNode(NEW, arrayName));
+            //[transactionalArray, length, ..
+            creation.add(new InsnNode(DUP_X1));
+            //[transactionalArray, length, transactionalArray, ..
+            creation.add(new InsnNode(SWAP));
+            //[length, transactionalArray, transactionalArray, ..
+            creation.add(new MethodInsnNode(INVOKESPECIAL, arrayName, "<init>", "(I)V"));
+            //[transactionalArray, ..
+
+            methodNode.instructions.insertBefore(entry.getKey(), creation);
+            methodNode.instructions.remove(entry.getKey());
+        }
+
+        for (Map.Entry<AbstractInsnNode, String> entry : analysis.getAccesses().entrySet()) {
+            AbstractInsnNode insn = entry.getKey();
+            if (insn.getOpcode() == CHECKCAST) {
+                ((TypeInsnNode) insn).desc = getTransactionalArrayName(entry.getValue());
+            } else if (insn.getOpcode() == ASTORE) {
+                fixLocalVariable(methodNode, (VarInsnNode) insn, entry.getValue());
+            } else {
+                methodNode.instructions.insertBefore(insn, createAccess(insn.getOpcode(), entry.getValue()));
+                methodNode.instructions.remove(insn);
+            }
+        }
+
+        for (int k = 0; k < methodNode.instructions.size(); k++) {
+            AbstractInsnNode insn = methodNode.instructions.get(k);
+            if (insn.getOpcode() == GETFIELD || insn.getOpcode() == PUTFIELD) {
+                FieldInsnNode fieldInsn = (FieldInsnNode) insn;
+                String arrayDesc = fields.get(fieldInsn.name);
+                if (fieldInsn.owner.equals(classNode.name) && arrayDesc != null) {
+                    fieldInsn.desc = getTransactionalArrayDesc(arrayDesc);
+                }
+            }
+        }
+    }
+
+    /**
+     * Changes the type of the local variable the array is stored in, in the debug information. The instructions
+     * don't need to be changed since a local variable can contain any reference.
+     */
+    private static void fixLocalVariable(MethodNode methodNode, VarInsnNode storeInsn, String arrayDesc) {
+        if (methodNode.localVariables == null) {
+            return;
+        }
+
+        int storeIndex = methodNode.instructions.indexOf(storeInsn);
+        for (LocalVariableNode localVariable : (List<LocalVariableNode>) methodNode.localVariables) {
+            //the scope of a local variable starts after the instruction that stores the initial value.
+            if (localVariable.index == storeInsn.var
+                    && localVariable.desc.equals(arrayDesc)
+                    && methodNode.instructions.indexOf(localVariable.start) <= storeIndex + 1
+                    && methodNode.instructions.indexOf(localVariable.end) > storeIndex) {
+                localVariable.desc = getTransactionalArrayDesc(arrayDesc);
+                localVariable.signature = null;
+            }
+        }
+    }
+
+    private static InsnList createAccess(int opcode, String arrayDesc) {
+        String arrayName = getTransactionalArrayName(arrayDesc);
+        Type elementType = Type.getType(arrayDesc).getElementType();
+        //the TransactionalObjectArray stores Objects.
+        String elementDesc = elementType.getSort() == Type.OBJECT
+                ? Type.getDescriptor(Object.class)
+                : elementType.getDescriptor();
+
+        InsnList result = new InsnList();
+        switch (opcode) {
+            case IALOAD:
+            case LALOAD:
+            case AALOAD:
+                //[index, transactionalArray, ..
+                result.add(new MethodInsnNode(INVOKEVIRTUAL, arrayName, "get", format("(I)%s", elementDesc)));
+                if (elementType.getSort() == Type.OBJECT && !elementType.equals(Type.getType(Object.class))) {
+                    result.add(new TypeInsnNode(CHECKCAST, elementType.getInternalName()));
+                }
+                break;
+            case IASTORE:
+            case LASTORE:
+            case AASTORE:
+                //[value, index, transactionalArray, ..
+                result.add(new MethodInsnNode(
+                        INVOKEVIRTUAL, arrayName, "set", format("(I%s)%s", elementDesc, elementDesc)));
+                //pop the unused return value of the set.
+                result.add(new InsnNode(elementType.getSize() == 2 ? POP2 : POP));
+                break;
+            case ARRAYLENGTH:
+                result.add(new MethodInsnNode(INVOKEVIRTUAL, arrayName, "length", "()I"));
+                break;
+            default:
+                throw new IllegalStateException("Unhandled opcode: " + opcode);
+        }
+        return result;
+    }
+
+    private static String getTransactionalArrayDesc(String arrayDesc) {
+        return "L" + getTransactionalArrayName(arrayDesc) + ";";
+    }
+}
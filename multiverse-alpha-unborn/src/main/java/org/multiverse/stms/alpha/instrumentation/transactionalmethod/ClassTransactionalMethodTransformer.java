@@ -7,6 +7,7 @@ import org.multiverse.instrumentation.InstrumenterLogger;
 import org.multiverse.instrumentation.asm.AsmUtils;
 import org.multiverse.instrumentation.asm.CloneMap;
 import org.multiverse.instrumentation.metadata.*;
+import org.multiverse.stms.alpha.AlphaStm;
 import org.multiverse.stms.alpha.AlphaTranlocal;
 import org.multiverse.stms.alpha.AlphaTransactionalObject;
 import org.multiverse.stms.alpha.transactions.AlphaTransaction;
@@ -19,6 +20,8 @@ import java.util.*;
 
 import static java.lang.String.format;
 import static org.multiverse.instrumentation.asm.AsmUtils.*;
+import static org.multiverse.stms.alpha.instrumentation.transactionalmethod.TransactionalMethodUtils.findSources;
+import static org.multiverse.stms.alpha.instrumentation.transactionalmethod.TransactionalMethodUtils.isLoadedFromVar0;
 import static org.multiverse.stms.alpha.instrumentation.transactionalmethod.TransactionalMethodUtils.toTransactedMethodName;
 import static org.objectweb.asm.Type.*;
 
@@ -36,6 +39,13 @@ import static org.objectweb.asm.Type.*;
  * <p/>
  * Another reason to drop the template approach is that a lot of boxing/unboxing goes on with primitive return types of
  * the transactionalobject.
+ * <p/>
+ * The constructor of a transactional object keeps the fresh tranlocal returned by openForConstruction in its
+ * tranlocal variable (directly after the super(..) call), so the field access on this in the rest of the constructor
+ * doesn't need a lookup. This only is done inside the constructor: the caller of the constructor still opens the
+ * object on the first access to its fields (once per local variable, because of the tranlocal cache). A constructor
+ * that delegates to this(..) fills the variable on the first access. Transactional objects that extend another
+ * transactional object are not supported.
  *
  * @author Peter Veentjer.
  */
@@ -52,12 +62,18 @@ public final class ClassTransactionalMethodTransformer implements Opcodes {
     private final ClassMetadata classMetadata;
     private final ClassLoader classLoader;
     private final Map<MethodNode, FieldNode> transactionFactoryFields = new HashMap<MethodNode, FieldNode>();
+    private final Map<MethodNode, FieldNode> profiledTransactionFactoryFields = new HashMap<MethodNode, FieldNode>();
     private final boolean optimize;
+    private final boolean profilingEnabled;
     private final InstrumenterLogger logger;
+    private final ReadonlyInference readonlyInference;
+    private final TransactionElisionAnalyzer elisionAnalyzer;
+    private final TransactionSizeAnalyzer sizeAnalyzer;
 
     public ClassTransactionalMethodTransformer(
             ClassLoader classLoader, ClassNode classNode, ClassNode donorClassNode,
-            MetadataRepository metadataRepository, boolean optimize, InstrumenterLogger logger) {
+            MetadataRepository metadataRepository, boolean optimize, boolean profilingEnabled,
+            InstrumenterLogger logger) {
         this.classLoader = classLoader;
         this.metadataRepository = metadataRepository;
         this.classNode = classNode;
@@ -67,7 +83,11 @@ public final class ClassTransactionalMethodTransformer implements Opcodes {
         this.donorMethodNode = getDonorMethod("donorMethod");
         this.donorConstructorNode = getDonorMethod("donorConstructor");
         this.optimize = optimize;
+        this.profilingEnabled = profilingEnabled;
         this.logger = logger;
+        this.readonlyInference = new ReadonlyInference(metadataRepository);
+        this.elisionAnalyzer = new TransactionElisionAnalyzer(metadataRepository, classLoader);
+        this.sizeAnalyzer = new TransactionSizeAnalyzer(metadataRepository, classLoader);
     }
 
     public ClassNode transform() {
@@ -90,15 +110,28 @@ public final class ClassTransactionalMethodTransformer implements Opcodes {
 
         List<MethodNode> extraMethods = new LinkedList<MethodNode>();
 
+        //the index is used to give the fields a name that is the same every time the class is instrumented.
+        int txFactoryFieldIndex = 0;
         for (MethodNode methodNode : (List<MethodNode>) classNode.methods) {
             MethodMetadata methodMetadata = classMetadata.getMethodMetadata(methodNode.name, methodNode.desc);
 
             if (methodMetadata != null && methodMetadata.isTransactional() && !methodMetadata.isAbstract()) {
                 //txFactoryField is used to createReference the transaction fot this methodNode
-                FieldNode txFactoryField = createTransactionFactoryField();
+                FieldNode txFactoryField = createTransactionFactoryField(txFactoryFieldIndex);
                 classNode.fields.add(txFactoryField);
 
                 transactionFactoryFields.put(methodNode, txFactoryField);
+                methodMetadata.setTransactionFactoryField(txFactoryField.name);
+
+                if (profilingEnabled) {
+                    //the field is always created, so the class has the same fields when it is reinstrumented
+                    //with a profile.
+                    FieldNode profiledTxFactoryField = createProfiledTransactionFactoryField(txFactoryFieldIndex);
+                    classNode.fields.add(profiledTxFactoryField);
+                    profiledTransactionFactoryFields.put(methodNode, profiledTxFactoryField);
+                    methodMetadata.setProfiledTransactionFactoryField(profiledTxFactoryField.name);
+                }
+                txFactoryFieldIndex++;
 
                 //the static initializer for the transactionFactories.
                 if (staticInitializerNode == null) {
@@ -116,7 +149,15 @@ public final class ClassTransactionalMethodTransformer implements Opcodes {
 
                 //add the transactionFactory initialization code to the front of the static initializer.
                 TransactionMetadata transactionMetadata = methodMetadata.getTransactionalMetadata();
-                InsnList insnList = transactionFactoryInitialization(transactionMetadata, txFactoryField);
+                boolean inferredReadonly = isInferredReadonly(methodMetadata);
+                int sizeHint = getSizeHint(transactionMetadata, methodNode);
+                InsnList insnList = createTransactionFactory(transactionMetadata, inferredReadonly, sizeHint, null);
+                //and store it in the txFactoryField
+                insnList.add(new FieldInsnNode(
+                        PUTSTATIC,
+                        classNode.name,
+                        txFactoryField.name,
+                        Type.getDescriptor(TransactionFactory.class)));
                 staticInitializerNode.instructions.insert(insnList);
             }
         }
@@ -125,13 +166,66 @@ public final class ClassTransactionalMethodTransformer implements Opcodes {
     }
 
     /**
-     * Creates code for the initialization of a {@link TransactionFactory} for some method.
+     * Checks if a transactional method can be executed in a readonly transaction because the
+     * {@link ReadonlyInference} proves it never writes. Only methods that don't have an explicit readonly
+     * configuration are inferred, and constructors always need an update transaction.
+     *
+     * @param methodMetadata the MethodMetadata of the transactional method.
+     * @return true if the method should use a readonly transaction.
+     */
+    private boolean isInferredReadonly(MethodMetadata methodMetadata) {
+        if (methodMetadata.isConstructor()) {
+            return false;
+        }
+
+        if (methodMetadata.getTransactionalMetadata().readOnly != null) {
+            return false;
+        }
+
+        if (!readonlyInference.isNeverWriting(classLoader, methodMetadata)) {
+            return false;
+        }
+
+        logger.lessImportant("%s is inferred to be readonly", methodMetadata.toFullName());
+        return true;
+    }
+
+    /**
+     * Determines the number of transactional objects the transaction of a method should be sized for, using the
+     * {@link TransactionSizeAnalyzer}. A hint only is useful if it is larger than 1, since the speculative
+     * configuration already starts with a transaction for a single transactional object.
+     *
+     * @param transactionMetadata the TransactionMetadata of the method.
+     * @param methodNode          the original MethodNode of the method.
+     * @return the size hint, or -1 if there is no hint.
+     */
+    private int getSizeHint(TransactionMetadata transactionMetadata, MethodNode methodNode) {
+        if (!transactionMetadata.speculativeConfigurationEnabled) {
+            return -1;
+        }
+
+        int size = sizeAnalyzer.analyze(classNode.name, methodNode);
+        if (size <= 1) {
+            return -1;
+        }
+
+        logger.lessImportant("%s.%s accesses at most %s transactional objects", classNode.name, methodNode.name, size);
+        return size;
+    }
+
+    /**
+     * Creates code that creates the {@link TransactionFactory} for some method and leaves it on the stack.
      *
      * @param transactionMetadata the TransactionMetadata for the method.
-     * @param txFactoryField      the field where the created TransactionFactory is stored.
-     * @return the created TransactionFactory.
+     * @param inferredReadonly    if the method is inferred to be readonly. If so, a readonly transaction
+     *                            without read tracking is used (unless read tracking is configured explicitly).
+     * @param sizeHint            the number of transactional objects the method accesses, or -1 if unknown.
+     * @param profile             the MethodProfile of the method, or null if the method is not profiled. The
+     *                            behavior that has been learned, is used instead of being learned again.
+     * @return the created instructions.
      */
-    private InsnList transactionFactoryInitialization(TransactionMetadata transactionMetadata, FieldNode txFactoryField) {
+    private InsnList createTransactionFactory(TransactionMetadata transactionMetadata, boolean inferredReadonly,
+                                              int sizeHint, MethodProfile profile) {
         InsnList insnList = new InsnList();
 
         //lets getClassMetadata the stm instance from the GlobalStmInstance
@@ -159,13 +253,28 @@ public final class ClassTransactionalMethodTransformer implements Opcodes {
                 "(Z)" + Type.getDescriptor(TransactionFactoryBuilder.class)));
 
         //readonly
-        if (transactionMetadata.readOnly != null) {
+        if (inferredReadonly) {
+            insnList.add(new InsnNode(ICONST_1));
+            insnList.add(new MethodInsnNode(
+                    INVOKEINTERFACE,
+                    Type.getInternalName(TransactionFactoryBuilder.class),
+                    "setReadonly",
+                    "(Z)" + Type.getDescriptor(TransactionFactoryBuilder.class)));
+        } else if (transactionMetadata.readOnly != null) {
             insnList.add(new InsnNode(transactionMetadata.readOnly ? ICONST_1 : ICONST_0));
             insnList.add(new MethodInsnNode(
                     INVOKEINTERFACE,
                     Type.getInternalName(TransactionFactoryBuilder.class),
                     "setReadonly",
                     "(Z)" + Type.getDescriptor(TransactionFactoryBuilder.class)));
+        } else if (profile != null && profile.isUpdate()) {
+            //the method has been seen writing, so it doesn't need to start with a readonly transaction.
+            insnList.add(new InsnNode(ICONST_0));
+            insnList.add(new MethodInsnNode(
+                    INVOKEINTERFACE,
+                    Type.getInternalName(TransactionFactoryBuilder.class),
+                    "setReadonly",
+                    "(Z)" + Type.getDescriptor(TransactionFactoryBuilder.class)));
         }
 
         //trackreads
@@ -176,6 +285,23 @@ public final class ClassTransactionalMethodTransformer implements Opcodes {
                     Type.getInternalName(TransactionFactoryBuilder.class),
                     "setReadTrackingEnabled",
                     "(Z)" + Type.getDescriptor(TransactionFactoryBuilder.class)));
+        } else if (profile != null && profile.isReadTrackingEnabled()) {
+            //the method has been seen needing read tracking (for a retry for example).
+            insnList.add(new InsnNode(ICONST_1));
+            insnList.add(new MethodInsnNode(
+                    INVOKEINTERFACE,
+                    Type.getInternalName(TransactionFactoryBuilder.class),
+                    "setReadTrackingEnabled",
+                    "(Z)" + Type.getDescriptor(TransactionFactoryBuilder.class)));
+        } else if (inferredReadonly) {
+            //a method that never writes doesn't need read tracking; it can't call retry since that would make
+            //the inference fail.
+            insnList.add(new InsnNode(ICONST_0));
+            insnList.add(new MethodInsnNode(
+                    INVOKEINTERFACE,
+                    Type.getInternalName(TransactionFactoryBuilder.class),
+                    "setReadTrackingEnabled",
+                    "(Z)" + Type.getDescriptor(TransactionFactoryBuilder.class)));
         }
 
         //familyName
@@ -231,6 +357,21 @@ public final class ClassTransactionalMethodTransformer implements Opcodes {
                 "setTimeoutNs",
                 "(J)" + Type.getDescriptor(TransactionFactoryBuilder.class)));
 
+        //sizeHint; needs to be set after the readonly and readtracking settings since they reset it.
+        if (profile != null && profile.getSize() > 1 && profile.getSize() > sizeHint) {
+            sizeHint = profile.getSize();
+        }
+
+        if (sizeHint > 0) {
+            insnList.add(new TypeInsnNode(CHECKCAST, Type.getInternalName(AlphaStm.AlphaTransactionFactoryBuilder.class)));
+            insnList.add(new LdcInsnNode(sizeHint));
+            insnList.add(new MethodInsnNode(
+                    INVOKEVIRTUAL,
+                    Type.getInternalName(AlphaStm.AlphaTransactionFactoryBuilder.class),
+                    "setSpeculativeSizeHint",
+                    "(I)" + Type.getDescriptor(AlphaStm.AlphaTransactionFactoryBuilder.class)));
+        }
+
         //now lets build the TransactionFactory
         insnList.add(new MethodInsnNode(
                 INVOKEINTERFACE,
@@ -238,13 +379,41 @@ public final class ClassTransactionalMethodTransformer implements Opcodes {
                 "build",
                 "()" + Type.getDescriptor(TransactionFactory.class)));
 
-        //and store it in the txFactoryField
-        insnList.add(new FieldInsnNode(
-                PUTSTATIC,
-                classNode.name,
-                txFactoryField.name,
-                Type.getDescriptor(TransactionFactory.class)));
+        return insnList;
+    }
 
+    /**
+     * Creates code that loads the TransactionFactory for a profiled method. The static initializer is not executed
+     * again when a class is reinstrumented, so the TransactionFactory is created the first time it is needed and
+     * stored in the profiledTxFactoryField. If it is created concurrently, one of the created TransactionFactories
+     * wins and the others are used only once. When the profile changes, the
+     * {@link org.multiverse.javaagent.ProfileGuidedReinstrumentor} clears the field after the class has been
+     * reinstrumented, so the TransactionFactory is created again with the new profile.
+     *
+     * @param originalMethod         the original method.
+     * @param profiledTxFactoryField the field to store the TransactionFactory in.
+     * @return the created instructions.
+     */
+    private InsnList loadProfiledTransactionFactory(MethodNode originalMethod, FieldNode profiledTxFactoryField) {
+        MethodMetadata methodMetadata = classMetadata.getMethodMetadata(originalMethod.name, originalMethod.desc);
+
+        InsnList insnList = new InsnList();
+        LabelNode createdLabel = new LabelNode();
+
+        insnList.add(new FieldInsnNode(
+                GETSTATIC, classNode.name, profiledTxFactoryField.name, profiledTxFactoryField.desc));
+        insnList.add(new InsnNode(DUP));
+        insnList.add(new JumpInsnNode(IFNONNULL, createdLabel));
+        insnList.add(new InsnNode(POP));
+        insnList.add(createTransactionFactory(
+                methodMetadata.getTransactionalMetadata(),
+                isInferredReadonly(methodMetadata),
+                getSizeHint(methodMetadata.getTransactionalMetadata(), originalMethod),
+                methodMetadata.getProfile()));
+        insnList.add(new InsnNode(DUP));
+        insnList.add(new FieldInsnNode(
+                PUTSTATIC, classNode.name, profiledTxFactoryField.name, profiledTxFactoryField.desc));
+        insnList.add(createdLabel);
         return insnList;
     }
 
@@ -330,12 +499,9 @@ public final class ClassTransactionalMethodTransformer implements Opcodes {
                         "openForConstruction",
                         openForConstructionDesc));
 
-                //int tranlocalIndex =
-
-                //todo: instead of popping it, place it in the tranlocal local variable.
-                //this method doesn't contain a formal argument with the tranlocal, but needs a local
-                //variable
-                initTranlocal.add(new InsnNode(POP));
+                //the fresh tranlocal is placed in the tranlocal local variable, so the field access on this
+                //in the rest of the constructor doesn't need to look it up again.
+                initTranlocal.add(new VarInsnNode(ASTORE, indexOfTranlocalVariable(methodNode.name, methodNode.desc)));
 
                 result.instructions.insertBefore(result.instructions.get(indexOfFirst), initTranlocal);
             }
@@ -506,9 +672,18 @@ public final class ClassTransactionalMethodTransformer implements Opcodes {
      *
      * @return the created FieldNode.
      */
-    private FieldNode createTransactionFactoryField() {
+    private FieldNode createTransactionFactoryField(int index) {
         int access = ACC_FINAL + ACC_PUBLIC + ACC_STATIC + ACC_SYNTHETIC;
-        String name = "___transactionFactory_" + System.nanoTime(); //todo: improve, use better name
+        String name = "___transactionFactory_" + index;
+        String desc = Type.getDescriptor(TransactionFactory.class);
+        String sig = null;
+        Object value = null;
+        return new FieldNode(access, name, desc, sig, value);
+    }
+
+    private FieldNode createProfiledTransactionFactoryField(int index) {
+        int access = ACC_PUBLIC + ACC_STATIC + ACC_SYNTHETIC;
+        String name = "___profiledTransactionFactory_" + index;
         String desc = Type.getDescriptor(TransactionFactory.class);
         String sig = null;
         Object value = null;
@@ -562,10 +737,30 @@ public final class ClassTransactionalMethodTransformer implements Opcodes {
         int transactionVar = indexOfTransactionVariable(methodNode.name, methodNode.desc);
         int tranlocalVar = indexOfTranlocalVariable(methodNode.name, methodNode.desc);
 
+        //the local variables (indexed by the original local variable) that cache the tranlocal of the
+        //transactional object stored in that local variable.
+        Map<AbstractInsnNode, Integer> cachedReceivers = findCachedReceivers(methodNode, frames);
+        Map<Integer, Integer> tranlocalCacheVars = createTranlocalCacheVariables(
+                methodNode, cachedReceivers, transactionVar, tranlocalVar);
+
         InsnList newInstructions = new InsnList();
         newInstructions.add(startLabelNode);
         newInstructions.add(new LineNumberNode(debugInfo.beginLine, startLabelNode));
 
+        for (int cacheVar : tranlocalCacheVars.values()) {
+            newInstructions.add(new InsnNode(ACONST_NULL));
+            newInstructions.add(new VarInsnNode(ASTORE, cacheVar));
+        }
+
+        //in a constructor the tranlocal variable is not a formal argument, but a local variable that caches the
+        //tranlocal of the object being constructed. Such a tranlocal is fresh, so it remains the tranlocal
+        //used by the transaction for this object, even if the object escapes before the transaction commits.
+        boolean constructorTranlocal = tranlocalVar > -1 && methodNode.name.equals("<init>");
+        if (constructorTranlocal) {
+            newInstructions.add(new InsnNode(ACONST_NULL));
+            newInstructions.add(new VarInsnNode(ASTORE, tranlocalVar));
+        }
+
         for (int k = 0; k < methodNode.instructions.size(); k++) {
             AbstractInsnNode originalInsn = methodNode.instructions.get(k);
             AbstractInsnNode newInsn = null;
@@ -587,26 +782,14 @@ public final class ClassTransactionalMethodTransformer implements Opcodes {
                         newInsn = originalInsn.clone(cloneMap);
                     } else {
                         Frame methodFrame = frames[methodNode.instructions.indexOf(originalFieldInsnNode)];
-                        int size = 1 + (AsmUtils.isCategory2(originalFieldInsnNode.desc) ? 2 : 1);
-                        int stackSlot = methodFrame.getStackSize() - size;
+                        //the frame contains 1 slot for every value, also for category 2 values.
+                        int stackSlot = methodFrame.getStackSize() - 2;
 
                         SourceValue stackValue = (SourceValue) methodFrame.getStack(stackSlot);
-                        boolean aload0 = false;
-
-                        if (stackValue.insns.size() > 0) {
-                            if (stackValue.insns.size() > 1) {
-                                throw new RuntimeException();
-                            }
-
-                            AbstractInsnNode node = (AbstractInsnNode) stackValue.insns.iterator().next();
-                            if (node.getOpcode() == ALOAD) {
-                                VarInsnNode varNode = (VarInsnNode) node;
-                                if (varNode.var == 0) {
-                                    aload0 = true;
-                                    logger.lessImportant("   aload 0 found for candidate put optimization %s.%s",
-                                            originalFieldInsnNode.owner, originalFieldInsnNode.name);
-                                }
-                            }
+                        boolean aload0 = isLoadedFromVar0(methodNode, frames, stackValue);
+                        if (aload0) {
+                            logger.lessImportant("   aload 0 found for candidate put optimization %s.%s",
+                                    originalFieldInsnNode.owner, originalFieldInsnNode.name);
                         }
 
                         if (isCategory2(originalFieldInsnNode.desc)) {
@@ -626,6 +809,18 @@ public final class ClassTransactionalMethodTransformer implements Opcodes {
                         LabelNode finishedLoadingLabel = new LabelNode();
                         LabelNode startFullLoadLabel = new LabelNode();
                         boolean fullMonty = aload0 && tranlocalVar > -1 && !methodNode.name.equals("<init>");
+                        int cacheVar = aload0 && constructorTranlocal
+                                ? tranlocalVar
+                                : fullMonty ? -1 : tranlocalCacheVar(cachedReceivers, tranlocalCacheVars, originalInsn);
+
+                        if (cacheVar > -1) {
+                            logger.lessImportant("   cached tranlocal used for put %s.%s",
+                                    originalFieldInsnNode.owner, originalFieldInsnNode.name);
+
+                            //only a tranlocal that already is opened for write can be used directly.
+                            addCachedTranlocalLoad(newInstructions, cacheVar, ownerMetadata, false,
+                                    startFullLoadLabel, finishedLoadingLabel);
+                        }
 
                         if (fullMonty) {
                             logger.lessImportant("   candidate for put optimization %s.%s",
@@ -662,6 +857,11 @@ public final class ClassTransactionalMethodTransformer implements Opcodes {
                                 "openForWrite",
                                 format("(%s)%s", getDescriptor(AlphaTransactionalObject.class), getDescriptor(AlphaTranlocal.class))));
 
+                        if (cacheVar > -1) {
+                            newInstructions.add(new InsnNode(DUP));
+                            newInstructions.add(new VarInsnNode(ASTORE, cacheVar));
+                        }
+
                         newInstructions.add(new TypeInsnNode(CHECKCAST, ownerMetadata.getTranlocalName()));
 
                         //store the loaded
@@ -705,22 +905,10 @@ public final class ClassTransactionalMethodTransformer implements Opcodes {
                         int stackSlot = methodFrame.getStackSize() - 1;
 
                         SourceValue stackValue = (SourceValue) methodFrame.getStack(stackSlot);
-                        boolean aload0 = false;
-
-                        if (stackValue.insns.size() > 0) {
-                            if (stackValue.insns.size() > 1) {
-                                throw new RuntimeException();
-                            }
-
-                            AbstractInsnNode node = (AbstractInsnNode) stackValue.insns.iterator().next();
-                            if (node.getOpcode() == ALOAD) {
-                                VarInsnNode varNode = (VarInsnNode) node;
-                                if (varNode.var == 0) {
-                                    aload0 = true;
-                                    logger.lessImportant("   aload 0 found for candidate get optimization %s.%s",
-                                            originalFieldInsnNode.owner, originalFieldInsnNode.name);
-                                }
-                            }
+                        boolean aload0 = isLoadedFromVar0(methodNode, frames, stackValue);
+                        if (aload0) {
+                            logger.lessImportant("   aload 0 found for candidate get optimization %s.%s",
+                                    originalFieldInsnNode.owner, originalFieldInsnNode.name);
                         }
 
 
@@ -728,6 +916,19 @@ public final class ClassTransactionalMethodTransformer implements Opcodes {
                         LabelNode continueGetFieldLabel = new LabelNode();
 
                         boolean fullMonty = aload0 && tranlocalVar > -1 && !methodNode.name.equals("<init>");
+                        int cacheVar = aload0 && constructorTranlocal
+                                ? tranlocalVar
+                                : fullMonty ? -1 : tranlocalCacheVar(cachedReceivers, tranlocalCacheVars, originalInsn);
+
+                        if (cacheVar > -1) {
+                            logger.lessImportant("   cached tranlocal used for get %s.%s",
+                                    originalFieldInsnNode.owner, originalFieldInsnNode.name);
+
+                            //in a readonly transaction nothing is opened for write, so the read tranlocal
+                            //can't be replaced by a newer version within the transaction.
+                            addCachedTranlocalLoad(newInstructions, cacheVar, ownerMetadata, readonly,
+                                    startFullLoadLabel, continueGetFieldLabel);
+                        }
 
                         if (fullMonty) {
                             if (readonly) {
@@ -763,6 +964,12 @@ public final class ClassTransactionalMethodTransformer implements Opcodes {
                                 getInternalName(AlphaTransaction.class),
                                 "openForRead",
                                 format("(%s)%s", getDescriptor(AlphaTransactionalObject.class), getDescriptor(AlphaTranlocal.class))));
+
+                        if (cacheVar > -1) {
+                            newInstructions.add(new InsnNode(DUP));
+                            newInstructions.add(new VarInsnNode(ASTORE, cacheVar));
+                        }
+
                         newInstructions.add(new TypeInsnNode(CHECKCAST, ownerMetadata.getTranlocalName()));
 
                         //store the loaded
@@ -797,7 +1004,14 @@ public final class ClassTransactionalMethodTransformer implements Opcodes {
                     //take care of the additional introduced variables
                     VarInsnNode originalVarNode = (VarInsnNode) originalInsn;
                     int newPos = newIndexOfLocalVariable(methodNode.name, methodNode.desc, originalVarNode.var);
-                    newInsn = new VarInsnNode(originalInsn.getOpcode(), newPos);
+                    newInstructions.add(new VarInsnNode(originalInsn.getOpcode(), newPos));
+
+                    //if the local variable gets a new value, the cached tranlocal isn't valid anymore.
+                    Integer cacheVar = tranlocalCacheVars.get(originalVarNode.var);
+                    if (cacheVar != null && isStore(originalInsn.getOpcode())) {
+                        newInstructions.add(new InsnNode(ACONST_NULL));
+                        newInstructions.add(new VarInsnNode(ASTORE, cacheVar));
+                    }
                 }
                 break;
                 case INVOKESPECIAL:
@@ -820,29 +1034,12 @@ public final class ClassTransactionalMethodTransformer implements Opcodes {
 
                     if (optimizeTransactionalMethodCall) {
                         Frame methodFrame = frames[methodNode.instructions.indexOf(originalMethodInsnNode)];
-                        int stackSlot = methodFrame.getStackSize();
-
-                        for (Type type : Type.getArgumentTypes(originalMethodInsnNode.desc)) {
-                            stackSlot -= type.getSize();
-                        }
-                        stackSlot--;
+                        //the frame contains 1 slot for every value, also for category 2 values.
+                        int stackSlot = methodFrame.getStackSize()
+                                - Type.getArgumentTypes(originalMethodInsnNode.desc).length - 1;
 
                         SourceValue stackValue = (SourceValue) methodFrame.getStack(stackSlot);
-                        boolean aload0 = false;
-                        if (stackValue.insns.size() > 0) {
-                            if (stackValue.insns.size() > 1) {
-                                throw new RuntimeException();
-                            }
-
-                            AbstractInsnNode node = (AbstractInsnNode) stackValue.insns.iterator().next();
-                            if (node.getOpcode() == ALOAD) {
-                                VarInsnNode v = (VarInsnNode) node;
-                                VarInsnNode varNode = (VarInsnNode) node;
-                                if (varNode.var == 0) {
-                                    aload0 = true;
-                                }
-                            }
-                        }
+                        boolean aload0 = isLoadedFromVar0(methodNode, frames, stackValue);
 
                         boolean fullMonty = classMetadata.isTransactionalObjectWithObjectGranularFields()
                                 && aload0
@@ -889,6 +1086,175 @@ public final class ClassTransactionalMethodTransformer implements Opcodes {
         return newInstructions;
     }
 
+    /**
+     * Adds the instructions that replace the transactional object on top of the stack by the cached tranlocal if it
+     * can be used, and jumps to the finishedLabel. If it can't be used, it continues at the fullLoadLabel with the
+     * transactional object still on top of the stack.
+     *
+     * @param instructions  the InsnList to add the instructions to.
+     * @param cacheVar      the index of the local variable containing the cached tranlocal (or null).
+     * @param ownerMetadata the ClassMetadata of the owner of the accessed field.
+     * @param readonly      if the cached tranlocal also can be used if it is committed (so only opened for read).
+     * @param fullLoadLabel the label to jump to if the cached tranlocal can't be used.
+     * @param finishedLabel the label to jump to if the cached tranlocal is used.
+     */
+    private void addCachedTranlocalLoad(InsnList instructions, int cacheVar, ClassMetadata ownerMetadata,
+                                        boolean readonly, LabelNode fullLoadLabel, LabelNode finishedLabel) {
+        instructions.add(new VarInsnNode(ALOAD, cacheVar));
+        instructions.add(new JumpInsnNode(IFNULL, fullLoadLabel));
+
+        if (!readonly) {
+            instructions.add(new VarInsnNode(ALOAD, cacheVar));
+            instructions.add(new MethodInsnNode(
+                    INVOKEVIRTUAL,
+                    getInternalName(AlphaTranlocal.class),
+                    "isCommitted",
+                    "()Z"));
+            instructions.add(new JumpInsnNode(IFNE, fullLoadLabel));
+        }
+
+        //remove the txObject and replace it by the cached tranlocal
+        instructions.add(new InsnNode(POP));
+        instructions.add(new VarInsnNode(ALOAD, cacheVar));
+        instructions.add(new TypeInsnNode(CHECKCAST, ownerMetadata.getTranlocalName()));
+        instructions.add(new JumpInsnNode(GOTO, finishedLabel));
+    }
+
+    private int tranlocalCacheVar(Map<AbstractInsnNode, Integer> cachedReceivers,
+                                  Map<Integer, Integer> tranlocalCacheVars, AbstractInsnNode fieldInsn) {
+        Integer receiverVar = cachedReceivers.get(fieldInsn);
+        return receiverVar == null ? -1 : tranlocalCacheVars.get(receiverVar);
+    }
+
+    /**
+     * Finds the accesses to managed fields (with object granularity) of transactional objects where the
+     * transactional object is loaded from a local variable (so the opened tranlocal can be cached for that local
+     * variable). The this of a non static method is not included, since it already has its own tranlocal.
+     *
+     * @param methodNode the original MethodNode.
+     * @param frames     the frames of the original method.
+     * @return a map containing the field access instructions and the (original) local variable the transactional
+     *         object is loaded from.
+     */
+    private Map<AbstractInsnNode, Integer> findCachedReceivers(MethodNode methodNode, Frame[] frames) {
+        Map<AbstractInsnNode, Integer> result = new HashMap<AbstractInsnNode, Integer>();
+
+        MethodMetadata methodMetadata = classMetadata.getMethodMetadata(methodNode.name, methodNode.desc);
+        int firstVar = methodMetadata.isStatic() ? 0 : 1;
+
+        for (int k = 0; k < methodNode.instructions.size(); k++) {
+            AbstractInsnNode insn = methodNode.instructions.get(k);
+            if (insn.getOpcode() != GETFIELD && insn.getOpcode() != PUTFIELD) {
+                continue;
+            }
+
+            FieldInsnNode fieldInsn = (FieldInsnNode) insn;
+            ClassMetadata ownerMetadata = metadataRepository.loadClassMetadata(classLoader, fieldInsn.owner);
+            FieldMetadata fieldMetadata = ownerMetadata.getFieldMetadata(fieldInsn.name);
+            if (fieldMetadata == null || !fieldMetadata.isManagedFieldWithObjectGranularity()) {
+                continue;
+            }
+
+            Frame frame = frames[k];
+            if (frame == null) {
+                //unreachable code
+                continue;
+            }
+
+            //the frame contains 1 slot for every value, also for category 2 values.
+            int stackSlot = frame.getStackSize() - (insn.getOpcode() == PUTFIELD ? 2 : 1);
+            SourceValue stackValue = (SourceValue) frame.getStack(stackSlot);
+            Set<AbstractInsnNode> sources = findSources(methodNode, frames, stackValue);
+            if (sources.size() != 1) {
+                continue;
+            }
+
+            AbstractInsnNode source = sources.iterator().next();
+            if (source.getOpcode() != ALOAD) {
+                continue;
+            }
+
+            int var = ((VarInsnNode) source).var;
+            if (var < firstVar || isStoredBetween(methodNode.instructions, var, source, insn)) {
+                continue;
+            }
+
+            result.put(insn, var);
+        }
+
+        return result;
+    }
+
+    /**
+     * Checks if a local variable could have been changed after it was loaded and before the loaded value is used,
+     * so the loaded value could be another object than the one in the local variable.
+     */
+    private static boolean isStoredBetween(InsnList instructions, int var, AbstractInsnNode load,
+                                           AbstractInsnNode use) {
+        int begin = instructions.indexOf(load);
+        int end = instructions.indexOf(use);
+        if (begin > end) {
+            return true;
+        }
+
+        for (int k = begin + 1; k < end; k++) {
+            AbstractInsnNode insn = instructions.get(k);
+            if (isStore(insn.getOpcode()) && ((VarInsnNode) insn).var == var) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean isStore(int opcode) {
+        return opcode >= ISTORE && opcode <= ASTORE;
+    }
+
+    /**
+     * Creates the local variables that cache the tranlocals. They are placed after all the local variables of the
+     * transformed method.
+     *
+     * @return a map containing the original local variable and the index of the local variable that caches its
+     *         tranlocal.
+     */
+    private Map<Integer, Integer> createTranlocalCacheVariables(MethodNode methodNode,
+                                                                Map<AbstractInsnNode, Integer> cachedReceivers,
+                                                                int transactionVar, int tranlocalVar) {
+        Map<Integer, Integer> result = new HashMap<Integer, Integer>();
+        if (cachedReceivers.isEmpty()) {
+            return result;
+        }
+
+        MethodMetadata methodMetadata = classMetadata.getMethodMetadata(methodNode.name, methodNode.desc);
+        int maxOriginalVar = sizeOfFormalParameters(methodNode.desc) + (methodMetadata.isStatic() ? 0 : 1);
+        maxOriginalVar = Math.max(maxOriginalVar, methodNode.maxLocals);
+        for (int k = 0; k < methodNode.instructions.size(); k++) {
+            AbstractInsnNode insn = methodNode.instructions.get(k);
+            if (insn instanceof VarInsnNode) {
+                VarInsnNode varInsn = (VarInsnNode) insn;
+                int size = isCategory2Var(varInsn.getOpcode()) ? 2 : 1;
+                maxOriginalVar = Math.max(maxOriginalVar, varInsn.var + size);
+            } else if (insn instanceof IincInsnNode) {
+                maxOriginalVar = Math.max(maxOriginalVar, ((IincInsnNode) insn).var + 1);
+            }
+        }
+
+        int nextFreeVar = newIndexOfLocalVariable(methodNode.name, methodNode.desc, maxOriginalVar);
+        nextFreeVar = Math.max(nextFreeVar, Math.max(transactionVar, tranlocalVar) + 1);
+
+        for (Integer var : new TreeSet<Integer>(cachedReceivers.values())) {
+            result.put(var, nextFreeVar);
+            nextFreeVar++;
+        }
+
+        return result;
+    }
+
+    private static boolean isCategory2Var(int opcode) {
+        return opcode == LLOAD || opcode == DLOAD || opcode == LSTORE || opcode == DSTORE;
+    }
+
     private List createNewVariableTableForMethodWithLogic(MethodNode methodNode, CloneMap cloneMap, LabelNode startLabelNode, LabelNode endLabelNode) {
         List<LocalVariableNode> result = new LinkedList<LocalVariableNode>();
 
@@ -905,9 +1271,14 @@ public final class ClassTransactionalMethodTransformer implements Opcodes {
         //introduce the tranlocal if needed
         int tranlocalVarIndex = indexOfTranlocalVariable(methodNode.name, methodNode.desc);
         if (tranlocalVarIndex >= 0) {
+            //in a constructor the tranlocal is stored the way it is returned by the transaction.
+            String tranlocalDesc = methodNode.name.equals("<init>")
+                    ? getDescriptor(AlphaTranlocal.class)
+                    : internalToDesc(tranlocalName);
+
             LocalVariableNode tranlocalVar = new LocalVariableNode(
                     "tranlocalThis",
-                    internalToDesc(tranlocalName),
+                    tranlocalDesc,
                     null,     //todo: signature
                     startLabelNode,
                     endLabelNode,
@@ -953,6 +1324,12 @@ public final class ClassTransactionalMethodTransformer implements Opcodes {
         MethodNode donorMethodNode = getDonorMethodNode(originalMethod);
 
         FieldNode txFactoryFieldNode = transactionFactoryFields.get(originalMethod);
+        FieldNode profiledTxFactoryFieldNode = null;
+        MethodMetadata originalMethodMetadata = classMetadata.getMethodMetadata(originalMethod.name, originalMethod.desc);
+        if (originalMethodMetadata.getProfile() != null) {
+            //null if profiling is not enabled.
+            profiledTxFactoryFieldNode = profiledTransactionFactoryFields.get(originalMethod);
+        }
 
         MethodMetadata methodMetadata = classMetadata.getMethodMetadata(originalMethod.name, originalMethod.desc);
         TransactionMetadata transactionMetadata = methodMetadata.getTransactionalMetadata();
@@ -979,6 +1356,13 @@ public final class ClassTransactionalMethodTransformer implements Opcodes {
 
         boolean isConstructor = "<init>".equals(originalMethod.name);
 
+        TransactionElisionAnalyzer.Elision elision = isConstructor
+                ? TransactionElisionAnalyzer.Elision.none
+                : elisionAnalyzer.analyze(classNode.name, originalMethod);
+        if (elision != TransactionElisionAnalyzer.Elision.none) {
+            logger.lessImportant("  transaction elision (%s) for %s.%s", elision, classNode.name, originalMethod.name);
+        }
+
         CloneMap cloneMap = new CloneMap();
 
         //======================================================
@@ -1087,7 +1471,17 @@ public final class ClassTransactionalMethodTransformer implements Opcodes {
                 case INVOKESTATIC:
                     MethodInsnNode donorMethodInsn = (MethodInsnNode) donorInsn;
 
-                    if (isReplacementMethod(donorMethodInsn)) {
+                    if (isElisionMethod(donorMethodInsn)) {
+                        //the fast path returns itself, so the 'if (execute___elided()) return' of the donor is
+                        //dropped. Keeping it would leave a path to the return where the result is not assigned.
+                        skipElisionReturn(it, cloneMap, result.instructions);
+                        if (elision != TransactionElisionAnalyzer.Elision.none) {
+                            int tranlocalVar = var;
+                            var++;
+                            result.instructions.add(createElidedExecution(
+                                    originalMethod, elision, txFactoryFieldNode, resultVariable, tranlocalVar));
+                        }
+                    } else if (isReplacementMethod(donorMethodInsn)) {
                         if (!isStatic(originalMethod)) {
                             //push the this in the stack
                             result.instructions.add(new VarInsnNode(ALOAD, 0));
@@ -1137,8 +1531,13 @@ public final class ClassTransactionalMethodTransformer implements Opcodes {
                     boolean donorIsOwner = donorFieldInsnNode.owner.equals(donorClassNode.name);
 
                     if (donorIsOwner && donorFieldInsnNode.name.equals("transactionFactory")) {
-                        result.instructions.add(new FieldInsnNode(
-                                GETSTATIC, classNode.name, txFactoryFieldNode.name, donorFieldInsnNode.desc));
+                        if (profiledTxFactoryFieldNode != null) {
+                            result.instructions.add(
+                                    loadProfiledTransactionFactory(originalMethod, profiledTxFactoryFieldNode));
+                        } else {
+                            result.instructions.add(new FieldInsnNode(
+                                    GETSTATIC, classNode.name, txFactoryFieldNode.name, donorFieldInsnNode.desc));
+                        }
                     } else {
                         result.instructions.add(donorInsn.clone(cloneMap));
                     }
@@ -1199,6 +1598,132 @@ public final class ClassTransactionalMethodTransformer implements Opcodes {
     }
 
 
+    /**
+     * Skips the branch of the donor that follows the call to execute___elided: the IFEQ and the return it jumps
+     * over. The labels in between are kept, since they can be referenced by the variable table.
+     *
+     * @param it           the iterator over the donor instructions, positioned after the call.
+     * @param cloneMap     the CloneMap used to clone the labels.
+     * @param instructions the instructions to add the kept labels to.
+     */
+    private static void skipElisionReturn(ListIterator<AbstractInsnNode> it, CloneMap cloneMap,
+                                          InsnList instructions) {
+        LabelNode target = null;
+        while (it.hasNext()) {
+            AbstractInsnNode insn = it.next();
+            if (target == null) {
+                if (insn.getOpcode() == IFEQ) {
+                    target = ((JumpInsnNode) insn).label;
+                }
+            } else if (insn == target) {
+                it.previous();
+                return;
+            }
+
+            if (insn instanceof LabelNode) {
+                instructions.add(insn.clone(cloneMap));
+            }
+        }
+
+        throw new RuntimeException("No branch found after the call to execute___elided in the donor method");
+    }
+
+    /**
+     * Creates the fast path for a method whose transaction can be elided. If the method was executed, the fast path
+     * returns the result itself. If it needs to be executed in a transaction, it falls through with an empty stack.
+     * <p/>
+     * The tranlocal variants of the method are called without a transaction; they don't use it because they only
+     * access the fields of 'this' through the tranlocal (see the {@link TransactionElisionAnalyzer}).
+     *
+     * @param originalMethod     the original method.
+     * @param elision            the kind of elision.
+     * @param txFactoryFieldNode the field containing the TransactionFactory of the method.
+     * @param resultVariable     the variable to store the return value in (null if the method is void).
+     * @param tranlocalVar       the index of the local variable to store the tranlocal in.
+     * @return the created instructions.
+     */
+    private InsnList createElidedExecution(MethodNode originalMethod, TransactionElisionAnalyzer.Elision elision,
+                                           FieldNode txFactoryFieldNode, LocalVariableNode resultVariable,
+                                           int tranlocalVar) {
+        boolean readonly = elision == TransactionElisionAnalyzer.Elision.read;
+
+        InsnList insnList = new InsnList();
+        LabelNode noStateLabel = new LabelNode();
+        LabelNode notExecutedLabel = new LabelNode();
+
+        insnList.add(new VarInsnNode(ALOAD, 0));
+        if (readonly) {
+            //the committed tranlocal is used.
+            insnList.add(new MethodInsnNode(
+                    INVOKEINTERFACE,
+                    getInternalName(AlphaTransactionalObject.class),
+                    "___load",
+                    format("()%s", getDescriptor(AlphaTranlocal.class))));
+        } else {
+            insnList.add(new MethodInsnNode(
+                    INVOKESTATIC,
+                    getInternalName(TransactionLogicDonor.class),
+                    "openForElidedWrite",
+                    format("(%s)%s", getDescriptor(AlphaTransactionalObject.class), getDescriptor(AlphaTranlocal.class))));
+        }
+
+        //if there is no committed state, the transaction will deal with it.
+        insnList.add(new InsnNode(DUP));
+        insnList.add(new JumpInsnNode(IFNULL, noStateLabel));
+        insnList.add(new VarInsnNode(ASTORE, tranlocalVar));
+
+        insnList.add(new VarInsnNode(ALOAD, 0));
+        int loadIndex = 1;
+        for (Type argType : getArgumentTypes(originalMethod.desc)) {
+            insnList.add(new VarInsnNode(argType.getOpcode(ILOAD), loadIndex));
+            loadIndex += argType.getSize();
+        }
+        //no transaction
+        insnList.add(new InsnNode(ACONST_NULL));
+        insnList.add(new VarInsnNode(ALOAD, tranlocalVar));
+        insnList.add(new TypeInsnNode(CHECKCAST, tranlocalName));
+        insnList.add(new MethodInsnNode(
+                getInvokeOpcode(originalMethod),
+                classNode.name,
+                toTransactedMethodName(originalMethod.name, readonly),
+                createTranlocalMethodDesc(originalMethod.name, originalMethod.desc)));
+
+        Type returnType = Type.getReturnType(originalMethod.desc);
+        if (!returnType.equals(Type.VOID_TYPE)) {
+            insnList.add(new VarInsnNode(returnType.getOpcode(ISTORE), resultVariable.index));
+        }
+
+        if (!readonly) {
+            insnList.add(new VarInsnNode(ALOAD, tranlocalVar));
+            insnList.add(new FieldInsnNode(
+                    GETSTATIC, classNode.name, txFactoryFieldNode.name, txFactoryFieldNode.desc));
+            insnList.add(new MethodInsnNode(
+                    INVOKESTATIC,
+                    getInternalName(TransactionLogicDonor.class),
+                    "commitElided",
+                    format("(%s%s)Z", getDescriptor(AlphaTranlocal.class), getDescriptor(TransactionFactory.class))));
+            insnList.add(new JumpInsnNode(IFEQ, notExecutedLabel));
+        }
+
+        //the result only is loaded on the path that assigned it.
+        if (returnType.equals(Type.VOID_TYPE)) {
+            insnList.add(new InsnNode(RETURN));
+        } else {
+            insnList.add(new VarInsnNode(returnType.getOpcode(ILOAD), resultVariable.index));
+            insnList.add(new InsnNode(returnType.getOpcode(IRETURN)));
+        }
+
+        insnList.add(noStateLabel);
+        insnList.add(new InsnNode(POP));
+        insnList.add(notExecutedLabel);
+        return insnList;
+    }
+
+    public static boolean isElisionMethod(MethodInsnNode donorMethodInsnNode) {
+        return donorMethodInsnNode.name.equals("execute___elided")
+                && donorMethodInsnNode.owner.equals(getInternalName(TransactionLogicDonor.class));
+    }
+
     private void ensureInterruptibleExceptionCanBeThrown(MethodNode originalMethod) {
         for (String exception : (List<String>) originalMethod.exceptions) {
             if (exception.equals(Type.getInternalName(InterruptedException.class)) ||
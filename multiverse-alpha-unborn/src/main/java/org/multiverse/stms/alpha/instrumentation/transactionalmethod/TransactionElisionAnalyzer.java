@@ -0,0 +1,236 @@
+package org.multiverse.stms.alpha.instrumentation.transactionalmethod;
+
+import org.multiverse.instrumentation.metadata.ClassMetadata;
+import org.multiverse.instrumentation.metadata.FieldMetadata;
+import org.multiverse.instrumentation.metadata.MetadataRepository;
+import org.multiverse.instrumentation.metadata.MethodMetadata;
+import org.multiverse.instrumentation.metadata.TransactionMetadata;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.*;
+import org.objectweb.asm.tree.analysis.Analyzer;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+import org.objectweb.asm.tree.analysis.Frame;
+import org.objectweb.asm.tree.analysis.SourceInterpreter;
+import org.objectweb.asm.tree.analysis.SourceValue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.multiverse.stms.alpha.instrumentation.transactionalmethod.TransactionalMethodUtils.isLoadedFromVar0;
+
+/**
+ * Analyzes if the transaction of a transactional method can be elided when no transaction is running. This is
+ * possible for methods that only access the state of 'this', like getters and a simple increment on a counter:
+ * <ol>
+ * <li>a method that only reads, can be executed on the committed state of 'this' (like the
+ * {@link org.multiverse.stms.alpha.programmatic.AlphaProgrammaticRef#atomicGet()}).</li>
+ * <li>a method that also writes, can be executed on a private copy of the committed state of 'this' that is
+ * committed with a lock and a version check afterwards (like the
+ * {@link org.multiverse.stms.alpha.programmatic.AlphaProgrammaticRef#atomicCompareAndSet(Object, Object)}). If
+ * that fails, the method is executed again in a normal transaction.</li>
+ * </ol>
+ * A method qualifies if:
+ * <ol>
+ * <li>it is a non static transactional method (not a constructor) of a transactional object with object
+ * granular fields</li>
+ * <li>all managed fields it accesses are fields of 'this' (directly loaded from local variable 0, that never
+ * is assigned)</li>
+ * <li>it doesn't write to unmanaged or static fields</li>
+ * <li>it only calls methods of a small set of value classes in java.lang (like Math, String and the boxed
+ * primitives) with primitive or String arguments, and constructors of exceptions. So no transactional methods
+ * and no methods that could access the transaction (like a retry).</li>
+ * <li>it doesn't use synchronization.</li>
+ * </ol>
+ * A method that writes but is explicitly configured as readonly, doesn't qualify (so the normal transaction
+ * reports the problem).
+ *
+ * @author Peter Veentjer
+ */
+public final class TransactionElisionAnalyzer implements Opcodes {
+
+    public enum Elision {
+
+        /**
+         * The transaction can't be elided.
+         */
+        none,
+
+        /**
+         * The method can be executed on the committed state of 'this'.
+         */
+        read,
+
+        /**
+         * The method can be executed on a copy of the committed state of 'this' that is committed afterwards.
+         */
+        update
+    }
+
+    //not every supported ASM version defines this opcode.
+    private final static int INVOKEDYNAMIC = 186;
+
+    private final static Set<String> VALUE_CLASSES = new HashSet<String>(Arrays.asList(
+            "java/lang/String",
+            "java/lang/StringBuilder",
+            "java/lang/Math",
+            "java/lang/StrictMath",
+            "java/lang/Boolean",
+            "java/lang/Byte",
+            "java/lang/Character",
+            "java/lang/Short",
+            "java/lang/Integer",
+            "java/lang/Long",
+            "java/lang/Float",
+            "java/lang/Double"));
+
+    private final MetadataRepository metadataRepository;
+    private final ClassLoader classLoader;
+
+    public TransactionElisionAnalyzer(MetadataRepository metadataRepository, ClassLoader classLoader) {
+        if (metadataRepository == null) {
+            throw new NullPointerException();
+        }
+        this.metadataRepository = metadataRepository;
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * Analyzes a transactional method.
+     *
+     * @param className  the name of the class containing the method.
+     * @param methodNode the original MethodNode of the method.
+     * @return the Elision that can be used for the method.
+     */
+    public Elision analyze(String className, MethodNode methodNode) {
+        ClassMetadata classMetadata = metadataRepository.loadClassMetadata(classLoader, className);
+        MethodMetadata methodMetadata = classMetadata.getMethodMetadata(methodNode.name, methodNode.desc);
+
+        if (methodMetadata == null
+                || !methodMetadata.isTransactional()
+                || methodMetadata.isStatic()
+                || methodMetadata.isAbstract()
+                || methodMetadata.isConstructor()
+                || !classMetadata.isTransactionalObjectWithObjectGranularFields()) {
+            return Elision.none;
+        }
+
+        Frame[] frames;
+        try {
+            frames = new Analyzer(new SourceInterpreter()).analyze(className, methodNode);
+        } catch (AnalyzerException e) {
+            return Elision.none;
+        }
+
+        boolean writes = false;
+        for (int k = 0; k < methodNode.instructions.size(); k++) {
+            AbstractInsnNode insn = methodNode.instructions.get(k);
+            switch (insn.getOpcode()) {
+                case GETFIELD:
+                case PUTFIELD: {
+                    FieldInsnNode fieldInsn = (FieldInsnNode) insn;
+                    FieldMetadata field = metadataRepository.loadClassMetadata(classLoader, fieldInsn.owner)
+                            .getFieldMetadata(fieldInsn.name);
+
+                    if (field == null) {
+                        return Elision.none;
+                    }
+
+                    if (!field.isManagedField()) {
+                        if (insn.getOpcode() == PUTFIELD) {
+                            //a write that isn't undone if the method is executed again.
+                            return Elision.none;
+                        }
+                    } else if (field.hasFieldGranularity()) {
+                        return Elision.none;
+                    } else if (!isThisReceiver(methodNode, frames, k)) {
+                        return Elision.none;
+                    } else if (insn.getOpcode() == PUTFIELD) {
+                        writes = true;
+                    }
+                }
+                break;
+                case ASTORE:
+                    if (((VarInsnNode) insn).var == 0) {
+                        return Elision.none;
+                    }
+                    break;
+                case PUTSTATIC:
+                case MONITORENTER:
+                case MONITOREXIT:
+                case INVOKEDYNAMIC:
+                    return Elision.none;
+                case NEW:
+                    if (!isAllowedClass(((TypeInsnNode) insn).desc)) {
+                        return Elision.none;
+                    }
+                    break;
+                case INVOKEVIRTUAL:
+                case INVOKESPECIAL:
+                case INVOKESTATIC:
+                case INVOKEINTERFACE:
+                    if (!isAllowedCall((MethodInsnNode) insn)) {
+                        return Elision.none;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        if (!writes) {
+            return Elision.read;
+        }
+
+        TransactionMetadata transactionMetadata = methodMetadata.getTransactionalMetadata();
+        if (Boolean.TRUE.equals(transactionMetadata.readOnly)) {
+            return Elision.none;
+        }
+
+        return Elision.update;
+    }
+
+    private static boolean isThisReceiver(MethodNode methodNode, Frame[] frames, int fieldInsnIndex) {
+        Frame frame = frames[fieldInsnIndex];
+        if (frame == null) {
+            //unreachable code
+            return true;
+        }
+
+        //the frame contains 1 slot for every value, also for category 2 values.
+        int stackSlot = frame.getStackSize()
+                - (methodNode.instructions.get(fieldInsnIndex).getOpcode() == PUTFIELD ? 2 : 1);
+        SourceValue value = (SourceValue) frame.getStack(stackSlot);
+        return isLoadedFromVar0(methodNode, frames, value);
+    }
+
+    static boolean isAllowedCall(MethodInsnNode insn) {
+        if (!isAllowedClass(insn.owner)) {
+            return false;
+        }
+
+        for (Type argType : Type.getArgumentTypes(insn.desc)) {
+            if (argType.getSort() == Type.OBJECT) {
+                if (!argType.getInternalName().equals("java/lang/String")) {
+                    return false;
+                }
+            } else if (argType.getSort() == Type.ARRAY) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean isAllowedClass(String className) {
+        if (VALUE_CLASSES.contains(className)) {
+            return true;
+        }
+
+        //the exceptions of java.lang can be created (for example when an argument is checked).
+        return className.startsWith("java/lang/")
+                && className.indexOf('/', "java/lang/".length()) == -1
+                && (className.endsWith("Exception") || className.endsWith("Error"));
+    }
+}
@@ -1,12 +1,14 @@
 package org.multiverse.stms.alpha.instrumentation.transactionalmethod;
 
-import org.multiverse.api.TransactionFactory;
-import org.multiverse.api.TransactionStatus;
+import org.multiverse.api.*;
 import org.multiverse.api.backoff.BackoffPolicy;
 import org.multiverse.api.exceptions.*;
 import org.multiverse.api.latches.CheapLatch;
 import org.multiverse.api.latches.Latch;
 import org.multiverse.api.latches.StandardLatch;
+import org.multiverse.stms.alpha.AlphaStm;
+import org.multiverse.stms.alpha.AlphaTranlocal;
+import org.multiverse.stms.alpha.AlphaTransactionalObject;
 import org.multiverse.stms.alpha.transactions.AlphaTransaction;
 
 import static java.lang.String.format;
@@ -29,6 +31,18 @@ public class TransactionLogicDonor {
     public static void execute___up() {
     }
 
+    /**
+     * Marks the place of the fast path of a transactional method that only accesses the state of 'this'. The call
+     * and the return following it are replaced by the fast path, which returns itself if the method was executed and
+     * falls through otherwise. If the transaction can't be elided, they are removed. See
+     * {@link TransactionElisionAnalyzer}.
+     *
+     * @return true if the method was executed, false if it needs to be executed in a transaction.
+     */
+    public static boolean execute___elided() {
+        return false;
+    }
+
 
     // =================== for constructors ====================
 
@@ -112,6 +126,10 @@ public class TransactionLogicDonor {
             return;
         }
 
+        if (execute___elided()) {
+            return;
+        }
+
         tx = createTransaction(tx, transactionFactory);
 
         setThreadLocalTransaction(tx);
@@ -216,6 +234,50 @@ public class TransactionLogicDonor {
         return tx;
     }
 
+    // ===================== elided transactions ===========================
+
+    /**
+     * Opens the state of a transactional object for an update without a transaction.
+     *
+     * @param txObject the transactional object to open.
+     * @return the opened tranlocal, or null if the transactional object has no committed state.
+     */
+    public static AlphaTranlocal openForElidedWrite(AlphaTransactionalObject txObject) {
+        AlphaTranlocal committed = txObject.___load();
+        return committed == null ? null : committed.openForWrite();
+    }
+
+    /**
+     * Commits a tranlocal opened by {@link #openForElidedWrite(AlphaTransactionalObject)}, in the same way
+     * as the atomic operations on the programmatic references.
+     *
+     * @param update             the tranlocal to commit.
+     * @param transactionFactory the TransactionFactory of the transactional method (used to find the stm).
+     * @return true if the commit was a success, false if the lock could not be acquired or another
+     *         transaction committed a change in the meanwhile.
+     */
+    public static boolean commitElided(AlphaTranlocal update, TransactionFactory transactionFactory) {
+        if (!update.executeDirtyCheck()) {
+            return true;
+        }
+
+        AlphaStm stm = (AlphaStm) transactionFactory.getStm();
+        Transaction lockOwner = stm.getAtomicLockOwner();
+        AlphaTransactionalObject txObject = update.getTransactionalObject();
+        if (!txObject.___tryLock(lockOwner)) {
+            return false;
+        }
+
+        if (txObject.___load() != update.getOrigin()) {
+            txObject.___releaseLock(lockOwner);
+            return false;
+        }
+
+        long writeVersion = stm.getClock().tick();
+        stm.getCommitStream().storeAtomicUpdate(txObject, update, writeVersion);
+        return true;
+    }
+
     // ===================== support methods ===========================
 
     public static boolean isActiveTransaction(AlphaTransaction t) {
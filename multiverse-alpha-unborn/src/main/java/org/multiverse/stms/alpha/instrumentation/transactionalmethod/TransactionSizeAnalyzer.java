@@ -0,0 +1,174 @@
+package org.multiverse.stms.alpha.instrumentation.transactionalmethod;
+
+import org.multiverse.instrumentation.metadata.ClassMetadata;
+import org.multiverse.instrumentation.metadata.FieldMetadata;
+import org.multiverse.instrumentation.metadata.MetadataRepository;
+import org.multiverse.instrumentation.metadata.MethodMetadata;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.*;
+import org.objectweb.asm.tree.analysis.Analyzer;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+import org.objectweb.asm.tree.analysis.Frame;
+import org.objectweb.asm.tree.analysis.SourceInterpreter;
+import org.objectweb.asm.tree.analysis.SourceValue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.multiverse.stms.alpha.instrumentation.transactionalmethod.TransactionalMethodUtils.findSources;
+
+/**
+ * Determines an upper bound for the number of transactional objects a transactional method accesses, so the
+ * TransactionFactory of the method can start with the right transaction type (mono, array or map) instead of
+ * relying on the speculative size failures (see the
+ * {@link org.multiverse.stms.alpha.transactions.SpeculativeConfiguration}).
+ * <p/>
+ * A bound only can be determined if:
+ * <ol>
+ * <li>all managed fields (with object granularity) are accessed on 'this' or a parameter, that never is
+ * reassigned. Every local variable used like that, counts as one transactional object.</li>
+ * <li>it only calls methods of a small set of value classes in java.lang (see the
+ * {@link TransactionElisionAnalyzer}), constructors of exceptions, the constructor of Object and the
+ * {@link org.multiverse.api.ThreadLocalTransaction}. So no other transactional methods that could access other
+ * transactional objects.</li>
+ * </ol>
+ * For other methods the speculative behavior is used.
+ *
+ * @author Peter Veentjer
+ */
+public final class TransactionSizeAnalyzer implements Opcodes {
+
+    public final static int UNKNOWN = -1;
+
+    //not every supported ASM version defines this opcode.
+    private final static int INVOKEDYNAMIC = 186;
+
+    private final MetadataRepository metadataRepository;
+    private final ClassLoader classLoader;
+
+    public TransactionSizeAnalyzer(MetadataRepository metadataRepository, ClassLoader classLoader) {
+        if (metadataRepository == null) {
+            throw new NullPointerException();
+        }
+        this.metadataRepository = metadataRepository;
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * Analyzes a transactional method.
+     *
+     * @param className  the name of the class containing the method.
+     * @param methodNode the original MethodNode of the method.
+     * @return the maximum number of transactional objects accessed, or UNKNOWN if it can't be determined.
+     */
+    public int analyze(String className, MethodNode methodNode) {
+        ClassMetadata classMetadata = metadataRepository.loadClassMetadata(classLoader, className);
+        MethodMetadata methodMetadata = classMetadata.getMethodMetadata(methodNode.name, methodNode.desc);
+
+        if (methodMetadata == null || !methodMetadata.isTransactional() || methodMetadata.isAbstract()) {
+            return UNKNOWN;
+        }
+
+        Frame[] frames;
+        try {
+            frames = new Analyzer(new SourceInterpreter()).analyze(className, methodNode);
+        } catch (AnalyzerException e) {
+            return UNKNOWN;
+        }
+
+        Set<Integer> storedVars = findStoredVars(methodNode);
+
+        //the local variables containing the accessed transactional objects.
+        Set<Integer> accessedVars = new HashSet<Integer>();
+        if (methodMetadata.isConstructor()) {
+            //the object being constructed is attached to the transaction.
+            accessedVars.add(0);
+        }
+
+        for (int k = 0; k < methodNode.instructions.size(); k++) {
+            AbstractInsnNode insn = methodNode.instructions.get(k);
+            switch (insn.getOpcode()) {
+                case GETFIELD:
+                case PUTFIELD: {
+                    FieldInsnNode fieldInsn = (FieldInsnNode) insn;
+                    FieldMetadata field = metadataRepository.loadClassMetadata(classLoader, fieldInsn.owner)
+                            .getFieldMetadata(fieldInsn.name);
+
+                    if (field == null || field.hasFieldGranularity()) {
+                        return UNKNOWN;
+                    }
+
+                    if (field.isManagedField() && frames[k] != null) {
+                        if (!addReceiverVars(methodNode, frames, k, storedVars, accessedVars)) {
+                            return UNKNOWN;
+                        }
+                    }
+                }
+                break;
+                case INVOKEVIRTUAL:
+                case INVOKESPECIAL:
+                case INVOKESTATIC:
+                case INVOKEINTERFACE:
+                    if (!isAllowedCall((MethodInsnNode) insn)) {
+                        return UNKNOWN;
+                    }
+                    break;
+                case INVOKEDYNAMIC:
+                    //the target of the call is unknown.
+                    return UNKNOWN;
+                default:
+                    break;
+            }
+        }
+
+        return accessedVars.size();
+    }
+
+    private static boolean addReceiverVars(MethodNode methodNode, Frame[] frames, int fieldInsnIndex,
+                                           Set<Integer> storedVars, Set<Integer> accessedVars) {
+        Frame frame = frames[fieldInsnIndex];
+        //the frame contains 1 slot for every value, also for category 2 values.
+        int stackSlot = frame.getStackSize()
+                - (methodNode.instructions.get(fieldInsnIndex).getOpcode() == PUTFIELD ? 2 : 1);
+        SourceValue value = (SourceValue) frame.getStack(stackSlot);
+
+        for (AbstractInsnNode sourceInsn : findSources(methodNode, frames, value)) {
+            if (sourceInsn.getOpcode() != ALOAD) {
+                return false;
+            }
+
+            int var = ((VarInsnNode) sourceInsn).var;
+            if (storedVars.contains(var)) {
+                //the variable could contain a different object every time it is accessed.
+                return false;
+            }
+
+            accessedVars.add(var);
+        }
+
+        return true;
+    }
+
+    private static Set<Integer> findStoredVars(MethodNode methodNode) {
+        Set<Integer> result = new HashSet<Integer>();
+        for (int k = 0; k < methodNode.instructions.size(); k++) {
+            AbstractInsnNode insn = methodNode.instructions.get(k);
+            if (insn.getOpcode() == ASTORE) {
+                result.add(((VarInsnNode) insn).var);
+            }
+        }
+        return result;
+    }
+
+    private static boolean isAllowedCall(MethodInsnNode insn) {
+        if (insn.owner.equals("org/multiverse/api/ThreadLocalTransaction")) {
+            return true;
+        }
+
+        if (insn.getOpcode() == INVOKESPECIAL && insn.owner.equals("java/lang/Object") && insn.name.equals("<init>")) {
+            return true;
+        }
+
+        return TransactionElisionAnalyzer.isAllowedCall(insn);
+    }
+}
@@ -49,6 +49,7 @@ public final class TransactionalMethodInstrumentationPhase extends AbstractInstr
                         donor,
                         environment.getMetadataRepository(),
                         environment.optimize(),
+                        environment.profilingEnabled(),
                         environment.getLog());
                 result = transformer.transform();
             }
@@ -1,5 +1,18 @@
 package org.multiverse.stms.alpha.instrumentation.transactionalmethod;
 
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.VarInsnNode;
+import org.objectweb.asm.tree.analysis.Frame;
+import org.objectweb.asm.tree.analysis.SourceValue;
+
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Set;
+
+import static org.objectweb.asm.Opcodes.ALOAD;
+import static org.objectweb.asm.Opcodes.DUP;
+
 /**
  * @author Peter Veentjer
  */
@@ -12,6 +25,67 @@ public final class TransactionalMethodUtils {
         return originalMethodName + (readonly ? "___ro" : "___up");
     }
 
+    /**
+     * Finds the instructions that could have produced a value on the stack. DUP instructions are looked through,
+     * so for a 'this.value++' the ALOAD of 'this' is found instead of the DUP.
+     *
+     * @param methodNode the MethodNode the frames belong to.
+     * @param frames     the frames of the method (created using a SourceInterpreter).
+     * @param value      the value to find the sources for.
+     * @return the found sources.
+     */
+    public static Set<AbstractInsnNode> findSources(MethodNode methodNode, Frame[] frames, SourceValue value) {
+        Set<AbstractInsnNode> result = new HashSet<AbstractInsnNode>();
+        Set<AbstractInsnNode> visited = new HashSet<AbstractInsnNode>();
+        LinkedList<AbstractInsnNode> todo = new LinkedList<AbstractInsnNode>();
+        for (Object insn : value.insns) {
+            todo.add((AbstractInsnNode) insn);
+        }
+
+        while (!todo.isEmpty()) {
+            AbstractInsnNode insn = todo.removeFirst();
+            if (!visited.add(insn)) {
+                continue;
+            }
+
+            if (insn.getOpcode() == DUP) {
+                Frame frame = frames[methodNode.instructions.indexOf(insn)];
+                SourceValue duplicated = (SourceValue) frame.getStack(frame.getStackSize() - 1);
+                for (Object source : duplicated.insns) {
+                    todo.add((AbstractInsnNode) source);
+                }
+            } else {
+                result.add(insn);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Checks if a value on the stack always is loaded from local variable 0 (so it is 'this' in a non static
+     * method).
+     *
+     * @param methodNode the MethodNode the frames belong to.
+     * @param frames     the frames of the method (created using a SourceInterpreter).
+     * @param value      the value to check.
+     * @return true if the value always is loaded from local variable 0.
+     */
+    public static boolean isLoadedFromVar0(MethodNode methodNode, Frame[] frames, SourceValue value) {
+        Set<AbstractInsnNode> sources = findSources(methodNode, frames, value);
+        if (sources.isEmpty()) {
+            return false;
+        }
+
+        for (AbstractInsnNode source : sources) {
+            if (source.getOpcode() != ALOAD || ((VarInsnNode) source).var != 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
     private TransactionalMethodUtils() {
     }
 }
@@ -1,7 +1,7 @@
 package org.multiverse.stms.alpha.programmatic;
 
-import org.multiverse.api.Listeners;
 import org.multiverse.api.Transaction;
+import org.multiverse.api.exceptions.NoTransactionFoundException;
 import org.multiverse.api.exceptions.TooManyRetriesException;
 import org.multiverse.api.programmatic.ProgrammaticLongRef;
 import org.multiverse.stms.alpha.AlphaStm;
@@ -161,11 +161,7 @@ public final class AlphaProgrammaticLongRef extends BasicMixin implements Progra
         newTranlocal.value = newValue;
 
         newTranlocal.prepareForCommit(writeVersion);
-        Listeners listeners = ___storeUpdate(newTranlocal, writeVersion, true);
-
-        if (listeners != null) {
-            listeners.openAll();
-        }
+        stm.getCommitStream().storeAtomicUpdate(this, newTranlocal, writeVersion);
         return committed.value;
     }
 
@@ -247,11 +243,7 @@ public final class AlphaProgrammaticLongRef extends BasicMixin implements Progra
         long writeVersion = stm.getClock().tick();
         updateTranlocal.value = currentTranlocal.value + amount;
         updateTranlocal.prepareForCommit(writeVersion);
-        Listeners listeners = ___storeUpdate(updateTranlocal, writeVersion, true);
-
-        if (listeners != null) {
-            listeners.openAll();
-        }
+        stm.getCommitStream().storeAtomicUpdate(this, updateTranlocal, writeVersion);
     }
 
     private void lock(Transaction lockOwner) {
@@ -304,12 +296,32 @@ public final class AlphaProgrammaticLongRef extends BasicMixin implements Progra
         long writeVersion = stm.getClock().tick();
         updateTranlocal.value = update;
         updateTranlocal.prepareForCommit(writeVersion);
-        Listeners listeners = ___storeUpdate(updateTranlocal, writeVersion, true);
+        stm.getCommitStream().storeAtomicUpdate(this, updateTranlocal, writeVersion);
+        return true;
+    }
 
-        if (listeners != null) {
-            listeners.openAll();
+    // ======================== ensure ============================================
+
+    @Override
+    public void ensure() {
+        Transaction tx = getThreadLocalTransaction();
+
+        if (tx == null || tx.getStatus().isDead()) {
+            throw new NoTransactionFoundException(
+                    "Can't ensure AlphaProgrammaticLongRef because no active transaction is found");
         }
-        return true;
+
+        ensure(tx);
+    }
+
+    @Override
+    public void ensure(Transaction tx) {
+        if (tx == null) {
+            throw new NullPointerException();
+        }
+
+        AlphaTransaction alphaTx = (AlphaTransaction) tx;
+        alphaTx.openForEnsure(this);
     }
 
     // ======================== mod ============================================
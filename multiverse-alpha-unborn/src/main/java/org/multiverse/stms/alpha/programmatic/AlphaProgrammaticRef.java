@@ -1,8 +1,8 @@
 package org.multiverse.stms.alpha.programmatic;
 
-import org.multiverse.api.Listeners;
 import org.multiverse.api.Transaction;
 import org.multiverse.api.TransactionFactory;
+import org.multiverse.api.exceptions.NoTransactionFoundException;
 import org.multiverse.api.exceptions.TooManyRetriesException;
 import org.multiverse.api.exceptions.UncommittedReadConflict;
 import org.multiverse.api.programmatic.ProgrammaticRef;
@@ -304,10 +304,7 @@ public final class AlphaProgrammaticRef<E>
         AlphaProgrammaticRefTranlocal<E> oldTranlocal = (AlphaProgrammaticRefTranlocal<E>) ___load();
 
         long writeVersion = stm.getClock().tick();
-        Listeners listeners = ___storeUpdate(newTranlocal, writeVersion, true);
-        if (listeners != null) {
-            listeners.openAll();
-        }
+        stm.getCommitStream().storeAtomicUpdate(this, newTranlocal, writeVersion);
         return oldTranlocal.value;
     }
 
@@ -357,13 +354,34 @@ public final class AlphaProgrammaticRef<E>
         }
 
         long writeVersion = stm.getClock().tick();
-        Listeners listeners = ___storeUpdate(updateTranlocal, writeVersion, true);
-        if (listeners != null) {
-            listeners.openAll();
-        }
+        stm.getCommitStream().storeAtomicUpdate(this, updateTranlocal, writeVersion);
         return true;
     }
 
+    // ======================= ensure =============================================
+
+    @Override
+    public void ensure() {
+        Transaction tx = getThreadLocalTransaction();
+
+        if (tx == null || tx.getStatus().isDead()) {
+            throw new NoTransactionFoundException(
+                    "Can't ensure AlphaProgrammaticRef because no active transaction is found");
+        }
+
+        ensure(tx);
+    }
+
+    @Override
+    public void ensure(Transaction tx) {
+        if (tx == null) {
+            throw new NullPointerException();
+        }
+
+        AlphaTransaction alphaTx = (AlphaTransaction) tx;
+        alphaTx.openForEnsure(this);
+    }
+
     // ======================= toString =============================================
 
     @Override
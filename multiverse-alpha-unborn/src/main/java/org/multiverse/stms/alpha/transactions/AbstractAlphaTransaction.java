@@ -150,6 +150,58 @@ public abstract class AbstractAlphaTransaction<C extends AbstractAlphaTransactio
 
     protected abstract AlphaTranlocal doOpenForWrite(AlphaTransactionalObject txObject) ;
 
+    @Override
+    public final AlphaTranlocal openForEnsure(AlphaTransactionalObject transactionalObject) {
+        if (___TRACING_ENABLED) {
+            if (config.traceLevel.isLogableFrom(TraceLevel.fine)) {
+                System.out.println(config.familyName + " openForEnsure " + toTxObjectString(transactionalObject));
+            }
+        }
+
+        switch (getStatus()) {
+            case New:
+                if (transactionalObject == null) {
+                    String msg = format(
+                            "Can't open for ensure a null transactional object on transaction '%s' ",
+                            config.getFamilyName());
+                    throw new NullPointerException(msg);
+                }
+                start();
+                //fall through
+            case Active:
+                if (transactionalObject == null) {
+                    String msg = format(
+                            "Can't open for ensure a null transactional object on transaction '%s' ",
+                            config.getFamilyName());
+                    throw new NullPointerException(msg);
+                }
+
+                return doOpenForEnsure(transactionalObject);
+            case Prepared:
+                String preparedMsg = format(
+                        "Can't open for ensure transactional object '%s' "
+                                + "because transaction '%s' already is prepared to commit.",
+                        toTxObjectString(transactionalObject), config.getFamilyName());
+                throw new PreparedTransactionException(preparedMsg);
+            case Committed:
+                String committedMsg = format(
+                        "Can't open for ensure transactional object '%s' "
+                                + "because transaction '%s' already is committed.",
+                        toTxObjectString(transactionalObject), config.getFamilyName());
+                throw new DeadTransactionException(committedMsg);
+            case Aborted:
+                String abortedMsg = format(
+                        "Can't open for ensure transactional object '%s' "
+                                + "because transaction '%s' already is aborted.",
+                        toTxObjectString(transactionalObject), config.getFamilyName());
+                throw new DeadTransactionException(abortedMsg);
+            default:
+                throw new IllegalStateException("unhandled transactionStatus: " + getStatus());
+        }
+    }
+
+    protected abstract AlphaTranlocal doOpenForEnsure(AlphaTransactionalObject txObject);
+
     @Override
     public final AlphaTranlocal openForConstruction(AlphaTransactionalObject transactionalObject) {
         if (___TRACING_ENABLED) {
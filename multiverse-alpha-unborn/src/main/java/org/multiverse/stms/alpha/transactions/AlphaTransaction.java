@@ -64,6 +64,40 @@ public interface AlphaTransaction extends Transaction {
      */
     AlphaTranlocal openForWrite(AlphaTransactionalObject transactionalObject);
 
+    /**
+     * Opens the transactional object for writing purposes and pessimistically locks it for the remainder
+     * of the transaction. This is useful for known hot spots (like a sequence number or the head of a
+     * queue) where optimistic concurrency control would only lead to a lot of failed commits.
+     * <p/>
+     * The lock is acquired using the {@link org.multiverse.api.commitlock.CommitLock} of the transactional
+     * object, so other transactions that want to commit a change on the transactional object will fail to
+     * acquire the commit lock until this transaction commits or aborts. Because the lock already is owned,
+     * the transactional object doesn't need to be locked or validated when this transaction commits.
+     * <p/>
+     * The lock also is seen by readers: another transaction that needs to read the transactional object (and
+     * started after its last commit) fails with a {@link org.multiverse.api.exceptions.LockNotFreeReadConflict}
+     * until this transaction commits or aborts. So a transactional object should only be ensured by short
+     * transactions.
+     * <p/>
+     * It depends on the transaction if this operations is supported.
+     * <p/>
+     * If the transactional object already was ensured by this transaction, the same tranlocal is returned.
+     * <p/>
+     * If the transactional object already was opened for construction, that tranlocal is returned without
+     * locking since no other transaction is able to see it.
+     *
+     * @param transactionalObject the transactional object to open and lock.
+     * @return the opened tranlocal.
+     * @throws NullPointerException        if transactional object is null.
+     * @throws org.multiverse.api.exceptions.WriteConflict
+     *                                     if the lock could not be acquired, or if a newer version of the
+     *                                     transactional object already has been committed.
+     * @throws org.multiverse.api.exceptions.ControlFlowError
+     *
+     * @throws IllegalThreadStateException if the transaction isn't active.
+     */
+    AlphaTranlocal openForEnsure(AlphaTransactionalObject transactionalObject);
+
     /**
      * Opens the transactional object for a commuting operation.
      * <p/>
@@ -89,6 +89,28 @@ public final class SpeculativeConfiguration {
         }
     }
 
+    /**
+     * Creates a SpeculativeConfiguration with the same settings, but that starts with the given optimal size
+     * instead of 1. So transactions that are known to access multiple transactional objects, don't need to fail
+     * before the right transaction type is selected.
+     *
+     * @param optimalSize the optimal size to start with.
+     * @return the created SpeculativeConfiguration.
+     * @throws IllegalArgumentException if optimalSize smaller than 1.
+     */
+    public SpeculativeConfiguration withOptimalSize(int optimalSize) {
+        if (optimalSize < 1) {
+            throw new IllegalArgumentException(
+                    format("optimalSize can't be smaller than 1, optimalSize was %s", optimalSize));
+        }
+
+        SpeculativeConfiguration config = new SpeculativeConfiguration(
+                isSpeculativeReadonlyEnabled, isSpeculativeNoReadTrackingEnabled, isSpeculativeSizeEnabled,
+                maximumArraySize);
+        config.setOptimalSize(optimalSize);
+        return config;
+    }
+
     public int getMaximumArraySize() {
         return maximumArraySize;
     }
@@ -23,7 +23,7 @@ public abstract class AbstractReadonlyAlphaTransaction
     protected abstract void attach(AlphaTranlocal tranlocal);
 
     @Override
-    protected final AlphaTranlocal doOpenForRead(AlphaTransactionalObject transactionalObject) {
+    protected AlphaTranlocal doOpenForRead(AlphaTransactionalObject transactionalObject) {
         AlphaTranlocal tranlocal = findAttached(transactionalObject);
         if (tranlocal == null) {
             tranlocal = load(transactionalObject);
@@ -52,6 +52,12 @@ public abstract class AbstractReadonlyAlphaTransaction
         return doOpenForWrite(transactionalObject);
     }
 
+    @Override
+    protected AlphaTranlocal doOpenForEnsure(AlphaTransactionalObject transactionalObject) {
+        //forward it to the write
+        return doOpenForWrite(transactionalObject);
+    }
+
     @Override
     protected final AlphaTranlocal doOpenForWrite(AlphaTransactionalObject transactionalObject) {
         SpeculativeConfiguration speculativeConfig = config.speculativeConfiguration;
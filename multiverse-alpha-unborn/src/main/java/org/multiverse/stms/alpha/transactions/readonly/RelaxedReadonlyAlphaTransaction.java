@@ -0,0 +1,38 @@
+package org.multiverse.stms.alpha.transactions.readonly;
+
+import org.multiverse.stms.alpha.AlphaTranlocal;
+import org.multiverse.stms.alpha.AlphaTransactionalObject;
+
+/**
+ * A readonly {@link org.multiverse.stms.alpha.transactions.AlphaTransaction} implementation that reads the most
+ * recently committed {@link AlphaTranlocal} of each transactional object directly.
+ * <p/>
+ * Unlike the {@link NonTrackingReadonlyAlphaTransaction} it doesn't check the version of the tranlocals it loads,
+ * so it doesn't need to spin on locked transactional objects and is never aborted because of a read conflict. The
+ * price is that the reads are not consistent with each other; each read could see the state of a different
+ * commit. This makes it a good fit for monitoring or reporting queries that read a lot of transactional objects
+ * and don't need a perfectly consistent or up to date view.
+ * <p/>
+ * It is a NonTrackingReadonlyAlphaTransaction that only replaces the way a tranlocal is loaded, so just like it
+ * nothing is attached and the retry functionality is not available because the transaction doesn't know which
+ * objects were loaded.
+ *
+ * @author Peter Veentjer.
+ */
+public final class RelaxedReadonlyAlphaTransaction extends NonTrackingReadonlyAlphaTransaction {
+
+    public RelaxedReadonlyAlphaTransaction(ReadonlyConfiguration config) {
+        super(config);
+    }
+
+    @Override
+    protected AlphaTranlocal doOpenForRead(AlphaTransactionalObject transactionalObject) {
+        AlphaTranlocal tranlocal = transactionalObject.___load();
+
+        if (tranlocal == null) {
+            throw createUncommittedException(transactionalObject);
+        }
+
+        return tranlocal;
+    }
+}
@@ -3,16 +3,23 @@ package org.multiverse.stms.alpha.transactions.update;
 import org.multiverse.api.Listeners;
 import org.multiverse.api.TransactionStatus;
 import org.multiverse.api.commitlock.CommitLockFilter;
+import org.multiverse.api.commitlock.PassAllCommitLockFilter;
 import org.multiverse.api.exceptions.LockNotFreeWriteConflict;
 import org.multiverse.api.exceptions.OptimisticLockFailedWriteConflict;
 import org.multiverse.api.exceptions.UncommittedReadConflict;
 import org.multiverse.api.exceptions.WriteSkewConflict;
 import org.multiverse.stms.AbstractTransactionSnapshot;
+import org.multiverse.stms.alpha.AlphaChange;
+import org.multiverse.stms.alpha.AlphaCommit;
+import org.multiverse.stms.alpha.AlphaCommitStream;
 import org.multiverse.stms.alpha.AlphaTranlocal;
 import org.multiverse.stms.alpha.AlphaTransactionalObject;
 import org.multiverse.stms.alpha.UncommittedFilter;
 import org.multiverse.stms.alpha.transactions.AbstractAlphaTransaction;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static java.lang.String.format;
 import static org.multiverse.stms.alpha.AlphaStmUtils.toTxObjectString;
 
@@ -27,6 +34,9 @@ public abstract class AbstractUpdateAlphaTransaction
 
     private long writeVersion;
 
+    //only set while the changes are made permanent and there are subscribers on the commit stream.
+    private List<AlphaChange> changes;
+
     //todo: for the time being
     protected UpdateTransactionStatus updateTransactionStatus = UpdateTransactionStatus.nowrites;
 
@@ -135,6 +145,33 @@ public abstract class AbstractUpdateAlphaTransaction
         return opened;
     }
 
+    // ======================= open for ensure =============================
+
+    @Override
+    protected final AlphaTranlocal doOpenForEnsure(AlphaTransactionalObject transactionalObject) {
+        AlphaTranlocal opened = doOpenForWrite(transactionalObject);
+
+        if (opened.isEnsured() || opened.getOrigin() == null) {
+            //it already is locked by this transaction, or it is a fresh object that
+            //can't be seen by other transactions.
+            return opened;
+        }
+
+        if (!config.commitLockPolicy.tryAcquire(opened, PassAllCommitLockFilter.INSTANCE, this)) {
+            throw createLockNotFreeEnsureConflict(transactionalObject);
+        }
+
+        //now that the lock is acquired, no other transaction is able to commit a change. But it could be
+        //that a change was committed after the origin was loaded.
+        if (transactionalObject.___load() != opened.getOrigin()) {
+            transactionalObject.___releaseLock(this);
+            throw createOptimisticLockFailedWriteConflict();
+        }
+
+        opened.___ensured = true;
+        return opened;
+    }
+
     // ======================= open for commuting write =============================
 
     @Override
@@ -326,6 +363,11 @@ public abstract class AbstractUpdateAlphaTransaction
             return false;
         }
 
+        if (tranlocal.isEnsured()) {
+            //nobody was able to commit a change since it was locked.
+            return false;
+        }
+
         return tranlocal.hasWriteConflict();
     }
 
@@ -342,6 +384,11 @@ public abstract class AbstractUpdateAlphaTransaction
             return false;
         }
 
+        if (attached.isEnsured()) {
+            //nobody was able to commit a change since it was locked.
+            return false;
+        }
+
         return attached.hasReadConflict(this);
     }
 
@@ -370,6 +417,8 @@ public abstract class AbstractUpdateAlphaTransaction
             release = false;
         } else if (tranlocal.isCommitted()) {
             release = false;
+        } else if (tranlocal.isEnsured()) {
+            release = true;
         } else if (config.dirtyCheckEnabled && !tranlocal.getPrecalculatedIsDirty()) {
             release = false;
         }
@@ -445,9 +494,18 @@ public abstract class AbstractUpdateAlphaTransaction
         }
 
         if (!store) {
+            if (tranlocal.isEnsured()) {
+                //the lock was acquired when the transactional object was ensured, and since nothing is
+                //written, it isn't released by the store.
+                txObject.___releaseLock(this);
+            }
             return null;
         }
 
+        if (changes != null) {
+            changes.add(new AlphaChange(txObject, origin, tranlocal));
+        }
+
         if (origin == null) {
             txObject.___storeInitial(tranlocal, writeVersion);
             return null;
@@ -458,18 +516,40 @@ public abstract class AbstractUpdateAlphaTransaction
 
     @Override
     protected void doAbortPrepared() {
+        //the status already is aborted when this method is called, so it also is called for an active
+        //transaction. That one only owns the locks of the ensured transactional objects.
         doReleaseWriteLocksForFailure();
     }
 
     @Override
     protected void makeChangesPermanent() {
-        Listeners[] listeners = makeChangesPermanent(writeVersion);
+        AlphaCommitStream commitStream = config.commitStream;
+        boolean publish = commitStream != null && commitStream.hasSubscribers();
+        if (publish) {
+            changes = new ArrayList<AlphaChange>();
+        }
+
+        Listeners[] listeners;
+        List<AlphaChange> publishedChanges;
+        try {
+            listeners = makeChangesPermanent(writeVersion);
+        } finally {
+            publishedChanges = changes;
+            changes = null;
+        }
 
         if (!config.quickReleaseLocksEnabled) {
             doReleaseWriteLocksForSuccess(writeVersion);
         }
 
+        //the retry waiters are notified before the publish, because the publish can block on a full commit stream.
         Listeners.openAll(listeners);
+
+        //the commit is published after the locks are released, so other transactions don't need to wait for it.
+        if (publish && !publishedChanges.isEmpty()) {
+            AlphaChange[] changeArray = publishedChanges.toArray(new AlphaChange[publishedChanges.size()]);
+            commitStream.publish(new AlphaCommit(writeVersion, changeArray));
+        }
     }
 
     // ======================= building exceptions ============================
@@ -485,6 +565,18 @@ public abstract class AbstractUpdateAlphaTransaction
         return new OptimisticLockFailedWriteConflict(msg);
     }
 
+    private LockNotFreeWriteConflict createLockNotFreeEnsureConflict(AlphaTransactionalObject transactionalObject) {
+        if (LockNotFreeWriteConflict.reuse) {
+            return LockNotFreeWriteConflict.INSTANCE;
+        }
+
+        String msg = format(
+                "Failed to open for ensure transactional object '%s' in transaction '%s' because the lock " +
+                        "could not be obtained",
+                toTxObjectString(transactionalObject), config.getFamilyName());
+        return new LockNotFreeWriteConflict(msg);
+    }
+
     private WriteSkewConflict createWriteSkewConflict() {
         if (WriteSkewConflict.reuse) {
             return WriteSkewConflict.INSTANCE;
@@ -8,6 +8,7 @@ import org.multiverse.api.backoff.ExponentialBackoffPolicy;
 import org.multiverse.api.clock.PrimitiveClock;
 import org.multiverse.api.commitlock.CommitLockPolicy;
 import org.multiverse.api.commitlock.GenericCommitLockPolicy;
+import org.multiverse.stms.alpha.AlphaCommitStream;
 import org.multiverse.stms.alpha.transactions.AbstractAlphaTransactionConfiguration;
 import org.multiverse.stms.alpha.transactions.SpeculativeConfiguration;
 
@@ -22,13 +23,14 @@ public final class UpdateConfiguration extends AbstractAlphaTransactionConfigura
     public final boolean optimizedConflictDetectionEnabled;
     public final boolean dirtyCheckEnabled;
     public final boolean quickReleaseLocksEnabled;
+    public final AlphaCommitStream commitStream;
 
     public UpdateConfiguration(PrimitiveClock clock) {
         this(clock,
                 ExponentialBackoffPolicy.INSTANCE_100_MS_MAX,
                 GenericCommitLockPolicy.FAIL_FAST_BUT_RETRY, null, new SpeculativeConfiguration(40),
                 1000, true, true, true, true, true, true, true, Long.MAX_VALUE,
-                10, null, TraceLevel.none,0, PropagationLevel.Requires);
+                10, null, TraceLevel.none,0, PropagationLevel.Requires, null);
     }
 
     public UpdateConfiguration(
@@ -38,7 +40,7 @@ public final class UpdateConfiguration extends AbstractAlphaTransactionConfigura
             boolean optimizedConflictDetectionEnabled, boolean dirtyCheckEnabled, boolean quickReleaseLocks,
             boolean explicitRetryAllowed, long timeoutNs, int maxReadSpinCount,
             TransactionFactory transactionFactory, TraceLevel traceLevel, int syncToClock,
-            PropagationLevel propagationLevel) {
+            PropagationLevel propagationLevel, AlphaCommitStream commitStream) {
 
         super(clock, backoffPolicy, familyName, false, maxRetries, interruptible,
                 writeSkewAllowed, automaticReadTracking, explicitRetryAllowed,
@@ -49,6 +51,7 @@ public final class UpdateConfiguration extends AbstractAlphaTransactionConfigura
         this.optimizedConflictDetectionEnabled = optimizedConflictDetectionEnabled;
         this.dirtyCheckEnabled = dirtyCheckEnabled;
         this.quickReleaseLocksEnabled = quickReleaseLocks;
+        this.commitStream = commitStream;
     }
 
     public UpdateConfiguration withSpeculativeConfiguration(SpeculativeConfiguration speculativeConfigurationEnabled) {
@@ -57,7 +60,7 @@ public final class UpdateConfiguration extends AbstractAlphaTransactionConfigura
                 maxRetries, interruptible, readTrackingEnabled, writeSkewAllowed,
                 optimizedConflictDetectionEnabled, dirtyCheckEnabled, quickReleaseLocksEnabled,
                 explicitRetryAllowed, timeoutNs, maxReadSpinCount, transactionFactory,
-                traceLevel, syncToClock,propagationLevel);
+                traceLevel, syncToClock, propagationLevel, commitStream);
     }
 
     public UpdateConfiguration withWriteSkewAllowed(boolean writeSkewAllowed) {
@@ -66,7 +69,7 @@ public final class UpdateConfiguration extends AbstractAlphaTransactionConfigura
                 maxRetries, interruptible, readTrackingEnabled, writeSkewAllowed,
                 optimizedConflictDetectionEnabled, dirtyCheckEnabled, quickReleaseLocksEnabled,
                 explicitRetryAllowed, timeoutNs, maxReadSpinCount, transactionFactory,
-                traceLevel, syncToClock,propagationLevel);
+                traceLevel, syncToClock, propagationLevel, commitStream);
     }
 
     public UpdateConfiguration withReadTrackingEnabled(boolean readTrackingEnabled) {
@@ -75,7 +78,7 @@ public final class UpdateConfiguration extends AbstractAlphaTransactionConfigura
                 maxRetries, interruptible, readTrackingEnabled, writeSkewAllowed,
                 optimizedConflictDetectionEnabled, dirtyCheckEnabled, quickReleaseLocksEnabled,
                 explicitRetryAllowed, timeoutNs, maxReadSpinCount, transactionFactory,
-                traceLevel, syncToClock,propagationLevel);
+                traceLevel, syncToClock, propagationLevel, commitStream);
     }
 
     public UpdateConfiguration withExplictRetryAllowed(boolean explicitRetryAllowed) {
@@ -84,7 +87,7 @@ public final class UpdateConfiguration extends AbstractAlphaTransactionConfigura
                 maxRetries, interruptible, readTrackingEnabled, writeSkewAllowed,
                 optimizedConflictDetectionEnabled, dirtyCheckEnabled, quickReleaseLocksEnabled,
                 explicitRetryAllowed, timeoutNs, maxReadSpinCount, transactionFactory,
-                traceLevel, syncToClock, propagationLevel);
+                traceLevel, syncToClock, propagationLevel, commitStream);
     }
 
     public UpdateConfiguration withMaxRetries(int maxRetries) {
@@ -93,6 +96,6 @@ public final class UpdateConfiguration extends AbstractAlphaTransactionConfigura
                 maxRetries, interruptible, readTrackingEnabled, writeSkewAllowed,
                 optimizedConflictDetectionEnabled, dirtyCheckEnabled, quickReleaseLocksEnabled,
                 explicitRetryAllowed, timeoutNs, maxReadSpinCount, transactionFactory,
-                traceLevel, syncToClock,propagationLevel);
+                traceLevel, syncToClock, propagationLevel, commitStream);
     }
 }
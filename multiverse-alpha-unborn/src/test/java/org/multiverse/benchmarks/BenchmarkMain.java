@@ -22,6 +22,12 @@ public class BenchmarkMain {
         // executors.execute(createConcurrentUpdateClassicLockBenchmark());
         // executors.execute(createConcurrentUpdateBenchmark());
         //runner.execute(createSetterInLoopDriver());
+        //runner.execute(createMapReadWriteBenchmark("transactional"));
+        //runner.execute(createMapReadWriteBenchmark("concurrent"));
+        //runner.execute(createProducerConsumerBenchmark("linkedlist"));
+        //runner.execute(createProducerConsumerBenchmark("linkedblockingqueue"));
+        //runner.execute(createProducerConsumerBenchmark("ringbuffer"));
+        //runner.execute(createProducerConsumerBenchmark("priorityblockingqueue"));
 
         GraphMain.main(new String[]{"/tmp",});
     }
@@ -115,4 +121,37 @@ public class BenchmarkMain {
         benchmark.getTestCases().add(updateTestCase);
         return benchmark;
     }
+
+    private static Benchmark createMapReadWriteBenchmark(String mapType) {
+        Benchmark benchmark = new Benchmark();
+        benchmark.setDriverClass(MapReadWriteDriver.class.getName());
+        benchmark.setBenchmarkName("MapReadWrite-" + mapType);
+
+        for (int writePercentage : new int[]{0, 10, 50, 100}) {
+            TestCase testCase = new TestCase();
+            testCase.setProperty("operationCountPerThread", 1000 * 1000);
+            testCase.setProperty("threadCount", 4);
+            testCase.setProperty("keyCount", 10000);
+            testCase.setProperty("writePercentage", writePercentage);
+            testCase.setProperty("mapType", mapType);
+            benchmark.getTestCases().add(testCase);
+        }
+        return benchmark;
+    }
+
+    private static Benchmark createProducerConsumerBenchmark(String queueType) {
+        Benchmark benchmark = new Benchmark();
+        benchmark.setDriverClass(ProducerConsumerDriver.class.getName());
+        benchmark.setBenchmarkName("ProducerConsumer-" + queueType);
+
+        for (int producerCount = 1; producerCount <= 4; producerCount++) {
+            TestCase testCase = new TestCase();
+            testCase.setProperty("itemCountPerProducer", 1000 * 1000);
+            testCase.setProperty("producerCount", producerCount);
+            testCase.setProperty("queueCapacity", 1000);
+            testCase.setProperty("queueType", queueType);
+            benchmark.getTestCases().add(testCase);
+        }
+        return benchmark;
+    }
 }
@@ -0,0 +1,101 @@
+package org.multiverse.benchmarks;
+
+import org.benchy.AbstractBenchmarkDriver;
+import org.benchy.DriverParameter;
+import org.benchy.TestCase;
+import org.benchy.TestCaseResult;
+import org.multiverse.TestThread;
+import org.multiverse.transactional.collections.TransactionalHashMap;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.multiverse.TestUtils.joinAll;
+import static org.multiverse.TestUtils.startAll;
+import static org.multiverse.api.ThreadLocalTransaction.clearThreadLocalTransaction;
+
+/**
+ * A Benchmark that compares the {@link TransactionalHashMap} with the {@link ConcurrentHashMap} under a mix of
+ * gets and puts on random keys.
+ *
+ * @author Peter Veentjer
+ */
+public class MapReadWriteDriver extends AbstractBenchmarkDriver {
+
+    @DriverParameter
+    private long operationCountPerThread;
+    @DriverParameter
+    private int threadCount;
+    @DriverParameter
+    private int keyCount;
+    @DriverParameter
+    private int writePercentage;
+    @DriverParameter
+    private String mapType;
+
+    private Map<Integer, Integer> map;
+    private WorkerThread[] threads;
+
+    @Override
+    public void preRun(TestCase testCase) {
+        clearThreadLocalTransaction();
+
+        if (mapType.equals("transactional")) {
+            map = new TransactionalHashMap<Integer, Integer>();
+        } else if (mapType.equals("concurrent")) {
+            map = new ConcurrentHashMap<Integer, Integer>();
+        } else {
+            throw new IllegalArgumentException("Unknown mapType: " + mapType);
+        }
+
+        for (int k = 0; k < keyCount; k++) {
+            map.put(k, k);
+        }
+
+        threads = new WorkerThread[threadCount];
+        for (int k = 0; k < threads.length; k++) {
+            threads[k] = new WorkerThread(k);
+        }
+    }
+
+    @Override
+    public void run() {
+        startAll(threads);
+        joinAll(threads);
+    }
+
+    @Override
+    public void postRun(TestCaseResult caseResult) {
+        long operationCount = operationCountPerThread * threadCount;
+        caseResult.put("operationCount", operationCount);
+
+        double operationsPerSecond = (1.0d * operationCount * TimeUnit.SECONDS.toNanos(1))
+                / caseResult.getLongProperty("duration(ns)");
+        caseResult.put("operations/second", operationsPerSecond);
+
+        double operationsPerSecondPerThread = operationsPerSecond / threadCount;
+        caseResult.put("operations/second/thread", operationsPerSecondPerThread);
+    }
+
+    public class WorkerThread extends TestThread {
+
+        public WorkerThread(int id) {
+            super("WorkerThread-" + id);
+        }
+
+        @Override
+        public void doRun() throws Exception {
+            Random random = new Random(getName().hashCode());
+            for (long k = 0; k < operationCountPerThread; k++) {
+                int key = random.nextInt(keyCount);
+                if (random.nextInt(100) < writePercentage) {
+                    map.put(key, key);
+                } else {
+                    map.get(key);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package org.multiverse.benchmarks;
+
+import org.benchy.AbstractBenchmarkDriver;
+import org.benchy.DriverParameter;
+import org.benchy.TestCase;
+import org.benchy.TestCaseResult;
+import org.multiverse.TestThread;
+import org.multiverse.transactional.collections.TransactionalLinkedBlockingQueue;
+import org.multiverse.transactional.collections.TransactionalLinkedList;
+import org.multiverse.transactional.collections.TransactionalPriorityBlockingQueue;
+import org.multiverse.transactional.collections.TransactionalRingBuffer;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.multiverse.TestUtils.joinAll;
+import static org.multiverse.TestUtils.startAll;
+import static org.multiverse.api.ThreadLocalTransaction.clearThreadLocalTransaction;
+
+/**
+ * A Benchmark where producers put items on a queue and the same number of consumers take them. It compares the
+ * {@link TransactionalLinkedList}, where every put conflicts with every take, with the
+ * {@link TransactionalLinkedBlockingQueue} and the {@link TransactionalRingBuffer}, where puts and takes don't
+ * conflict. The ring buffer has a strict capacity and doesn't create a node per item. The
+ * {@link TransactionalPriorityBlockingQueue} can be measured as well; it is unbound, so the queueCapacity is ignored.
+ *
+ * @author Peter Veentjer
+ */
+public class ProducerConsumerDriver extends AbstractBenchmarkDriver {
+
+    @DriverParameter
+    private int itemCountPerProducer;
+    @DriverParameter
+    private int producerCount;
+    @DriverParameter
+    private int queueCapacity;
+    @DriverParameter
+    private String queueType;
+
+    private BlockingQueue<Integer> queue;
+    private ProducerThread[] producers;
+    private ConsumerThread[] consumers;
+
+    @Override
+    public void preRun(TestCase testCase) {
+        clearThreadLocalTransaction();
+
+        if (queueType.equals("linkedlist")) {
+            queue = new TransactionalLinkedList<Integer>(queueCapacity, true);
+        } else if (queueType.equals("linkedblockingqueue")) {
+            queue = new TransactionalLinkedBlockingQueue<Integer>(queueCapacity, true);
+        } else if (queueType.equals("ringbuffer")) {
+            queue = new TransactionalRingBuffer<Integer>(queueCapacity);
+        } else if (queueType.equals("priorityblockingqueue")) {
+            queue = new TransactionalPriorityBlockingQueue<Integer>();
+        } else {
+            throw new IllegalArgumentException("Unknown queueType: " + queueType);
+        }
+
+        producers = new ProducerThread[producerCount];
+        consumers = new ConsumerThread[producerCount];
+        for (int k = 0; k < producerCount; k++) {
+            producers[k] = new ProducerThread(k);
+            consumers[k] = new ConsumerThread(k);
+        }
+    }
+
+    @Override
+    public void run() {
+        startAll(producers);
+        startAll(consumers);
+        joinAll(producers);
+        joinAll(consumers);
+    }
+
+    @Override
+    public void postRun(TestCaseResult caseResult) {
+        long transferCount = 1L * itemCountPerProducer * producerCount;
+        caseResult.put("transferCount", transferCount);
+
+        double transfersPerSecond = (1.0d * transferCount * TimeUnit.SECONDS.toNanos(1))
+                / caseResult.getLongProperty("duration(ns)");
+        caseResult.put("transfers/second", transfersPerSecond);
+    }
+
+    public class ProducerThread extends TestThread {
+
+        public ProducerThread(int id) {
+            super("ProducerThread-" + id);
+        }
+
+        @Override
+        public void doRun() throws Exception {
+            for (int k = 0; k < itemCountPerProducer; k++) {
+                queue.put(k);
+            }
+        }
+    }
+
+    public class ConsumerThread extends TestThread {
+
+        public ConsumerThread(int id) {
+            super("ConsumerThread-" + id);
+        }
+
+        @Override
+        public void doRun() throws Exception {
+            for (int k = 0; k < itemCountPerProducer; k++) {
+                queue.take();
+            }
+        }
+    }
+}
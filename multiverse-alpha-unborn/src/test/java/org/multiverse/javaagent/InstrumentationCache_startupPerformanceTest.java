@@ -0,0 +1,121 @@
+package org.multiverse.javaagent;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.multiverse.instrumentation.Instrumentor;
+import org.multiverse.stms.alpha.instrumentation.AlphaStmInstrumentor;
+import org.multiverse.transactional.collections.TransactionalArrayList;
+import org.multiverse.transactional.collections.TransactionalLinkedList;
+import org.multiverse.transactional.executors.TransactionalThreadPoolExecutor;
+import org.multiverse.transactional.refs.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.instrument.IllegalClassFormatException;
+import java.util.concurrent.TimeUnit;
+
+import static org.objectweb.asm.Type.getInternalName;
+
+/**
+ * A benchmark that compares the time needed to transform a set of classes (like it happens when the JVM starts)
+ * with an empty and with a warm {@link InstrumentationCache}.
+ * <p/>
+ * Each run uses a new classloader and a new instrumentor, so it looks like a new start of the JVM.
+ *
+ * @author Peter Veentjer
+ */
+public class InstrumentationCache_startupPerformanceTest {
+
+    private final Class[] classes = new Class[]{
+            TransactionalArrayList.class,
+            TransactionalLinkedList.class,
+            AbaRef.class,
+            TransactionalThreadPoolExecutor.class,
+            Ref.class,
+            IntRef.class,
+            LongRef.class,
+            BooleanRef.class,
+            DoubleRef.class
+    };
+
+    private final int runCount = 20;
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("instrumentationcache", "");
+        directory.delete();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void test() throws Exception {
+        byte[][] bytecodes = new byte[classes.length][];
+        for (int k = 0; k < classes.length; k++) {
+            bytecodes[k] = loadBytecode(classes[k]);
+        }
+
+        long withoutCacheNs = 0;
+        long withCacheNs = 0;
+        for (int run = 0; run < runCount; run++) {
+            withoutCacheNs += transformAll(bytecodes, false);
+
+            //the first run with a cache fills the cache.
+            long durationNs = transformAll(bytecodes, true);
+            if (run > 0) {
+                withCacheNs += durationNs;
+            }
+        }
+
+        System.out.printf("Without cache: %s ms per start\n",
+                TimeUnit.NANOSECONDS.toMillis(withoutCacheNs / runCount));
+        System.out.printf("With warm cache: %s ms per start\n",
+                TimeUnit.NANOSECONDS.toMillis(withCacheNs / (runCount - 1)));
+    }
+
+    private long transformAll(byte[][] bytecodes, boolean useCache) throws IllegalClassFormatException {
+        ClassLoader classLoader = new ClassLoader(getClass().getClassLoader()) {
+        };
+
+        JavaAgentFiler filer = new JavaAgentFiler();
+        Instrumentor instrumentor = new AlphaStmInstrumentor();
+        instrumentor.setFiler(filer);
+        InstrumentationCache cache = useCache ? new InstrumentationCache(directory, instrumentor) : null;
+        MultiverseClassFileTransformer transformer = new MultiverseClassFileTransformer(instrumentor, filer, cache);
+
+        long startNs = System.nanoTime();
+        for (int k = 0; k < classes.length; k++) {
+            transformer.transform(classLoader, getInternalName(classes[k]), null, null, bytecodes[k]);
+        }
+        return System.nanoTime() - startNs;
+    }
+
+    private static byte[] loadBytecode(Class clazz) throws IOException {
+        InputStream in = clazz.getClassLoader().getResourceAsStream(getInternalName(clazz) + ".class");
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
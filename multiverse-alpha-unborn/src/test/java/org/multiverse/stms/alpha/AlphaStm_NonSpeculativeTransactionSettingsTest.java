@@ -5,6 +5,7 @@ import org.junit.Test;
 import org.multiverse.api.Transaction;
 import org.multiverse.api.TransactionFactory;
 import org.multiverse.stms.alpha.transactions.readonly.NonTrackingReadonlyAlphaTransaction;
+import org.multiverse.stms.alpha.transactions.readonly.RelaxedReadonlyAlphaTransaction;
 import org.multiverse.stms.alpha.transactions.update.MapUpdateAlphaTransaction;
 
 import static org.junit.Assert.*;
@@ -85,4 +86,24 @@ public class AlphaStm_NonSpeculativeTransactionSettingsTest {
                 .setWriteSkewAllowed(true)
                 .build();
     }
+
+    @Test
+    public void testRelaxedReads() {
+        Transaction t = stm.getTransactionFactoryBuilder()
+                .setRelaxedReadsEnabled(true)
+                .build()
+                .start();
+
+        assertTrue(t instanceof RelaxedReadonlyAlphaTransaction);
+        assertTrue(t.getConfiguration().isReadonly());
+        assertFalse(t.getConfiguration().isReadTrackingEnabled());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testRelaxedReadsWithUpdate() {
+        stm.getTransactionFactoryBuilder()
+                .setReadonly(false)
+                .setRelaxedReadsEnabled(true)
+                .build();
+    }
 }
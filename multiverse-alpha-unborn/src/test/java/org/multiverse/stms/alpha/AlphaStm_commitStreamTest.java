@@ -0,0 +1,378 @@
+package org.multiverse.stms.alpha;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.multiverse.TestThread;
+import org.multiverse.api.latches.CheapLatch;
+import org.multiverse.api.latches.Latch;
+import org.multiverse.stms.alpha.manualinstrumentation.ManualRef;
+import org.multiverse.stms.alpha.manualinstrumentation.ManualRefTranlocal;
+import org.multiverse.stms.alpha.programmatic.AlphaProgrammaticLongRef;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.multiverse.TestUtils.*;
+
+/**
+ * @author Peter Veentjer
+ */
+public class AlphaStm_commitStreamTest {
+
+    private AlphaStm stm;
+    private CollectingListener listener;
+
+    @Before
+    public void setUp() {
+        stm = AlphaStm.createFast();
+        listener = new CollectingListener();
+    }
+
+    @After
+    public void tearDown() {
+        stm.unsubscribe(listener);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void whenNullListener_thenNullPointerException() {
+        stm.subscribe(null);
+    }
+
+    @Test
+    public void whenNoSubscribers_thenNothingPublished() {
+        ManualRef ref = new ManualRef(stm, 10);
+        ref.inc(stm);
+
+        assertFalse(stm.getCommitStream().hasSubscribers());
+        assertEquals(0, stm.getCommitStream().size());
+    }
+
+    @Test
+    public void whenUpdate_thenOldAndNewTranlocalPublished() throws InterruptedException {
+        ManualRef ref = new ManualRef(stm, 10);
+        AlphaTranlocal old = ref.___load();
+
+        stm.subscribe(listener);
+        ref.inc(stm);
+
+        AlphaCommit commit = listener.take();
+        assertEquals(stm.getVersion(), commit.getWriteVersion());
+        assertEquals(1, commit.getChanges().size());
+
+        AlphaChange change = commit.getChanges().get(0);
+        assertSame(ref, change.getTransactionalObject());
+        assertSame(old, change.getOldTranlocal());
+        assertSame(ref.___load(), change.getNewTranlocal());
+        assertEquals(11, ((ManualRefTranlocal) change.getNewTranlocal()).value);
+        assertNull(ref.___getLockOwner());
+    }
+
+    @Test
+    public void whenConstructed_thenOldTranlocalIsNull() throws InterruptedException {
+        stm.subscribe(listener);
+        ManualRef ref = new ManualRef(stm, 10);
+
+        AlphaCommit commit = listener.take();
+        AlphaChange change = commit.getChanges().get(0);
+        assertSame(ref, change.getTransactionalObject());
+        assertNull(change.getOldTranlocal());
+        assertSame(ref.___load(), change.getNewTranlocal());
+    }
+
+    @Test
+    public void whenMultipleCommits_thenPublishedInOrder() throws InterruptedException {
+        ManualRef ref = new ManualRef(stm, 0);
+
+        stm.subscribe(listener);
+        for (int k = 0; k < 100; k++) {
+            ref.inc(stm);
+        }
+
+        long previousVersion = 0;
+        for (int k = 1; k <= 100; k++) {
+            AlphaCommit commit = listener.take();
+            assertTrue(commit.getWriteVersion() > previousVersion);
+            previousVersion = commit.getWriteVersion();
+            assertEquals(k, ((ManualRefTranlocal) commit.getChanges().get(0).getNewTranlocal()).value);
+        }
+    }
+
+    @Test
+    public void whenAtomicUpdateOnProgrammaticRef_thenPublished() throws InterruptedException {
+        AlphaProgrammaticLongRef ref = new AlphaProgrammaticLongRef(stm, 10);
+
+        stm.subscribe(listener);
+        ref.atomicInc(5);
+
+        AlphaCommit commit = listener.take();
+        AlphaChange change = commit.getChanges().get(0);
+        assertSame(ref, change.getTransactionalObject());
+        assertSame(ref.___load(), change.getNewTranlocal());
+        assertNull(ref.___getLockOwner());
+        assertEquals(15, ref.atomicGet());
+    }
+
+    @Test
+    public void whenUnsubscribed_thenNoLongerPublished() {
+        ManualRef ref = new ManualRef(stm, 10);
+
+        stm.subscribe(listener);
+        stm.unsubscribe(listener);
+        ref.inc(stm);
+
+        assertFalse(stm.getCommitStream().hasSubscribers());
+        assertEquals(0, stm.getCommitStream().size());
+    }
+
+    @Test
+    public void whenListenerThrowsError_thenLaterCommitsStillDelivered() throws InterruptedException {
+        ManualRef ref = new ManualRef(stm, 0);
+
+        stm.subscribe(new AlphaCommitListener() {
+            @Override
+            public void notify(List<AlphaCommit> commits) {
+                throw new AssertionError();
+            }
+        });
+        stm.subscribe(listener);
+
+        ref.inc(stm);
+        listener.take();
+        ref.inc(stm);
+        AlphaCommit commit = listener.take();
+
+        assertEquals(2, ((ManualRefTranlocal) commit.getChanges().get(0).getNewTranlocal()).value);
+    }
+
+    @Test
+    public void whenStreamFull_thenCommitterBlocksAndNoCommitLost() throws InterruptedException {
+        AlphaStmConfig config = AlphaStmConfig.createFastConfig();
+        config.commitStreamCapacity = 1;
+        config.commitStreamMaxBatchSize = 1;
+        stm = new AlphaStm(config);
+        final ManualRef ref = new ManualRef(stm, 0);
+
+        final CountDownLatch deliveringLatch = new CountDownLatch(1);
+        final CountDownLatch releaseLatch = new CountDownLatch(1);
+        AlphaCommitListener blockingListener = new AlphaCommitListener() {
+            @Override
+            public void notify(List<AlphaCommit> commits) {
+                deliveringLatch.countDown();
+                try {
+                    releaseLatch.await();
+                } catch (InterruptedException ignore) {
+                }
+                listener.notify(commits);
+            }
+        };
+        stm.subscribe(blockingListener);
+
+        //the first commit is taken by the delivery thread, the second fills the ring buffer.
+        ref.inc(stm);
+        assertTrue(deliveringLatch.await(10, TimeUnit.SECONDS));
+        ref.inc(stm);
+
+        TestThread committer = new TestThread() {
+            @Override
+            public void doRun() throws Exception {
+                ref.inc(stm);
+                ref.inc(stm);
+            }
+        };
+        committer.start();
+
+        sleepMs(500);
+        assertAlive(committer);
+        assertEquals(3, ref.get(stm));
+        assertEquals(1, stm.getCommitStream().size());
+
+        releaseLatch.countDown();
+        joinAll(committer);
+
+        for (int k = 1; k <= 4; k++) {
+            AlphaCommit commit = listener.take();
+            assertEquals(k, ((ManualRefTranlocal) commit.getChanges().get(0).getNewTranlocal()).value);
+        }
+        assertEquals(0, stm.getCommitStream().getDroppedCount());
+
+        stm.unsubscribe(blockingListener);
+    }
+
+    @Test
+    public void whenListenerCommitsWhileStreamFull_thenDeliveryThreadNotBlocked() throws InterruptedException {
+        AlphaStmConfig config = AlphaStmConfig.createFastConfig();
+        config.commitStreamCapacity = 1;
+        config.commitStreamMaxBatchSize = 1;
+        stm = new AlphaStm(config);
+        final ManualRef ref = new ManualRef(stm, 0);
+        final ManualRef echo = new ManualRef(stm, 0);
+
+        AlphaCommitListener echoingListener = new AlphaCommitListener() {
+            @Override
+            public void notify(List<AlphaCommit> commits) {
+                for (AlphaCommit commit : commits) {
+                    if (commit.getChanges().get(0).getTransactionalObject() == ref) {
+                        echo.inc(stm);
+                        echo.inc(stm);
+                    }
+                }
+            }
+        };
+        stm.subscribe(echoingListener);
+        stm.subscribe(listener);
+
+        ref.inc(stm);
+
+        int echoCount = 0;
+        for (int k = 0; k < 3; k++) {
+            if (listener.take().getChanges().get(0).getTransactionalObject() == echo) {
+                echoCount++;
+            }
+        }
+        assertEquals(2, echoCount);
+        assertEquals(2, echo.get(stm));
+        assertEquals(0, stm.getCommitStream().getDroppedCount());
+
+        stm.unsubscribe(echoingListener);
+    }
+
+    @Test
+    public void whenListenerPublishesMoreThanFits_thenOverflowBoundedAndRestDropped() throws InterruptedException {
+        AlphaStmConfig config = AlphaStmConfig.createFastConfig();
+        config.commitStreamCapacity = 1;
+        config.commitStreamMaxBatchSize = 1;
+        stm = new AlphaStm(config);
+        final ManualRef ref = new ManualRef(stm, 0);
+        final ManualRef echo = new ManualRef(stm, 0);
+
+        AlphaCommitListener echoingListener = new AlphaCommitListener() {
+            @Override
+            public void notify(List<AlphaCommit> commits) {
+                for (AlphaCommit commit : commits) {
+                    if (commit.getChanges().get(0).getTransactionalObject() == ref) {
+                        for (int k = 0; k < 4; k++) {
+                            echo.inc(stm);
+                        }
+                    }
+                }
+            }
+        };
+        stm.subscribe(echoingListener);
+        stm.subscribe(listener);
+
+        ref.inc(stm);
+
+        //the first echo fills the ring buffer, the second the overflow buffer and the rest is dropped.
+        for (int k = 1; k <= 3; k++) {
+            listener.take();
+        }
+        assertNull(listener.commits.poll(100, TimeUnit.MILLISECONDS));
+        assertEquals(4, echo.get(stm));
+        assertEquals(2, stm.getCommitStream().getDroppedCount());
+
+        stm.unsubscribe(echoingListener);
+    }
+
+    @Test
+    public void whenCommitterBlocksOnFullStream_thenRetryListenersAlreadyNotified() throws InterruptedException {
+        useCommitStreamWithCapacityOne();
+        final ManualRef ref = new ManualRef(stm, 0);
+        Latch latch = new CheapLatch();
+        ref.___registerRetryListener(latch, stm.getVersion() + 1);
+        CountDownLatch releaseLatch = blockDeliveryAndFillStream();
+
+        TestThread committer = new TestThread() {
+            @Override
+            public void doRun() throws Exception {
+                ref.inc(stm);
+            }
+        };
+        committer.start();
+
+        sleepMs(500);
+        assertAlive(committer);
+        assertTrue(latch.isOpen());
+
+        releaseLatch.countDown();
+        joinAll(committer);
+    }
+
+    @Test
+    public void whenAtomicUpdateBlocksOnFullStream_thenRetryListenersAlreadyNotified() throws InterruptedException {
+        useCommitStreamWithCapacityOne();
+        final AlphaProgrammaticLongRef ref = new AlphaProgrammaticLongRef(stm, 0);
+        Latch latch = new CheapLatch();
+        ref.___registerRetryListener(latch, stm.getVersion() + 1);
+        CountDownLatch releaseLatch = blockDeliveryAndFillStream();
+
+        TestThread committer = new TestThread() {
+            @Override
+            public void doRun() throws Exception {
+                ref.atomicInc(1);
+            }
+        };
+        committer.start();
+
+        sleepMs(500);
+        assertAlive(committer);
+        assertTrue(latch.isOpen());
+
+        releaseLatch.countDown();
+        joinAll(committer);
+    }
+
+    private void useCommitStreamWithCapacityOne() {
+        AlphaStmConfig config = AlphaStmConfig.createFastConfig();
+        config.commitStreamCapacity = 1;
+        config.commitStreamMaxBatchSize = 1;
+        stm = new AlphaStm(config);
+    }
+
+    /**
+     * Fills the commit stream while the delivery thread is blocked in a listener. The listener is released when
+     * the returned latch is opened. Objects that should not be published need to be created before this call.
+     */
+    private CountDownLatch blockDeliveryAndFillStream() throws InterruptedException {
+        ManualRef ref = new ManualRef(stm, 0);
+
+        final CountDownLatch deliveringLatch = new CountDownLatch(1);
+        final CountDownLatch releaseLatch = new CountDownLatch(1);
+        stm.subscribe(new AlphaCommitListener() {
+            @Override
+            public void notify(List<AlphaCommit> commits) {
+                deliveringLatch.countDown();
+                try {
+                    releaseLatch.await();
+                } catch (InterruptedException ignore) {
+                }
+            }
+        });
+
+        //the first commit is taken by the delivery thread, the second fills the ring buffer.
+        ref.inc(stm);
+        assertTrue(deliveringLatch.await(10, TimeUnit.SECONDS));
+        ref.inc(stm);
+        assertEquals(1, stm.getCommitStream().size());
+        return releaseLatch;
+    }
+
+    static class CollectingListener implements AlphaCommitListener {
+        final BlockingQueue<AlphaCommit> commits = new LinkedBlockingQueue<AlphaCommit>();
+
+        @Override
+        public void notify(List<AlphaCommit> batch) {
+            commits.addAll(batch);
+        }
+
+        AlphaCommit take() throws InterruptedException {
+            AlphaCommit commit = commits.poll(10, TimeUnit.SECONDS);
+            assertNotNull(commit);
+            return commit;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package org.multiverse.stms.alpha.instrumentation;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.multiverse.api.TransactionFactory;
+import org.multiverse.instrumentation.metadata.MethodProfile;
+import org.multiverse.stms.alpha.AlphaStm;
+import org.multiverse.stms.alpha.AlphaStmConfig;
+import org.multiverse.stms.alpha.transactions.AbstractAlphaTransactionConfiguration;
+import org.multiverse.stms.alpha.transactions.SpeculativeConfiguration;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Veentjer
+ */
+public class AlphaStmInstrumentor_createProfileTest {
+
+    private AlphaStm stm;
+    private AlphaStmInstrumentor instrumentor;
+
+    @Before
+    public void setUp() {
+        stm = new AlphaStm(AlphaStmConfig.createDebugConfig());
+        instrumentor = new AlphaStmInstrumentor();
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void whenNullTransactionFactory_thenNullPointerException() {
+        instrumentor.createProfile(null);
+    }
+
+    @Test
+    public void whenSpeculativeConfigurationDisabled_thenNoProfile() {
+        TransactionFactory txFactory = stm.getTransactionFactoryBuilder()
+                .setSpeculativeConfigurationEnabled(false)
+                .build();
+
+        assertNull(instrumentor.createProfile(txFactory));
+    }
+
+    @Test
+    public void whenNothingLearned() {
+        TransactionFactory txFactory = createSpeculativeTransactionFactory();
+
+        MethodProfile profile = instrumentor.createProfile(txFactory);
+
+        assertEquals(new MethodProfile(false, false, 1), profile);
+        assertFalse(profile.isLearned());
+    }
+
+    @Test
+    public void whenLearned() {
+        TransactionFactory txFactory = createSpeculativeTransactionFactory();
+
+        SpeculativeConfiguration speculativeConfig = getSpeculativeConfiguration(txFactory);
+        speculativeConfig.signalSpeculativeReadonlyFailure();
+        speculativeConfig.signalSpeculativeReadTrackingDisabledFailure();
+        speculativeConfig.setOptimalSize(5);
+
+        MethodProfile profile = instrumentor.createProfile(txFactory);
+
+        assertEquals(new MethodProfile(true, true, 5), profile);
+    }
+
+    @Test
+    public void whenReadonlyConfiguredExplicitly_thenNotLearned() {
+        TransactionFactory txFactory = stm.getTransactionFactoryBuilder()
+                .setSpeculativeConfigurationEnabled(true)
+                .setReadonly(false)
+                .build();
+
+        MethodProfile profile = instrumentor.createProfile(txFactory);
+
+        assertFalse(profile.isUpdate());
+    }
+
+    private TransactionFactory createSpeculativeTransactionFactory() {
+        return stm.getTransactionFactoryBuilder()
+                .setSpeculativeConfigurationEnabled(true)
+                .build();
+    }
+
+    private static SpeculativeConfiguration getSpeculativeConfiguration(TransactionFactory txFactory) {
+        return ((AbstractAlphaTransactionConfiguration) txFactory.getTransactionConfiguration()).speculativeConfiguration;
+    }
+}
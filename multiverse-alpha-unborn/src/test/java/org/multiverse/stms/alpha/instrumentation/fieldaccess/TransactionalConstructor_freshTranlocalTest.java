@@ -0,0 +1,220 @@
+package org.multiverse.stms.alpha.instrumentation.fieldaccess;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.multiverse.annotations.TransactionalMethod;
+import org.multiverse.annotations.TransactionalObject;
+import org.multiverse.stms.alpha.AlphaStm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.multiverse.api.GlobalStmInstance.getGlobalStmInstance;
+import static org.multiverse.api.ThreadLocalTransaction.clearThreadLocalTransaction;
+
+/**
+ * Checks that the fresh tranlocal that is kept by a constructor for accessing the fields of the object being
+ * constructed, doesn't change the outcome of the constructor.
+ *
+ * @author Peter Veentjer
+ */
+public class TransactionalConstructor_freshTranlocalTest {
+
+    private AlphaStm stm;
+
+    @Before
+    public void setUp() {
+        stm = (AlphaStm) getGlobalStmInstance();
+        clearThreadLocalTransaction();
+    }
+
+    @Test
+    public void whenManyFieldsInitialized() {
+        Point point = new Point(1, 2, 3);
+
+        assertEquals(1, point.getX());
+        assertEquals(2, point.getY());
+        assertEquals(3, point.getZ());
+        assertEquals(6, point.getSum());
+    }
+
+    @Test
+    public void whenCategory2Fields() {
+        Span span = new Span(10, 20);
+
+        assertEquals(10, span.getBegin());
+        assertEquals(30, span.getEnd());
+    }
+
+    @Test
+    public void whenEscapesBeforeFieldsWritten() {
+        Registry registry = new Registry();
+
+        Entry entry = registry.register(5);
+
+        assertSame(entry, registry.getLast());
+        assertEquals(5, entry.getValue());
+        assertEquals(1, entry.getWrites());
+    }
+
+    @Test
+    public void whenSubclass() {
+        long version = stm.getVersion();
+
+        ColoredPoint point = new ColoredPoint(1, 2, 3, 4);
+
+        assertEquals(version, stm.getVersion());
+        assertEquals("colored", point.getName());
+        assertEquals(6, point.getSum());
+        assertEquals(4, point.getColor());
+    }
+
+    @Test
+    public void whenDelegatingConstructor() {
+        Point point = new Point(7);
+
+        assertEquals(21, point.getSum());
+    }
+
+    @Test
+    public void whenConstructedAndUsedInTransaction() {
+        assertEquals(10, new Builder().build(4));
+    }
+
+    @TransactionalObject
+    public static class Point {
+        int x;
+        int y;
+        int z;
+        int sum;
+
+        public Point(int v) {
+            this(v, v, v);
+        }
+
+        public Point(int x, int y, int z) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.sum = this.x + this.y + this.z;
+        }
+
+        public int getX() {
+            return x;
+        }
+
+        public int getY() {
+            return y;
+        }
+
+        public int getZ() {
+            return z;
+        }
+
+        public int getSum() {
+            return sum;
+        }
+    }
+
+    public static class Shape {
+        private final String name;
+
+        public Shape(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    @TransactionalObject
+    public static class ColoredPoint extends Shape {
+        int x;
+        int y;
+        int z;
+        int color;
+        int sum;
+
+        public ColoredPoint(int x, int y, int z, int color) {
+            super("colored");
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.color = color;
+            this.sum = this.x + this.y + this.z;
+        }
+
+        public int getSum() {
+            return sum;
+        }
+
+        public int getColor() {
+            return color;
+        }
+    }
+
+    @TransactionalObject
+    public static class Span {
+        long begin;
+        long end;
+
+        public Span(long begin, long length) {
+            this.begin = begin;
+            this.end = this.begin + length;
+        }
+
+        public long getBegin() {
+            return begin;
+        }
+
+        public long getEnd() {
+            return end;
+        }
+    }
+
+    @TransactionalObject
+    public static class Registry {
+        Entry last;
+
+        public Entry register(int value) {
+            return new Entry(this, value);
+        }
+
+        public Entry getLast() {
+            return last;
+        }
+    }
+
+    @TransactionalObject
+    public static class Entry {
+        int value;
+        int writes;
+
+        public Entry(Registry registry, int value) {
+            registry.last = this;
+            this.value = value;
+            registry.last.writes++;
+        }
+
+        public int getValue() {
+            return value;
+        }
+
+        public int getWrites() {
+            return writes;
+        }
+    }
+
+    public static class Builder {
+
+        @TransactionalMethod
+        public int build(int size) {
+            Point point = new Point(0, 0, 0);
+            for (int k = 0; k < size; k++) {
+                point.x = point.x + k;
+            }
+            point.y = point.x;
+            return point.x + point.y - 2;
+        }
+    }
+}
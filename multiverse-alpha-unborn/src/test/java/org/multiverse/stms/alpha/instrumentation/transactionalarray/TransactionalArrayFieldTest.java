@@ -0,0 +1,223 @@
+package org.multiverse.stms.alpha.instrumentation.transactionalarray;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.multiverse.TestThread;
+import org.multiverse.annotations.NonTransactional;
+import org.multiverse.annotations.TransactionalObject;
+import org.multiverse.stms.alpha.AlphaStm;
+import org.multiverse.transactional.arrays.TransactionalIntArray;
+import org.multiverse.transactional.arrays.TransactionalLongArray;
+import org.multiverse.transactional.arrays.TransactionalObjectArray;
+
+import static org.junit.Assert.*;
+import static org.multiverse.TestUtils.joinAll;
+import static org.multiverse.TestUtils.startAll;
+import static org.multiverse.api.GlobalStmInstance.getGlobalStmInstance;
+import static org.multiverse.api.ThreadLocalTransaction.clearThreadLocalTransaction;
+import static org.multiverse.stms.alpha.instrumentation.AlphaReflectionUtils.assertHasField;
+import static org.multiverse.stms.alpha.instrumentation.AlphaReflectionUtils.getTranlocalField;
+
+public class TransactionalArrayFieldTest {
+    private AlphaStm stm;
+
+    @Before
+    public void setUp() {
+        stm = (AlphaStm) getGlobalStmInstance();
+        clearThreadLocalTransaction();
+    }
+
+    @Test
+    public void whenArrayFields_thenTransformed() {
+        Counters counters = new Counters(10);
+
+        assertHasField(counters.getClass(), "ints", TransactionalIntArray.class);
+        assertHasField(counters.getClass(), "longs", TransactionalLongArray.class);
+        //names is not final, so it is a managed field that is stored in the tranlocal.
+        assertEquals(TransactionalObjectArray.class, getTranlocalField(counters.getClass(), "names").getType());
+    }
+
+    @Test
+    public void whenElementWritten() {
+        Counters counters = new Counters(10);
+
+        long version = stm.getVersion();
+        counters.inc(3);
+
+        assertEquals(version + 1, stm.getVersion());
+        assertEquals(1, counters.getInt(3));
+        assertEquals(1, counters.getLong(3));
+        assertEquals(1, counters.sum());
+    }
+
+    @Test
+    public void whenElementRead_thenNoWrite() {
+        Counters counters = new Counters(10);
+
+        long version = stm.getVersion();
+        counters.getInt(3);
+
+        assertEquals(version, stm.getVersion());
+    }
+
+    @Test
+    public void whenLazyCreated() {
+        Counters counters = new Counters(10);
+
+        assertNull(counters.getName(2));
+        counters.setName(2, "foo");
+        assertEquals("foo", counters.getName(2));
+        assertEquals(10, counters.getNameCount());
+    }
+
+    @Test
+    public void whenTransactionAborted_thenElementWriteRolledBack() {
+        Counters counters = new Counters(10);
+        counters.inc(3);
+
+        long version = stm.getVersion();
+        try {
+            counters.incAndThrow(3);
+            fail();
+        } catch (MyException expected) {
+        }
+
+        assertEquals(version, stm.getVersion());
+        assertEquals(1, counters.getInt(3));
+    }
+
+    @Test
+    public void whenExcluded_thenNotTransformed() {
+        Excluded excluded = new Excluded();
+
+        assertHasField(excluded.getClass(), "values", int[].class);
+    }
+
+    @Test
+    public void whenArrayEscapes_thenNotTransformed() {
+        Escaping escaping = new Escaping();
+
+        assertHasField(escaping.getClass(), "values", int[].class);
+        escaping.getValues()[0] = 10;
+        assertEquals(10, escaping.get(0));
+    }
+
+    @Test
+    public void whenConcurrentIncrements_thenNoUpdatesLost() {
+        Counters counters = new Counters(16);
+
+        int incCount = 1000;
+        IncThread[] threads = new IncThread[4];
+        for (int k = 0; k < threads.length; k++) {
+            threads[k] = new IncThread(k, counters, incCount);
+        }
+
+        startAll(threads);
+        joinAll(threads);
+
+        assertEquals(threads.length * incCount, counters.sum());
+    }
+
+    class IncThread extends TestThread {
+        private final Counters counters;
+        private final int incCount;
+
+        IncThread(int id, Counters counters, int incCount) {
+            super("IncThread-" + id);
+            this.counters = counters;
+            this.incCount = incCount;
+        }
+
+        @Override
+        public void doRun() throws Exception {
+            for (int k = 0; k < incCount; k++) {
+                counters.inc(k % counters.length());
+            }
+        }
+    }
+
+    @TransactionalObject
+    public static class Counters {
+        private final int[] ints;
+        private final long[] longs;
+        private String[] names;
+
+        public Counters(int length) {
+            ints = new int[length];
+            longs = new long[length];
+        }
+
+        @NonTransactional
+        public int length() {
+            return ints.length;
+        }
+
+        public void inc(int index) {
+            ints[index]++;
+            longs[index]++;
+        }
+
+        public void incAndThrow(int index) {
+            ints[index]++;
+            throw new MyException();
+        }
+
+        public int getInt(int index) {
+            return ints[index];
+        }
+
+        public long getLong(int index) {
+            return longs[index];
+        }
+
+        public int sum() {
+            int sum = 0;
+            for (int value : ints) {
+                sum += value;
+            }
+            return sum;
+        }
+
+        public String getName(int index) {
+            if (names == null) {
+                names = new String[ints.length];
+            }
+            return names[index];
+        }
+
+        public void setName(int index, String name) {
+            getName(index);
+            names[index] = name;
+        }
+
+        public int getNameCount() {
+            return names == null ? 0 : names.length;
+        }
+    }
+
+    static class MyException extends RuntimeException {
+    }
+
+    @TransactionalObject
+    public static class Excluded {
+        @NonTransactional
+        private final int[] values = new int[10];
+
+        public int get(int index) {
+            return values[index];
+        }
+    }
+
+    @TransactionalObject
+    public static class Escaping {
+        private final int[] values = new int[10];
+
+        public int[] getValues() {
+            return values;
+        }
+
+        public int get(int index) {
+            return values[index];
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package org.multiverse.stms.alpha.instrumentation.transactionalmethod;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.multiverse.annotations.NonTransactional;
+import org.multiverse.annotations.TransactionalMethod;
+import org.multiverse.annotations.TransactionalObject;
+import org.multiverse.api.Transaction;
+import org.multiverse.stms.alpha.transactions.AbstractAlphaTransactionConfiguration;
+
+import static org.junit.Assert.*;
+import static org.multiverse.api.StmUtils.retry;
+import static org.multiverse.api.ThreadLocalTransaction.clearThreadLocalTransaction;
+import static org.multiverse.api.ThreadLocalTransaction.getThreadLocalTransaction;
+
+/**
+ * Checks that transactional methods that never write are executed in a readonly transaction without
+ * speculative readonly detection.
+ *
+ * @author Peter Veentjer
+ */
+public class TransactionalMethod_readonlyInferenceTest {
+
+    @Before
+    public void setUp() {
+        clearThreadLocalTransaction();
+    }
+
+    @Test
+    public void whenOnlyReads_thenInferredReadonly() {
+        Counter counter = new Counter(10);
+
+        assertEquals(10, counter.get());
+        assertTrue(counter.lastTx.getConfiguration().isReadonly());
+        assertFalse(counter.lastTx.getConfiguration().isReadTrackingEnabled());
+        assertFalse(isSpeculativeReadonly(counter.lastTx));
+    }
+
+    @Test
+    public void whenCallingReadonlyMethodOfOtherObject_thenInferredReadonly() {
+        Counter counter = new Counter(10);
+        Pair pair = new Pair(counter);
+
+        assertEquals(10, pair.sum());
+        assertTrue(pair.lastTx.getConfiguration().isReadonly());
+        assertFalse(isSpeculativeReadonly(pair.lastTx));
+    }
+
+    @Test
+    public void whenCallingPrivateHelperThatWrites_thenNotInferred() {
+        Counter counter = new Counter(10);
+
+        counter.incViaHelper();
+
+        assertTrue(isSpeculativeReadonly(counter.lastTx));
+        assertEquals(11, counter.get());
+    }
+
+    @Test
+    public void whenWrites_thenNotInferred() {
+        Counter counter = new Counter(10);
+
+        counter.inc();
+
+        assertTrue(isSpeculativeReadonly(counter.lastTx));
+        assertEquals(11, counter.get());
+    }
+
+    @Test
+    public void whenExplicitlyConfigured_thenConfigurationUsed() {
+        Counter counter = new Counter(10);
+
+        counter.explicitUpdate();
+
+        assertFalse(counter.lastTx.getConfiguration().isReadonly());
+    }
+
+    @Test
+    public void whenRetryPossible_thenNotInferred() {
+        Counter counter = new Counter(10);
+
+        counter.awaitPositive();
+
+        assertTrue(isSpeculativeReadonly(counter.lastTx));
+    }
+
+    @Test
+    public void whenCallingReadonlyMethodThatTracksReads_thenNotInferred() {
+        Counter counter = new Counter(10);
+        Pair pair = new Pair(counter);
+
+        pair.awaitCounter(10);
+
+        assertTrue(isSpeculativeReadonly(pair.lastTx));
+    }
+
+    private static boolean isSpeculativeReadonly(Transaction tx) {
+        AbstractAlphaTransactionConfiguration config = (AbstractAlphaTransactionConfiguration) tx.getConfiguration();
+        return config.speculativeConfiguration.isSpeculativeReadonlyEnabled();
+    }
+
+    @TransactionalObject
+    public static final class Counter {
+
+        private int value;
+
+        @NonTransactional
+        Transaction lastTx;
+
+        public Counter(int value) {
+            this.value = value;
+        }
+
+        public int get() {
+            record();
+            return value;
+        }
+
+        public void inc() {
+            record();
+            value++;
+        }
+
+        public void incViaHelper() {
+            record();
+            set(value + 1);
+        }
+
+        private void set(int newValue) {
+            value = newValue;
+        }
+
+        @TransactionalMethod(readonly = false)
+        public void explicitUpdate() {
+            record();
+        }
+
+        public void awaitPositive() {
+            record();
+            if (value <= 0) {
+                retry();
+            }
+        }
+
+        @TransactionalMethod(readonly = true, trackReads = true)
+        public void await(int desired) {
+            if (value != desired) {
+                retry();
+            }
+        }
+
+        @NonTransactional
+        private void record() {
+            lastTx = getThreadLocalTransaction();
+        }
+    }
+
+    @TransactionalObject
+    public static final class Pair {
+
+        private final Counter counter;
+
+        @NonTransactional
+        Transaction lastTx;
+
+        public Pair(Counter counter) {
+            this.counter = counter;
+        }
+
+        public int sum() {
+            lastTx = getThreadLocalTransaction();
+            return counter.get();
+        }
+
+        public void awaitCounter(int desired) {
+            lastTx = getThreadLocalTransaction();
+            counter.await(desired);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package org.multiverse.stms.alpha.instrumentation.transactionalmethod;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.multiverse.annotations.NonTransactional;
+import org.multiverse.annotations.TransactionalMethod;
+import org.multiverse.annotations.TransactionalObject;
+import org.multiverse.api.Transaction;
+import org.multiverse.stms.alpha.transactions.readonly.ArrayReadonlyAlphaTransaction;
+import org.multiverse.stms.alpha.transactions.update.ArrayUpdateAlphaTransaction;
+import org.multiverse.stms.alpha.transactions.update.MonoUpdateAlphaTransaction;
+
+import static org.junit.Assert.assertEquals;
+import static org.multiverse.TestUtils.assertInstanceOf;
+import static org.multiverse.api.ThreadLocalTransaction.clearThreadLocalTransaction;
+import static org.multiverse.api.ThreadLocalTransaction.getThreadLocalTransaction;
+
+/**
+ * Checks that transactional methods with a statically known number of accessed transactional objects, start with
+ * the right transaction type instead of upgrading it after speculative failures.
+ *
+ * @author Peter Veentjer
+ */
+public class TransactionalMethod_sizeHintTest {
+
+    @Before
+    public void setUp() {
+        clearThreadLocalTransaction();
+    }
+
+    @Test
+    public void whenSingleObject_thenMonoTransaction() {
+        Account account = new Account(10);
+
+        account.deposit(5);
+
+        assertInstanceOf(account.lastTx, MonoUpdateAlphaTransaction.class);
+        assertEquals(15, account.getBalance());
+    }
+
+    @Test
+    public void whenTwoObjects_thenArrayTransaction() {
+        Account from = new Account(10);
+        Account to = new Account(0);
+
+        from.transfer(to, 4);
+
+        assertInstanceOf(from.lastTx, ArrayUpdateAlphaTransaction.class);
+        assertEquals(6, from.getBalance());
+        assertEquals(4, to.getBalance());
+    }
+
+    @Test
+    public void whenTwoObjectsRead_thenArrayTransaction() {
+        Account a = new Account(10);
+        Account b = new Account(20);
+
+        assertEquals(30, a.sum(b));
+        assertInstanceOf(a.lastTx, ArrayReadonlyAlphaTransaction.class);
+    }
+
+    @Test
+    public void whenStaticMethod() {
+        Account a = new Account(10);
+        Account b = new Account(20);
+        Account c = new Account(30);
+
+        Account.rotate(a, b, c);
+
+        assertInstanceOf(Account.lastStaticTx, ArrayUpdateAlphaTransaction.class);
+        assertEquals(20, a.getBalance());
+        assertEquals(30, b.getBalance());
+        assertEquals(10, c.getBalance());
+    }
+
+    @TransactionalObject
+    public static class Account {
+
+        @NonTransactional
+        static Transaction lastStaticTx;
+
+        private int balance;
+
+        @NonTransactional
+        Transaction lastTx;
+
+        public Account(int balance) {
+            this.balance = balance;
+        }
+
+        public int getBalance() {
+            return balance;
+        }
+
+        @TransactionalMethod(readonly = false)
+        public void deposit(int amount) {
+            lastTx = getThreadLocalTransaction();
+            balance += amount;
+        }
+
+        @TransactionalMethod(readonly = false)
+        public void transfer(Account to, int amount) {
+            lastTx = getThreadLocalTransaction();
+            balance -= amount;
+            to.balance += amount;
+        }
+
+        @TransactionalMethod(readonly = true, trackReads = true)
+        public int sum(Account other) {
+            lastTx = getThreadLocalTransaction();
+            return balance + other.balance;
+        }
+
+        @TransactionalMethod(readonly = false)
+        public static void rotate(Account a, Account b, Account c) {
+            lastStaticTx = getThreadLocalTransaction();
+            int first = a.balance;
+            a.balance = b.balance;
+            b.balance = c.balance;
+            c.balance = first;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package org.multiverse.stms.alpha.instrumentation.transactionalmethod;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.multiverse.annotations.TransactionalMethod;
+import org.multiverse.annotations.TransactionalObject;
+import org.multiverse.stms.alpha.AlphaStm;
+
+import static org.junit.Assert.assertEquals;
+import static org.multiverse.api.GlobalStmInstance.getGlobalStmInstance;
+import static org.multiverse.api.ThreadLocalTransaction.clearThreadLocalTransaction;
+
+/**
+ * Checks that the tranlocals that are cached in the local variables of a transactional method, don't change the
+ * outcome of the method.
+ *
+ * @author Peter Veentjer
+ */
+public class TransactionalMethod_tranlocalCachingTest {
+
+    private AlphaStm stm;
+
+    @Before
+    public void setUp() {
+        stm = (AlphaStm) getGlobalStmInstance();
+        clearThreadLocalTransaction();
+    }
+
+    @Test
+    public void whenReadRepeatedly() {
+        Value value = new Value(3);
+
+        long version = stm.getVersion();
+        assertEquals(30, new Reader().sum(value, 10));
+        assertEquals(version, stm.getVersion());
+    }
+
+    @Test
+    public void whenWrittenAndRead() {
+        Value value = new Value(3);
+
+        assertEquals(8, new Writer().incAndDouble(value));
+        assertEquals(4, value.get());
+    }
+
+    @Test
+    public void whenWrittenRepeatedly() {
+        Value value = new Value(0);
+
+        new Writer().incRepeatedly(value, 10);
+
+        assertEquals(10, value.get());
+    }
+
+    @Test
+    public void whenWrittenThroughAlias_thenWriteVisible() {
+        Value value = new Value(3);
+
+        assertEquals(4, new Writer().readWriteRead(value, value));
+        assertEquals(4, value.get());
+    }
+
+    @Test
+    public void whenWrittenThroughOtherMethod_thenWriteVisible() {
+        Value value = new Value(3);
+
+        assertEquals(4, new Writer().readIncRead(value));
+    }
+
+    @Test
+    public void whenLocalVariableReassigned() {
+        Node head = new Node(1, new Node(2, new Node(3, null)));
+
+        assertEquals(6, new Reader().sum(head));
+        new Writer().incAll(head);
+        assertEquals(9, new Reader().sum(head));
+    }
+
+    @Test
+    public void whenReceiverSelectedByCondition() {
+        Value a = new Value(1);
+        Value b = new Value(2);
+
+        assertEquals(1, new Reader().select(a, b, true));
+        assertEquals(2, new Reader().select(a, b, false));
+    }
+
+    @Test
+    public void whenCategory2Field() {
+        LongValue value = new LongValue(10);
+
+        assertEquals(30, new Writer().addTwice(value, 10));
+        assertEquals(30, value.get());
+    }
+
+    @Test
+    public void whenStaticMethod() {
+        Value value = new Value(3);
+
+        assertEquals(6, Writer.incStatic(value, 3));
+        assertEquals(6, value.get());
+    }
+
+    @TransactionalObject
+    public static class Value {
+        int value;
+
+        public Value(int value) {
+            this.value = value;
+        }
+
+        public int get() {
+            return value;
+        }
+
+        public void inc() {
+            value++;
+        }
+    }
+
+    @TransactionalObject
+    public static class LongValue {
+        long value;
+
+        public LongValue(long value) {
+            this.value = value;
+        }
+
+        public long get() {
+            return value;
+        }
+    }
+
+    @TransactionalObject
+    public static class Node {
+        int value;
+        Node next;
+
+        public Node(int value, Node next) {
+            this.value = value;
+            this.next = next;
+        }
+    }
+
+    public static class Reader {
+
+        @TransactionalMethod(readonly = true)
+        public int sum(Value value, int times) {
+            int result = 0;
+            for (int k = 0; k < times; k++) {
+                result += value.value;
+            }
+            return result;
+        }
+
+        @TransactionalMethod(readonly = true)
+        public int sum(Node node) {
+            int result = 0;
+            while (node != null) {
+                result += node.value;
+                node = node.next;
+            }
+            return result;
+        }
+
+        @TransactionalMethod(readonly = true)
+        public int select(Value a, Value b, boolean first) {
+            return (first ? a : b).value;
+        }
+    }
+
+    public static class Writer {
+
+        @TransactionalMethod
+        public int incAndDouble(Value value) {
+            value.value = value.value + 1;
+            return value.value + value.value;
+        }
+
+        @TransactionalMethod
+        public void incRepeatedly(Value value, int times) {
+            for (int k = 0; k < times; k++) {
+                value.value++;
+            }
+        }
+
+        @TransactionalMethod
+        public int readWriteRead(Value a, Value b) {
+            int before = a.value;
+            b.value = before + 1;
+            return a.value;
+        }
+
+        @TransactionalMethod
+        public int readIncRead(Value value) {
+            if (value.value < 0) {
+                return -1;
+            }
+            value.inc();
+            return value.value;
+        }
+
+        @TransactionalMethod
+        public void incAll(Node node) {
+            for (; node != null; node = node.next) {
+                node.value++;
+            }
+        }
+
+        @TransactionalMethod
+        public long addTwice(LongValue value, long amount) {
+            value.value += amount;
+            value.value += amount;
+            return value.value;
+        }
+
+        @TransactionalMethod
+        public static int incStatic(Value value, int times) {
+            for (int k = 0; k < times; k++) {
+                value.value++;
+            }
+            return value.value;
+        }
+    }
+}
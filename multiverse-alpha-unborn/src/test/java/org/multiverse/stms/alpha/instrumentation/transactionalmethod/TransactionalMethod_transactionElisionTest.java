@@ -0,0 +1,232 @@
+package org.multiverse.stms.alpha.instrumentation.transactionalmethod;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.multiverse.TestThread;
+import org.multiverse.annotations.TransactionalMethod;
+import org.multiverse.annotations.TransactionalObject;
+import org.multiverse.api.Transaction;
+import org.multiverse.stms.alpha.AlphaStm;
+import org.multiverse.stms.alpha.AlphaTransactionalObject;
+
+import static org.junit.Assert.*;
+import static org.multiverse.TestUtils.*;
+import static org.multiverse.api.GlobalStmInstance.getGlobalStmInstance;
+import static org.multiverse.api.StmUtils.retry;
+import static org.multiverse.api.ThreadLocalTransaction.clearThreadLocalTransaction;
+
+/**
+ * Checks that transactional methods that only access the state of 'this', and are executed without a transaction
+ * (so the transaction is elided), behave the same as when executed in a transaction.
+ *
+ * @author Peter Veentjer
+ */
+public class TransactionalMethod_transactionElisionTest {
+
+    private AlphaStm stm;
+
+    @Before
+    public void setUp() {
+        stm = (AlphaStm) getGlobalStmInstance();
+        clearThreadLocalTransaction();
+    }
+
+    @Test
+    public void whenRead_thenNoWrite() {
+        Counter counter = new Counter(10);
+
+        long version = stm.getVersion();
+        assertEquals(10, counter.get());
+        assertEquals(version, stm.getVersion());
+    }
+
+    @Test
+    public void whenUpdate() {
+        Counter counter = new Counter(10);
+
+        long version = stm.getVersion();
+        counter.inc();
+
+        assertEquals(version + 1, stm.getVersion());
+        assertEquals(11, counter.get());
+    }
+
+    @Test
+    public void whenUpdateWithoutChange_thenNoWrite() {
+        Counter counter = new Counter(10);
+
+        long version = stm.getVersion();
+        counter.set(10);
+
+        assertEquals(version, stm.getVersion());
+        assertEquals(10, counter.get());
+    }
+
+    @Test
+    public void whenCategory2Fields() {
+        Range range = new Range(10, 20);
+
+        range.shift(5);
+
+        assertEquals(15, range.getFrom());
+        assertEquals(25, range.getTo());
+        assertEquals(10, range.length());
+    }
+
+    @Test
+    public void whenExceptionThrown_thenNoChange() {
+        Counter counter = new Counter(10);
+
+        long version = stm.getVersion();
+        try {
+            counter.add(-1);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+
+        assertEquals(version, stm.getVersion());
+        assertEquals(10, counter.get());
+    }
+
+    @Test
+    public void whenCalledInTransaction_thenPartOfTransaction() {
+        Counter counter = new Counter(10);
+
+        try {
+            new Updater().incAndFail(counter);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+
+        assertEquals(10, counter.get());
+    }
+
+    @Test
+    public void whenUpdate_thenLockedByRealTransaction() {
+        Transaction lockOwner = stm.getAtomicLockOwner();
+        Counter counter = new Counter(10);
+
+        counter.inc();
+
+        assertEquals(11, counter.get());
+        assertNull(((AlphaTransactionalObject) ((Object) counter)).___getLockOwner());
+        assertSame(stm, lockOwner.getStm());
+        assertTrue(lockOwner.getConfiguration().isReadonly());
+        assertEquals("AtomicLockOwner", lockOwner.getConfiguration().getFamilyName());
+        assertNotNull(lockOwner.getTransactionFactory());
+    }
+
+    @Test
+    public void whenConcurrentUpdates_thenNoUpdatesLost() {
+        final Counter counter = new Counter(0);
+        final int incCount = 10000;
+
+        TestThread[] threads = new TestThread[4];
+        for (int k = 0; k < threads.length; k++) {
+            threads[k] = new TestThread("IncThread-" + k) {
+                @Override
+                public void doRun() throws Exception {
+                    for (int l = 0; l < incCount; l++) {
+                        counter.inc();
+                    }
+                }
+            };
+        }
+
+        startAll(threads);
+        joinAll(threads);
+
+        assertEquals(threads.length * incCount, counter.get());
+    }
+
+    @Test
+    public void whenWaitingTransaction_thenNotified() {
+        final Counter counter = new Counter(0);
+
+        TestThread waiter = new TestThread("WaitThread") {
+            @Override
+            public void doRun() throws Exception {
+                counter.await(1);
+            }
+        };
+
+        waiter.start();
+        sleepMs(500);
+        assertAlive(waiter);
+
+        counter.inc();
+
+        joinAll(waiter);
+    }
+
+    @TransactionalObject
+    public static class Counter {
+        private int value;
+
+        public Counter(int value) {
+            this.value = value;
+        }
+
+        public int get() {
+            return value;
+        }
+
+        public void inc() {
+            value++;
+        }
+
+        public void set(int value) {
+            this.value = value;
+        }
+
+        public void add(int amount) {
+            if (amount < 0) {
+                throw new IllegalArgumentException("amount can't be smaller than 0, amount was " + amount);
+            }
+            value += amount;
+        }
+
+        public void await(int expected) {
+            if (value != expected) {
+                retry();
+            }
+        }
+    }
+
+    @TransactionalObject
+    public static class Range {
+        private long from;
+        private long to;
+
+        public Range(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        public long getFrom() {
+            return from;
+        }
+
+        public long getTo() {
+            return to;
+        }
+
+        public long length() {
+            return to - from;
+        }
+
+        public void shift(long delta) {
+            from += delta;
+            to += delta;
+        }
+    }
+
+    public static class Updater {
+
+        @TransactionalMethod
+        public void incAndFail(Counter counter) {
+            counter.inc();
+            throw new IllegalStateException();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package org.multiverse.stms.alpha.programmatic;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.multiverse.api.Stm;
+import org.multiverse.api.Transaction;
+import org.multiverse.api.TransactionFactory;
+import org.multiverse.api.exceptions.LockNotFreeWriteConflict;
+import org.multiverse.api.exceptions.NoTransactionFoundException;
+import org.multiverse.api.exceptions.ReadonlyException;
+
+import static org.junit.Assert.*;
+import static org.multiverse.api.GlobalStmInstance.getGlobalStmInstance;
+import static org.multiverse.api.ThreadLocalTransaction.clearThreadLocalTransaction;
+import static org.multiverse.api.ThreadLocalTransaction.setThreadLocalTransaction;
+
+/**
+ * @author Peter Veentjer
+ */
+public class AlphaProgrammaticRef_ensureTest {
+    private Stm stm;
+    private TransactionFactory updateTxFactory;
+    private TransactionFactory readonlyTxFactory;
+
+    @Before
+    public void setUp() {
+        stm = getGlobalStmInstance();
+        updateTxFactory = stm.getTransactionFactoryBuilder()
+                .setReadonly(false)
+                .setSpeculativeConfigurationEnabled(false)
+                .build();
+        readonlyTxFactory = stm.getTransactionFactoryBuilder()
+                .setReadonly(true)
+                .setSpeculativeConfigurationEnabled(false)
+                .build();
+        clearThreadLocalTransaction();
+    }
+
+    @After
+    public void tearDown() {
+        clearThreadLocalTransaction();
+    }
+
+    @Test(expected = NoTransactionFoundException.class)
+    public void whenNoTransaction_thenNoTransactionFoundException() {
+        AlphaProgrammaticRef<String> ref = new AlphaProgrammaticRef<String>("foo");
+        ref.ensure();
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void whenNullTransaction_thenNullPointerException() {
+        AlphaProgrammaticRef<String> ref = new AlphaProgrammaticRef<String>("foo");
+        ref.ensure(null);
+    }
+
+    @Test
+    public void whenReadonlyTransaction_thenReadonlyException() {
+        AlphaProgrammaticRef<String> ref = new AlphaProgrammaticRef<String>("foo");
+
+        Transaction tx = readonlyTxFactory.start();
+        try {
+            ref.ensure(tx);
+            fail();
+        } catch (ReadonlyException expected) {
+        }
+
+        assertNull(ref.___getLockOwner());
+    }
+
+    @Test
+    public void whenThreadLocalTransaction_thenLocked() {
+        AlphaProgrammaticRef<String> ref = new AlphaProgrammaticRef<String>("foo");
+
+        Transaction tx = updateTxFactory.start();
+        setThreadLocalTransaction(tx);
+        ref.ensure();
+
+        assertSame(tx, ref.___getLockOwner());
+        tx.abort();
+        assertNull(ref.___getLockOwner());
+    }
+
+    @Test
+    public void whenEnsured_thenOtherUpdatesFail() {
+        AlphaProgrammaticRef<String> ref = new AlphaProgrammaticRef<String>("foo");
+
+        Transaction tx = updateTxFactory.start();
+        ref.ensure(tx);
+
+        Transaction otherTx = updateTxFactory.start();
+        ref.set(otherTx, "bar");
+        try {
+            otherTx.commit();
+            fail();
+        } catch (LockNotFreeWriteConflict expected) {
+        }
+
+        ref.set(tx, "baz");
+        tx.commit();
+
+        assertNull(ref.___getLockOwner());
+        assertEquals("baz", ref.atomicGet());
+    }
+}
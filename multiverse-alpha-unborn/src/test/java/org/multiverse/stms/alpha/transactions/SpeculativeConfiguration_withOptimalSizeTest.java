@@ -0,0 +1,48 @@
+package org.multiverse.stms.alpha.transactions;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Veentjer
+ */
+public class SpeculativeConfiguration_withOptimalSizeTest {
+
+    @Test
+    public void whenTooSmall_thenIllegalArgumentException() {
+        SpeculativeConfiguration config = new SpeculativeConfiguration(100);
+
+        try {
+            config.withOptimalSize(0);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+
+        assertEquals(1, config.getOptimalSize());
+    }
+
+    @Test
+    public void whenSuccess() {
+        SpeculativeConfiguration config = new SpeculativeConfiguration(true, false, true, 100);
+
+        SpeculativeConfiguration result = config.withOptimalSize(10);
+
+        assertNotSame(config, result);
+        assertEquals(1, config.getOptimalSize());
+        assertEquals(10, result.getOptimalSize());
+        assertTrue(result.isSpeculativeReadonlyEnabled());
+        assertFalse(result.isSpeculativeNoReadTrackingEnabled());
+        assertTrue(result.isSpeculativeSizeEnabled());
+        assertEquals(100, result.getMaximumArraySize());
+    }
+
+    @Test
+    public void whenSizeFailureSignalled_thenStillGrows() {
+        SpeculativeConfiguration config = new SpeculativeConfiguration(100).withOptimalSize(3);
+
+        config.signalSpeculativeSizeFailure(3);
+
+        assertEquals(5, config.getOptimalSize());
+    }
+}
@@ -0,0 +1,57 @@
+package org.multiverse.stms.alpha.transactions.readonly;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.multiverse.stms.alpha.AlphaStm;
+import org.multiverse.stms.alpha.AlphaStmConfig;
+import org.multiverse.stms.alpha.AlphaTranlocal;
+import org.multiverse.stms.alpha.manualinstrumentation.ManualRef;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import static org.multiverse.TestUtils.assertIsActive;
+import static org.multiverse.TestUtils.assertIsNew;
+
+public class RelaxedReadonlyAlphaTransaction_miscTest {
+
+    private AlphaStm stm;
+    private AlphaStmConfig stmConfig;
+
+    @Before
+    public void setUp() {
+        stmConfig = AlphaStmConfig.createDebugConfig();
+        stmConfig.maxRetries = 10;
+        stm = new AlphaStm(stmConfig);
+    }
+
+    public RelaxedReadonlyAlphaTransaction createSutTransaction() {
+        ReadonlyConfiguration config = new ReadonlyConfiguration(stmConfig.clock, true);
+        return new RelaxedReadonlyAlphaTransaction(config);
+    }
+
+    @Test
+    public void whenAttach_thenUnsupportedOperationException() {
+        ManualRef ref = new ManualRef(stm);
+        AlphaTranlocal committed = ref.___load();
+
+        RelaxedReadonlyAlphaTransaction tx = createSutTransaction();
+        try {
+            tx.attach(committed);
+            fail();
+        } catch (UnsupportedOperationException expected) {
+        }
+
+        assertIsNew(tx);
+    }
+
+    @Test
+    public void whenReadTrackingEnabledAndOpenedForRead_thenNothingAttached() {
+        ManualRef ref = new ManualRef(stm);
+
+        RelaxedReadonlyAlphaTransaction tx = createSutTransaction();
+        tx.openForRead(ref);
+
+        assertNull(tx.findAttached(ref));
+        assertIsActive(tx);
+    }
+}
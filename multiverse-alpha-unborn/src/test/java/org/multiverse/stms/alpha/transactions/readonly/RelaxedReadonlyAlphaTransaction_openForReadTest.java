@@ -0,0 +1,117 @@
+package org.multiverse.stms.alpha.transactions.readonly;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.multiverse.api.Transaction;
+import org.multiverse.api.exceptions.UncommittedReadConflict;
+import org.multiverse.stms.alpha.AlphaStm;
+import org.multiverse.stms.alpha.AlphaStmConfig;
+import org.multiverse.stms.alpha.AlphaTranlocal;
+import org.multiverse.stms.alpha.manualinstrumentation.ManualRef;
+import org.multiverse.stms.alpha.manualinstrumentation.ManualRefTranlocal;
+import org.multiverse.stms.alpha.transactions.AlphaTransaction;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.multiverse.TestUtils.assertIsActive;
+
+/**
+ * @author Peter Veentjer
+ */
+public class RelaxedReadonlyAlphaTransaction_openForReadTest {
+
+    private AlphaStm stm;
+    private AlphaStmConfig stmConfig;
+
+    @Before
+    public void setUp() {
+        stmConfig = AlphaStmConfig.createDebugConfig();
+        stmConfig.maxRetries = 10;
+        stm = new AlphaStm(stmConfig);
+    }
+
+    public RelaxedReadonlyAlphaTransaction createSutTransaction() {
+        ReadonlyConfiguration config = new ReadonlyConfiguration(stmConfig.clock, false)
+                .withMaxRetries(10);
+        return new RelaxedReadonlyAlphaTransaction(config);
+    }
+
+    @Test
+    public void whenOpenedForRead_thenNotLockTxObjects() {
+        ManualRef ref = new ManualRef(stm);
+
+        AlphaTransaction tx = createSutTransaction();
+        ref.resetLockInfo();
+        tx.openForRead(ref);
+
+        ref.assertNoLocksReleased();
+        ref.assertNoLockAcquired();
+    }
+
+    @Test
+    public void openedForReadWithNull_thenNullReturned() {
+        AlphaTransaction tx = createSutTransaction();
+        AlphaTranlocal result = tx.openForRead(null);
+        assertNull(result);
+    }
+
+    @Test
+    public void whenNotCommittedBefore_thenUncommittedReadConflict() {
+        ManualRef ref = ManualRef.createUncommitted();
+
+        AlphaTransaction tx = createSutTransaction();
+        try {
+            tx.openForRead(ref);
+            fail();
+        } catch (UncommittedReadConflict expected) {
+        }
+
+        assertIsActive(tx);
+    }
+
+    @Test
+    public void whenVersionTooNew_thenMostRecentCommitReturned() {
+        ManualRef ref = new ManualRef(stm, 1);
+
+        AlphaTransaction tx = createSutTransaction();
+        tx.start();
+
+        //do a conflicting update
+        ref.set(stm, 10);
+
+        ManualRefTranlocal found = (ManualRefTranlocal) tx.openForRead(ref);
+        assertSame(ref.___load(), found);
+        assertEquals(10, found.value);
+        assertIsActive(tx);
+    }
+
+    @Test
+    public void whenLockedAndVersionTooOld_thenNoReadConflict() {
+        ManualRef ref = new ManualRef(stm, 1);
+        AlphaTranlocal committed = ref.___load();
+
+        Transaction owner = mock(Transaction.class);
+        ref.___tryLock(owner);
+
+        stm.getClock().tick();
+
+        AlphaTransaction tx = createSutTransaction();
+        AlphaTranlocal found = tx.openForRead(ref);
+
+        assertSame(committed, found);
+        assertIsActive(tx);
+    }
+
+    @Test
+    public void whenReadTwice_thenNotTracked() {
+        ManualRef ref = new ManualRef(stm, 1);
+
+        AlphaTransaction tx = createSutTransaction();
+        tx.openForRead(ref);
+
+        ref.set(stm, 2);
+
+        ManualRefTranlocal found = (ManualRefTranlocal) tx.openForRead(ref);
+        assertEquals(2, found.value);
+    }
+}
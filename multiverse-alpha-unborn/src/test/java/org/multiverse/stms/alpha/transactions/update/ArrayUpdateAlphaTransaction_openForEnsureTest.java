@@ -0,0 +1,218 @@
+package org.multiverse.stms.alpha.transactions.update;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.multiverse.api.Transaction;
+import org.multiverse.api.exceptions.LockNotFreeWriteConflict;
+import org.multiverse.api.exceptions.OptimisticLockFailedWriteConflict;
+import org.multiverse.stms.alpha.AlphaStm;
+import org.multiverse.stms.alpha.AlphaStmConfig;
+import org.multiverse.stms.alpha.AlphaTranlocal;
+import org.multiverse.stms.alpha.manualinstrumentation.ManualRef;
+import org.multiverse.stms.alpha.manualinstrumentation.ManualRefTranlocal;
+import org.multiverse.stms.alpha.transactions.AlphaTransaction;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.multiverse.TestUtils.*;
+
+public class ArrayUpdateAlphaTransaction_openForEnsureTest {
+
+    private AlphaStmConfig stmConfig;
+    private AlphaStm stm;
+
+    @Before
+    public void setUp() {
+        stmConfig = AlphaStmConfig.createDebugConfig();
+        stmConfig.maxRetries = 10;
+        stm = new AlphaStm(stmConfig);
+    }
+
+    public AlphaTransaction createSutTransaction() {
+        UpdateConfiguration config = new UpdateConfiguration(stmConfig.clock);
+        return new ArrayUpdateAlphaTransaction(config, 10);
+    }
+
+    @Test
+    public void whenNullTxObject_thenNullPointerException() {
+        AlphaTransaction tx = createSutTransaction();
+        tx.start();
+
+        try {
+            tx.openForEnsure(null);
+            fail();
+        } catch (NullPointerException expected) {
+        }
+
+        assertIsActive(tx);
+    }
+
+    @Test
+    public void whenFirstTime_thenOpenedForWriteAndLocked() {
+        ManualRef ref = new ManualRef(stm, 10);
+        AlphaTranlocal committed = ref.___load();
+
+        AlphaTransaction tx = createSutTransaction();
+        AlphaTranlocal found = tx.openForEnsure(ref);
+
+        assertTrue(found.isEnsured());
+        assertSame(committed, found.getOrigin());
+        assertSame(tx, ref.___getLockOwner());
+        assertIsActive(tx);
+    }
+
+    @Test
+    public void whenAlreadyOpenedForRead_thenUpgradedAndLocked() {
+        ManualRef ref = new ManualRef(stm, 10);
+        AlphaTranlocal committed = ref.___load();
+
+        AlphaTransaction tx = createSutTransaction();
+        tx.openForRead(ref);
+        AlphaTranlocal found = tx.openForEnsure(ref);
+
+        assertTrue(found.isEnsured());
+        assertSame(committed, found.getOrigin());
+        assertSame(tx, ref.___getLockOwner());
+        assertSame(found, tx.openForWrite(ref));
+    }
+
+    @Test
+    public void whenAlreadyEnsured_thenSameTranlocalReturned() {
+        ManualRef ref = new ManualRef(stm, 10);
+
+        AlphaTransaction tx = createSutTransaction();
+        AlphaTranlocal first = tx.openForEnsure(ref);
+        AlphaTranlocal second = tx.openForEnsure(ref);
+
+        assertSame(first, second);
+        assertSame(tx, ref.___getLockOwner());
+    }
+
+    @Test
+    public void whenOpenedForConstruction_thenNotLocked() {
+        AlphaTransaction tx = createSutTransaction();
+        ManualRef ref = new ManualRef(tx, 10);
+
+        AlphaTranlocal found = tx.openForEnsure(ref);
+
+        assertFalse(found.isEnsured());
+        assertNull(ref.___getLockOwner());
+    }
+
+    @Test
+    public void whenLockedByOther_thenLockNotFreeWriteConflict() {
+        ManualRef ref = new ManualRef(stm, 10);
+
+        Transaction owner = mock(Transaction.class);
+        ref.___tryLock(owner);
+
+        AlphaTransaction tx = createSutTransaction();
+        try {
+            tx.openForEnsure(ref);
+            fail();
+        } catch (LockNotFreeWriteConflict expected) {
+        }
+
+        assertSame(owner, ref.___getLockOwner());
+    }
+
+    @Test
+    public void whenChangedAfterRead_thenOptimisticLockFailedWriteConflict() {
+        ManualRef ref = new ManualRef(stm, 10);
+
+        AlphaTransaction tx = createSutTransaction();
+        tx.openForRead(ref);
+
+        //a conflicting update
+        ref.inc(stm);
+
+        try {
+            tx.openForEnsure(ref);
+            fail();
+        } catch (OptimisticLockFailedWriteConflict expected) {
+        }
+
+        assertNull(ref.___getLockOwner());
+    }
+
+    @Test
+    public void whenEnsured_thenOtherWriterFailsToCommit() {
+        ManualRef ref = new ManualRef(stm, 10);
+
+        AlphaTransaction tx = createSutTransaction();
+        tx.openForEnsure(ref);
+
+        AlphaTransaction otherTx = createSutTransaction();
+        ref.inc(otherTx);
+        try {
+            otherTx.commit();
+            fail();
+        } catch (LockNotFreeWriteConflict expected) {
+        }
+
+        assertIsAborted(otherTx);
+        assertSame(tx, ref.___getLockOwner());
+        assertEquals(10, ref.get(stm));
+    }
+
+    @Test
+    public void whenEnsuredAndChanged_thenCommitReleasesLock() {
+        ManualRef ref = new ManualRef(stm, 10);
+
+        AlphaTransaction tx = createSutTransaction();
+        ManualRefTranlocal tranlocal = (ManualRefTranlocal) tx.openForEnsure(ref);
+        tranlocal.value++;
+
+        long version = stm.getVersion();
+        tx.commit();
+
+        assertIsCommitted(tx);
+        assertEquals(version + 1, stm.getVersion());
+        assertNull(ref.___getLockOwner());
+        assertEquals(11, ref.get(stm));
+    }
+
+    @Test
+    public void whenEnsuredButNotChanged_thenCommitReleasesLock() {
+        ManualRef ref = new ManualRef(stm, 10);
+        AlphaTranlocal committed = ref.___load();
+
+        AlphaTransaction tx = createSutTransaction();
+        tx.openForEnsure(ref);
+
+        long version = stm.getVersion();
+        tx.commit();
+
+        assertIsCommitted(tx);
+        assertEquals(version, stm.getVersion());
+        assertNull(ref.___getLockOwner());
+        assertSame(committed, ref.___load());
+    }
+
+    @Test
+    public void whenEnsuredAndAborted_thenLockReleased() {
+        ManualRef ref = new ManualRef(stm, 10);
+        AlphaTranlocal committed = ref.___load();
+
+        AlphaTransaction tx = createSutTransaction();
+        ManualRefTranlocal tranlocal = (ManualRefTranlocal) tx.openForEnsure(ref);
+        tranlocal.value++;
+        tx.abort();
+
+        assertIsAborted(tx);
+        assertNull(ref.___getLockOwner());
+        assertSame(committed, ref.___load());
+    }
+
+    @Test
+    public void whenEnsuredAndReset_thenLockReleased() {
+        ManualRef ref = new ManualRef(stm, 10);
+
+        AlphaTransaction tx = createSutTransaction();
+        tx.openForEnsure(ref);
+        tx.reset();
+
+        assertIsNew(tx);
+        assertNull(ref.___getLockOwner());
+    }
+}
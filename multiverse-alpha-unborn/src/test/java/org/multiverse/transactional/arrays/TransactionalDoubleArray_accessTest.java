@@ -0,0 +1,86 @@
+package org.multiverse.transactional.arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.multiverse.api.ThreadLocalTransaction.clearThreadLocalTransaction;
+
+public class TransactionalDoubleArray_accessTest {
+
+    private static final double DELTA = 0;
+
+    @Before
+    public void setUp() {
+        clearThreadLocalTransaction();
+    }
+
+    @Test(expected = NegativeArraySizeException.class)
+    public void construction_whenNegativeLength_thenNegativeArraySizeException() {
+        new TransactionalDoubleArray(-1);
+    }
+
+    @Test
+    public void construction_whenCopied() {
+        TransactionalDoubleArray array = new TransactionalDoubleArray(new double[]{1.5, 2.5, 3.5});
+
+        assertEquals(3, array.length());
+        assertArrayEquals(new double[]{1.5, 2.5, 3.5}, array.toArray(), DELTA);
+    }
+
+    @Test(expected = ArrayIndexOutOfBoundsException.class)
+    public void set_whenIndexTooBig_thenArrayIndexOutOfBoundsException() {
+        TransactionalDoubleArray array = new TransactionalDoubleArray(5);
+        array.set(5, 10);
+    }
+
+    @Test
+    public void set_whenOverwrite() {
+        TransactionalDoubleArray array = new TransactionalDoubleArray(20);
+        array.set(12, 10.5);
+
+        double result = array.set(12, 20.5);
+        assertEquals(10.5, result, DELTA);
+        assertEquals(20.5, array.get(12), DELTA);
+        assertEquals(0, array.get(11), DELTA);
+        assertEquals(0, array.get(13), DELTA);
+    }
+
+    @Test
+    public void set_whenNegativeZero_thenStored() {
+        TransactionalDoubleArray array = new TransactionalDoubleArray(1);
+        array.set(0, -0.0);
+
+        assertEquals(Double.doubleToLongBits(-0.0), Double.doubleToLongBits(array.get(0)));
+    }
+
+    @Test
+    public void atomicCompareAndSet_whenNaNExpected() {
+        TransactionalDoubleArray array = new TransactionalDoubleArray(new double[]{Double.NaN});
+
+        assertTrue(array.atomicCompareAndSet(0, Double.NaN, 1));
+        assertEquals(1, array.atomicGet(0), DELTA);
+    }
+
+    @Test
+    public void atomicCompareAndSet_whenZeroExpectedAndNegativeZeroFound() {
+        TransactionalDoubleArray array = new TransactionalDoubleArray(new double[]{-0.0});
+
+        assertFalse(array.atomicCompareAndSet(0, 0.0, 1));
+    }
+
+    @Test
+    public void atomicInc() {
+        TransactionalDoubleArray array = new TransactionalDoubleArray(new double[]{1, 2});
+
+        assertEquals(2.5, array.atomicInc(1, 0.5), DELTA);
+        assertArrayEquals(new double[]{1, 2.5}, array.toArray(), DELTA);
+    }
+
+    @Test
+    public void testToString() {
+        TransactionalDoubleArray array = new TransactionalDoubleArray(new double[]{1, 2.5});
+
+        assertEquals("[1.0, 2.5]", array.toString());
+    }
+}
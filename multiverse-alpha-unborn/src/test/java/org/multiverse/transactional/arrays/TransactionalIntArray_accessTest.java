@@ -0,0 +1,67 @@
+package org.multiverse.transactional.arrays;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class TransactionalIntArray_accessTest {
+
+    @Test(expected = NegativeArraySizeException.class)
+    public void construction_whenNegativeLength_thenNegativeArraySizeException() {
+        new TransactionalIntArray(-1);
+    }
+
+    @Test
+    public void construction_whenCopied() {
+        TransactionalIntArray array = new TransactionalIntArray(new int[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10});
+
+        assertEquals(10, array.length());
+        assertArrayEquals(new int[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10}, array.toArray());
+    }
+
+    @Test(expected = ArrayIndexOutOfBoundsException.class)
+    public void set_whenIndexTooSmall_thenArrayIndexOutOfBoundsException() {
+        TransactionalIntArray array = new TransactionalIntArray(5);
+        array.set(-1, 10);
+    }
+
+    @Test(expected = ArrayIndexOutOfBoundsException.class)
+    public void set_whenIndexTooBig_thenArrayIndexOutOfBoundsException() {
+        TransactionalIntArray array = new TransactionalIntArray(5);
+        array.set(5, 10);
+    }
+
+    @Test
+    public void set_whenOverwrite() {
+        TransactionalIntArray array = new TransactionalIntArray(20);
+        array.set(12, 10);
+
+        int result = array.set(12, 20);
+        assertEquals(10, result);
+        assertEquals(20, array.get(12));
+        assertEquals(0, array.get(11));
+        assertEquals(0, array.get(13));
+    }
+
+    @Test
+    public void get_readingEmptyCell() {
+        TransactionalIntArray array = new TransactionalIntArray(5);
+
+        assertEquals(0, array.get(3));
+    }
+
+    @Test(expected = ArrayIndexOutOfBoundsException.class)
+    public void get_whenIndexTooBig_thenArrayIndexOutOfBoundsException() {
+        TransactionalIntArray array = new TransactionalIntArray(9);
+        //the last stripe has room for more elements than the length of the array.
+        array.get(9);
+    }
+
+    @Test
+    public void testToString() {
+        TransactionalIntArray array = new TransactionalIntArray(new int[]{1, 2, 3});
+
+        assertEquals("[1, 2, 3]", array.toString());
+    }
+}
@@ -0,0 +1,143 @@
+package org.multiverse.transactional.arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.multiverse.TestThread;
+import org.multiverse.api.Stm;
+import org.multiverse.api.Transaction;
+
+import static org.junit.Assert.*;
+import static org.multiverse.TestUtils.*;
+import static org.multiverse.api.GlobalStmInstance.getGlobalStmInstance;
+import static org.multiverse.api.ThreadLocalTransaction.clearThreadLocalTransaction;
+import static org.multiverse.api.ThreadLocalTransaction.setThreadLocalTransaction;
+
+public class TransactionalLongArray_atomicTest {
+    private Stm stm;
+
+    @Before
+    public void setUp() {
+        stm = getGlobalStmInstance();
+        clearThreadLocalTransaction();
+    }
+
+    @After
+    public void tearDown() {
+        clearThreadLocalTransaction();
+    }
+
+    @Test(expected = ArrayIndexOutOfBoundsException.class)
+    public void atomicGet_whenIndexTooBig_thenArrayIndexOutOfBoundsException() {
+        TransactionalLongArray array = new TransactionalLongArray(9);
+        array.atomicGet(9);
+    }
+
+    @Test
+    public void atomicSet() {
+        TransactionalLongArray array = new TransactionalLongArray(20);
+
+        long version = stm.getVersion();
+        long old = array.atomicSet(12, 10);
+
+        assertEquals(0, old);
+        assertEquals(version + 1, stm.getVersion());
+        assertEquals(10, array.atomicGet(12));
+        assertEquals(0, array.atomicGet(11));
+        assertEquals(0, array.atomicGet(13));
+    }
+
+    @Test
+    public void atomicSet_whenNoChange_thenNoCommit() {
+        TransactionalLongArray array = new TransactionalLongArray(new long[]{1, 2, 3});
+
+        long version = stm.getVersion();
+        long old = array.atomicSet(1, 2);
+
+        assertEquals(2, old);
+        assertEquals(version, stm.getVersion());
+    }
+
+    @Test
+    public void atomicCompareAndSet_whenExpectedValueFound() {
+        TransactionalLongArray array = new TransactionalLongArray(new long[]{1, 2, 3});
+
+        long version = stm.getVersion();
+        boolean result = array.atomicCompareAndSet(1, 2, 20);
+
+        assertTrue(result);
+        assertEquals(version + 1, stm.getVersion());
+        assertEquals(20, array.atomicGet(1));
+    }
+
+    @Test
+    public void atomicCompareAndSet_whenExpectedValueNotFound() {
+        TransactionalLongArray array = new TransactionalLongArray(new long[]{1, 2, 3});
+
+        long version = stm.getVersion();
+        boolean result = array.atomicCompareAndSet(1, 10, 20);
+
+        assertFalse(result);
+        assertEquals(version, stm.getVersion());
+        assertEquals(2, array.atomicGet(1));
+    }
+
+    @Test
+    public void atomicInc() {
+        TransactionalLongArray array = new TransactionalLongArray(new long[]{1, 2, 3});
+
+        long result = array.atomicInc(2, -5);
+
+        assertEquals(-2, result);
+        assertArrayEquals(new long[]{1, 2, -2}, array.toArray());
+    }
+
+    @Test
+    public void whenActiveTransactionAvailable_thenIgnored() {
+        TransactionalLongArray array = new TransactionalLongArray(10);
+
+        Transaction tx = stm.getTransactionFactoryBuilder()
+                .setReadonly(false)
+                .setSpeculativeConfigurationEnabled(false)
+                .build()
+                .start();
+        setThreadLocalTransaction(tx);
+
+        array.set(5, 10);
+        array.atomicSet(6, 20);
+
+        assertEquals(0, array.atomicGet(5));
+        assertEquals(20, array.atomicGet(6));
+        assertIsActive(tx);
+
+        tx.abort();
+        clearThreadLocalTransaction();
+        assertArrayEquals(new long[]{0, 0, 0, 0, 0, 0, 20, 0, 0, 0}, array.toArray());
+    }
+
+    @Test
+    public void whenConcurrentAtomicIncOnSameStripe_thenNoUpdatesLost() {
+        final TransactionalLongArray array = new TransactionalLongArray(TransactionalLongArray.STRIPE_LENGTH);
+        final int incCount = 10000;
+
+        TestThread[] threads = new TestThread[TransactionalLongArray.STRIPE_LENGTH];
+        for (int k = 0; k < threads.length; k++) {
+            final int index = k;
+            threads[k] = new TestThread("IncThread-" + k) {
+                @Override
+                public void doRun() {
+                    for (int l = 0; l < incCount; l++) {
+                        array.atomicInc(index, 1);
+                    }
+                }
+            };
+        }
+
+        startAll(threads);
+        joinAll(threads);
+
+        for (int k = 0; k < threads.length; k++) {
+            assertEquals(incCount, array.atomicGet(k));
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package org.multiverse.transactional.arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.multiverse.api.Stm;
+import org.multiverse.api.TransactionFactory;
+import org.multiverse.stms.alpha.AlphaTranlocal;
+import org.multiverse.stms.alpha.AlphaTransactionalObject;
+import org.multiverse.stms.alpha.transactions.AlphaTransaction;
+
+import static org.junit.Assert.*;
+import static org.multiverse.api.GlobalStmInstance.getGlobalStmInstance;
+import static org.multiverse.api.ThreadLocalTransaction.clearThreadLocalTransaction;
+import static org.multiverse.api.ThreadLocalTransaction.setThreadLocalTransaction;
+import static org.multiverse.transactional.arrays.TransactionalLongArray.STRIPE_LENGTH;
+
+public class TransactionalLongArray_setTest {
+    private Stm stm;
+    private TransactionFactory txFactory;
+
+    @Before
+    public void setUp() {
+        stm = getGlobalStmInstance();
+        txFactory = stm.getTransactionFactoryBuilder()
+                .setSpeculativeConfigurationEnabled(false)
+                .setReadonly(false)
+                .build();
+        clearThreadLocalTransaction();
+    }
+
+    @After
+    public void tearDown() {
+        clearThreadLocalTransaction();
+    }
+
+    @Test
+    public void whenManyWritesToSameStripe_thenStripeCopiedOnce() {
+        TransactionalLongArray array = new TransactionalLongArray(STRIPE_LENGTH * 2);
+        AlphaTransactionalObject stripe = (AlphaTransactionalObject) ((Object) array.stripes[0]);
+
+        AlphaTransaction tx = (AlphaTransaction) txFactory.start();
+        setThreadLocalTransaction(tx);
+        array.set(0, 1);
+        AlphaTranlocal copy = tx.openForWrite(stripe);
+
+        for (int k = 1; k < STRIPE_LENGTH; k++) {
+            array.set(k, k + 1);
+            assertSame(copy, tx.openForWrite(stripe));
+        }
+
+        long version = stm.getVersion();
+        tx.commit();
+        clearThreadLocalTransaction();
+
+        assertEquals(version + 1, stm.getVersion());
+        assertSame(copy, stripe.___load());
+        assertArrayEquals(new long[]{1, 2, 3, 4, 5, 6, 7, 8, 0}, array.toArray(0, STRIPE_LENGTH + 1));
+    }
+
+    @Test
+    public void whenNoChange_thenStripeNotCopied() {
+        TransactionalLongArray array = new TransactionalLongArray(new long[]{1, 2, 3});
+        AlphaTransactionalObject stripe = (AlphaTransactionalObject) ((Object) array.stripes[0]);
+        AlphaTranlocal committed = stripe.___load();
+
+        long version = stm.getVersion();
+        assertEquals(2, array.set(1, 2));
+
+        assertEquals(version, stm.getVersion());
+        assertSame(committed, stripe.___load());
+    }
+}
@@ -0,0 +1,130 @@
+package org.multiverse.transactional.arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.multiverse.api.Stm;
+import org.multiverse.api.Transaction;
+import org.multiverse.api.TransactionFactory;
+import org.multiverse.api.exceptions.OptimisticLockFailedWriteConflict;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
+import static org.multiverse.api.GlobalStmInstance.getGlobalStmInstance;
+import static org.multiverse.api.ThreadLocalTransaction.clearThreadLocalTransaction;
+import static org.multiverse.api.ThreadLocalTransaction.setThreadLocalTransaction;
+import static org.multiverse.transactional.arrays.TransactionalLongArray.STRIPE_LENGTH;
+
+public class TransactionalLongArray_toArrayTest {
+    private Stm stm;
+    private TransactionFactory txFactory;
+
+    @Before
+    public void setUp() {
+        stm = getGlobalStmInstance();
+        txFactory = stm.getTransactionFactoryBuilder()
+                .setSpeculativeConfigurationEnabled(false)
+                .setReadonly(false)
+                .build();
+        clearThreadLocalTransaction();
+    }
+
+    @After
+    public void tearDown() {
+        clearThreadLocalTransaction();
+    }
+
+    private static long[] createValues(int length) {
+        long[] values = new long[length];
+        for (int k = 0; k < length; k++) {
+            values[k] = k * 10;
+        }
+        return values;
+    }
+
+    @Test
+    public void whenEveryRange() {
+        long[] values = createValues(STRIPE_LENGTH * 3 + 5);
+        TransactionalLongArray array = new TransactionalLongArray(values);
+
+        for (int from = 0; from <= values.length; from++) {
+            for (int to = from; to <= values.length; to++) {
+                assertArrayEquals(Arrays.copyOfRange(values, from, to), array.toArray(from, to));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void whenFromIndexLargerThanToIndex_thenIllegalArgumentException() {
+        TransactionalLongArray array = new TransactionalLongArray(10);
+        array.toArray(5, 4);
+    }
+
+    @Test(expected = ArrayIndexOutOfBoundsException.class)
+    public void whenFromIndexTooSmall_thenArrayIndexOutOfBoundsException() {
+        TransactionalLongArray array = new TransactionalLongArray(10);
+        array.toArray(-1, 4);
+    }
+
+    @Test(expected = ArrayIndexOutOfBoundsException.class)
+    public void whenToIndexTooBig_thenArrayIndexOutOfBoundsException() {
+        TransactionalLongArray array = new TransactionalLongArray(10);
+        array.toArray(0, 11);
+    }
+
+    @Test
+    public void whenReadInsideTransaction_thenOwnWritesVisible() {
+        TransactionalLongArray array = new TransactionalLongArray(createValues(STRIPE_LENGTH * 2));
+
+        Transaction tx = txFactory.start();
+        setThreadLocalTransaction(tx);
+        array.set(STRIPE_LENGTH, -1);
+
+        assertArrayEquals(new long[]{70, -1, 90}, array.toArray(STRIPE_LENGTH - 1, STRIPE_LENGTH + 2));
+        tx.abort();
+    }
+
+    @Test
+    public void whenWritesToDifferentStripes_thenNoConflict() {
+        TransactionalLongArray array = new TransactionalLongArray(STRIPE_LENGTH * 2);
+
+        Transaction tx1 = txFactory.start();
+        setThreadLocalTransaction(tx1);
+        array.set(0, 1);
+
+        Transaction tx2 = txFactory.start();
+        setThreadLocalTransaction(tx2);
+        array.set(STRIPE_LENGTH, 2);
+
+        tx1.commit();
+        tx2.commit();
+
+        clearThreadLocalTransaction();
+        assertArrayEquals(new long[]{1, 2}, new long[]{array.get(0), array.get(STRIPE_LENGTH)});
+    }
+
+    @Test
+    public void whenWritesToSameStripe_thenConflict() {
+        TransactionalLongArray array = new TransactionalLongArray(STRIPE_LENGTH * 2);
+
+        Transaction tx1 = txFactory.start();
+        setThreadLocalTransaction(tx1);
+        array.set(0, 1);
+
+        Transaction tx2 = txFactory.start();
+        setThreadLocalTransaction(tx2);
+        array.set(1, 2);
+
+        tx1.commit();
+        try {
+            tx2.commit();
+            fail();
+        } catch (OptimisticLockFailedWriteConflict expected) {
+        }
+
+        clearThreadLocalTransaction();
+        assertArrayEquals(new long[]{1, 0}, array.toArray(0, 2));
+    }
+}
@@ -0,0 +1,32 @@
+package org.multiverse.transactional.arrays;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TransactionalObjectArray_accessTest {
+
+    @Test
+    public void set_whenEmptyCellWritten() {
+        TransactionalObjectArray<String> array = new TransactionalObjectArray<String>(10);
+        String result = array.set(9, "foo");
+
+        assertNull(result);
+        assertEquals("foo", array.get(9));
+    }
+
+    @Test
+    public void set_whenOverwrite() {
+        TransactionalObjectArray<String> array = new TransactionalObjectArray<String>(new String[]{"a", "b"});
+
+        String result = array.set(1, "c");
+        assertEquals("b", result);
+        assertArrayEquals(new Object[]{"a", "c"}, array.toArray());
+    }
+
+    @Test(expected = ArrayIndexOutOfBoundsException.class)
+    public void get_whenIndexTooSmall_thenArrayIndexOutOfBoundsException() {
+        TransactionalObjectArray<String> array = new TransactionalObjectArray<String>(5);
+        array.get(-1);
+    }
+}
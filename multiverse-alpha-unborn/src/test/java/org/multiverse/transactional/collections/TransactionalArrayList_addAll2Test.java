@@ -1,10 +1,10 @@
 package org.multiverse.transactional.collections;
 
 import org.junit.Before;
-import org.junit.Ignore;
 import org.junit.Test;
 import org.multiverse.api.Stm;
 
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -78,7 +78,6 @@ public class TransactionalArrayList_addAll2Test {
     }
 
     @Test
-    @Ignore
     public void whenAddedInFront() {
         TransactionalArrayList<String> list = new TransactionalArrayList<String>("c", "d");
 
@@ -86,20 +85,31 @@ public class TransactionalArrayList_addAll2Test {
         items.add("a");
         items.add("b");
 
+        long version = stm.getVersion();
         list.addAll(0, items);
 
+        assertEquals(version + 1, stm.getVersion());
+        assertEquals(4, list.size());
         assertEquals("[a, b, c, d]", list.toString());
     }
 
     @Test
-    @Ignore
     public void whenAddedToEnd() {
+        TransactionalArrayList<String> list = new TransactionalArrayList<String>("a", "b");
+
+        list.addAll(2, Arrays.asList("c", "d"));
 
+        assertEquals(4, list.size());
+        assertEquals("[a, b, c, d]", list.toString());
     }
 
     @Test
-    @Ignore
     public void whenAddedInBetween() {
+        TransactionalArrayList<String> list = new TransactionalArrayList<String>("a", "d");
+
+        list.addAll(1, Arrays.asList("b", "c"));
 
+        assertEquals(4, list.size());
+        assertEquals("[a, b, c, d]", list.toString());
     }
 }
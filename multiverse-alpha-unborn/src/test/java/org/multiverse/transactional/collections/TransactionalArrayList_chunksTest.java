@@ -0,0 +1,211 @@
+package org.multiverse.transactional.collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.multiverse.api.Stm;
+import org.multiverse.api.Transaction;
+import org.multiverse.api.TransactionFactory;
+import org.multiverse.api.exceptions.OptimisticLockFailedWriteConflict;
+import org.multiverse.api.programmatic.ProgrammaticRef;
+import org.multiverse.stms.alpha.AlphaTranlocal;
+import org.multiverse.stms.alpha.AlphaTransactionalObject;
+import org.multiverse.stms.alpha.transactions.AlphaTransaction;
+import org.multiverse.transactional.arrays.TransactionalObjectArray;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.multiverse.TestUtils.getField;
+import static org.multiverse.api.GlobalStmInstance.getGlobalStmInstance;
+import static org.multiverse.api.ThreadLocalTransaction.clearThreadLocalTransaction;
+import static org.multiverse.api.ThreadLocalTransaction.setThreadLocalTransaction;
+import static org.multiverse.transactional.arrays.TransactionalObjectArray.STRIPE_LENGTH;
+import static org.multiverse.transactional.collections.TransactionalArrayList.CHUNK_SIZE;
+
+public class TransactionalArrayList_chunksTest {
+    private Stm stm;
+    private TransactionFactory txFactory;
+
+    @Before
+    public void setUp() {
+        stm = getGlobalStmInstance();
+        txFactory = stm.getTransactionFactoryBuilder()
+                .setSpeculativeConfigurationEnabled(false)
+                .setReadTrackingEnabled(true)
+                .setReadonly(false)
+                .build();
+        clearThreadLocalTransaction();
+    }
+
+    @After
+    public void tearDown() {
+        clearThreadLocalTransaction();
+    }
+
+    private TransactionalArrayList<Integer> createList(int size) {
+        TransactionalArrayList<Integer> list = new TransactionalArrayList<Integer>(1);
+        for (int k = 0; k < size; k++) {
+            list.add(k);
+        }
+        return list;
+    }
+
+    private AlphaTransactionalObject getStripe(TransactionalArrayList list, int index) {
+        ProgrammaticRef<TransactionalArrayList.Chunks> chunks =
+                (ProgrammaticRef<TransactionalArrayList.Chunks>) getField(list, "chunks");
+        TransactionalObjectArray chunk = chunks.atomicGet().items[index / CHUNK_SIZE];
+        Object[] stripes = (Object[]) getField(chunk, "stripes");
+        return (AlphaTransactionalObject) stripes[(index % CHUNK_SIZE) / STRIPE_LENGTH];
+    }
+
+    @Test
+    public void whenManyWritesToSameChunk_thenEveryStripeCopiedOnce() {
+        TransactionalArrayList<Integer> list = createList(CHUNK_SIZE);
+
+        AlphaTransaction tx = (AlphaTransaction) txFactory.start();
+        setThreadLocalTransaction(tx);
+        AlphaTranlocal[] copies = new AlphaTranlocal[CHUNK_SIZE / STRIPE_LENGTH];
+        for (int k = 0; k < CHUNK_SIZE; k++) {
+            list.set(k, -k - 1);
+
+            AlphaTranlocal copy = tx.openForWrite(getStripe(list, k));
+            int stripe = k / STRIPE_LENGTH;
+            if (copies[stripe] == null) {
+                copies[stripe] = copy;
+            } else {
+                assertSame(copies[stripe], copy);
+            }
+        }
+
+        long version = stm.getVersion();
+        tx.commit();
+        clearThreadLocalTransaction();
+
+        assertEquals(version + 1, stm.getVersion());
+        for (int k = 0; k < CHUNK_SIZE; k++) {
+            assertSame(copies[k / STRIPE_LENGTH], getStripe(list, k).___load());
+            assertEquals(new Integer(-k - 1), list.get(k));
+        }
+    }
+
+    @Test
+    public void whenGrownOverManyChunks() {
+        int size = CHUNK_SIZE * 10 + 3;
+        TransactionalArrayList<Integer> list = createList(size);
+
+        assertEquals(size, list.size());
+        for (int k = 0; k < size; k++) {
+            assertEquals(new Integer(k), list.get(k));
+        }
+    }
+
+    @Test
+    public void whenInsertedInMiddle_thenItemsShiftedOverChunks() {
+        int size = CHUNK_SIZE * 3;
+        TransactionalArrayList<Integer> list = createList(size);
+        List<Integer> expected = new ArrayList<Integer>(list);
+
+        long version = stm.getVersion();
+        list.add(CHUNK_SIZE / 2, -1);
+        expected.add(CHUNK_SIZE / 2, -1);
+
+        assertEquals(version + 1, stm.getVersion());
+        assertEquals(expected, new ArrayList<Integer>(list));
+    }
+
+    @Test
+    public void whenRemovedFromMiddle_thenItemsShiftedOverChunks() {
+        int size = CHUNK_SIZE * 3 + 1;
+        TransactionalArrayList<Integer> list = createList(size);
+        List<Integer> expected = new ArrayList<Integer>(list);
+
+        long version = stm.getVersion();
+        assertEquals(new Integer(CHUNK_SIZE - 1), list.remove(CHUNK_SIZE - 1));
+        expected.remove(CHUNK_SIZE - 1);
+
+        assertEquals(version + 1, stm.getVersion());
+        assertEquals(expected, new ArrayList<Integer>(list));
+
+        //the slot at the end is cleared.
+        list.add(100);
+        assertEquals(new Integer(100), list.get(size - 1));
+    }
+
+    @Test
+    public void whenSetInDifferentChunks_thenNoConflict() {
+        TransactionalArrayList<Integer> list = createList(CHUNK_SIZE * 2);
+
+        Transaction tx1 = txFactory.start();
+        setThreadLocalTransaction(tx1);
+        list.set(0, -1);
+
+        Transaction tx2 = txFactory.start();
+        setThreadLocalTransaction(tx2);
+        list.set(CHUNK_SIZE, -2);
+
+        tx1.commit();
+        tx2.commit();
+
+        clearThreadLocalTransaction();
+        assertEquals(new Integer(-1), list.get(0));
+        assertEquals(new Integer(-2), list.get(CHUNK_SIZE));
+    }
+
+    @Test
+    public void whenSetInDifferentStripesOfSameChunk_thenNoConflict() {
+        TransactionalArrayList<Integer> list = createList(CHUNK_SIZE);
+
+        Transaction tx1 = txFactory.start();
+        setThreadLocalTransaction(tx1);
+        list.set(0, -1);
+
+        Transaction tx2 = txFactory.start();
+        setThreadLocalTransaction(tx2);
+        list.set(STRIPE_LENGTH, -2);
+
+        tx1.commit();
+        tx2.commit();
+
+        clearThreadLocalTransaction();
+        assertEquals(new Integer(-1), list.get(0));
+        assertEquals(new Integer(-2), list.get(STRIPE_LENGTH));
+    }
+
+    @Test
+    public void whenSetInSameStripe_thenConflict() {
+        TransactionalArrayList<Integer> list = createList(CHUNK_SIZE * 2);
+
+        Transaction tx1 = txFactory.start();
+        setThreadLocalTransaction(tx1);
+        list.set(0, -1);
+
+        Transaction tx2 = txFactory.start();
+        setThreadLocalTransaction(tx2);
+        list.set(1, -2);
+
+        tx1.commit();
+        try {
+            tx2.commit();
+            fail();
+        } catch (OptimisticLockFailedWriteConflict expected) {
+        }
+
+        clearThreadLocalTransaction();
+        assertEquals(new Integer(-1), list.get(0));
+        assertEquals(new Integer(1), list.get(1));
+    }
+
+    @Test
+    public void whenCleared_thenCapacityReused() {
+        TransactionalArrayList<Integer> list = createList(CHUNK_SIZE * 2);
+
+        list.clear();
+        assertEquals(0, list.size());
+        assertEquals("[]", list.toString());
+
+        list.add(1);
+        assertEquals("[1]", list.toString());
+    }
+}
@@ -0,0 +1,86 @@
+package org.multiverse.transactional.collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.multiverse.api.Stm;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.multiverse.api.GlobalStmInstance.getGlobalStmInstance;
+import static org.multiverse.api.ThreadLocalTransaction.clearThreadLocalTransaction;
+
+public class TransactionalArrayList_drainToTest {
+    private Stm stm;
+
+    @Before
+    public void setUp() {
+        stm = getGlobalStmInstance();
+        clearThreadLocalTransaction();
+    }
+
+    @Test
+    public void whenCollectionNull_thenNullPointerException() {
+        TransactionalArrayList<String> list = new TransactionalArrayList<String>("a");
+
+        try {
+            list.drainTo(null);
+            fail();
+        } catch (NullPointerException expected) {
+        }
+
+        assertEquals("[a]", list.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void whenDrainedToItself_thenIllegalArgumentException() {
+        TransactionalArrayList<String> list = new TransactionalArrayList<String>("a");
+        list.drainTo(list);
+    }
+
+    @Test
+    public void whenEmpty() {
+        TransactionalArrayList<String> list = new TransactionalArrayList<String>();
+        List<String> sink = new LinkedList<String>();
+
+        long version = stm.getVersion();
+        assertEquals(0, list.drainTo(sink));
+
+        assertEquals(version, stm.getVersion());
+        assertEquals(0, sink.size());
+    }
+
+    @Test
+    public void whenAllDrained() {
+        TransactionalArrayList<String> list = new TransactionalArrayList<String>("a", "b", "c");
+        List<String> sink = new LinkedList<String>();
+
+        long version = stm.getVersion();
+        assertEquals(3, list.drainTo(sink));
+
+        assertEquals(version + 1, stm.getVersion());
+        assertEquals("[a, b, c]", sink.toString());
+        assertEquals(0, list.size());
+        assertEquals("[]", list.toString());
+    }
+
+    @Test
+    public void whenPartiallyDrained_thenRemainingItemsMovedToFront() {
+        TransactionalArrayList<String> list = new TransactionalArrayList<String>("a", "b", "c", "d", "e");
+        List<String> sink = new LinkedList<String>();
+
+        long version = stm.getVersion();
+        assertEquals(2, list.drainTo(sink, 2));
+
+        assertEquals(version + 1, stm.getVersion());
+        assertEquals("[a, b]", sink.toString());
+        assertEquals(3, list.size());
+        assertEquals("[c, d, e]", list.toString());
+        assertEquals("c", list.get(0));
+
+        list.add("f");
+        assertEquals("[c, d, e, f]", list.toString());
+    }
+}
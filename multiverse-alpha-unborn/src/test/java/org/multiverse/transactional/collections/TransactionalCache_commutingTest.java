@@ -0,0 +1,84 @@
+package org.multiverse.transactional.collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.multiverse.api.Stm;
+import org.multiverse.api.Transaction;
+import org.multiverse.api.TransactionFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.multiverse.api.GlobalStmInstance.getGlobalStmInstance;
+import static org.multiverse.api.ThreadLocalTransaction.clearThreadLocalTransaction;
+import static org.multiverse.api.ThreadLocalTransaction.setThreadLocalTransaction;
+
+/**
+ * @author Peter Veentjer
+ */
+public class TransactionalCache_commutingTest {
+    private Stm stm;
+    private TransactionFactory txFactory;
+
+    @Before
+    public void setUp() {
+        stm = getGlobalStmInstance();
+        txFactory = stm.getTransactionFactoryBuilder()
+                .setSpeculativeConfigurationEnabled(false)
+                .setReadTrackingEnabled(true)
+                .setReadonly(false)
+                .build();
+        clearThreadLocalTransaction();
+    }
+
+    @After
+    public void tearDown() {
+        clearThreadLocalTransaction();
+    }
+
+    @Test
+    public void whenGetsOnSameEntry_thenNoWrites() {
+        TransactionalCache<String, String> cache = new TransactionalCache<String, String>(10);
+        cache.put("1", "a");
+
+        long version = stm.getVersion();
+        Transaction tx1 = txFactory.start();
+        setThreadLocalTransaction(tx1);
+        assertEquals("a", cache.get("1"));
+
+        Transaction tx2 = txFactory.start();
+        setThreadLocalTransaction(tx2);
+        assertEquals("a", cache.get("1"));
+
+        tx1.commit();
+        tx2.commit();
+
+        clearThreadLocalTransaction();
+        assertEquals(version, stm.getVersion());
+        assertEquals(2, cache.getHitCount());
+    }
+
+    @Test
+    public void whenGetAndPutOfOtherKey_thenNoConflict() {
+        TransactionalCache<Integer, String> cache = new TransactionalCache<Integer, String>(100);
+        cache.put(1, "1");
+
+        Transaction tx1 = txFactory.start();
+        setThreadLocalTransaction(tx1);
+        assertEquals("1", cache.get(1));
+        cache.put(2, "2");
+
+        Transaction tx2 = txFactory.start();
+        setThreadLocalTransaction(tx2);
+        assertEquals("1", cache.get(1));
+        cache.put(3, "3");
+
+        tx1.commit();
+        tx2.commit();
+
+        clearThreadLocalTransaction();
+        assertEquals(3, cache.size());
+        assertTrue(cache.containsKey(2));
+        assertTrue(cache.containsKey(3));
+    }
+}
@@ -0,0 +1,234 @@
+package org.multiverse.transactional.collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.multiverse.api.Stm;
+import org.multiverse.api.Transaction;
+import org.multiverse.api.TransactionFactory;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.multiverse.TestUtils.getField;
+import static org.multiverse.api.GlobalStmInstance.getGlobalStmInstance;
+import static org.multiverse.api.ThreadLocalTransaction.clearThreadLocalTransaction;
+import static org.multiverse.api.ThreadLocalTransaction.setThreadLocalTransaction;
+import static org.multiverse.transactional.collections.TransactionalCache.EvictionPolicy.LFU;
+import static org.multiverse.transactional.collections.TransactionalCache.EvictionPolicy.LRU;
+
+/**
+ * @author Peter Veentjer
+ */
+public class TransactionalCache_evictionTest {
+    private Stm stm;
+    private TransactionFactory updateTxFactory;
+
+    @Before
+    public void setUp() {
+        stm = getGlobalStmInstance();
+        updateTxFactory = stm.getTransactionFactoryBuilder()
+                .setSpeculativeConfigurationEnabled(false)
+                .setReadonly(false)
+                .build();
+        clearThreadLocalTransaction();
+    }
+
+    @After
+    public void tearDown() {
+        clearThreadLocalTransaction();
+    }
+
+    @Test
+    public void constructor() {
+        TransactionalCache<String, String> cache = new TransactionalCache<String, String>(10);
+
+        assertEquals(10, cache.getMaxSize());
+        assertEquals(LRU, cache.getEvictionPolicy());
+        assertEquals(TransactionalCache.DEFAULT_SAMPLE_SIZE, cache.getSampleSize());
+        assertEquals(0, cache.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_whenMaxSizeZero_thenIllegalArgumentException() {
+        new TransactionalCache<String, String>(0);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void put_whenNullValue_thenNullPointerException() {
+        TransactionalCache<String, String> cache = new TransactionalCache<String, String>(10);
+        cache.put("1", null);
+    }
+
+    @Test
+    public void putAndGet() {
+        TransactionalCache<String, String> cache = new TransactionalCache<String, String>(10);
+
+        assertNull(cache.put("1", "a"));
+        assertEquals("a", cache.put("1", "b"));
+        assertNull(cache.putIfAbsent("2", "c"));
+        assertEquals("c", cache.putIfAbsent("2", "d"));
+
+        assertEquals("b", cache.get("1"));
+        assertEquals("c", cache.get("2"));
+        assertNull(cache.get("3"));
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0, cache.getEvictionCount());
+    }
+
+    @Test
+    public void whenLRU_thenLeastRecentlyUsedEvicted() {
+        //the sample contains all entries, so the eviction is exact.
+        TransactionalCache<Integer, String> cache = new TransactionalCache<Integer, String>(3, LRU, 3);
+        cache.put(1, "1");
+        cache.put(2, "2");
+        cache.put(3, "3");
+        cache.get(1);
+        cache.get(3);
+
+        cache.put(4, "4");
+
+        assertEquals(3, cache.size());
+        assertFalse(cache.containsKey(2));
+        assertTrue(cache.containsKey(1));
+        assertTrue(cache.containsKey(3));
+        assertTrue(cache.containsKey(4));
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void whenLFU_thenLeastFrequentlyUsedEvicted() {
+        TransactionalCache<Integer, String> cache = new TransactionalCache<Integer, String>(3, LFU, 3);
+        cache.put(1, "1");
+        cache.put(2, "2");
+        cache.put(3, "3");
+        cache.get(1);
+        cache.get(1);
+        cache.get(2);
+        cache.get(2);
+        //3 is the most recently used, but the least frequently used.
+        cache.get(3);
+
+        cache.put(4, "4");
+
+        assertFalse(cache.containsKey(3));
+        assertTrue(cache.containsKey(1));
+        assertTrue(cache.containsKey(2));
+        assertTrue(cache.containsKey(4));
+    }
+
+    @Test
+    public void whenUpdated_thenNotEvicted() {
+        TransactionalCache<Integer, String> cache = new TransactionalCache<Integer, String>(2, LRU, 2);
+        cache.put(1, "1");
+        cache.put(2, "2");
+        cache.put(1, "11");
+
+        cache.put(3, "3");
+
+        assertEquals("11", cache.get(1));
+        assertFalse(cache.containsKey(2));
+    }
+
+    @Test
+    public void whenManyInserts_thenMaxSizeRespected() {
+        TransactionalCache<Integer, Integer> cache = new TransactionalCache<Integer, Integer>(100);
+
+        for (int k = 0; k < 1000; k++) {
+            cache.put(k, k);
+        }
+
+        assertEquals(100, cache.size());
+        assertEquals(900, cache.getEvictionCount());
+        assertTrue(cache.containsKey(999));
+    }
+
+    @Test
+    public void whenManyInsertsInOneTransactionOnOverfullCache_thenOnlyExcessEvicted() {
+        TransactionalCache<Integer, String> cache = new TransactionalCache<Integer, String>(3, LRU, 4);
+        cache.put(1, "1");
+        cache.put(2, "2");
+
+        //two concurrent inserts both see room for one more entry, so the cache exceeds the maximum size.
+        Transaction tx1 = updateTxFactory.start();
+        setThreadLocalTransaction(tx1);
+        cache.put(3, "3");
+        Transaction tx2 = updateTxFactory.start();
+        setThreadLocalTransaction(tx2);
+        cache.put(4, "4");
+        tx1.commit();
+        tx2.commit();
+        clearThreadLocalTransaction();
+        assertEquals(4, cache.size());
+
+        Transaction tx = updateTxFactory.start();
+        setThreadLocalTransaction(tx);
+        cache.put(5, "5");
+        cache.put(6, "6");
+        cache.put(7, "7");
+        assertEquals(3, cache.size());
+        tx.commit();
+        clearThreadLocalTransaction();
+
+        assertEquals(3, cache.size());
+        assertEquals(4, cache.getEvictionCount());
+        assertTrue(cache.containsKey(7));
+        assertTrue(((Map) getField(cache, "sizeChanges")).isEmpty());
+    }
+
+    @Test
+    public void whenRemovedAndInsertedInOneTransaction_thenNothingEvicted() {
+        TransactionalCache<Integer, String> cache = new TransactionalCache<Integer, String>(2, LRU, 2);
+        cache.put(1, "1");
+        cache.put(2, "2");
+
+        Transaction tx = updateTxFactory.start();
+        setThreadLocalTransaction(tx);
+        cache.remove(1);
+        cache.put(3, "3");
+        tx.commit();
+        clearThreadLocalTransaction();
+
+        assertEquals(0, cache.getEvictionCount());
+        assertTrue(cache.containsKey(2));
+        assertTrue(cache.containsKey(3));
+    }
+
+    @Test
+    public void whenTransactionAborted_thenEvictionRolledBack() {
+        TransactionalCache<Integer, String> cache = new TransactionalCache<Integer, String>(2, LRU, 2);
+        cache.put(1, "1");
+        cache.put(2, "2");
+
+        long version = stm.getVersion();
+        Transaction tx = updateTxFactory.start();
+        setThreadLocalTransaction(tx);
+        cache.put(3, "3");
+        assertEquals(2, cache.size());
+        tx.abort();
+        clearThreadLocalTransaction();
+
+        assertEquals(version, stm.getVersion());
+        assertTrue(cache.containsKey(1));
+        assertTrue(cache.containsKey(2));
+        assertFalse(cache.containsKey(3));
+        assertEquals(0, cache.getEvictionCount());
+    }
+
+    @Test
+    public void removeAndClear_areNotEvictions() {
+        TransactionalCache<Integer, String> cache = new TransactionalCache<Integer, String>(10);
+        cache.put(1, "1");
+        cache.put(2, "2");
+        cache.put(3, "3");
+
+        assertEquals("1", cache.remove(1));
+        assertNull(cache.remove(1));
+        cache.clear();
+
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getEvictionCount());
+    }
+}
@@ -0,0 +1,113 @@
+package org.multiverse.transactional.collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.multiverse.api.Stm;
+import org.multiverse.api.Transaction;
+import org.multiverse.api.TransactionFactory;
+import org.multiverse.api.exceptions.OptimisticLockFailedWriteConflict;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.multiverse.api.GlobalStmInstance.getGlobalStmInstance;
+import static org.multiverse.api.ThreadLocalTransaction.clearThreadLocalTransaction;
+import static org.multiverse.api.ThreadLocalTransaction.setThreadLocalTransaction;
+
+/**
+ * @author Peter Veentjer
+ */
+public class TransactionalHashMap_commutingTest {
+    private Stm stm;
+    private TransactionFactory txFactory;
+
+    @Before
+    public void setUp() {
+        stm = getGlobalStmInstance();
+        txFactory = stm.getTransactionFactoryBuilder()
+                .setSpeculativeConfigurationEnabled(false)
+                .setReadTrackingEnabled(true)
+                .setReadonly(false)
+                .build();
+        clearThreadLocalTransaction();
+    }
+
+    @After
+    public void tearDown() {
+        clearThreadLocalTransaction();
+    }
+
+    @Test
+    public void whenDifferentBuckets_thenNoConflict() {
+        TransactionalHashMap<Integer, String> map = new TransactionalHashMap<Integer, String>(16);
+        map.put(1, "one");
+
+        Transaction tx1 = txFactory.start();
+        setThreadLocalTransaction(tx1);
+        map.put(2, "two");
+
+        Transaction tx2 = txFactory.start();
+        setThreadLocalTransaction(tx2);
+        map.remove(1);
+        map.put(3, "three");
+
+        tx1.commit();
+        tx2.commit();
+
+        clearThreadLocalTransaction();
+        assertEquals(2, map.size());
+        assertEquals("two", map.get(2));
+        assertEquals("three", map.get(3));
+    }
+
+    @Test
+    public void whenSameBucket_thenConflict() {
+        TransactionalHashMap<Integer, String> map = new TransactionalHashMap<Integer, String>(16);
+
+        Transaction tx1 = txFactory.start();
+        setThreadLocalTransaction(tx1);
+        map.put(1, "one");
+
+        Transaction tx2 = txFactory.start();
+        setThreadLocalTransaction(tx2);
+        map.put(1, "een");
+
+        tx1.commit();
+
+        try {
+            tx2.commit();
+            fail();
+        } catch (OptimisticLockFailedWriteConflict expected) {
+        }
+
+        clearThreadLocalTransaction();
+        assertEquals(1, map.size());
+        assertEquals("one", map.get(1));
+    }
+
+    @Test
+    public void whenSizeRead_thenNotCommuting() {
+        TransactionalHashMap<Integer, String> map = new TransactionalHashMap<Integer, String>(16);
+
+        Transaction tx1 = txFactory.start();
+        setThreadLocalTransaction(tx1);
+        map.put(1, "one");
+        map.size();
+
+        Transaction tx2 = txFactory.start();
+        setThreadLocalTransaction(tx2);
+        map.put(2, "two");
+        map.size();
+
+        tx1.commit();
+
+        try {
+            tx2.commit();
+            fail();
+        } catch (OptimisticLockFailedWriteConflict expected) {
+        }
+
+        clearThreadLocalTransaction();
+        assertEquals(1, map.size());
+    }
+}
@@ -0,0 +1,88 @@
+package org.multiverse.transactional.collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.multiverse.api.ThreadLocalTransaction.clearThreadLocalTransaction;
+
+/**
+ * Tests the {@link java.util.concurrent.ConcurrentMap} methods of the TransactionalHashMap.
+ *
+ * @author Peter Veentjer
+ */
+public class TransactionalHashMap_concurrentMapTest {
+    private TransactionalHashMap<String, String> map;
+
+    @Before
+    public void setUp() {
+        clearThreadLocalTransaction();
+        map = new TransactionalHashMap<String, String>();
+        map.put("1", "one");
+    }
+
+    @Test
+    public void putIfAbsent_whenAbsent() {
+        assertNull(map.putIfAbsent("2", "two"));
+        assertEquals("two", map.get("2"));
+        assertEquals(2, map.size());
+    }
+
+    @Test
+    public void putIfAbsent_whenPresent() {
+        assertEquals("one", map.putIfAbsent("1", "een"));
+        assertEquals("one", map.get("1"));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void removeKeyValue_whenValueMatches() {
+        assertTrue(map.remove("1", "one"));
+        assertFalse(map.containsKey("1"));
+        assertEquals(0, map.size());
+    }
+
+    @Test
+    public void removeKeyValue_whenValueNotMatches() {
+        assertFalse(map.remove("1", "een"));
+        assertEquals("one", map.get("1"));
+    }
+
+    @Test
+    public void removeKeyValue_whenValueNull() {
+        assertFalse(map.remove("1", null));
+        assertEquals("one", map.get("1"));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void replaceKeyOldNew_whenValueMatches() {
+        assertTrue(map.replace("1", "one", "een"));
+        assertEquals("een", map.get("1"));
+    }
+
+    @Test
+    public void replaceKeyOldNew_whenValueNotMatches() {
+        assertFalse(map.replace("1", "two", "een"));
+        assertEquals("one", map.get("1"));
+    }
+
+    @Test
+    public void replaceKeyValue_whenPresent() {
+        assertEquals("one", map.replace("1", "een"));
+        assertEquals("een", map.get("1"));
+    }
+
+    @Test
+    public void replaceKeyValue_whenAbsent() {
+        assertNull(map.replace("2", "two"));
+        assertFalse(map.containsKey("2"));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void containsValue() {
+        assertTrue(map.containsValue("one"));
+        assertFalse(map.containsValue("two"));
+    }
+}
@@ -0,0 +1,66 @@
+package org.multiverse.transactional.collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.multiverse.api.ThreadLocalTransaction.clearThreadLocalTransaction;
+
+/**
+ * @author Peter Veentjer
+ */
+public class TransactionalHashMap_constructorTest {
+
+    @Before
+    public void setUp() {
+        clearThreadLocalTransaction();
+    }
+
+    @Test
+    public void noArgConstructor() {
+        TransactionalHashMap<String, String> map = new TransactionalHashMap<String, String>();
+
+        assertEquals(0, map.size());
+        assertEquals(16, map.getCapacity());
+        assertEquals(0.75f, map.getLoadFactor(), 0);
+        assertFalse(map.isResizing());
+    }
+
+    @Test
+    public void whenCapacityNotPowerOfTwo_thenRoundedUp() {
+        TransactionalHashMap<String, String> map = new TransactionalHashMap<String, String>(100);
+
+        assertEquals(128, map.getCapacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void whenNegativeCapacity_thenIllegalArgumentException() {
+        new TransactionalHashMap<String, String>(-1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void whenLoadFactorZero_thenIllegalArgumentException() {
+        new TransactionalHashMap<String, String>(16, 0);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void whenMapNull_thenNullPointerException() {
+        new TransactionalHashMap<String, String>(null);
+    }
+
+    @Test
+    public void whenMap() {
+        Map<String, String> original = new HashMap<String, String>();
+        original.put("1", "one");
+        original.put("2", "two");
+
+        TransactionalHashMap<String, String> map = new TransactionalHashMap<String, String>(original);
+
+        assertEquals(original, map);
+        assertEquals(2, map.size());
+    }
+}
@@ -0,0 +1,120 @@
+package org.multiverse.transactional.collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.multiverse.api.Stm;
+
+import static org.junit.Assert.*;
+import static org.multiverse.api.GlobalStmInstance.getGlobalStmInstance;
+import static org.multiverse.api.ThreadLocalTransaction.clearThreadLocalTransaction;
+
+/**
+ * @author Peter Veentjer
+ */
+public class TransactionalHashMap_putTest {
+    private Stm stm;
+
+    @Before
+    public void setUp() {
+        stm = getGlobalStmInstance();
+        clearThreadLocalTransaction();
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void whenNullKey_thenNullPointerException() {
+        TransactionalHashMap<String, String> map = new TransactionalHashMap<String, String>();
+        map.put(null, "foo");
+    }
+
+    @Test
+    public void whenNullValue_thenNullPointerException() {
+        TransactionalHashMap<String, String> map = new TransactionalHashMap<String, String>();
+
+        long version = stm.getVersion();
+        try {
+            map.put("1", null);
+            fail();
+        } catch (NullPointerException expected) {
+        }
+
+        assertEquals(version, stm.getVersion());
+        assertEquals(0, map.size());
+    }
+
+    @Test
+    public void whenKeyNotFound() {
+        TransactionalHashMap<String, String> map = new TransactionalHashMap<String, String>();
+
+        long version = stm.getVersion();
+        String result = map.put("1", "one");
+
+        assertNull(result);
+        assertEquals(version + 1, stm.getVersion());
+        assertEquals(1, map.size());
+        assertEquals("one", map.get("1"));
+    }
+
+    @Test
+    public void whenKeyFound_thenValueReplaced() {
+        TransactionalHashMap<String, String> map = new TransactionalHashMap<String, String>();
+        map.put("1", "one");
+
+        long version = stm.getVersion();
+        String result = map.put("1", "een");
+
+        assertEquals("one", result);
+        assertEquals(version + 1, stm.getVersion());
+        assertEquals(1, map.size());
+        assertEquals("een", map.get("1"));
+    }
+
+    @Test
+    public void whenSameValue_thenNoWrite() {
+        TransactionalHashMap<String, String> map = new TransactionalHashMap<String, String>();
+        String value = "one";
+        map.put("1", value);
+
+        long version = stm.getVersion();
+        String result = map.put("1", value);
+
+        assertSame(value, result);
+        assertEquals(version, stm.getVersion());
+    }
+
+    @Test
+    public void whenKeysCollide() {
+        TransactionalHashMap<CollidingKey, String> map = new TransactionalHashMap<CollidingKey, String>();
+
+        for (int k = 0; k < 10; k++) {
+            map.put(new CollidingKey(k), "" + k);
+        }
+
+        assertEquals(10, map.size());
+        for (int k = 0; k < 10; k++) {
+            assertEquals("" + k, map.get(new CollidingKey(k)));
+        }
+
+        assertEquals("5", map.remove(new CollidingKey(5)));
+        assertNull(map.get(new CollidingKey(5)));
+        assertEquals("6", map.get(new CollidingKey(6)));
+        assertEquals(9, map.size());
+    }
+
+    static class CollidingKey {
+        private final int value;
+
+        CollidingKey(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public int hashCode() {
+            return 1;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof CollidingKey && ((CollidingKey) o).value == value;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package org.multiverse.transactional.collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.multiverse.api.Stm;
+
+import static org.junit.Assert.*;
+import static org.multiverse.api.GlobalStmInstance.getGlobalStmInstance;
+import static org.multiverse.api.ThreadLocalTransaction.clearThreadLocalTransaction;
+
+/**
+ * @author Peter Veentjer
+ */
+public class TransactionalHashMap_removeTest {
+    private Stm stm;
+
+    @Before
+    public void setUp() {
+        stm = getGlobalStmInstance();
+        clearThreadLocalTransaction();
+    }
+
+    @Test
+    public void whenKeyNotFound_thenNoWrite() {
+        TransactionalHashMap<String, String> map = new TransactionalHashMap<String, String>();
+        map.put("1", "one");
+
+        long version = stm.getVersion();
+        String result = map.remove("2");
+
+        assertNull(result);
+        assertEquals(version, stm.getVersion());
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void whenKeyFound() {
+        TransactionalHashMap<String, String> map = new TransactionalHashMap<String, String>();
+        map.put("1", "one");
+        map.put("2", "two");
+
+        long version = stm.getVersion();
+        String result = map.remove("1");
+
+        assertEquals("one", result);
+        assertEquals(version + 1, stm.getVersion());
+        assertEquals(1, map.size());
+        assertFalse(map.containsKey("1"));
+        assertTrue(map.containsKey("2"));
+    }
+
+    @Test
+    public void clear() {
+        TransactionalHashMap<String, String> map = new TransactionalHashMap<String, String>();
+        map.put("1", "one");
+        map.put("2", "two");
+
+        map.clear();
+
+        assertEquals(0, map.size());
+        assertTrue(map.isEmpty());
+        assertNull(map.get("1"));
+        assertEquals("{}", map.toString());
+    }
+
+    @Test
+    public void whenClearEmptyMap_thenNoWrite() {
+        TransactionalHashMap<String, String> map = new TransactionalHashMap<String, String>();
+
+        long version = stm.getVersion();
+        map.clear();
+
+        assertEquals(version, stm.getVersion());
+    }
+}
@@ -0,0 +1,91 @@
+package org.multiverse.transactional.collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.multiverse.api.ThreadLocalTransaction.clearThreadLocalTransaction;
+
+/**
+ * @author Peter Veentjer
+ */
+public class TransactionalHashMap_resizeTest {
+
+    @Before
+    public void setUp() {
+        clearThreadLocalTransaction();
+    }
+
+    @Test
+    public void whenLoadFactorExceeded_thenResizeStarted() {
+        TransactionalHashMap<Integer, Integer> map = new TransactionalHashMap<Integer, Integer>(64);
+
+        int count = fillUntilResizing(map);
+
+        assertTrue(count > 48);
+        assertEquals(128, map.getCapacity());
+        assertAllFound(map, count);
+    }
+
+    @Test
+    public void whenResizing_thenEveryInsertMovesChunk() {
+        TransactionalHashMap<Integer, Integer> map = new TransactionalHashMap<Integer, Integer>(64);
+        int count = fillUntilResizing(map);
+
+        //the insert that started the resize moved the first chunk.
+        int insertsNeeded = 64 / TransactionalHashMap.TRANSFER_CHUNK - 1;
+        for (int k = 0; k < insertsNeeded - 1; k++) {
+            map.put(1000 + k, k);
+            assertTrue(map.isResizing());
+        }
+
+        map.put(2000, 0);
+        assertFalse(map.isResizing());
+        assertEquals(128, map.getCapacity());
+        assertAllFound(map, count);
+    }
+
+    @Test
+    public void whenRemovedWhileResizing() {
+        TransactionalHashMap<Integer, Integer> map = new TransactionalHashMap<Integer, Integer>(64);
+        int count = fillUntilResizing(map);
+
+        for (int k = 0; k < count; k += 2) {
+            assertEquals(new Integer(k), map.remove(k));
+        }
+
+        assertEquals(count / 2, map.size());
+        for (int k = 1; k < count; k += 2) {
+            assertEquals(new Integer(k), map.get(k));
+        }
+    }
+
+    @Test
+    public void whenManyInserts() {
+        TransactionalHashMap<Integer, Integer> map = new TransactionalHashMap<Integer, Integer>(1);
+
+        int count = 10000;
+        for (int k = 0; k < count; k++) {
+            map.put(k, k);
+        }
+
+        assertEquals(count, map.size());
+        assertAllFound(map, count);
+        assertTrue(map.getCapacity() >= count / map.getLoadFactor());
+    }
+
+    private static int fillUntilResizing(TransactionalHashMap<Integer, Integer> map) {
+        int count = 0;
+        while (!map.isResizing()) {
+            map.put(count, count);
+            count++;
+        }
+        return count;
+    }
+
+    private static void assertAllFound(TransactionalHashMap<Integer, Integer> map, int count) {
+        for (int k = 0; k < count; k++) {
+            assertEquals(new Integer(k), map.get(k));
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package org.multiverse.transactional.collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.multiverse.TestThread;
+
+import static org.junit.Assert.assertEquals;
+import static org.multiverse.TestUtils.joinAll;
+import static org.multiverse.TestUtils.startAll;
+import static org.multiverse.api.ThreadLocalTransaction.clearThreadLocalTransaction;
+
+/**
+ * A stress test where threads concurrently put and remove entries, while the map is resized many times.
+ *
+ * @author Peter Veentjer
+ */
+public class TransactionalHashMap_stressTest {
+
+    private TransactionalHashMap<Integer, Integer> map;
+    private int threadCount = 4;
+    private int keyCountPerThread = 20000;
+
+    @Before
+    public void setUp() {
+        clearThreadLocalTransaction();
+        map = new TransactionalHashMap<Integer, Integer>(1);
+    }
+
+    @Test
+    public void test() {
+        StressThread[] threads = new StressThread[threadCount];
+        for (int k = 0; k < threads.length; k++) {
+            threads[k] = new StressThread(k);
+        }
+
+        startAll(threads);
+        joinAll(threads);
+
+        //every thread removed its odd keys.
+        assertEquals(threadCount * keyCountPerThread / 2, map.size());
+        for (int id = 0; id < threadCount; id++) {
+            for (int k = 0; k < keyCountPerThread; k++) {
+                Integer key = id * keyCountPerThread + k;
+                assertEquals(k % 2 == 0 ? key : null, map.get(key));
+            }
+        }
+    }
+
+    class StressThread extends TestThread {
+        private final int id;
+
+        StressThread(int id) {
+            super("StressThread-" + id);
+            this.id = id;
+        }
+
+        @Override
+        public void doRun() throws Exception {
+            int firstKey = id * keyCountPerThread;
+            for (int k = 0; k < keyCountPerThread; k++) {
+                map.put(firstKey + k, firstKey + k);
+            }
+
+            for (int k = 1; k < keyCountPerThread; k += 2) {
+                map.remove(firstKey + k);
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package org.multiverse.transactional.collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+import static org.multiverse.api.ThreadLocalTransaction.clearThreadLocalTransaction;
+
+/**
+ * @author Peter Veentjer
+ */
+public class TransactionalHashMap_viewsTest {
+    private TransactionalHashMap<String, String> map;
+
+    @Before
+    public void setUp() {
+        clearThreadLocalTransaction();
+        map = new TransactionalHashMap<String, String>();
+        map.put("1", "one");
+        map.put("2", "two");
+        map.put("3", "three");
+    }
+
+    @Test
+    public void keySet() {
+        Set<String> keys = map.keySet();
+
+        assertEquals(new HashSet<String>(Arrays.asList("1", "2", "3")), new HashSet<String>(keys));
+        assertEquals(3, keys.size());
+        assertTrue(keys.contains("2"));
+    }
+
+    @Test
+    public void keySet_remove() {
+        assertTrue(map.keySet().remove("2"));
+
+        assertFalse(map.containsKey("2"));
+        assertEquals(2, map.size());
+    }
+
+    @Test
+    public void values() {
+        Collection<String> values = map.values();
+
+        assertEquals(new HashSet<String>(Arrays.asList("one", "two", "three")), new HashSet<String>(values));
+    }
+
+    @Test
+    public void iterator_remove() {
+        Iterator<String> it = map.keySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().equals("1")) {
+                it.remove();
+            }
+        }
+
+        assertFalse(map.containsKey("1"));
+        assertEquals(2, map.size());
+    }
+
+    @Test
+    public void iterator_whenMapChanged_thenNoConcurrentModificationException() {
+        Iterator<String> it = map.keySet().iterator();
+        map.put("4", "four");
+
+        int count = 0;
+        while (it.hasNext()) {
+            it.next();
+            count++;
+        }
+
+        assertEquals(3, count);
+    }
+
+    @Test
+    public void entrySet_setValue() {
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            if (entry.getKey().equals("2")) {
+                entry.setValue("twee");
+            }
+        }
+
+        assertEquals("twee", map.get("2"));
+    }
+
+    @Test
+    public void equalsAndHashCode() {
+        Map<String, String> expected = new HashMap<String, String>();
+        expected.put("1", "one");
+        expected.put("2", "two");
+        expected.put("3", "three");
+
+        assertEquals(expected, map);
+        assertEquals(map, expected);
+        assertEquals(expected.hashCode(), map.hashCode());
+
+        expected.put("3", "drie");
+        assertFalse(map.equals(expected));
+    }
+}
@@ -0,0 +1,174 @@
+package org.multiverse.transactional.collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.multiverse.TestThread;
+import org.multiverse.api.Stm;
+import org.multiverse.api.Transaction;
+import org.multiverse.api.TransactionFactory;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.multiverse.TestUtils.*;
+import static org.multiverse.api.GlobalStmInstance.getGlobalStmInstance;
+import static org.multiverse.api.ThreadLocalTransaction.clearThreadLocalTransaction;
+import static org.multiverse.api.ThreadLocalTransaction.setThreadLocalTransaction;
+
+/**
+ * @author Peter Veentjer
+ */
+public class TransactionalLinkedBlockingQueue_batchTest {
+    private Stm stm;
+
+    @Before
+    public void setUp() {
+        stm = getGlobalStmInstance();
+        clearThreadLocalTransaction();
+    }
+
+    @After
+    public void tearDown() {
+        clearThreadLocalTransaction();
+    }
+
+    @Test
+    public void offerAll() {
+        TransactionalLinkedBlockingQueue<String> queue = new TransactionalLinkedBlockingQueue<String>();
+        queue.add("a");
+
+        long version = stm.getVersion();
+        assertTrue(queue.offerAll(Arrays.asList("b", "c", "d")));
+
+        assertEquals(version + 1, stm.getVersion());
+        assertEquals(4, queue.size());
+        assertEquals("[a, b, c, d]", queue.toString());
+
+        queue.add("e");
+        assertEquals("[a, b, c, d, e]", queue.toString());
+    }
+
+    @Test
+    public void offerAll_whenNotEnoughCapacity_thenNothingAdded() {
+        TransactionalLinkedBlockingQueue<String> queue = new TransactionalLinkedBlockingQueue<String>(3, true);
+        queue.add("a");
+
+        long version = stm.getVersion();
+        assertFalse(queue.offerAll(Arrays.asList("b", "c", "d")));
+
+        assertEquals(version, stm.getVersion());
+        assertEquals("[a]", queue.toString());
+    }
+
+    @Test
+    public void offerAll_whenNullItem_thenNullPointerException() {
+        TransactionalLinkedBlockingQueue<String> queue = new TransactionalLinkedBlockingQueue<String>();
+
+        try {
+            queue.offerAll(Arrays.asList("a", null));
+            fail();
+        } catch (NullPointerException expected) {
+        }
+
+        assertEquals("[]", queue.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void putAll_whenMoreItemsThanMaxCapacity_thenIllegalArgumentException() throws InterruptedException {
+        TransactionalLinkedBlockingQueue<String> queue = new TransactionalLinkedBlockingQueue<String>(2, true);
+        queue.putAll(Arrays.asList("a", "b", "c"));
+    }
+
+    @Test
+    public void putAllAndDrainTo_thenNoConflict() throws InterruptedException {
+        TransactionalLinkedBlockingQueue<String> queue = new TransactionalLinkedBlockingQueue<String>(100, true);
+        queue.putAll(Arrays.asList("a", "b"));
+
+        TransactionFactory txFactory = stm.getTransactionFactoryBuilder()
+                .setSpeculativeConfigurationEnabled(false)
+                .setReadTrackingEnabled(true)
+                .setReadonly(false)
+                .build();
+
+        List<String> sink = new LinkedList<String>();
+        Transaction tx1 = txFactory.start();
+        setThreadLocalTransaction(tx1);
+        queue.drainTo(sink);
+
+        Transaction tx2 = txFactory.start();
+        setThreadLocalTransaction(tx2);
+        queue.putAll(Arrays.asList("c", "d"));
+
+        tx1.commit();
+        tx2.commit();
+
+        clearThreadLocalTransaction();
+        assertEquals("[a, b]", sink.toString());
+        assertEquals("[c, d]", queue.toString());
+        assertEquals(2, queue.size());
+    }
+
+    @Test
+    public void drainTo_withMaxElements() {
+        TransactionalLinkedBlockingQueue<String> queue =
+                new TransactionalLinkedBlockingQueue<String>(Arrays.asList("a", "b", "c", "d"));
+        List<String> sink = new LinkedList<String>();
+
+        long version = stm.getVersion();
+        assertEquals(3, queue.drainTo(sink, 3));
+
+        assertEquals(version + 1, stm.getVersion());
+        assertEquals("[a, b, c]", sink.toString());
+        assertEquals(1, queue.size());
+        assertEquals("[d]", queue.toString());
+    }
+
+    @Test
+    public void takeBatch() throws InterruptedException {
+        TransactionalLinkedBlockingQueue<String> queue =
+                new TransactionalLinkedBlockingQueue<String>(Arrays.asList("a", "b", "c"));
+
+        long version = stm.getVersion();
+        List<String> batch = queue.takeBatch(2, 0, TimeUnit.SECONDS);
+
+        assertEquals(version + 1, stm.getVersion());
+        assertEquals(Arrays.asList("a", "b"), batch);
+        assertEquals("[c]", queue.toString());
+    }
+
+    @Test
+    public void takeBatch_whenTimeout_thenEmptyList() throws InterruptedException {
+        TransactionalLinkedBlockingQueue<String> queue = new TransactionalLinkedBlockingQueue<String>();
+
+        long startNs = System.nanoTime();
+        List<String> batch = queue.takeBatch(10, 200, TimeUnit.MILLISECONDS);
+        long durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNs);
+
+        assertTrue(batch.isEmpty());
+        assertTrue(durationMs >= 150);
+    }
+
+    @Test
+    public void takeBatch_whenItemsPutLater_thenWholeBatchReturned() throws InterruptedException {
+        final TransactionalLinkedBlockingQueue<String> queue = new TransactionalLinkedBlockingQueue<String>();
+
+        TestThread t = new TestThread("PutAllThread") {
+            @Override
+            public void doRun() throws Exception {
+                sleepMs(300);
+                queue.putAll(Arrays.asList("a", "b", "c"));
+            }
+        };
+        startAll(t);
+
+        List<String> batch = queue.takeBatch(10, 10, TimeUnit.SECONDS);
+        joinAll(t);
+
+        assertEquals(Arrays.asList("a", "b", "c"), batch);
+        assertTrue(queue.isEmpty());
+    }
+}
@@ -0,0 +1,228 @@
+package org.multiverse.transactional.collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.multiverse.api.Stm;
+import org.multiverse.api.Transaction;
+import org.multiverse.api.TransactionFactory;
+import org.multiverse.api.exceptions.OptimisticLockFailedWriteConflict;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.multiverse.api.GlobalStmInstance.getGlobalStmInstance;
+import static org.multiverse.api.ThreadLocalTransaction.clearThreadLocalTransaction;
+import static org.multiverse.api.ThreadLocalTransaction.setThreadLocalTransaction;
+
+/**
+ * @author Peter Veentjer
+ */
+public class TransactionalLinkedBlockingQueue_commutingTest {
+    private Stm stm;
+    private TransactionFactory txFactory;
+
+    @Before
+    public void setUp() {
+        stm = getGlobalStmInstance();
+        txFactory = stm.getTransactionFactoryBuilder()
+                .setSpeculativeConfigurationEnabled(false)
+                .setReadTrackingEnabled(true)
+                .setReadonly(false)
+                .build();
+        clearThreadLocalTransaction();
+    }
+
+    @After
+    public void tearDown() {
+        clearThreadLocalTransaction();
+    }
+
+    @Test
+    public void whenPutAndTake_thenNoConflict() throws InterruptedException {
+        TransactionalLinkedBlockingQueue<String> queue = new TransactionalLinkedBlockingQueue<String>(1000, true);
+        queue.put("1");
+        queue.put("2");
+
+        Transaction tx1 = txFactory.start();
+        setThreadLocalTransaction(tx1);
+        assertEquals("1", queue.take());
+
+        Transaction tx2 = txFactory.start();
+        setThreadLocalTransaction(tx2);
+        queue.put("3");
+
+        tx1.commit();
+        tx2.commit();
+
+        clearThreadLocalTransaction();
+        assertEquals(2, queue.size());
+        assertEquals("[2, 3]", queue.toString());
+    }
+
+    @Test
+    public void whenPutAndTakeOnSingleItem_thenNoConflict() throws InterruptedException {
+        TransactionalLinkedBlockingQueue<String> queue = new TransactionalLinkedBlockingQueue<String>(1000, true);
+        queue.put("1");
+
+        Transaction tx1 = txFactory.start();
+        setThreadLocalTransaction(tx1);
+        assertEquals("1", queue.take());
+
+        Transaction tx2 = txFactory.start();
+        setThreadLocalTransaction(tx2);
+        queue.put("2");
+
+        tx1.commit();
+        tx2.commit();
+
+        clearThreadLocalTransaction();
+        assertEquals(1, queue.size());
+        assertEquals("[2]", queue.toString());
+    }
+
+    @Test
+    public void whenBoundedWithDefaultCapacityMode_thenPutAndTakeDontConflict() throws InterruptedException {
+        TransactionalLinkedBlockingQueue<String> queue = new TransactionalLinkedBlockingQueue<String>(1000);
+        queue.put("1");
+
+        Transaction tx1 = txFactory.start();
+        setThreadLocalTransaction(tx1);
+        queue.take();
+
+        Transaction tx2 = txFactory.start();
+        setThreadLocalTransaction(tx2);
+        queue.put("2");
+
+        tx1.commit();
+        tx2.commit();
+
+        clearThreadLocalTransaction();
+        assertEquals(1, queue.size());
+        assertEquals("[2]", queue.toString());
+    }
+
+    @Test
+    public void whenClearAndPut_thenNoConflict() throws InterruptedException {
+        TransactionalLinkedBlockingQueue<String> queue = new TransactionalLinkedBlockingQueue<String>();
+        queue.put("1");
+
+        Transaction tx1 = txFactory.start();
+        setThreadLocalTransaction(tx1);
+        queue.clear();
+
+        Transaction tx2 = txFactory.start();
+        setThreadLocalTransaction(tx2);
+        queue.put("2");
+
+        tx1.commit();
+        tx2.commit();
+
+        clearThreadLocalTransaction();
+        assertEquals(1, queue.size());
+        assertEquals("[2]", queue.toString());
+    }
+
+    @Test
+    public void whenStrictCapacity_thenPutAndTakeConflict() throws InterruptedException {
+        TransactionalLinkedBlockingQueue<String> queue = new TransactionalLinkedBlockingQueue<String>(1000, false);
+        queue.put("1");
+
+        Transaction tx1 = txFactory.start();
+        setThreadLocalTransaction(tx1);
+        queue.take();
+
+        //the put reads the size to check the capacity, so the take can't commute with it.
+        Transaction tx2 = txFactory.start();
+        setThreadLocalTransaction(tx2);
+        queue.put("2");
+
+        tx1.commit();
+        try {
+            tx2.commit();
+            fail();
+        } catch (OptimisticLockFailedWriteConflict expected) {
+        }
+
+        clearThreadLocalTransaction();
+        assertEquals(0, queue.size());
+        assertEquals("[]", queue.toString());
+    }
+
+    @Test
+    public void whenConcurrentTakes_thenConflict() throws InterruptedException {
+        TransactionalLinkedBlockingQueue<String> queue = new TransactionalLinkedBlockingQueue<String>(1000, true);
+        queue.put("1");
+        queue.put("2");
+
+        Transaction tx1 = txFactory.start();
+        setThreadLocalTransaction(tx1);
+        queue.take();
+
+        Transaction tx2 = txFactory.start();
+        setThreadLocalTransaction(tx2);
+        queue.take();
+
+        tx1.commit();
+        try {
+            tx2.commit();
+            fail();
+        } catch (OptimisticLockFailedWriteConflict expected) {
+        }
+
+        clearThreadLocalTransaction();
+        assertEquals("[2]", queue.toString());
+    }
+
+    @Test
+    public void whenRemoveAndTakeSameItem_thenConflict() throws InterruptedException {
+        TransactionalLinkedBlockingQueue<String> queue = new TransactionalLinkedBlockingQueue<String>(1000, true);
+        queue.put("1");
+        queue.put("2");
+
+        Transaction tx1 = txFactory.start();
+        setThreadLocalTransaction(tx1);
+        queue.take();
+
+        Transaction tx2 = txFactory.start();
+        setThreadLocalTransaction(tx2);
+        queue.remove("1");
+
+        tx1.commit();
+        try {
+            tx2.commit();
+            fail();
+        } catch (OptimisticLockFailedWriteConflict expected) {
+        }
+
+        clearThreadLocalTransaction();
+        assertEquals(1, queue.size());
+        assertEquals("[2]", queue.toString());
+    }
+
+    @Test
+    public void whenRemoveOfAdjacentItems_thenConflict() {
+        TransactionalLinkedBlockingQueue<String> queue = new TransactionalLinkedBlockingQueue<String>(1000, true);
+        queue.add("1");
+        queue.add("2");
+        queue.add("3");
+        queue.add("4");
+
+        Transaction tx1 = txFactory.start();
+        setThreadLocalTransaction(tx1);
+        queue.remove("2");
+
+        Transaction tx2 = txFactory.start();
+        setThreadLocalTransaction(tx2);
+        queue.remove("3");
+
+        tx1.commit();
+        try {
+            tx2.commit();
+            fail();
+        } catch (OptimisticLockFailedWriteConflict expected) {
+        }
+
+        clearThreadLocalTransaction();
+        assertEquals("[1, 3, 4]", queue.toString());
+    }
+}
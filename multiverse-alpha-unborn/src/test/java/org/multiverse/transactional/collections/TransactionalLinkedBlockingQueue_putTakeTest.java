@@ -0,0 +1,251 @@
+package org.multiverse.transactional.collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.multiverse.api.Stm;
+import org.multiverse.api.Transaction;
+import org.multiverse.api.TransactionFactory;
+import org.multiverse.api.exceptions.Retry;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.multiverse.api.GlobalStmInstance.getGlobalStmInstance;
+import static org.multiverse.api.ThreadLocalTransaction.clearThreadLocalTransaction;
+import static org.multiverse.api.ThreadLocalTransaction.setThreadLocalTransaction;
+
+/**
+ * @author Peter Veentjer
+ */
+public class TransactionalLinkedBlockingQueue_putTakeTest {
+    private Stm stm;
+    private TransactionFactory updateTxFactory;
+
+    @Before
+    public void setUp() {
+        stm = getGlobalStmInstance();
+        updateTxFactory = stm.getTransactionFactoryBuilder().build();
+        clearThreadLocalTransaction();
+    }
+
+    @Test
+    public void constructor() {
+        TransactionalLinkedBlockingQueue<String> queue = new TransactionalLinkedBlockingQueue<String>();
+
+        assertEquals(Integer.MAX_VALUE, queue.getMaxCapacity());
+        assertTrue(queue.hasRelaxedMaxCapacity());
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.size());
+        assertEquals("[]", queue.toString());
+    }
+
+    @Test
+    public void constructorWithItems() {
+        TransactionalLinkedBlockingQueue<String> queue =
+                new TransactionalLinkedBlockingQueue<String>(Arrays.asList("1", "2", "3"));
+
+        assertEquals(3, queue.size());
+        assertEquals("[1, 2, 3]", queue.toString());
+    }
+
+    @Test
+    public void constructorWithCapacity_thenRelaxedCapacity() {
+        TransactionalLinkedBlockingQueue<String> queue = new TransactionalLinkedBlockingQueue<String>(10);
+
+        assertEquals(10, queue.getMaxCapacity());
+        assertTrue(queue.hasRelaxedMaxCapacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_whenNegativeCapacity_thenIllegalArgumentException() {
+        new TransactionalLinkedBlockingQueue<String>(-1);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void put_whenNull_thenNullPointerException() throws InterruptedException {
+        TransactionalLinkedBlockingQueue<String> queue = new TransactionalLinkedBlockingQueue<String>();
+        queue.put(null);
+    }
+
+    @Test
+    public void put() throws InterruptedException {
+        TransactionalLinkedBlockingQueue<String> queue = new TransactionalLinkedBlockingQueue<String>();
+
+        long version = stm.getVersion();
+        queue.put("1");
+        queue.put("2");
+
+        assertEquals(version + 2, stm.getVersion());
+        assertEquals(2, queue.size());
+        assertFalse(queue.isEmpty());
+        assertEquals("1", queue.peek());
+        assertEquals("[1, 2]", queue.toString());
+    }
+
+    @Test
+    public void put_whenFull_thenRetry() throws InterruptedException {
+        TransactionalLinkedBlockingQueue<String> queue = new TransactionalLinkedBlockingQueue<String>(1, true);
+        queue.put("1");
+
+        long version = stm.getVersion();
+        Transaction tx = updateTxFactory.start();
+        setThreadLocalTransaction(tx);
+        try {
+            queue.put("2");
+            fail();
+        } catch (Retry expected) {
+        }
+        tx.abort();
+        clearThreadLocalTransaction();
+
+        assertEquals(version, stm.getVersion());
+        assertEquals("[1]", queue.toString());
+    }
+
+    @Test
+    public void offerAndAdd_whenFull() {
+        TransactionalLinkedBlockingQueue<String> queue = new TransactionalLinkedBlockingQueue<String>(1);
+
+        assertTrue(queue.offer("1"));
+        assertEquals(0, queue.remainingCapacity());
+        assertFalse(queue.offer("2"));
+
+        try {
+            queue.add("2");
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+
+        assertEquals("[1]", queue.toString());
+    }
+
+    @Test
+    public void offerWithTimeout() throws InterruptedException {
+        TransactionalLinkedBlockingQueue<String> queue = new TransactionalLinkedBlockingQueue<String>(1);
+
+        assertTrue(queue.offer("1", 0, TimeUnit.SECONDS));
+        assertEquals("[1]", queue.toString());
+    }
+
+    @Test
+    public void offerWithTimeout_whenFull() throws InterruptedException {
+        TransactionalLinkedBlockingQueue<String> queue = new TransactionalLinkedBlockingQueue<String>(1);
+        queue.put("1");
+
+        assertFalse(queue.offer("2", 0, TimeUnit.SECONDS));
+        assertFalse(queue.offer("2", 100, TimeUnit.MILLISECONDS));
+        assertEquals("[1]", queue.toString());
+    }
+
+    @Test
+    public void take_whenEmpty_thenRetry() throws InterruptedException {
+        TransactionalLinkedBlockingQueue<String> queue = new TransactionalLinkedBlockingQueue<String>();
+
+        long version = stm.getVersion();
+        Transaction tx = updateTxFactory.start();
+        setThreadLocalTransaction(tx);
+        try {
+            queue.take();
+            fail();
+        } catch (Retry expected) {
+        }
+        tx.abort();
+        clearThreadLocalTransaction();
+
+        assertEquals(version, stm.getVersion());
+    }
+
+    @Test
+    public void take() throws InterruptedException {
+        TransactionalLinkedBlockingQueue<String> queue = new TransactionalLinkedBlockingQueue<String>();
+        queue.put("1");
+        queue.put("2");
+
+        long version = stm.getVersion();
+        assertEquals("1", queue.take());
+        assertEquals(version + 1, stm.getVersion());
+        assertEquals("2", queue.take());
+
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.size());
+        assertEquals("[]", queue.toString());
+
+        //the queue still works after it has become empty.
+        queue.put("3");
+        assertEquals("[3]", queue.toString());
+    }
+
+    @Test
+    public void pollWithTimeout() throws InterruptedException {
+        TransactionalLinkedBlockingQueue<String> queue =
+                new TransactionalLinkedBlockingQueue<String>(Arrays.asList("1", "2"));
+
+        assertEquals("1", queue.poll(0, TimeUnit.SECONDS));
+        assertEquals("2", queue.poll(100, TimeUnit.MILLISECONDS));
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void pollWithTimeout_whenEmpty() throws InterruptedException {
+        TransactionalLinkedBlockingQueue<String> queue = new TransactionalLinkedBlockingQueue<String>();
+
+        assertNull(queue.poll(0, TimeUnit.SECONDS));
+        assertNull(queue.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void pollAndRemove() {
+        TransactionalLinkedBlockingQueue<String> queue = new TransactionalLinkedBlockingQueue<String>();
+        queue.add("1");
+        queue.add("2");
+
+        assertEquals("1", queue.poll());
+        assertEquals("2", queue.remove());
+        assertNull(queue.poll());
+
+        try {
+            queue.remove();
+            fail();
+        } catch (NoSuchElementException expected) {
+        }
+    }
+
+    @Test
+    public void peekAndElement_whenEmpty() {
+        TransactionalLinkedBlockingQueue<String> queue = new TransactionalLinkedBlockingQueue<String>();
+
+        assertNull(queue.peek());
+        try {
+            queue.element();
+            fail();
+        } catch (NoSuchElementException expected) {
+        }
+    }
+
+    @Test
+    public void drainTo() {
+        TransactionalLinkedBlockingQueue<String> queue =
+                new TransactionalLinkedBlockingQueue<String>(Arrays.asList("1", "2", "3"));
+        TransactionalLinkedList<String> sink = new TransactionalLinkedList<String>();
+
+        long version = stm.getVersion();
+        assertEquals(2, queue.drainTo(sink, 2));
+        //the sink is transactional, so the items are moved in a single transaction.
+        assertEquals(version + 1, stm.getVersion());
+        assertEquals("[1, 2]", sink.toString());
+        assertEquals("[3]", queue.toString());
+
+        assertEquals(1, queue.drainTo(sink));
+        assertEquals(0, queue.drainTo(sink));
+        assertEquals("[1, 2, 3]", sink.toString());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void drainTo_whenSelf_thenIllegalArgumentException() {
+        TransactionalLinkedBlockingQueue<String> queue = new TransactionalLinkedBlockingQueue<String>();
+        queue.drainTo(queue);
+    }
+}
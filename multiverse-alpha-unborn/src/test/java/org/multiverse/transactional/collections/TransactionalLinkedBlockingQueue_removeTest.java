@@ -0,0 +1,114 @@
+package org.multiverse.transactional.collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import static org.junit.Assert.*;
+import static org.multiverse.api.ThreadLocalTransaction.clearThreadLocalTransaction;
+
+/**
+ * @author Peter Veentjer
+ */
+public class TransactionalLinkedBlockingQueue_removeTest {
+    private TransactionalLinkedBlockingQueue<String> queue;
+
+    @Before
+    public void setUp() {
+        clearThreadLocalTransaction();
+        queue = new TransactionalLinkedBlockingQueue<String>(Arrays.asList("1", "2", "3", "4"));
+    }
+
+    @Test
+    public void removeObject_whenNotFound() {
+        assertFalse(queue.remove("5"));
+        assertFalse(queue.remove(null));
+        assertEquals(4, queue.size());
+    }
+
+    @Test
+    public void removeObject_whenFirst() {
+        assertTrue(queue.remove("1"));
+        assertEquals("[2, 3, 4]", queue.toString());
+        assertEquals("2", queue.peek());
+        assertEquals(3, queue.size());
+    }
+
+    @Test
+    public void removeObject_whenLast_thenTailUpdated() {
+        assertTrue(queue.remove("4"));
+        queue.add("5");
+
+        assertEquals("[1, 2, 3, 5]", queue.toString());
+        assertEquals(4, queue.size());
+    }
+
+    @Test
+    public void removeObject_whenMiddle() {
+        assertTrue(queue.remove("2"));
+        assertTrue(queue.remove("3"));
+
+        assertEquals("[1, 4]", queue.toString());
+        assertEquals(2, queue.size());
+    }
+
+    @Test
+    public void iteratorRemove() {
+        Iterator<String> it = queue.iterator();
+        while (it.hasNext()) {
+            if (Integer.parseInt(it.next()) % 2 == 0) {
+                it.remove();
+            }
+        }
+
+        assertEquals("[1, 3]", queue.toString());
+        assertEquals(2, queue.size());
+    }
+
+    @Test
+    public void iterator_whenQueueChanged_thenIteratesOverCopy() {
+        Iterator<String> it = queue.iterator();
+        queue.poll();
+        queue.add("5");
+
+        StringBuilder sb = new StringBuilder();
+        while (it.hasNext()) {
+            sb.append(it.next());
+        }
+        assertEquals("1234", sb.toString());
+    }
+
+    @Test
+    public void removeAllAndRetainAll() {
+        assertTrue(queue.removeAll(Arrays.asList("1", "3")));
+        assertEquals("[2, 4]", queue.toString());
+
+        assertTrue(queue.retainAll(Arrays.asList("4")));
+        assertEquals("[4]", queue.toString());
+        assertEquals(1, queue.size());
+    }
+
+    @Test
+    public void clear() {
+        queue.clear();
+
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.size());
+        assertEquals("[]", queue.toString());
+
+        queue.add("5");
+        assertEquals("[5]", queue.toString());
+        assertEquals(1, queue.size());
+    }
+
+    @Test
+    public void containsAndToArray() {
+        assertTrue(queue.contains("3"));
+        assertFalse(queue.contains("5"));
+        assertTrue(queue.containsAll(Arrays.asList("1", "4")));
+        assertArrayEquals(new Object[]{"1", "2", "3", "4"}, queue.toArray());
+        assertArrayEquals(new String[]{"1", "2", "3", "4"}, queue.toArray(new String[0]));
+    }
+}
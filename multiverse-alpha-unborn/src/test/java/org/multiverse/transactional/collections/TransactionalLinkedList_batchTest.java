@@ -0,0 +1,193 @@
+package org.multiverse.transactional.collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.multiverse.TestThread;
+import org.multiverse.api.Stm;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.multiverse.TestUtils.*;
+import static org.multiverse.api.GlobalStmInstance.getGlobalStmInstance;
+import static org.multiverse.api.ThreadLocalTransaction.clearThreadLocalTransaction;
+
+public class TransactionalLinkedList_batchTest {
+    private Stm stm;
+
+    @Before
+    public void setUp() {
+        stm = getGlobalStmInstance();
+        clearThreadLocalTransaction();
+    }
+
+    @Test
+    public void offerAll() {
+        TransactionalLinkedList<String> list = new TransactionalLinkedList<String>("a");
+
+        long version = stm.getVersion();
+        assertTrue(list.offerAll(Arrays.asList("b", "c", "d")));
+
+        assertEquals(version + 1, stm.getVersion());
+        assertEquals(4, list.size());
+        assertEquals("[a, b, c, d]", list.toString());
+        assertEquals("d", list.getLast());
+        assertEquals("[d, c, b, a]", toString(list.descendingIterator()));
+    }
+
+    @Test
+    public void offerAll_whenEmpty() {
+        TransactionalLinkedList<String> list = new TransactionalLinkedList<String>();
+
+        assertTrue(list.offerAll(Arrays.asList("a", "b")));
+
+        assertEquals("[a, b]", list.toString());
+        assertEquals("a", list.getFirst());
+        assertEquals("b", list.getLast());
+    }
+
+    @Test
+    public void offerAll_whenNotEnoughCapacity_thenNothingAdded() {
+        TransactionalLinkedList<String> list = new TransactionalLinkedList<String>(3);
+        list.add("a");
+
+        long version = stm.getVersion();
+        assertFalse(list.offerAll(Arrays.asList("b", "c", "d")));
+
+        assertEquals(version, stm.getVersion());
+        assertEquals("[a]", list.toString());
+    }
+
+    @Test
+    public void offerAll_whenNullItem_thenNullPointerException() {
+        TransactionalLinkedList<String> list = new TransactionalLinkedList<String>();
+
+        try {
+            list.offerAll(Arrays.asList("a", null));
+            fail();
+        } catch (NullPointerException expected) {
+        }
+
+        assertEquals("[]", list.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void putAll_whenMoreItemsThanMaxCapacity_thenIllegalArgumentException() throws InterruptedException {
+        TransactionalLinkedList<String> list = new TransactionalLinkedList<String>(2);
+        list.putAll(Arrays.asList("a", "b", "c"));
+    }
+
+    @Test
+    public void putAll_whenFull_thenWaitsForCapacity() throws InterruptedException {
+        final TransactionalLinkedList<String> list = new TransactionalLinkedList<String>(3);
+        list.add("a");
+        list.add("b");
+
+        TestThread t = new TestThread("PutAllThread") {
+            @Override
+            public void doRun() throws Exception {
+                list.putAll(Arrays.asList("c", "d"));
+            }
+        };
+        startAll(t);
+
+        sleepMs(500);
+        assertAlive(t);
+        assertEquals("[a, b]", list.toString());
+
+        list.take();
+        joinAll(t);
+        assertEquals("[b, c, d]", list.toString());
+    }
+
+    @Test
+    public void drainTo_withMaxElements() {
+        TransactionalLinkedList<String> list = new TransactionalLinkedList<String>("a", "b", "c", "d");
+        List<String> sink = new LinkedList<String>();
+
+        long version = stm.getVersion();
+        assertEquals(3, list.drainTo(sink, 3));
+
+        assertEquals(version + 1, stm.getVersion());
+        assertEquals("[a, b, c]", sink.toString());
+        assertEquals(1, list.size());
+        assertEquals("[d]", list.toString());
+        assertEquals("[d]", toString(list.descendingIterator()));
+    }
+
+    @Test
+    public void drainTo_whenMaxElementsZero() {
+        TransactionalLinkedList<String> list = new TransactionalLinkedList<String>("a");
+        List<String> sink = new LinkedList<String>();
+
+        assertEquals(0, list.drainTo(sink, 0));
+        assertEquals("[a]", list.toString());
+    }
+
+    @Test
+    public void takeBatch() throws InterruptedException {
+        TransactionalLinkedList<String> list = new TransactionalLinkedList<String>("a", "b", "c");
+
+        long version = stm.getVersion();
+        List<String> batch = list.takeBatch(2, 0, TimeUnit.SECONDS);
+
+        assertEquals(version + 1, stm.getVersion());
+        assertEquals(Arrays.asList("a", "b"), batch);
+        assertEquals("[c]", list.toString());
+    }
+
+    @Test
+    public void takeBatch_whenEmptyAndNoTimeout_thenEmptyList() throws InterruptedException {
+        TransactionalLinkedList<String> list = new TransactionalLinkedList<String>();
+
+        assertTrue(list.takeBatch(10, 0, TimeUnit.SECONDS).isEmpty());
+    }
+
+    @Test
+    public void takeBatch_whenTimeout_thenEmptyList() throws InterruptedException {
+        TransactionalLinkedList<String> list = new TransactionalLinkedList<String>();
+
+        long startNs = System.nanoTime();
+        List<String> batch = list.takeBatch(10, 200, TimeUnit.MILLISECONDS);
+        long durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNs);
+
+        assertTrue(batch.isEmpty());
+        assertTrue(durationMs >= 150);
+    }
+
+    @Test
+    public void takeBatch_whenItemsPutLater_thenWholeBatchReturned() throws InterruptedException {
+        final TransactionalLinkedList<String> list = new TransactionalLinkedList<String>();
+
+        TestThread t = new TestThread("PutAllThread") {
+            @Override
+            public void doRun() throws Exception {
+                sleepMs(300);
+                list.putAll(Arrays.asList("a", "b", "c"));
+            }
+        };
+        startAll(t);
+
+        List<String> batch = list.takeBatch(10, 10, TimeUnit.SECONDS);
+        joinAll(t);
+
+        assertEquals(Arrays.asList("a", "b", "c"), batch);
+        assertTrue(list.isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void takeBatch_whenMaxElementsTooSmall_thenIllegalArgumentException() throws InterruptedException {
+        new TransactionalLinkedList<String>().takeBatch(0, 1, TimeUnit.SECONDS);
+    }
+
+    private static String toString(java.util.Iterator<String> it) {
+        List<String> items = new LinkedList<String>();
+        while (it.hasNext()) {
+            items.add(it.next());
+        }
+        return items.toString();
+    }
+}
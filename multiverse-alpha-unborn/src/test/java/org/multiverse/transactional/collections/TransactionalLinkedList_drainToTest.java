@@ -3,7 +3,10 @@ package org.multiverse.transactional.collections;
 import org.junit.Before;
 import org.junit.Test;
 import org.multiverse.api.Stm;
+import org.multiverse.api.Transaction;
+import org.multiverse.api.TransactionFactory;
 
+import java.util.ArrayList;
 import java.util.Collection;
 
 import static org.junit.Assert.assertEquals;
@@ -14,10 +17,15 @@ import static org.multiverse.api.ThreadLocalTransaction.setThreadLocalTransactio
 public class TransactionalLinkedList_drainToTest {
 
     private Stm stm;
+    private TransactionFactory txFactory;
 
     @Before
     public void setUp() {
         stm = getGlobalStmInstance();
+        txFactory = stm.getTransactionFactoryBuilder()
+                .setReadonly(false)
+                .setSpeculativeConfigurationEnabled(false)
+                .build();
         setThreadLocalTransaction(null);
     }
 
@@ -48,4 +56,55 @@ public class TransactionalLinkedList_drainToTest {
         assertEquals("[1, 2, 3]", c.toString());
         assertEquals(0, list.size());
     }
+
+    @Test
+    public void drainToWithNonTransactionalCollection() {
+        TransactionalLinkedList<String> list = new TransactionalLinkedList<String>();
+        list.add("1");
+        list.add("2");
+
+        Collection<String> c = new ArrayList<String>();
+        long version = stm.getVersion();
+        int result = list.drainTo(c);
+        assertEquals(2, result);
+        assertEquals(version + 1, stm.getVersion());
+        assertEquals("[1, 2]", c.toString());
+        assertEquals(0, list.size());
+    }
+
+    @Test
+    public void whenRunningTransactionAborted_thenTransactionalCollectionRolledBack() {
+        TransactionalLinkedList<String> list = new TransactionalLinkedList<String>();
+        list.add("1");
+        list.add("2");
+        Collection<String> c = new TransactionalLinkedList<String>();
+
+        Transaction tx = txFactory.start();
+        setThreadLocalTransaction(tx);
+        assertEquals(2, list.drainTo(c));
+        assertEquals("[1, 2]", c.toString());
+        tx.abort();
+        setThreadLocalTransaction(null);
+
+        assertTrue(c.isEmpty());
+        assertEquals("[1, 2]", list.toString());
+    }
+
+    @Test
+    public void whenRunningTransactionAborted_thenNonTransactionalCollectionKeepsItems() {
+        TransactionalLinkedList<String> list = new TransactionalLinkedList<String>();
+        list.add("1");
+        list.add("2");
+        Collection<String> c = new ArrayList<String>();
+
+        Transaction tx = txFactory.start();
+        setThreadLocalTransaction(tx);
+        assertEquals(2, list.drainTo(c));
+        tx.abort();
+        setThreadLocalTransaction(null);
+
+        //the items are added before the running transaction completes, so they are not removed by the abort.
+        assertEquals("[1, 2]", c.toString());
+        assertEquals("[1, 2]", list.toString());
+    }
 }
@@ -0,0 +1,162 @@
+package org.multiverse.transactional.collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.multiverse.api.ThreadLocalTransaction.clearThreadLocalTransaction;
+
+/**
+ * @author Peter Veentjer
+ */
+public class TransactionalPersistentMap_putRemoveTest {
+
+    @Before
+    public void setUp() {
+        clearThreadLocalTransaction();
+    }
+
+    @Test
+    public void constructor() {
+        assertEquals(32, new TransactionalPersistentMap<String, String>().getConcurrencyLevel());
+        assertEquals(1, new TransactionalPersistentMap<String, String>(1).getConcurrencyLevel());
+        assertEquals(64, new TransactionalPersistentMap<String, String>(33).getConcurrencyLevel());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_whenConcurrencyLevelZero_thenIllegalArgumentException() {
+        new TransactionalPersistentMap<String, String>(0);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void put_whenNullKey_thenNullPointerException() {
+        new TransactionalPersistentMap<String, String>().put(null, "1");
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void put_whenNullValue_thenNullPointerException() {
+        new TransactionalPersistentMap<String, String>().put("1", null);
+    }
+
+    @Test
+    public void putGetRemove() {
+        TransactionalPersistentMap<String, String> map = new TransactionalPersistentMap<String, String>();
+
+        assertNull(map.put("1", "a"));
+        assertEquals("a", map.put("1", "b"));
+        assertEquals("b", map.putIfAbsent("1", "c"));
+        assertNull(map.putIfAbsent("2", "c"));
+        assertEquals(2, map.size());
+        assertEquals("b", map.get("1"));
+        assertNull(map.get("3"));
+
+        assertFalse(map.replace("1", "a", "d"));
+        assertTrue(map.replace("1", "b", "d"));
+        assertEquals("d", map.replace("1", "e"));
+        assertNull(map.replace("3", "e"));
+
+        assertFalse(map.remove("1", "d"));
+        assertTrue(map.remove("1", "e"));
+        assertEquals("c", map.remove("2"));
+        assertNull(map.remove("2"));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void whenCollidingKeys() {
+        TransactionalPersistentMap<CollidingKey, String> map = new TransactionalPersistentMap<CollidingKey, String>();
+
+        for (int k = 0; k < 10; k++) {
+            map.put(new CollidingKey(k), "" + k);
+        }
+
+        assertEquals(10, map.size());
+        for (int k = 0; k < 10; k++) {
+            assertEquals("" + k, map.get(new CollidingKey(k)));
+        }
+
+        assertEquals("5", map.remove(new CollidingKey(5)));
+        assertNull(map.get(new CollidingKey(5)));
+        assertEquals("6", map.get(new CollidingKey(6)));
+        assertEquals(9, map.size());
+    }
+
+    @Test
+    public void whenManyKeys_thenSameAsHashMap() {
+        TransactionalPersistentMap<Integer, Integer> map = new TransactionalPersistentMap<Integer, Integer>();
+        Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+
+        Random random = new Random(1);
+        for (int k = 0; k < 20000; k++) {
+            Integer key = random.nextInt(2000);
+            if (random.nextBoolean()) {
+                assertEquals(expected.put(key, k), map.put(key, k));
+            } else {
+                assertEquals(expected.remove(key), map.remove(key));
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        assertEquals(expected, map);
+        assertEquals(map, expected);
+        assertEquals(expected.hashCode(), map.hashCode());
+    }
+
+    @Test
+    public void clear() {
+        TransactionalPersistentMap<Integer, String> map = new TransactionalPersistentMap<Integer, String>();
+        for (int k = 0; k < 1000; k++) {
+            map.put(k, "" + k);
+        }
+
+        map.clear();
+
+        assertEquals(0, map.size());
+        assertTrue(map.isEmpty());
+        assertNull(map.get(1));
+        assertEquals(0, map.snapshot().size());
+    }
+
+    @Test
+    public void keySetIteratorRemove() {
+        TransactionalPersistentMap<Integer, String> map = new TransactionalPersistentMap<Integer, String>();
+        for (int k = 0; k < 100; k++) {
+            map.put(k, "" + k);
+        }
+
+        int count = 0;
+        for (java.util.Iterator<Integer> it = map.keySet().iterator(); it.hasNext();) {
+            if (it.next() % 2 == 0) {
+                it.remove();
+            }
+            count++;
+        }
+
+        assertEquals(100, count);
+        assertEquals(50, map.size());
+        assertNull(map.get(2));
+        assertEquals("3", map.get(3));
+    }
+
+    static class CollidingKey {
+        private final int value;
+
+        CollidingKey(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public int hashCode() {
+            return 1;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof CollidingKey && ((CollidingKey) o).value == value;
+        }
+    }
+}
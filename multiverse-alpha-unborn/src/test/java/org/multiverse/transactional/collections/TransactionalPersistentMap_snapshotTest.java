@@ -0,0 +1,138 @@
+package org.multiverse.transactional.collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.multiverse.api.Stm;
+import org.multiverse.api.Transaction;
+import org.multiverse.api.TransactionFactory;
+import org.multiverse.api.exceptions.OptimisticLockFailedWriteConflict;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.multiverse.api.GlobalStmInstance.getGlobalStmInstance;
+import static org.multiverse.api.ThreadLocalTransaction.clearThreadLocalTransaction;
+import static org.multiverse.api.ThreadLocalTransaction.setThreadLocalTransaction;
+
+/**
+ * @author Peter Veentjer
+ */
+public class TransactionalPersistentMap_snapshotTest {
+    private Stm stm;
+    private TransactionFactory txFactory;
+
+    @Before
+    public void setUp() {
+        stm = getGlobalStmInstance();
+        txFactory = stm.getTransactionFactoryBuilder()
+                .setSpeculativeConfigurationEnabled(false)
+                .setReadTrackingEnabled(true)
+                .setReadonly(false)
+                .build();
+        clearThreadLocalTransaction();
+    }
+
+    @After
+    public void tearDown() {
+        clearThreadLocalTransaction();
+    }
+
+    @Test
+    public void whenMapChanged_thenSnapshotUnchanged() {
+        TransactionalPersistentMap<Integer, String> map = new TransactionalPersistentMap<Integer, String>();
+        Map<Integer, String> expected = new HashMap<Integer, String>();
+        for (int k = 0; k < 1000; k++) {
+            map.put(k, "" + k);
+            expected.put(k, "" + k);
+        }
+
+        TransactionalPersistentMap.Snapshot<Integer, String> snapshot = map.snapshot();
+        map.put(1, "changed");
+        map.remove(2);
+        map.put(5000, "new");
+
+        assertEquals(1000, snapshot.size());
+        assertEquals(expected, snapshot);
+        assertEquals("1", snapshot.get(1));
+        assertEquals("2", snapshot.get(2));
+        assertFalse(snapshot.containsKey(5000));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void snapshot_whenPut_thenUnsupportedOperationException() {
+        TransactionalPersistentMap<Integer, String> map = new TransactionalPersistentMap<Integer, String>();
+        map.snapshot().put(1, "1");
+    }
+
+    @Test
+    public void whenSnapshotDuringUpdate_thenChangeNotSeen() {
+        TransactionalPersistentMap<Integer, String> map = new TransactionalPersistentMap<Integer, String>();
+        map.put(1, "one");
+
+        Transaction tx1 = txFactory.start();
+        setThreadLocalTransaction(tx1);
+        map.put(2, "two");
+        map.put(1, "een");
+
+        clearThreadLocalTransaction();
+        TransactionalPersistentMap.Snapshot<Integer, String> snapshot = map.snapshot();
+
+        setThreadLocalTransaction(tx1);
+        tx1.commit();
+        clearThreadLocalTransaction();
+
+        assertEquals(1, snapshot.size());
+        assertEquals("one", snapshot.get(1));
+        assertEquals("een", map.get(1));
+    }
+
+    @Test
+    public void whenDifferentSubtries_thenNoConflict() {
+        TransactionalPersistentMap<Integer, String> map = new TransactionalPersistentMap<Integer, String>();
+        map.put(1, "one");
+
+        Transaction tx1 = txFactory.start();
+        setThreadLocalTransaction(tx1);
+        map.put(2, "two");
+
+        Transaction tx2 = txFactory.start();
+        setThreadLocalTransaction(tx2);
+        map.remove(1);
+        map.put(3, "three");
+
+        tx1.commit();
+        tx2.commit();
+
+        clearThreadLocalTransaction();
+        assertEquals(2, map.size());
+        assertEquals("two", map.get(2));
+        assertEquals("three", map.get(3));
+    }
+
+    @Test
+    public void whenSameSubtrie_thenConflict() {
+        TransactionalPersistentMap<Integer, String> map = new TransactionalPersistentMap<Integer, String>();
+
+        Transaction tx1 = txFactory.start();
+        setThreadLocalTransaction(tx1);
+        map.put(1, "one");
+
+        Transaction tx2 = txFactory.start();
+        setThreadLocalTransaction(tx2);
+        map.put(1, "een");
+
+        tx1.commit();
+
+        try {
+            tx2.commit();
+            fail();
+        } catch (OptimisticLockFailedWriteConflict expected) {
+        }
+
+        clearThreadLocalTransaction();
+        assertEquals(1, map.size());
+        assertEquals("one", map.get(1));
+    }
+}
@@ -0,0 +1,126 @@
+package org.multiverse.transactional.collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.multiverse.api.Stm;
+import org.multiverse.api.Transaction;
+import org.multiverse.api.TransactionFactory;
+import org.multiverse.api.exceptions.OptimisticLockFailedWriteConflict;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.multiverse.api.GlobalStmInstance.getGlobalStmInstance;
+import static org.multiverse.api.ThreadLocalTransaction.clearThreadLocalTransaction;
+import static org.multiverse.api.ThreadLocalTransaction.setThreadLocalTransaction;
+
+/**
+ * @author Peter Veentjer
+ */
+public class TransactionalPriorityBlockingQueue_commutingTest {
+    private Stm stm;
+    private TransactionFactory txFactory;
+    private TransactionalPriorityBlockingQueue<Integer> queue;
+
+    @Before
+    public void setUp() {
+        stm = getGlobalStmInstance();
+        txFactory = stm.getTransactionFactoryBuilder()
+                .setSpeculativeConfigurationEnabled(false)
+                .setReadTrackingEnabled(true)
+                .setReadonly(false)
+                .build();
+        clearThreadLocalTransaction();
+
+        queue = new TransactionalPriorityBlockingQueue<Integer>();
+        for (int k = 0; k < 10000; k += 10) {
+            queue.add(k);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        clearThreadLocalTransaction();
+    }
+
+    @Test
+    public void whenOffersWithDifferentPriorities_thenNoConflict() {
+        //the offers only conflict when they share a predecessor on some level in the skip list, and with 1000 items
+        //between them the chance that no item with a high enough level lies in between is negligible.
+        Transaction tx1 = txFactory.start();
+        setThreadLocalTransaction(tx1);
+        queue.offer(15);
+
+        Transaction tx2 = txFactory.start();
+        setThreadLocalTransaction(tx2);
+        queue.offer(9975);
+
+        tx1.commit();
+        tx2.commit();
+
+        clearThreadLocalTransaction();
+        assertEquals(1002, queue.size());
+        assertEquals(new Integer(0), queue.peek());
+    }
+
+    @Test
+    public void whenTakeAndOfferWithLowPriority_thenNoConflict() throws InterruptedException {
+        Transaction tx1 = txFactory.start();
+        setThreadLocalTransaction(tx1);
+        assertEquals(new Integer(0), queue.take());
+
+        Transaction tx2 = txFactory.start();
+        setThreadLocalTransaction(tx2);
+        queue.offer(9975);
+
+        tx1.commit();
+        tx2.commit();
+
+        clearThreadLocalTransaction();
+        assertEquals(1000, queue.size());
+        assertEquals(new Integer(10), queue.peek());
+    }
+
+    @Test
+    public void whenTakeAndOfferOfNewHead_thenConflict() throws InterruptedException {
+        Transaction tx1 = txFactory.start();
+        setThreadLocalTransaction(tx1);
+        assertEquals(new Integer(0), queue.take());
+
+        Transaction tx2 = txFactory.start();
+        setThreadLocalTransaction(tx2);
+        queue.offer(-1);
+
+        tx1.commit();
+        try {
+            tx2.commit();
+            fail();
+        } catch (OptimisticLockFailedWriteConflict expected) {
+        }
+
+        clearThreadLocalTransaction();
+        assertEquals(999, queue.size());
+        assertEquals(new Integer(10), queue.peek());
+    }
+
+    @Test
+    public void whenConcurrentTakes_thenConflict() throws InterruptedException {
+        Transaction tx1 = txFactory.start();
+        setThreadLocalTransaction(tx1);
+        assertEquals(new Integer(0), queue.take());
+
+        Transaction tx2 = txFactory.start();
+        setThreadLocalTransaction(tx2);
+        assertEquals(new Integer(0), queue.take());
+
+        tx1.commit();
+        try {
+            tx2.commit();
+            fail();
+        } catch (OptimisticLockFailedWriteConflict expected) {
+        }
+
+        clearThreadLocalTransaction();
+        assertEquals(999, queue.size());
+    }
+}
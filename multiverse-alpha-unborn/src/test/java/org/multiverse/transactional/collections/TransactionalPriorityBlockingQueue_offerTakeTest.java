@@ -0,0 +1,259 @@
+package org.multiverse.transactional.collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.multiverse.TestThread;
+import org.multiverse.api.Stm;
+import org.multiverse.api.Transaction;
+import org.multiverse.api.TransactionFactory;
+import org.multiverse.api.exceptions.Retry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.multiverse.TestUtils.*;
+import static org.multiverse.api.GlobalStmInstance.getGlobalStmInstance;
+import static org.multiverse.api.ThreadLocalTransaction.clearThreadLocalTransaction;
+import static org.multiverse.api.ThreadLocalTransaction.setThreadLocalTransaction;
+
+/**
+ * @author Peter Veentjer
+ */
+public class TransactionalPriorityBlockingQueue_offerTakeTest {
+    private Stm stm;
+    private TransactionFactory updateTxFactory;
+
+    @Before
+    public void setUp() {
+        stm = getGlobalStmInstance();
+        updateTxFactory = stm.getTransactionFactoryBuilder().build();
+        clearThreadLocalTransaction();
+    }
+
+    @After
+    public void tearDown() {
+        clearThreadLocalTransaction();
+    }
+
+    @Test
+    public void constructor() {
+        TransactionalPriorityBlockingQueue<String> queue = new TransactionalPriorityBlockingQueue<String>();
+
+        assertNull(queue.comparator());
+        assertEquals(Integer.MAX_VALUE, queue.remainingCapacity());
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.size());
+        assertEquals("[]", queue.toString());
+    }
+
+    @Test
+    public void constructorWithItems() {
+        TransactionalPriorityBlockingQueue<Integer> queue =
+                new TransactionalPriorityBlockingQueue<Integer>(Arrays.asList(3, 1, 2));
+
+        assertEquals(3, queue.size());
+        assertEquals("[1, 2, 3]", queue.toString());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void offer_whenNull_thenNullPointerException() {
+        TransactionalPriorityBlockingQueue<String> queue = new TransactionalPriorityBlockingQueue<String>();
+        queue.offer(null);
+    }
+
+    @Test
+    public void offer() {
+        TransactionalPriorityBlockingQueue<Integer> queue = new TransactionalPriorityBlockingQueue<Integer>();
+
+        long version = stm.getVersion();
+        assertTrue(queue.offer(5));
+        assertTrue(queue.offer(1));
+        assertTrue(queue.offer(3));
+
+        assertEquals(version + 3, stm.getVersion());
+        assertEquals(3, queue.size());
+        assertEquals(new Integer(1), queue.peek());
+        assertEquals("[1, 3, 5]", queue.toString());
+    }
+
+    @Test
+    public void whenSamePriority_thenInsertionOrder() throws InterruptedException {
+        Comparator<String> byLength = new Comparator<String>() {
+            @Override
+            public int compare(String s1, String s2) {
+                return s1.length() - s2.length();
+            }
+        };
+        TransactionalPriorityBlockingQueue<String> queue = new TransactionalPriorityBlockingQueue<String>(byLength);
+        queue.put("bb");
+        queue.put("a2");
+        queue.put("c");
+        queue.put("a1");
+
+        assertSame(byLength, queue.comparator());
+        assertEquals("c", queue.take());
+        assertEquals("bb", queue.take());
+        assertEquals("a2", queue.take());
+        assertEquals("a1", queue.take());
+    }
+
+    @Test
+    public void whenDuplicates_thenAllStored() throws InterruptedException {
+        TransactionalPriorityBlockingQueue<Integer> queue = new TransactionalPriorityBlockingQueue<Integer>();
+        queue.put(1);
+        queue.put(1);
+
+        assertEquals(2, queue.size());
+        assertTrue(queue.remove(1));
+        assertEquals("[1]", queue.toString());
+    }
+
+    @Test
+    public void whenManyItems_thenTakenInOrder() throws InterruptedException {
+        List<Integer> items = new ArrayList<Integer>();
+        for (int k = 0; k < 1000; k++) {
+            items.add(k % 97);
+        }
+        Collections.shuffle(items);
+
+        TransactionalPriorityBlockingQueue<Integer> queue = new TransactionalPriorityBlockingQueue<Integer>(items);
+
+        Collections.sort(items);
+        for (Integer item : items) {
+            assertEquals(item, queue.take());
+        }
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void take_whenEmpty_thenRetry() throws InterruptedException {
+        TransactionalPriorityBlockingQueue<String> queue = new TransactionalPriorityBlockingQueue<String>();
+
+        long version = stm.getVersion();
+        Transaction tx = updateTxFactory.start();
+        setThreadLocalTransaction(tx);
+        try {
+            queue.take();
+            fail();
+        } catch (Retry expected) {
+        }
+        tx.abort();
+        clearThreadLocalTransaction();
+
+        assertEquals(version, stm.getVersion());
+    }
+
+    @Test
+    public void take_whenEmpty_thenBlocksUntilOffer() throws InterruptedException {
+        final TransactionalPriorityBlockingQueue<String> queue = new TransactionalPriorityBlockingQueue<String>();
+
+        TestThread taker = new TestThread("TakeThread") {
+            @Override
+            public void doRun() throws Exception {
+                assertEquals("1", queue.take());
+            }
+        };
+        startAll(taker);
+
+        sleepMs(200);
+        assertAlive(taker);
+
+        queue.offer("1");
+        joinAll(taker);
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void pollWithTimeout_whenEmpty_thenNullAfterTimeout() throws InterruptedException {
+        TransactionalPriorityBlockingQueue<String> queue = new TransactionalPriorityBlockingQueue<String>();
+
+        assertNull(queue.poll(0, TimeUnit.SECONDS));
+        assertNull(queue.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void pollWithTimeout_whenNotEmpty() throws InterruptedException {
+        TransactionalPriorityBlockingQueue<String> queue = new TransactionalPriorityBlockingQueue<String>();
+        queue.offer("1");
+
+        assertEquals("1", queue.poll(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void pollAndRemove() {
+        TransactionalPriorityBlockingQueue<String> queue = new TransactionalPriorityBlockingQueue<String>();
+        queue.add("2");
+        queue.add("1");
+
+        assertEquals("1", queue.poll());
+        assertEquals("2", queue.remove());
+        assertNull(queue.poll());
+
+        try {
+            queue.remove();
+            fail();
+        } catch (NoSuchElementException expected) {
+        }
+    }
+
+    @Test
+    public void peekAndElement_whenEmpty() {
+        TransactionalPriorityBlockingQueue<String> queue = new TransactionalPriorityBlockingQueue<String>();
+
+        assertNull(queue.peek());
+        try {
+            queue.element();
+            fail();
+        } catch (NoSuchElementException expected) {
+        }
+    }
+
+    @Test
+    public void drainTo() {
+        TransactionalPriorityBlockingQueue<String> queue =
+                new TransactionalPriorityBlockingQueue<String>(Arrays.asList("3", "1", "2"));
+        List<String> sink = new ArrayList<String>();
+
+        assertEquals(2, queue.drainTo(sink, 2));
+        assertEquals(Arrays.asList("1", "2"), sink);
+        assertEquals("[3]", queue.toString());
+
+        assertEquals(1, queue.drainTo(sink));
+        assertEquals(0, queue.drainTo(sink));
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void takeBatch() throws InterruptedException {
+        TransactionalPriorityBlockingQueue<String> queue =
+                new TransactionalPriorityBlockingQueue<String>(Arrays.asList("3", "1", "2"));
+
+        assertEquals(Arrays.asList("1", "2"), queue.takeBatch(2, 0, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("3"), queue.takeBatch(2, 0, TimeUnit.SECONDS));
+        assertEquals(0, queue.takeBatch(2, 0, TimeUnit.SECONDS).size());
+    }
+
+    @Test
+    public void iterator_whenRemove() {
+        TransactionalPriorityBlockingQueue<String> queue =
+                new TransactionalPriorityBlockingQueue<String>(Arrays.asList("3", "1", "2"));
+
+        java.util.Iterator<String> it = queue.iterator();
+        assertEquals("1", it.next());
+        assertEquals("2", it.next());
+        it.remove();
+        assertEquals("3", it.next());
+        assertFalse(it.hasNext());
+
+        assertEquals("[1, 3]", queue.toString());
+        assertTrue(queue.contains("3"));
+        assertFalse(queue.contains("2"));
+    }
+}
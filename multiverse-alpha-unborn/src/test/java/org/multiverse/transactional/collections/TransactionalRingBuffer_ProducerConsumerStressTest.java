@@ -0,0 +1,91 @@
+package org.multiverse.transactional.collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.multiverse.TestThread;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.multiverse.TestUtils.joinAll;
+import static org.multiverse.TestUtils.startAll;
+import static org.multiverse.api.ThreadLocalTransaction.clearThreadLocalTransaction;
+
+/**
+ * A stress test where producers and consumers concurrently put and take items on a TransactionalRingBuffer. Every item
+ * should be taken exactly once.
+ *
+ * @author Peter Veentjer
+ */
+public class TransactionalRingBuffer_ProducerConsumerStressTest {
+
+    private TransactionalRingBuffer<Integer> queue;
+    private int producerCount = 2;
+    private int consumerCount = 2;
+    private int itemCountPerProducer = 50000;
+    private int queueCapacity = 100;
+    private final AtomicLong consumedSum = new AtomicLong();
+
+    @Before
+    public void setUp() {
+        clearThreadLocalTransaction();
+    }
+
+    @Test
+    public void test() {
+        queue = new TransactionalRingBuffer<Integer>(queueCapacity);
+
+        ProducerThread[] producers = new ProducerThread[producerCount];
+        for (int k = 0; k < producers.length; k++) {
+            producers[k] = new ProducerThread(k);
+        }
+
+        ConsumerThread[] consumers = new ConsumerThread[consumerCount];
+        for (int k = 0; k < consumers.length; k++) {
+            consumers[k] = new ConsumerThread(k);
+        }
+
+        startAll(producers);
+        startAll(consumers);
+        joinAll(producers);
+        joinAll(consumers);
+
+        long itemCount = producerCount * itemCountPerProducer;
+        assertEquals(itemCount * (itemCount - 1) / 2, consumedSum.get());
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.size());
+        assertEquals(queueCapacity, queue.remainingCapacity());
+    }
+
+    class ProducerThread extends TestThread {
+        private final int id;
+
+        ProducerThread(int id) {
+            super("ProducerThread-" + id);
+            this.id = id;
+        }
+
+        @Override
+        public void doRun() throws Exception {
+            for (int k = 0; k < itemCountPerProducer; k++) {
+                queue.put(id * itemCountPerProducer + k);
+            }
+        }
+    }
+
+    class ConsumerThread extends TestThread {
+
+        ConsumerThread(int id) {
+            super("ConsumerThread-" + id);
+        }
+
+        @Override
+        public void doRun() throws Exception {
+            int itemCount = producerCount * itemCountPerProducer / consumerCount;
+            for (int k = 0; k < itemCount; k++) {
+                consumedSum.addAndGet(queue.take());
+            }
+        }
+    }
+}
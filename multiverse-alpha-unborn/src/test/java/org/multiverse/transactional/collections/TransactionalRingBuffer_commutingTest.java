@@ -0,0 +1,175 @@
+package org.multiverse.transactional.collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.multiverse.api.Stm;
+import org.multiverse.api.Transaction;
+import org.multiverse.api.TransactionFactory;
+import org.multiverse.api.exceptions.OldVersionNotFoundReadConflict;
+import org.multiverse.api.exceptions.OptimisticLockFailedWriteConflict;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.multiverse.api.GlobalStmInstance.getGlobalStmInstance;
+import static org.multiverse.api.ThreadLocalTransaction.clearThreadLocalTransaction;
+import static org.multiverse.api.ThreadLocalTransaction.setThreadLocalTransaction;
+
+/**
+ * @author Peter Veentjer
+ */
+public class TransactionalRingBuffer_commutingTest {
+    private Stm stm;
+    private TransactionFactory txFactory;
+
+    @Before
+    public void setUp() {
+        stm = getGlobalStmInstance();
+        txFactory = stm.getTransactionFactoryBuilder()
+                .setSpeculativeConfigurationEnabled(false)
+                .setReadTrackingEnabled(true)
+                .setReadonly(false)
+                .build();
+        clearThreadLocalTransaction();
+    }
+
+    @After
+    public void tearDown() {
+        clearThreadLocalTransaction();
+    }
+
+    @Test
+    public void whenPutAndTake_thenNoConflict() throws InterruptedException {
+        TransactionalRingBuffer<String> ringBuffer = new TransactionalRingBuffer<String>(3);
+        ringBuffer.put("1");
+        ringBuffer.put("2");
+
+        Transaction tx1 = txFactory.start();
+        setThreadLocalTransaction(tx1);
+        assertEquals("1", ringBuffer.take());
+
+        Transaction tx2 = txFactory.start();
+        setThreadLocalTransaction(tx2);
+        ringBuffer.put("3");
+
+        tx1.commit();
+        tx2.commit();
+
+        clearThreadLocalTransaction();
+        assertEquals(2, ringBuffer.size());
+        assertEquals("[2, 3]", ringBuffer.toString());
+    }
+
+    @Test
+    public void whenPutAndTakeOnSingleItem_thenNoConflict() throws InterruptedException {
+        TransactionalRingBuffer<String> ringBuffer = new TransactionalRingBuffer<String>(3);
+        ringBuffer.put("1");
+
+        Transaction tx1 = txFactory.start();
+        setThreadLocalTransaction(tx1);
+        assertEquals("1", ringBuffer.take());
+
+        Transaction tx2 = txFactory.start();
+        setThreadLocalTransaction(tx2);
+        ringBuffer.put("2");
+
+        tx1.commit();
+        tx2.commit();
+
+        clearThreadLocalTransaction();
+        assertEquals("[2]", ringBuffer.toString());
+    }
+
+    @Test
+    public void whenPutOnAlmostFullAndTake_thenNoConflict() throws InterruptedException {
+        //the capacity is strict, but a put doesn't write the take sequence so it doesn't conflict with a take.
+        TransactionalRingBuffer<String> ringBuffer = new TransactionalRingBuffer<String>(2);
+        ringBuffer.put("1");
+
+        Transaction tx1 = txFactory.start();
+        setThreadLocalTransaction(tx1);
+        ringBuffer.put("2");
+
+        Transaction tx2 = txFactory.start();
+        setThreadLocalTransaction(tx2);
+        assertEquals("1", ringBuffer.take());
+
+        tx1.commit();
+        tx2.commit();
+
+        clearThreadLocalTransaction();
+        assertEquals("[2]", ringBuffer.toString());
+    }
+
+    @Test
+    public void whenTakeCommitsBeforePutReadsTakeSequence_thenReadConflict() throws InterruptedException {
+        TransactionalRingBuffer<String> ringBuffer = new TransactionalRingBuffer<String>(3);
+        ringBuffer.put("1");
+
+        Transaction tx1 = txFactory.start();
+        setThreadLocalTransaction(tx1);
+        assertEquals("1", ringBuffer.take());
+
+        Transaction tx2 = txFactory.start();
+        tx1.commit();
+
+        setThreadLocalTransaction(tx2);
+        try {
+            ringBuffer.put("2");
+            fail();
+        } catch (OldVersionNotFoundReadConflict expected) {
+        }
+
+        tx2.abort();
+        clearThreadLocalTransaction();
+        assertEquals("[]", ringBuffer.toString());
+    }
+
+    @Test
+    public void whenConcurrentPuts_thenConflict() throws InterruptedException {
+        TransactionalRingBuffer<String> ringBuffer = new TransactionalRingBuffer<String>(3);
+
+        Transaction tx1 = txFactory.start();
+        setThreadLocalTransaction(tx1);
+        ringBuffer.put("1");
+
+        Transaction tx2 = txFactory.start();
+        setThreadLocalTransaction(tx2);
+        ringBuffer.put("2");
+
+        tx1.commit();
+        try {
+            tx2.commit();
+            fail();
+        } catch (OptimisticLockFailedWriteConflict expected) {
+        }
+
+        clearThreadLocalTransaction();
+        assertEquals("[1]", ringBuffer.toString());
+    }
+
+    @Test
+    public void whenConcurrentTakes_thenConflict() throws InterruptedException {
+        TransactionalRingBuffer<String> ringBuffer = new TransactionalRingBuffer<String>(3);
+        ringBuffer.put("1");
+        ringBuffer.put("2");
+
+        Transaction tx1 = txFactory.start();
+        setThreadLocalTransaction(tx1);
+        assertEquals("1", ringBuffer.take());
+
+        Transaction tx2 = txFactory.start();
+        setThreadLocalTransaction(tx2);
+        assertEquals("1", ringBuffer.take());
+
+        tx1.commit();
+        try {
+            tx2.commit();
+            fail();
+        } catch (OptimisticLockFailedWriteConflict expected) {
+        }
+
+        clearThreadLocalTransaction();
+        assertEquals("[2]", ringBuffer.toString());
+    }
+}
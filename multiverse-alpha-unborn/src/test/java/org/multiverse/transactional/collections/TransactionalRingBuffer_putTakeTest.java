@@ -0,0 +1,275 @@
+package org.multiverse.transactional.collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.multiverse.api.Stm;
+import org.multiverse.api.Transaction;
+import org.multiverse.api.TransactionFactory;
+import org.multiverse.api.exceptions.Retry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.multiverse.api.GlobalStmInstance.getGlobalStmInstance;
+import static org.multiverse.api.ThreadLocalTransaction.clearThreadLocalTransaction;
+import static org.multiverse.api.ThreadLocalTransaction.setThreadLocalTransaction;
+
+/**
+ * @author Peter Veentjer
+ */
+public class TransactionalRingBuffer_putTakeTest {
+    private Stm stm;
+    private TransactionFactory updateTxFactory;
+
+    @Before
+    public void setUp() {
+        stm = getGlobalStmInstance();
+        updateTxFactory = stm.getTransactionFactoryBuilder().build();
+        clearThreadLocalTransaction();
+    }
+
+    @After
+    public void tearDown() {
+        clearThreadLocalTransaction();
+    }
+
+    @Test
+    public void constructor() {
+        TransactionalRingBuffer<String> ringBuffer = new TransactionalRingBuffer<String>(10);
+
+        assertEquals(10, ringBuffer.getCapacity());
+        assertEquals(10, ringBuffer.remainingCapacity());
+        assertTrue(ringBuffer.isEmpty());
+        assertEquals(0, ringBuffer.size());
+        assertEquals("[]", ringBuffer.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_whenZeroCapacity_thenIllegalArgumentException() {
+        new TransactionalRingBuffer<String>(0);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void put_whenNull_thenNullPointerException() throws InterruptedException {
+        TransactionalRingBuffer<String> ringBuffer = new TransactionalRingBuffer<String>(10);
+        ringBuffer.put(null);
+    }
+
+    @Test
+    public void put() throws InterruptedException {
+        TransactionalRingBuffer<String> ringBuffer = new TransactionalRingBuffer<String>(10);
+
+        long version = stm.getVersion();
+        ringBuffer.put("1");
+        ringBuffer.put("2");
+
+        assertEquals(version + 2, stm.getVersion());
+        assertEquals(2, ringBuffer.size());
+        assertEquals(8, ringBuffer.remainingCapacity());
+        assertEquals("1", ringBuffer.peek());
+        assertEquals("[1, 2]", ringBuffer.toString());
+    }
+
+    @Test
+    public void put_whenFull_thenRetry() throws InterruptedException {
+        TransactionalRingBuffer<String> ringBuffer = new TransactionalRingBuffer<String>(1);
+        ringBuffer.put("1");
+
+        long version = stm.getVersion();
+        Transaction tx = updateTxFactory.start();
+        setThreadLocalTransaction(tx);
+        try {
+            ringBuffer.put("2");
+            fail();
+        } catch (Retry expected) {
+        }
+        tx.abort();
+        clearThreadLocalTransaction();
+
+        assertEquals(version, stm.getVersion());
+        assertEquals("[1]", ringBuffer.toString());
+    }
+
+    @Test
+    public void offerAndAdd_whenFull() {
+        TransactionalRingBuffer<String> ringBuffer = new TransactionalRingBuffer<String>(1);
+
+        assertTrue(ringBuffer.offer("1"));
+        assertEquals(0, ringBuffer.remainingCapacity());
+        assertFalse(ringBuffer.offer("2"));
+
+        try {
+            ringBuffer.add("2");
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+
+        assertEquals("[1]", ringBuffer.toString());
+    }
+
+    @Test
+    public void offerWithTimeout_whenFull() throws InterruptedException {
+        TransactionalRingBuffer<String> ringBuffer = new TransactionalRingBuffer<String>(1);
+        ringBuffer.put("1");
+
+        assertFalse(ringBuffer.offer("2", 0, TimeUnit.SECONDS));
+        assertFalse(ringBuffer.offer("2", 100, TimeUnit.MILLISECONDS));
+        assertEquals("[1]", ringBuffer.toString());
+    }
+
+    @Test
+    public void take_whenEmpty_thenRetry() throws InterruptedException {
+        TransactionalRingBuffer<String> ringBuffer = new TransactionalRingBuffer<String>(10);
+
+        long version = stm.getVersion();
+        Transaction tx = updateTxFactory.start();
+        setThreadLocalTransaction(tx);
+        try {
+            ringBuffer.take();
+            fail();
+        } catch (Retry expected) {
+        }
+        tx.abort();
+        clearThreadLocalTransaction();
+
+        assertEquals(version, stm.getVersion());
+    }
+
+    @Test
+    public void pollWithTimeout_whenEmpty() throws InterruptedException {
+        TransactionalRingBuffer<String> ringBuffer = new TransactionalRingBuffer<String>(10);
+
+        assertNull(ringBuffer.poll(0, TimeUnit.SECONDS));
+        assertNull(ringBuffer.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void whenWrappedAround() throws InterruptedException {
+        TransactionalRingBuffer<Integer> ringBuffer = new TransactionalRingBuffer<Integer>(3);
+
+        for (int k = 0; k < 10; k++) {
+            ringBuffer.put(k);
+            ringBuffer.put(k + 100);
+            assertEquals(new Integer(k), ringBuffer.take());
+            assertEquals(new Integer(k + 100), ringBuffer.take());
+        }
+
+        ringBuffer.put(1);
+        ringBuffer.put(2);
+        ringBuffer.put(3);
+        assertEquals("[1, 2, 3]", ringBuffer.toString());
+        assertEquals(0, ringBuffer.remainingCapacity());
+    }
+
+    @Test
+    public void pollAndRemove() {
+        TransactionalRingBuffer<String> ringBuffer = new TransactionalRingBuffer<String>(10);
+        ringBuffer.add("1");
+        ringBuffer.add("2");
+
+        assertEquals("1", ringBuffer.poll());
+        assertEquals("2", ringBuffer.remove());
+        assertNull(ringBuffer.poll());
+
+        try {
+            ringBuffer.remove();
+            fail();
+        } catch (NoSuchElementException expected) {
+        }
+    }
+
+    @Test
+    public void peekAndElement_whenEmpty() {
+        TransactionalRingBuffer<String> ringBuffer = new TransactionalRingBuffer<String>(10);
+
+        assertNull(ringBuffer.peek());
+        try {
+            ringBuffer.element();
+            fail();
+        } catch (NoSuchElementException expected) {
+        }
+    }
+
+    @Test
+    public void removeItem_whenInMiddle() {
+        TransactionalRingBuffer<String> ringBuffer = new TransactionalRingBuffer<String>(3);
+        ringBuffer.addAll(Arrays.asList("1", "2", "3"));
+
+        assertTrue(ringBuffer.remove("2"));
+        assertFalse(ringBuffer.remove("2"));
+        assertEquals("[1, 3]", ringBuffer.toString());
+
+        ringBuffer.add("4");
+        assertEquals("[1, 3, 4]", ringBuffer.toString());
+    }
+
+    @Test
+    public void iterator_whenRemove() {
+        TransactionalRingBuffer<String> ringBuffer = new TransactionalRingBuffer<String>(5);
+        ringBuffer.addAll(Arrays.asList("1", "2", "3"));
+
+        Iterator<String> it = ringBuffer.iterator();
+        assertEquals("1", it.next());
+        it.remove();
+        assertEquals("2", it.next());
+        assertEquals("3", it.next());
+        it.remove();
+        assertFalse(it.hasNext());
+
+        assertEquals("[2]", ringBuffer.toString());
+        assertTrue(ringBuffer.contains("2"));
+        assertFalse(ringBuffer.contains("1"));
+    }
+
+    @Test
+    public void drainTo() {
+        TransactionalRingBuffer<String> ringBuffer = new TransactionalRingBuffer<String>(3);
+        ringBuffer.addAll(Arrays.asList("1", "2", "3"));
+        List<String> sink = new ArrayList<String>();
+
+        long version = stm.getVersion();
+        assertEquals(2, ringBuffer.drainTo(sink, 2));
+        assertEquals(version + 1, stm.getVersion());
+        assertEquals(Arrays.asList("1", "2"), sink);
+        assertEquals("[3]", ringBuffer.toString());
+
+        assertEquals(1, ringBuffer.drainTo(sink));
+        assertEquals(0, ringBuffer.drainTo(sink));
+        assertTrue(ringBuffer.isEmpty());
+    }
+
+    @Test
+    public void offerAll_whenNotEnoughCapacity() {
+        TransactionalRingBuffer<String> ringBuffer = new TransactionalRingBuffer<String>(3);
+        ringBuffer.add("1");
+
+        assertFalse(ringBuffer.offerAll(Arrays.asList("2", "3", "4")));
+        assertTrue(ringBuffer.offerAll(Arrays.asList("2", "3")));
+        assertEquals("[1, 2, 3]", ringBuffer.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void putAll_whenMoreItemsThanCapacity_thenIllegalArgumentException() throws InterruptedException {
+        TransactionalRingBuffer<String> ringBuffer = new TransactionalRingBuffer<String>(2);
+        ringBuffer.putAll(Arrays.asList("1", "2", "3"));
+    }
+
+    @Test
+    public void clear() {
+        TransactionalRingBuffer<String> ringBuffer = new TransactionalRingBuffer<String>(3);
+        ringBuffer.addAll(Arrays.asList("1", "2", "3"));
+
+        ringBuffer.clear();
+
+        assertTrue(ringBuffer.isEmpty());
+        assertEquals(3, ringBuffer.remainingCapacity());
+        ringBuffer.add("4");
+        assertEquals("[4]", ringBuffer.toString());
+    }
+}
@@ -0,0 +1,93 @@
+package org.multiverse.transactional.collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.multiverse.api.Stm;
+import org.multiverse.api.Transaction;
+import org.multiverse.api.TransactionFactory;
+import org.multiverse.api.exceptions.OptimisticLockFailedWriteConflict;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import static org.multiverse.api.GlobalStmInstance.getGlobalStmInstance;
+import static org.multiverse.api.ThreadLocalTransaction.clearThreadLocalTransaction;
+import static org.multiverse.api.ThreadLocalTransaction.setThreadLocalTransaction;
+
+/**
+ * @author Peter Veentjer
+ */
+public class TransactionalSkipListMap_commutingTest {
+    private Stm stm;
+    private TransactionFactory txFactory;
+    private TransactionalSkipListMap<Integer, String> map;
+
+    @Before
+    public void setUp() {
+        stm = getGlobalStmInstance();
+        txFactory = stm.getTransactionFactoryBuilder()
+                .setSpeculativeConfigurationEnabled(false)
+                .setReadTrackingEnabled(true)
+                .setReadonly(false)
+                .build();
+        clearThreadLocalTransaction();
+
+        map = new TransactionalSkipListMap<Integer, String>();
+        for (int k = 0; k < 10000; k += 10) {
+            map.put(k, "" + k);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        clearThreadLocalTransaction();
+    }
+
+    @Test
+    public void whenChangesInDifferentRanges_thenNoConflict() {
+        //the changes only conflict when they share a predecessor on some level, and with 1000 nodes between the
+        //keys the chance that no node with a high enough level lies in between is negligible.
+        Transaction tx1 = txFactory.start();
+        setThreadLocalTransaction(tx1);
+        map.put(15, "15");
+
+        Transaction tx2 = txFactory.start();
+        setThreadLocalTransaction(tx2);
+        map.put(9975, "9975");
+        map.remove(5000);
+
+        tx1.commit();
+        tx2.commit();
+
+        clearThreadLocalTransaction();
+        assertEquals(1001, map.size());
+        assertEquals("15", map.get(15));
+        assertEquals("9975", map.get(9975));
+        assertNull(map.get(5000));
+    }
+
+    @Test
+    public void whenInsertAfterRemovedNode_thenConflict() {
+        //the insert writes the forward link of the removed node.
+        Transaction tx1 = txFactory.start();
+        setThreadLocalTransaction(tx1);
+        map.remove(50);
+
+        Transaction tx2 = txFactory.start();
+        setThreadLocalTransaction(tx2);
+        map.put(55, "55");
+
+        tx1.commit();
+
+        try {
+            tx2.commit();
+            fail();
+        } catch (OptimisticLockFailedWriteConflict expected) {
+        }
+
+        clearThreadLocalTransaction();
+        assertEquals(999, map.size());
+        assertNull(map.get(55));
+    }
+}
@@ -0,0 +1,77 @@
+package org.multiverse.transactional.collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.NoSuchElementException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.multiverse.api.ThreadLocalTransaction.clearThreadLocalTransaction;
+
+/**
+ * @author Peter Veentjer
+ */
+public class TransactionalSkipListMap_navigationTest {
+    private TransactionalSkipListMap<Integer, String> map;
+
+    @Before
+    public void setUp() {
+        clearThreadLocalTransaction();
+        map = new TransactionalSkipListMap<Integer, String>();
+        map.put(10, "10");
+        map.put(20, "20");
+        map.put(30, "30");
+    }
+
+    @Test
+    public void firstAndLast() {
+        assertEquals(new Integer(10), map.firstKey());
+        assertEquals(new Integer(30), map.lastKey());
+        assertEquals("10", map.firstEntry().getValue());
+        assertEquals("30", map.lastEntry().getValue());
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void firstKey_whenEmpty_thenNoSuchElementException() {
+        new TransactionalSkipListMap<Integer, String>().firstKey();
+    }
+
+    @Test
+    public void lower() {
+        assertNull(map.lowerKey(10));
+        assertEquals(new Integer(10), map.lowerKey(20));
+        assertEquals(new Integer(20), map.lowerKey(25));
+        assertEquals(new Integer(30), map.lowerKey(100));
+    }
+
+    @Test
+    public void floor() {
+        assertNull(map.floorKey(5));
+        assertEquals(new Integer(20), map.floorKey(20));
+        assertEquals(new Integer(20), map.floorKey(25));
+    }
+
+    @Test
+    public void ceiling() {
+        assertEquals(new Integer(10), map.ceilingKey(5));
+        assertEquals(new Integer(20), map.ceilingKey(20));
+        assertEquals(new Integer(30), map.ceilingKey(25));
+        assertNull(map.ceilingKey(31));
+    }
+
+    @Test
+    public void higher() {
+        assertEquals(new Integer(10), map.higherKey(5));
+        assertEquals(new Integer(30), map.higherKey(20));
+        assertNull(map.higherKey(30));
+    }
+
+    @Test
+    public void descending() {
+        assertEquals("{30=30, 20=20, 10=10}", map.descendingMap().toString());
+        assertEquals("[30, 20, 10]", map.descendingKeySet().toString());
+        assertEquals(new Integer(10), map.descendingMap().higherKey(20));
+        assertEquals(new Integer(30), map.descendingMap().lowerKey(20));
+    }
+}
@@ -0,0 +1,124 @@
+package org.multiverse.transactional.collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.multiverse.api.Stm;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+import static org.multiverse.api.GlobalStmInstance.getGlobalStmInstance;
+import static org.multiverse.api.ThreadLocalTransaction.clearThreadLocalTransaction;
+
+/**
+ * @author Peter Veentjer
+ */
+public class TransactionalSkipListMap_putTest {
+    private Stm stm;
+
+    @Before
+    public void setUp() {
+        stm = getGlobalStmInstance();
+        clearThreadLocalTransaction();
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void whenNullKey_thenNullPointerException() {
+        TransactionalSkipListMap<String, String> map = new TransactionalSkipListMap<String, String>();
+        map.put(null, "foo");
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void whenNullValue_thenNullPointerException() {
+        TransactionalSkipListMap<String, String> map = new TransactionalSkipListMap<String, String>();
+        map.put("foo", null);
+    }
+
+    @Test
+    public void whenKeyNotFound() {
+        TransactionalSkipListMap<String, String> map = new TransactionalSkipListMap<String, String>();
+
+        long version = stm.getVersion();
+        assertNull(map.put("b", "2"));
+        assertNull(map.put("a", "1"));
+        assertNull(map.put("c", "3"));
+
+        assertEquals(version + 3, stm.getVersion());
+        assertEquals(3, map.size());
+        assertEquals("{a=1, b=2, c=3}", map.toString());
+    }
+
+    @Test
+    public void whenKeyFound_thenValueReplaced() {
+        TransactionalSkipListMap<String, String> map = new TransactionalSkipListMap<String, String>();
+        map.put("a", "1");
+
+        assertEquals("1", map.put("a", "one"));
+        assertEquals("one", map.get("a"));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void whenSameValue_thenNoWrite() {
+        TransactionalSkipListMap<String, String> map = new TransactionalSkipListMap<String, String>();
+        String value = "1";
+        map.put("a", value);
+
+        long version = stm.getVersion();
+        map.put("a", value);
+
+        assertEquals(version, stm.getVersion());
+    }
+
+    @Test
+    public void whenComparator() {
+        TransactionalSkipListMap<String, String> map = new TransactionalSkipListMap<String, String>(
+                Collections.<String>reverseOrder());
+        map.put("a", "1");
+        map.put("c", "3");
+        map.put("b", "2");
+
+        assertEquals("{c=3, b=2, a=1}", map.toString());
+        assertEquals("c", map.firstKey());
+    }
+
+    @Test
+    public void whenManyKeys_thenSorted() {
+        TransactionalSkipListMap<Integer, Integer> map = new TransactionalSkipListMap<Integer, Integer>();
+
+        int count = 10000;
+        for (int k = 0; k < count; k++) {
+            int key = (k * 7919) % count;
+            map.put(key, k);
+        }
+
+        assertEquals(count, map.size());
+        int expected = 0;
+        for (Integer key : map.keySet()) {
+            assertEquals(new Integer(expected), key);
+            expected++;
+        }
+    }
+
+    @Test
+    public void putIfAbsent() {
+        TransactionalSkipListMap<String, String> map = new TransactionalSkipListMap<String, String>();
+
+        assertNull(map.putIfAbsent("a", "1"));
+        assertEquals("1", map.putIfAbsent("a", "one"));
+        assertEquals("1", map.get("a"));
+    }
+
+    @Test
+    public void replace() {
+        TransactionalSkipListMap<String, String> map = new TransactionalSkipListMap<String, String>();
+        map.put("a", "1");
+
+        assertNull(map.replace("b", "2"));
+        assertFalse(map.containsKey("b"));
+        assertEquals("1", map.replace("a", "one"));
+        assertFalse(map.replace("a", "1", "een"));
+        assertTrue(map.replace("a", "one", "een"));
+        assertEquals("een", map.get("a"));
+    }
+}
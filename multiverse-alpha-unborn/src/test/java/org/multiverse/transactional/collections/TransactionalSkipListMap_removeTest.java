@@ -0,0 +1,79 @@
+package org.multiverse.transactional.collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.multiverse.api.Stm;
+
+import static org.junit.Assert.*;
+import static org.multiverse.api.GlobalStmInstance.getGlobalStmInstance;
+import static org.multiverse.api.ThreadLocalTransaction.clearThreadLocalTransaction;
+
+/**
+ * @author Peter Veentjer
+ */
+public class TransactionalSkipListMap_removeTest {
+    private Stm stm;
+    private TransactionalSkipListMap<Integer, String> map;
+
+    @Before
+    public void setUp() {
+        stm = getGlobalStmInstance();
+        clearThreadLocalTransaction();
+        map = new TransactionalSkipListMap<Integer, String>();
+        for (int k = 1; k <= 5; k++) {
+            map.put(k, "" + k);
+        }
+    }
+
+    @Test
+    public void whenKeyNotFound_thenNoWrite() {
+        long version = stm.getVersion();
+
+        assertNull(map.remove(10));
+        assertEquals(version, stm.getVersion());
+        assertEquals(5, map.size());
+    }
+
+    @Test
+    public void whenKeyFound() {
+        assertEquals("3", map.remove(3));
+
+        assertEquals(4, map.size());
+        assertFalse(map.containsKey(3));
+        assertEquals("{1=1, 2=2, 4=4, 5=5}", map.toString());
+    }
+
+    @Test
+    public void removeKeyValue() {
+        assertFalse(map.remove(3, "4"));
+        assertTrue(map.remove(3, "3"));
+        assertFalse(map.containsKey(3));
+    }
+
+    @Test
+    public void pollFirstAndLast() {
+        assertEquals(new Integer(1), map.pollFirstEntry().getKey());
+        assertEquals(new Integer(5), map.pollLastEntry().getKey());
+        assertEquals("{2=2, 3=3, 4=4}", map.toString());
+    }
+
+    @Test
+    public void pollWhenEmpty() {
+        map.clear();
+
+        assertNull(map.pollFirstEntry());
+        assertNull(map.pollLastEntry());
+    }
+
+    @Test
+    public void clear() {
+        map.clear();
+
+        assertEquals(0, map.size());
+        assertTrue(map.isEmpty());
+        assertNull(map.get(1));
+
+        map.put(1, "1");
+        assertEquals("{1=1}", map.toString());
+    }
+}
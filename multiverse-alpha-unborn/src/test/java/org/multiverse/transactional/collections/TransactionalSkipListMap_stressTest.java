@@ -0,0 +1,72 @@
+package org.multiverse.transactional.collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.multiverse.TestThread;
+
+import static org.junit.Assert.assertEquals;
+import static org.multiverse.TestUtils.joinAll;
+import static org.multiverse.TestUtils.startAll;
+import static org.multiverse.api.ThreadLocalTransaction.clearThreadLocalTransaction;
+
+/**
+ * A stress test where threads concurrently put and remove interleaved keys, so the threads constantly change
+ * the links of the same nodes.
+ *
+ * @author Peter Veentjer
+ */
+public class TransactionalSkipListMap_stressTest {
+
+    private TransactionalSkipListMap<Integer, Integer> map;
+    private int threadCount = 4;
+    private int keyCountPerThread = 10000;
+
+    @Before
+    public void setUp() {
+        clearThreadLocalTransaction();
+        map = new TransactionalSkipListMap<Integer, Integer>();
+    }
+
+    @Test
+    public void test() {
+        StressThread[] threads = new StressThread[threadCount];
+        for (int k = 0; k < threads.length; k++) {
+            threads[k] = new StressThread(k);
+        }
+
+        startAll(threads);
+        joinAll(threads);
+
+        //every thread removed the keys of its odd rounds.
+        assertEquals(threadCount * keyCountPerThread / 2, map.size());
+        Integer previous = null;
+        for (Integer key : map.keySet()) {
+            int round = key / threadCount;
+            assertEquals(0, round % 2);
+            if (previous != null) {
+                assertEquals(1, Integer.signum(key - previous));
+            }
+            previous = key;
+        }
+    }
+
+    class StressThread extends TestThread {
+        private final int id;
+
+        StressThread(int id) {
+            super("StressThread-" + id);
+            this.id = id;
+        }
+
+        @Override
+        public void doRun() throws Exception {
+            for (int k = 0; k < keyCountPerThread; k++) {
+                map.put(k * threadCount + id, k);
+            }
+
+            for (int k = 1; k < keyCountPerThread; k += 2) {
+                map.remove(k * threadCount + id);
+            }
+        }
+    }
+}
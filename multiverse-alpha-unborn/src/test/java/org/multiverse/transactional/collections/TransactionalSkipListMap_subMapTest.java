@@ -0,0 +1,107 @@
+package org.multiverse.transactional.collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.NavigableMap;
+
+import static org.junit.Assert.*;
+import static org.multiverse.api.ThreadLocalTransaction.clearThreadLocalTransaction;
+
+/**
+ * @author Peter Veentjer
+ */
+public class TransactionalSkipListMap_subMapTest {
+    private TransactionalSkipListMap<Integer, String> map;
+
+    @Before
+    public void setUp() {
+        clearThreadLocalTransaction();
+        map = new TransactionalSkipListMap<Integer, String>();
+        for (int k = 1; k <= 10; k++) {
+            map.put(k, "" + k);
+        }
+    }
+
+    @Test
+    public void subMap() {
+        NavigableMap<Integer, String> subMap = map.subMap(3, true, 6, false);
+
+        assertEquals("{3=3, 4=4, 5=5}", subMap.toString());
+        assertEquals(3, subMap.size());
+        assertEquals(new Integer(3), subMap.firstKey());
+        assertEquals(new Integer(5), subMap.lastKey());
+        assertNull(subMap.get(6));
+        assertNull(subMap.higherKey(5));
+        assertEquals(new Integer(3), subMap.ceilingKey(1));
+    }
+
+    @Test
+    public void headAndTailMap() {
+        assertEquals("{1=1, 2=2, 3=3}", map.headMap(3, true).toString());
+        assertEquals("{1=1, 2=2}", map.headMap(3).toString());
+        assertEquals("{9=9, 10=10}", map.tailMap(9).toString());
+        assertEquals("{10=10}", map.tailMap(9, false).toString());
+    }
+
+    @Test
+    public void descendingSubMap() {
+        NavigableMap<Integer, String> subMap = map.descendingMap().subMap(6, true, 3, false);
+
+        assertEquals("{6=6, 5=5, 4=4}", subMap.toString());
+        assertEquals(new Integer(6), subMap.firstKey());
+        assertEquals(new Integer(4), subMap.pollLastEntry().getKey());
+        assertFalse(map.containsKey(4));
+    }
+
+    @Test
+    public void whenChangedThroughMap_thenVisibleInSubMap() {
+        NavigableMap<Integer, String> subMap = map.subMap(3, true, 6, true);
+
+        map.put(100, "100");
+        map.remove(4);
+
+        assertEquals("{3=3, 5=5, 6=6}", subMap.toString());
+    }
+
+    @Test
+    public void put_whenInRange() {
+        NavigableMap<Integer, String> subMap = map.subMap(3, true, 6, true);
+        map.remove(4);
+
+        subMap.put(4, "four");
+        assertEquals("four", map.get(4));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void put_whenOutOfRange_thenIllegalArgumentException() {
+        NavigableMap<Integer, String> subMap = map.subMap(3, true, 6, true);
+        subMap.put(7, "7");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void subMap_whenOutOfRange_thenIllegalArgumentException() {
+        map.subMap(3, true, 6, true).subMap(2, true, 5, true);
+    }
+
+    @Test
+    public void clear() {
+        map.subMap(3, false, 6, true).clear();
+
+        assertEquals("{1=1, 2=2, 3=3, 7=7, 8=8, 9=9, 10=10}", map.toString());
+        assertEquals(7, map.size());
+    }
+
+    @Test
+    public void iterator_remove() {
+        Iterator<Integer> it = map.headMap(5).keySet().iterator();
+        while (it.hasNext()) {
+            if (it.next() % 2 == 0) {
+                it.remove();
+            }
+        }
+
+        assertEquals("{1=1, 3=3, 5=5, 6=6, 7=7, 8=8, 9=9, 10=10}", map.toString());
+    }
+}
@@ -0,0 +1,211 @@
+package org.multiverse.transactional.executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.multiverse.api.Stm;
+import org.multiverse.api.Transaction;
+import org.multiverse.api.programmatic.ProgrammaticLongRef;
+import org.multiverse.api.programmatic.ProgrammaticRefFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.*;
+import static org.multiverse.api.GlobalStmInstance.getGlobalStmInstance;
+import static org.multiverse.api.ThreadLocalTransaction.clearThreadLocalTransaction;
+
+public class DeterministicBatchExecutor_executeTest {
+
+    private Stm stm;
+    private ProgrammaticRefFactory refFactory;
+    private TransactionalThreadPoolExecutor threadPoolExecutor;
+    private DeterministicBatchExecutor batchExecutor;
+
+    @Before
+    public void setUp() {
+        stm = getGlobalStmInstance();
+        clearThreadLocalTransaction();
+        refFactory = stm.getProgrammaticRefFactoryBuilder().build();
+        threadPoolExecutor = new TransactionalThreadPoolExecutor(4);
+        batchExecutor = new DeterministicBatchExecutor(stm, threadPoolExecutor);
+    }
+
+    @After
+    public void tearDown() {
+        threadPoolExecutor.shutdown();
+        threadPoolExecutor.awaitTerminationUninterruptibly();
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void whenNullBatch_thenNullPointerException() {
+        batchExecutor.execute(null);
+    }
+
+    @Test
+    public void whenEmptyBatch_thenNothingHappens() {
+        batchExecutor.execute(new ArrayList<KeyedTask>());
+    }
+
+    @Test
+    public void createGroups() {
+        KeyedTask t0 = new DummyTask("a", "b");
+        KeyedTask t1 = new DummyTask("c");
+        KeyedTask t2 = new DummyTask("b", "c");
+        KeyedTask t3 = new DummyTask("d");
+        KeyedTask t4 = new DummyTask("a");
+
+        List<List<DeterministicBatchExecutor.Job>> groups =
+                DeterministicBatchExecutor.createGroups(Arrays.asList(t0, t1, t2, t3, t4));
+
+        assertEquals(2, groups.size());
+        assertTasks(groups.get(0), t0, t1, t3);
+        assertTasks(groups.get(1), t2, t4);
+    }
+
+    private static void assertTasks(List<DeterministicBatchExecutor.Job> group, KeyedTask... expected) {
+        assertEquals(expected.length, group.size());
+        for (int k = 0; k < expected.length; k++) {
+            assertSame(expected[k], group.get(k).task);
+        }
+    }
+
+    @Test
+    public void whenConflictingTasks_thenExecutedInSubmissionOrder() {
+        final ProgrammaticLongRef[] accounts = new ProgrammaticLongRef[10];
+        long[] expected = new long[accounts.length];
+        for (int k = 0; k < accounts.length; k++) {
+            accounts[k] = refFactory.atomicCreateLongRef(100);
+            expected[k] = 100;
+        }
+
+        List<KeyedTask> batch = new ArrayList<KeyedTask>();
+        for (int k = 0; k < 500; k++) {
+            final int from = k % accounts.length;
+            final int to = (k * 7 + 3) % accounts.length;
+            if (from == to) {
+                continue;
+            }
+
+            //not commutative, so the order of conflicting tasks matters.
+            batch.add(new KeyedTask(from, to) {
+                @Override
+                public void execute(Transaction tx) {
+                    long amount = accounts[from].get(tx) / 2;
+                    accounts[from].inc(tx, -amount);
+                    accounts[to].inc(tx, amount);
+                }
+            });
+
+            long amount = expected[from] / 2;
+            expected[from] -= amount;
+            expected[to] += amount;
+        }
+
+        batchExecutor.execute(batch);
+
+        for (int k = 0; k < accounts.length; k++) {
+            assertEquals(expected[k], accounts[k].atomicGet());
+        }
+    }
+
+    @Test
+    public void whenTaskFails_thenOtherTasksCommittedAndFirstFailureThrown() {
+        final ProgrammaticLongRef ref1 = refFactory.atomicCreateLongRef(0);
+        final ProgrammaticLongRef ref2 = refFactory.atomicCreateLongRef(0);
+
+        List<KeyedTask> batch = new ArrayList<KeyedTask>();
+        batch.add(new KeyedTask("ref1") {
+            @Override
+            public void execute(Transaction tx) {
+                ref1.set(tx, 1);
+            }
+        });
+        batch.add(new KeyedTask("ref2") {
+            @Override
+            public void execute(Transaction tx) {
+                throw new IllegalStateException();
+            }
+        });
+        batch.add(new KeyedTask("ref2") {
+            @Override
+            public void execute(Transaction tx) {
+                ref2.set(tx, 1);
+            }
+        });
+
+        try {
+            batchExecutor.execute(batch);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+
+        assertEquals(1, ref1.atomicGet());
+        assertEquals(1, ref2.atomicGet());
+    }
+
+    @Test
+    public void whenExecutorRejects_thenSubmittedTasksCompletedAndRejectionThrown() {
+        final ProgrammaticLongRef[] refs = new ProgrammaticLongRef[4];
+        for (int k = 0; k < refs.length; k++) {
+            refs[k] = refFactory.atomicCreateLongRef(0);
+        }
+
+        //accepts the first 2 tasks and rejects the rest.
+        Executor rejectingExecutor = new Executor() {
+            int acceptedCount;
+
+            @Override
+            public synchronized void execute(Runnable command) {
+                if (acceptedCount == 2) {
+                    throw new RejectedExecutionException();
+                }
+                acceptedCount++;
+                threadPoolExecutor.execute(command);
+            }
+        };
+        batchExecutor = new DeterministicBatchExecutor(stm, rejectingExecutor);
+
+        List<KeyedTask> batch = new ArrayList<KeyedTask>();
+        for (int k = 0; k < refs.length; k++) {
+            final ProgrammaticLongRef ref = refs[k];
+            batch.add(new KeyedTask(k) {
+                @Override
+                public void execute(Transaction tx) {
+                    ref.inc(tx, 1);
+                }
+            });
+        }
+        //conflicts with the first task, so it is placed in the second group that is never executed.
+        batch.add(new KeyedTask(0) {
+            @Override
+            public void execute(Transaction tx) {
+                refs[0].inc(tx, 10);
+            }
+        });
+
+        try {
+            batchExecutor.execute(batch);
+            fail();
+        } catch (RejectedExecutionException expected) {
+        }
+
+        assertEquals(1, refs[0].atomicGet());
+        assertEquals(1, refs[1].atomicGet());
+        assertEquals(0, refs[2].atomicGet());
+        assertEquals(0, refs[3].atomicGet());
+    }
+
+    static class DummyTask extends KeyedTask {
+        DummyTask(Object... keys) {
+            super(keys);
+        }
+
+        @Override
+        public void execute(Transaction tx) {
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package org.multiverse.transactional.executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.multiverse.api.Stm;
+import org.multiverse.api.Transaction;
+import org.multiverse.api.programmatic.ProgrammaticLongRef;
+import org.multiverse.api.programmatic.ProgrammaticRefFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+import static org.multiverse.api.GlobalStmInstance.getGlobalStmInstance;
+import static org.multiverse.api.ThreadLocalTransaction.clearThreadLocalTransaction;
+
+public class SpeculativeLoopExecutor_executeTest {
+
+    private Stm stm;
+    private ProgrammaticRefFactory refFactory;
+    private ExecutorService executorService;
+    private SpeculativeLoopExecutor loopExecutor;
+
+    @Before
+    public void setUp() {
+        stm = getGlobalStmInstance();
+        refFactory = stm.getProgrammaticRefFactoryBuilder().build();
+        executorService = Executors.newFixedThreadPool(4);
+        loopExecutor = new SpeculativeLoopExecutor(stm, executorService, 4);
+        clearThreadLocalTransaction();
+    }
+
+    @After
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void whenNullBody_thenNullPointerException() {
+        loopExecutor.execute(0, 10, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void whenFromLargerThanTo_thenIllegalArgumentException() {
+        loopExecutor.execute(10, 0, new TransactionalLoopBody() {
+            @Override
+            public void execute(Transaction tx, int iteration) {
+            }
+        });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void whenWriteSkewAllowed_thenIllegalArgumentException() {
+        new SpeculativeLoopExecutor(
+                stm.getTransactionFactoryBuilder()
+                        .setReadonly(false)
+                        .setReadTrackingEnabled(true)
+                        .setWriteSkewAllowed(true)
+                        .build(),
+                executorService, 4);
+    }
+
+    @Test
+    public void whenIterationsConflict_thenSameResultAsSequential() {
+        final ProgrammaticLongRef ref = refFactory.atomicCreateLongRef(1);
+
+        loopExecutor.execute(0, 200, new TransactionalLoopBody() {
+            @Override
+            public void execute(Transaction tx, int iteration) {
+                //not commutative, so the order of the iterations matters.
+                ref.set(tx, (ref.get(tx) * 31 + iteration) % 1000003);
+            }
+        });
+
+        long expected = 1;
+        for (int k = 0; k < 200; k++) {
+            expected = (expected * 31 + k) % 1000003;
+        }
+
+        assertEquals(expected, ref.atomicGet());
+    }
+
+    @Test
+    public void whenReadonlyIterationDependsOnEarlierIteration_thenItSeesTheChange() {
+        final ProgrammaticLongRef balance = refFactory.atomicCreateLongRef(0);
+        final ProgrammaticLongRef withdrawals = refFactory.atomicCreateLongRef(0);
+
+        loopExecutor.execute(0, 100, new TransactionalLoopBody() {
+            @Override
+            public void execute(Transaction tx, int iteration) {
+                if (iteration % 2 == 0) {
+                    balance.inc(tx, 10);
+                } else if (balance.get(tx) >= 10) {
+                    balance.inc(tx, -10);
+                    withdrawals.inc(tx, 1);
+                }
+            }
+        });
+
+        assertEquals(0, balance.atomicGet());
+        assertEquals(50, withdrawals.atomicGet());
+    }
+
+    @Test
+    public void whenIterationFails_thenEarlierIterationsCommittedAndLaterNot() {
+        final ProgrammaticLongRef[] refs = new ProgrammaticLongRef[20];
+        for (int k = 0; k < refs.length; k++) {
+            refs[k] = refFactory.atomicCreateLongRef(0);
+        }
+
+        try {
+            loopExecutor.execute(0, refs.length, new TransactionalLoopBody() {
+                @Override
+                public void execute(Transaction tx, int iteration) {
+                    if (iteration == 10) {
+                        throw new IllegalStateException();
+                    }
+                    refs[iteration].set(tx, 1);
+                }
+            });
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+
+        for (int k = 0; k < refs.length; k++) {
+            assertEquals(k < 10 ? 1 : 0, refs[k].atomicGet());
+        }
+    }
+
+    @Test
+    public void whenIterationFailsWithError_thenErrorThrownAndLoopNotHanging() {
+        final ProgrammaticLongRef[] refs = new ProgrammaticLongRef[20];
+        for (int k = 0; k < refs.length; k++) {
+            refs[k] = refFactory.atomicCreateLongRef(0);
+        }
+
+        try {
+            loopExecutor.execute(0, refs.length, new TransactionalLoopBody() {
+                @Override
+                public void execute(Transaction tx, int iteration) {
+                    if (iteration == 10) {
+                        throw new StackOverflowError();
+                    }
+                    refs[iteration].set(tx, 1);
+                }
+            });
+            fail();
+        } catch (StackOverflowError expected) {
+        }
+
+        for (int k = 0; k < refs.length; k++) {
+            assertEquals(k < 10 ? 1 : 0, refs[k].atomicGet());
+        }
+    }
+}
@@ -2,6 +2,7 @@ package org.multiverse.transactional.executors;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.multiverse.transactional.collections.TransactionalLinkedBlockingQueue;
 import org.multiverse.transactional.collections.TransactionalLinkedList;
 import org.multiverse.transactional.collections.TransactionalQueue;
 
@@ -20,7 +21,7 @@ public class TransactionalThreadPoolExecutor_constructorTest {
     public void withEmptyConstructor() {
         TransactionalThreadPoolExecutor executor = new TransactionalThreadPoolExecutor();
         assertIsUnstarted(executor);
-        assertTrue(executor.getWorkQueue() instanceof TransactionalLinkedList);
+        assertTrue(executor.getWorkQueue() instanceof TransactionalLinkedBlockingQueue);
     }
 
     @Test(expected = NullPointerException.class)
@@ -168,6 +168,29 @@ public interface TransactionFactoryBuilder<T extends Transaction, B extends Tran
      */
     boolean isReadTrackingEnabled();
 
+    /**
+     * Sets if the transaction should use relaxed reads. A transaction with relaxed reads reads the most recently
+     * committed state of each transactional object directly; no version check is done, reads are not tracked and
+     * it never spins on a locked transactional object. So it doesn't provide a consistent snapshot but it also never
+     * is aborted because of read conflicts. This makes it useful for non critical queries like monitoring or
+     * reporting where a slightly inconsistent or stale view is acceptable.
+     * <p/>
+     * Relaxed reads are only possible for readonly transactions and blocking operations (retry) are not supported.
+     *
+     * @param relaxedReadsEnabled true if relaxed reads should be used, false otherwise.
+     * @return the updated TransactionFactoryBuilder
+     * @see #isRelaxedReadsEnabled()
+     */
+    B setRelaxedReadsEnabled(boolean relaxedReadsEnabled);
+
+    /**
+     * Checks if the transaction uses relaxed reads.
+     *
+     * @return true if relaxed reads are enabled, false otherwise.
+     * @see #setRelaxedReadsEnabled(boolean)
+     */
+    boolean isRelaxedReadsEnabled();
+
     /**
      * Sets if the transaction can be interrupted while doing blocking operations.
      *
@@ -189,6 +189,37 @@ public interface ProgrammaticLongRef {
      */
     void commutingInc(Transaction tx, long amount);
 
+    // ================= ensure =======================
+
+    /**
+     * Pessimistically locks this ProgrammaticLongRef for the remainder of the transaction stored in the
+     * ThreadLocalTransaction. Other transactions that want to commit a change on this ProgrammaticLongRef
+     * can't do so until that transaction has completed, and the transaction itself doesn't need to validate
+     * this ProgrammaticLongRef when it commits. This is useful for known hot spots like sequence numbers.
+     * <p/>
+     * Other transactions that read this ProgrammaticLongRef fail with a
+     * {@link org.multiverse.api.exceptions.LockNotFreeReadConflict} until that transaction has completed as
+     * well, so the transaction should be short.
+     *
+     * @throws org.multiverse.api.exceptions.NoTransactionFoundException
+     *          if no transaction is available in the ThreadLocalTransaction.
+     * @throws org.multiverse.api.exceptions.WriteConflict
+     *          if the lock could not be acquired.
+     */
+    void ensure();
+
+    /**
+     * Pessimistically locks this ProgrammaticLongRef for the remainder of the provided transaction.
+     * See {@link #ensure()} for more information.
+     *
+     * @param tx the transaction to use.
+     * @throws NullPointerException        if tx is null.
+     * @throws IllegalThreadStateException if not in the correct state for this operation.
+     * @throws org.multiverse.api.exceptions.WriteConflict
+     *                                     if the lock could not be acquired.
+     */
+    void ensure(Transaction tx);
+
     void changeMod();
 
     void changeMod(Transaction tx);
@@ -201,6 +201,39 @@ public interface ProgrammaticRef<E> {
     E getOrAwait(Transaction tx);
 
 
+    // ======================= ensure ===================
+
+    /**
+     * Pessimistically locks this reference for the remainder of the transaction stored in the
+     * ThreadLocalTransaction. Other transactions that want to commit a change on this reference can't
+     * do so until that transaction has completed, and the transaction itself doesn't need to validate
+     * this reference when it commits. So use it for known hot spots, where optimistic concurrency
+     * control would only burn retries.
+     * <p/>
+     * Other transactions that read this reference fail with a
+     * {@link org.multiverse.api.exceptions.LockNotFreeReadConflict} until that transaction has completed as
+     * well, so the transaction should be short.
+     *
+     * @throws org.multiverse.api.exceptions.NoTransactionFoundException
+     *          if no transaction is available in the ThreadLocalTransaction.
+     * @throws org.multiverse.api.exceptions.WriteConflict
+     *          if the lock could not be acquired.
+     */
+    void ensure();
+
+    /**
+     * Pessimistically locks this reference for the remainder of the provided transaction. See
+     * {@link #ensure()} for more information.
+     *
+     * @param tx the transaction to use.
+     * @throws NullPointerException if tx is null
+     * @throws org.multiverse.api.exceptions.IllegalTransactionStateException
+     *                              if the transaction isn't in the correct state for this operation.
+     * @throws org.multiverse.api.exceptions.WriteConflict
+     *                              if the lock could not be acquired.
+     */
+    void ensure(Transaction tx);
+
     // ======================= misc ===================
 
     String toString(Transaction tx);
@@ -0,0 +1,374 @@
+package org.multiverse.transactional.arrays;
+
+import org.multiverse.annotations.NonTransactional;
+import org.multiverse.annotations.TransactionalMethod;
+import org.multiverse.annotations.TransactionalObject;
+import org.multiverse.api.PropagationLevel;
+import org.multiverse.api.Transaction;
+import org.multiverse.templates.TransactionBoilerplate;
+import org.multiverse.templates.TransactionalCallable;
+
+import static org.multiverse.api.GlobalStmInstance.getGlobalStmInstance;
+
+/**
+ * A transactional double array. Unlike the {@link TransactionalReferenceArray} there is no ref for every element and
+ * the elements are not boxed; the elements are stored in stripes of {@link #STRIPE_LENGTH} double fields, and every
+ * stripe is a transactional object. The first write to a stripe in a transaction copies the stripe once, all
+ * following writes to that stripe in the same transaction change that copy. So transactions only conflict if they
+ * write to the same stripe.
+ * <p/>
+ * Just as with normal arrays, the length of the TransactionalDoubleArray can't change after it is created.
+ *
+ * @author Peter Veentjer.
+ */
+@TransactionalObject
+public final class TransactionalDoubleArray {
+
+    /**
+     * The number of elements stored in a single stripe.
+     */
+    public final static int STRIPE_LENGTH = 8;
+
+    private final static TransactionBoilerplate atomicReadBoilerplate = new TransactionBoilerplate(
+            getGlobalStmInstance().getTransactionFactoryBuilder()
+                    .setPropagationLevel(PropagationLevel.RequiresNew)
+                    .setReadonly(true)
+                    .setSpeculativeConfigurationEnabled(false)
+                    .build());
+
+    private final static TransactionBoilerplate atomicUpdateBoilerplate = new TransactionBoilerplate(
+            getGlobalStmInstance().getTransactionFactoryBuilder()
+                    .setPropagationLevel(PropagationLevel.RequiresNew)
+                    .setReadonly(false)
+                    .setSpeculativeConfigurationEnabled(false)
+                    .build());
+
+    @NonTransactional
+    final Stripe[] stripes;
+
+    private final int length;
+
+    /**
+     * Creates a new TransactionalDoubleArray with the specified length. All elements are 0.
+     *
+     * @param length the length of the TransactionalDoubleArray.
+     * @throws NegativeArraySizeException if length smaller than 0.
+     */
+    public TransactionalDoubleArray(int length) {
+        this(new double[length]);
+    }
+
+    /**
+     * Creates a new TransactionalDoubleArray containing a copy of the elements of a double array.
+     *
+     * @param values the elements to copy.
+     * @throws NullPointerException if values is null.
+     */
+    public TransactionalDoubleArray(double[] values) {
+        this.length = values.length;
+        this.stripes = new Stripe[length / STRIPE_LENGTH + (length % STRIPE_LENGTH == 0 ? 0 : 1)];
+        for (int k = 0; k < stripes.length; k++) {
+            stripes[k] = new Stripe(values, k * STRIPE_LENGTH);
+        }
+    }
+
+    /**
+     * Returns the length of this TransactionalDoubleArray.
+     *
+     * @return the length of this TransactionalDoubleArray.
+     */
+    @NonTransactional
+    public int length() {
+        //it doesn't need a transaction, so it is excluded.
+        return length;
+    }
+
+    /**
+     * Gets the element at the specified index.
+     *
+     * @param index the index of the element to get.
+     * @return the element at the specified index.
+     * @throws ArrayIndexOutOfBoundsException if the index is out of bounds.
+     */
+    @TransactionalMethod(readonly = true)
+    public double get(int index) {
+        checkIndex(index);
+        return stripes[index / STRIPE_LENGTH].get(index % STRIPE_LENGTH);
+    }
+
+    /**
+     * Gets the element at the specified index without looking at a transaction running in the
+     * ThreadLocalTransaction.
+     *
+     * @param index the index of the element to get.
+     * @return the last committed value of the element.
+     * @throws ArrayIndexOutOfBoundsException if the index is out of bounds.
+     */
+    @NonTransactional
+    public double atomicGet(final int index) {
+        checkIndex(index);
+        final Stripe stripe = stripes[index / STRIPE_LENGTH];
+        return atomicReadBoilerplate.execute(new TransactionalCallable<Double>() {
+            @Override
+            public Double call(Transaction tx) {
+                return stripe.get(index % STRIPE_LENGTH);
+            }
+        });
+    }
+
+    /**
+     * Sets the element at the specified index.
+     *
+     * @param index the index of the element to set.
+     * @param value the new value.
+     * @return the previous value of the element.
+     * @throws ArrayIndexOutOfBoundsException if the index is out of bounds.
+     */
+    public double set(int index, double value) {
+        checkIndex(index);
+        return stripes[index / STRIPE_LENGTH].set(index % STRIPE_LENGTH, value);
+    }
+
+    /**
+     * Atomically sets the element at the specified index. If a transaction is running in the
+     * ThreadLocalTransaction, it is ignored.
+     *
+     * @param index the index of the element to set.
+     * @param value the new value.
+     * @return the previous value of the element.
+     * @throws ArrayIndexOutOfBoundsException if the index is out of bounds.
+     */
+    @NonTransactional
+    public double atomicSet(final int index, final double value) {
+        checkIndex(index);
+        final Stripe stripe = stripes[index / STRIPE_LENGTH];
+        return atomicUpdateBoilerplate.execute(new TransactionalCallable<Double>() {
+            @Override
+            public Double call(Transaction tx) {
+                return stripe.set(index % STRIPE_LENGTH, value);
+            }
+        });
+    }
+
+    /**
+     * Atomically sets the element at the specified index if it has the expected value. If a transaction is
+     * running in the ThreadLocalTransaction, it is ignored.
+     * <p/>
+     * Just like {@link Double#equals(Object)} the values are compared bitwise, so NaN is equal to itself and
+     * 0.0 is not equal to -0.0.
+     *
+     * @param index    the index of the element.
+     * @param expected the value the element is expected to have.
+     * @param update   the new value.
+     * @return true if it was a success, false otherwise.
+     * @throws ArrayIndexOutOfBoundsException if the index is out of bounds.
+     */
+    @NonTransactional
+    public boolean atomicCompareAndSet(final int index, final double expected, final double update) {
+        checkIndex(index);
+        final Stripe stripe = stripes[index / STRIPE_LENGTH];
+        return atomicUpdateBoilerplate.execute(new TransactionalCallable<Boolean>() {
+            @Override
+            public Boolean call(Transaction tx) {
+                if (!same(stripe.get(index % STRIPE_LENGTH), expected)) {
+                    return false;
+                }
+
+                stripe.set(index % STRIPE_LENGTH, update);
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Atomically increments the element at the specified index. If a transaction is running in the
+     * ThreadLocalTransaction, it is ignored.
+     *
+     * @param index  the index of the element to increment.
+     * @param amount the amount to increment with (can be negative).
+     * @return the new value of the element.
+     * @throws ArrayIndexOutOfBoundsException if the index is out of bounds.
+     */
+    @NonTransactional
+    public double atomicInc(final int index, final double amount) {
+        checkIndex(index);
+        final Stripe stripe = stripes[index / STRIPE_LENGTH];
+        return atomicUpdateBoilerplate.execute(new TransactionalCallable<Double>() {
+            @Override
+            public Double call(Transaction tx) {
+                double newValue = stripe.get(index % STRIPE_LENGTH) + amount;
+                stripe.set(index % STRIPE_LENGTH, newValue);
+                return newValue;
+            }
+        });
+    }
+
+    /**
+     * Returns a double array containing the elements of this TransactionalDoubleArray.
+     *
+     * @return the created array.
+     */
+    @TransactionalMethod(readonly = true, trackReads = false)
+    public double[] toArray() {
+        return toArray(0, length);
+    }
+
+    /**
+     * Returns a double array containing the elements of this TransactionalDoubleArray from fromIndex (inclusive)
+     * till toIndex (exclusive). Every stripe is read once and the reads are not tracked, so a big range can
+     * be read with a cheap readonly transaction.
+     *
+     * @param fromIndex the index of the first element to copy.
+     * @param toIndex   the index after the last element to copy.
+     * @return the created array.
+     * @throws ArrayIndexOutOfBoundsException if fromIndex or toIndex is out of bounds.
+     * @throws IllegalArgumentException       if fromIndex larger than toIndex.
+     */
+    @TransactionalMethod(readonly = true, trackReads = false)
+    public double[] toArray(int fromIndex, int toIndex) {
+        checkRange(fromIndex, toIndex);
+
+        double[] result = new double[toIndex - fromIndex];
+        int index = fromIndex;
+        while (index < toIndex) {
+            int offset = index % STRIPE_LENGTH;
+            int count = Math.min(STRIPE_LENGTH - offset, toIndex - index);
+            stripes[index / STRIPE_LENGTH].copyTo(offset, result, index - fromIndex, count);
+            index += count;
+        }
+        return result;
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true, trackReads = false)
+    public String toString() {
+        double[] values = toArray();
+        StringBuffer sb = new StringBuffer("[");
+        for (int k = 0; k < values.length; k++) {
+            if (k > 0) {
+                sb.append(", ");
+            }
+            sb.append(values[k]);
+        }
+        sb.append("]");
+        return sb.toString();
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= length) {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+    }
+
+    private void checkRange(int fromIndex, int toIndex) {
+        if (fromIndex > toIndex) {
+            throw new IllegalArgumentException(fromIndex + " > " + toIndex);
+        }
+
+        if (fromIndex < 0) {
+            throw new ArrayIndexOutOfBoundsException(fromIndex);
+        }
+
+        if (toIndex > length) {
+            throw new ArrayIndexOutOfBoundsException(toIndex);
+        }
+    }
+
+    private static boolean same(double value1, double value2) {
+        return Double.doubleToLongBits(value1) == Double.doubleToLongBits(value2);
+    }
+
+    /**
+     * A stripe of {@link #STRIPE_LENGTH} elements. The elements are fields, so the tranlocal of a stripe holds
+     * the copy a transaction writes to; it is created by the first write to the stripe in a transaction.
+     * <p/>
+     * The elements are stored as long bits, so the dirty check on commit compares them bitwise too (a double
+     * field would see 0.0 and -0.0 as the same value).
+     */
+    @TransactionalObject
+    static final class Stripe {
+
+        private long value0, value1, value2, value3, value4, value5, value6, value7;
+
+        Stripe(double[] values, int from) {
+            int count = Math.min(STRIPE_LENGTH, values.length - from);
+            for (int k = 0; k < count; k++) {
+                put(k, values[from + k]);
+            }
+        }
+
+        @TransactionalMethod(readonly = true)
+        double get(int offset) {
+            switch (offset) {
+                case 0:
+                    return Double.longBitsToDouble(value0);
+                case 1:
+                    return Double.longBitsToDouble(value1);
+                case 2:
+                    return Double.longBitsToDouble(value2);
+                case 3:
+                    return Double.longBitsToDouble(value3);
+                case 4:
+                    return Double.longBitsToDouble(value4);
+                case 5:
+                    return Double.longBitsToDouble(value5);
+                case 6:
+                    return Double.longBitsToDouble(value6);
+                case 7:
+                    return Double.longBitsToDouble(value7);
+                default:
+                    throw new IllegalArgumentException();
+            }
+        }
+
+        @TransactionalMethod(readonly = true)
+        void copyTo(int offset, double[] dest, int destPos, int count) {
+            for (int k = 0; k < count; k++) {
+                dest[destPos + k] = get(offset + k);
+            }
+        }
+
+        double set(int offset, double value) {
+            double oldValue = get(offset);
+            if (same(oldValue, value)) {
+                //a write that doesn't change anything, doesn't need to open the stripe for writing.
+                return oldValue;
+            }
+
+            put(offset, value);
+            return oldValue;
+        }
+
+        private void put(int offset, double value) {
+            long bits = Double.doubleToRawLongBits(value);
+            switch (offset) {
+                case 0:
+                    value0 = bits;
+                    break;
+                case 1:
+                    value1 = bits;
+                    break;
+                case 2:
+                    value2 = bits;
+                    break;
+                case 3:
+                    value3 = bits;
+                    break;
+                case 4:
+                    value4 = bits;
+                    break;
+                case 5:
+                    value5 = bits;
+                    break;
+                case 6:
+                    value6 = bits;
+                    break;
+                case 7:
+                    value7 = bits;
+                    break;
+                default:
+                    throw new IllegalArgumentException();
+            }
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package org.multiverse.transactional.arrays;
+
+import org.multiverse.annotations.NonTransactional;
+import org.multiverse.annotations.TransactionalMethod;
+import org.multiverse.annotations.TransactionalObject;
+import org.multiverse.api.PropagationLevel;
+import org.multiverse.api.Transaction;
+import org.multiverse.templates.TransactionBoilerplate;
+import org.multiverse.templates.TransactionalCallable;
+
+import static org.multiverse.api.GlobalStmInstance.getGlobalStmInstance;
+
+/**
+ * A transactional long array. Unlike the {@link TransactionalReferenceArray} there is no ref for every element and
+ * the elements are not boxed; the elements are stored in stripes of {@link #STRIPE_LENGTH} long fields, and every
+ * stripe is a transactional object. The first write to a stripe in a transaction copies the stripe once, all
+ * following writes to that stripe in the same transaction change that copy. So transactions only conflict if they
+ * write to the same stripe.
+ * <p/>
+ * The long[] fields of a {@link TransactionalObject} are transformed to a TransactionalLongArray if the array never
+ * escapes from the object, so an array element can be read and written transactionally without any change to
+ * the code.
+ * <p/>
+ * Just as with normal arrays, the length of the TransactionalLongArray can't change after it is created.
+ *
+ * @author Peter Veentjer.
+ */
+@TransactionalObject
+public final class TransactionalLongArray {
+
+    /**
+     * The number of elements stored in a single stripe.
+     */
+    public final static int STRIPE_LENGTH = 8;
+
+    private final static TransactionBoilerplate atomicReadBoilerplate = new TransactionBoilerplate(
+            getGlobalStmInstance().getTransactionFactoryBuilder()
+                    .setPropagationLevel(PropagationLevel.RequiresNew)
+                    .setReadonly(true)
+                    .setSpeculativeConfigurationEnabled(false)
+                    .build());
+
+    private final static TransactionBoilerplate atomicUpdateBoilerplate = new TransactionBoilerplate(
+            getGlobalStmInstance().getTransactionFactoryBuilder()
+                    .setPropagationLevel(PropagationLevel.RequiresNew)
+                    .setReadonly(false)
+                    .setSpeculativeConfigurationEnabled(false)
+                    .build());
+
+    @NonTransactional
+    final Stripe[] stripes;
+
+    private final int length;
+
+    /**
+     * Creates a new TransactionalLongArray with the specified length. All elements are 0.
+     *
+     * @param length the length of the TransactionalLongArray.
+     * @throws NegativeArraySizeException if length smaller than 0.
+     */
+    public TransactionalLongArray(int length) {
+        this(new long[length]);
+    }
+
+    /**
+     * Creates a new TransactionalLongArray containing a copy of the elements of a long array.
+     *
+     * @param values the elements to copy.
+     * @throws NullPointerException if values is null.
+     */
+    public TransactionalLongArray(long[] values) {
+        this.length = values.length;
+        this.stripes = new Stripe[length / STRIPE_LENGTH + (length % STRIPE_LENGTH == 0 ? 0 : 1)];
+        for (int k = 0; k < stripes.length; k++) {
+            stripes[k] = new Stripe(values, k * STRIPE_LENGTH);
+        }
+    }
+
+    /**
+     * Returns the length of this TransactionalLongArray.
+     *
+     * @return the length of this TransactionalLongArray.
+     */
+    @NonTransactional
+    public int length() {
+        //it doesn't need a transaction, so it is excluded.
+        return length;
+    }
+
+    /**
+     * Gets the element at the specified index.
+     *
+     * @param index the index of the element to get.
+     * @return the element at the specified index.
+     * @throws ArrayIndexOutOfBoundsException if the index is out of bounds.
+     */
+    @TransactionalMethod(readonly = true)
+    public long get(int index) {
+        checkIndex(index);
+        return stripes[index / STRIPE_LENGTH].get(index % STRIPE_LENGTH);
+    }
+
+    /**
+     * Gets the element at the specified index without looking at a transaction running in the
+     * ThreadLocalTransaction.
+     *
+     * @param index the index of the element to get.
+     * @return the last committed value of the element.
+     * @throws ArrayIndexOutOfBoundsException if the index is out of bounds.
+     */
+    @NonTransactional
+    public long atomicGet(final int index) {
+        checkIndex(index);
+        final Stripe stripe = stripes[index / STRIPE_LENGTH];
+        return atomicReadBoilerplate.execute(new TransactionalCallable<Long>() {
+            @Override
+            public Long call(Transaction tx) {
+                return stripe.get(index % STRIPE_LENGTH);
+            }
+        });
+    }
+
+    /**
+     * Sets the element at the specified index.
+     *
+     * @param index the index of the element to set.
+     * @param value the new value.
+     * @return the previous value of the element.
+     * @throws ArrayIndexOutOfBoundsException if the index is out of bounds.
+     */
+    public long set(int index, long value) {
+        checkIndex(index);
+        return stripes[index / STRIPE_LENGTH].set(index % STRIPE_LENGTH, value);
+    }
+
+    /**
+     * Atomically sets the element at the specified index. If a transaction is running in the
+     * ThreadLocalTransaction, it is ignored.
+     *
+     * @param index the index of the element to set.
+     * @param value the new value.
+     * @return the previous value of the element.
+     * @throws ArrayIndexOutOfBoundsException if the index is out of bounds.
+     */
+    @NonTransactional
+    public long atomicSet(final int index, final long value) {
+        checkIndex(index);
+        final Stripe stripe = stripes[index / STRIPE_LENGTH];
+        return atomicUpdateBoilerplate.execute(new TransactionalCallable<Long>() {
+            @Override
+            public Long call(Transaction tx) {
+                return stripe.set(index % STRIPE_LENGTH, value);
+            }
+        });
+    }
+
+    /**
+     * Atomically sets the element at the specified index if it has the expected value. If a transaction is
+     * running in the ThreadLocalTransaction, it is ignored.
+     *
+     * @param index    the index of the element.
+     * @param expected the value the element is expected to have.
+     * @param update   the new value.
+     * @return true if it was a success, false otherwise.
+     * @throws ArrayIndexOutOfBoundsException if the index is out of bounds.
+     */
+    @NonTransactional
+    public boolean atomicCompareAndSet(final int index, final long expected, final long update) {
+        checkIndex(index);
+        final Stripe stripe = stripes[index / STRIPE_LENGTH];
+        return atomicUpdateBoilerplate.execute(new TransactionalCallable<Boolean>() {
+            @Override
+            public Boolean call(Transaction tx) {
+                if (stripe.get(index % STRIPE_LENGTH) != expected) {
+                    return false;
+                }
+
+                stripe.set(index % STRIPE_LENGTH, update);
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Atomically increments the element at the specified index. If a transaction is running in the
+     * ThreadLocalTransaction, it is ignored.
+     *
+     * @param index  the index of the element to increment.
+     * @param amount the amount to increment with (can be negative).
+     * @return the new value of the element.
+     * @throws ArrayIndexOutOfBoundsException if the index is out of bounds.
+     */
+    @NonTransactional
+    public long atomicInc(final int index, final long amount) {
+        checkIndex(index);
+        final Stripe stripe = stripes[index / STRIPE_LENGTH];
+        return atomicUpdateBoilerplate.execute(new TransactionalCallable<Long>() {
+            @Override
+            public Long call(Transaction tx) {
+                long newValue = stripe.get(index % STRIPE_LENGTH) + amount;
+                stripe.set(index % STRIPE_LENGTH, newValue);
+                return newValue;
+            }
+        });
+    }
+
+    /**
+     * Returns a long array containing the elements of this TransactionalLongArray.
+     *
+     * @return the created array.
+     */
+    @TransactionalMethod(readonly = true, trackReads = false)
+    public long[] toArray() {
+        return toArray(0, length);
+    }
+
+    /**
+     * Returns a long array containing the elements of this TransactionalLongArray from fromIndex (inclusive)
+     * till toIndex (exclusive). Every stripe is read once and the reads are not tracked, so a big range can
+     * be read with a cheap readonly transaction.
+     *
+     * @param fromIndex the index of the first element to copy.
+     * @param toIndex   the index after the last element to copy.
+     * @return the created array.
+     * @throws ArrayIndexOutOfBoundsException if fromIndex or toIndex is out of bounds.
+     * @throws IllegalArgumentException       if fromIndex larger than toIndex.
+     */
+    @TransactionalMethod(readonly = true, trackReads = false)
+    public long[] toArray(int fromIndex, int toIndex) {
+        checkRange(fromIndex, toIndex);
+
+        long[] result = new long[toIndex - fromIndex];
+        int index = fromIndex;
+        while (index < toIndex) {
+            int offset = index % STRIPE_LENGTH;
+            int count = Math.min(STRIPE_LENGTH - offset, toIndex - index);
+            stripes[index / STRIPE_LENGTH].copyTo(offset, result, index - fromIndex, count);
+            index += count;
+        }
+        return result;
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true, trackReads = false)
+    public String toString() {
+        long[] values = toArray();
+        StringBuffer sb = new StringBuffer("[");
+        for (int k = 0; k < values.length; k++) {
+            if (k > 0) {
+                sb.append(", ");
+            }
+            sb.append(values[k]);
+        }
+        sb.append("]");
+        return sb.toString();
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= length) {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+    }
+
+    private void checkRange(int fromIndex, int toIndex) {
+        if (fromIndex > toIndex) {
+            throw new IllegalArgumentException(fromIndex + " > " + toIndex);
+        }
+
+        if (fromIndex < 0) {
+            throw new ArrayIndexOutOfBoundsException(fromIndex);
+        }
+
+        if (toIndex > length) {
+            throw new ArrayIndexOutOfBoundsException(toIndex);
+        }
+    }
+
+    /**
+     * A stripe of {@link #STRIPE_LENGTH} elements. The elements are fields, so the tranlocal of a stripe holds
+     * the copy a transaction writes to; it is created by the first write to the stripe in a transaction.
+     */
+    @TransactionalObject
+    static final class Stripe {
+
+        private long value0, value1, value2, value3, value4, value5, value6, value7;
+
+        Stripe(long[] values, int from) {
+            int count = Math.min(STRIPE_LENGTH, values.length - from);
+            for (int k = 0; k < count; k++) {
+                put(k, values[from + k]);
+            }
+        }
+
+        @TransactionalMethod(readonly = true)
+        long get(int offset) {
+            switch (offset) {
+                case 0:
+                    return value0;
+                case 1:
+                    return value1;
+                case 2:
+                    return value2;
+                case 3:
+                    return value3;
+                case 4:
+                    return value4;
+                case 5:
+                    return value5;
+                case 6:
+                    return value6;
+                case 7:
+                    return value7;
+                default:
+                    throw new IllegalArgumentException();
+            }
+        }
+
+        @TransactionalMethod(readonly = true)
+        void copyTo(int offset, long[] dest, int destPos, int count) {
+            for (int k = 0; k < count; k++) {
+                dest[destPos + k] = get(offset + k);
+            }
+        }
+
+        long set(int offset, long value) {
+            long oldValue = get(offset);
+            if (oldValue == value) {
+                //a write that doesn't change anything, doesn't need to open the stripe for writing.
+                return oldValue;
+            }
+
+            put(offset, value);
+            return oldValue;
+        }
+
+        private void put(int offset, long value) {
+            switch (offset) {
+                case 0:
+                    value0 = value;
+                    break;
+                case 1:
+                    value1 = value;
+                    break;
+                case 2:
+                    value2 = value;
+                    break;
+                case 3:
+                    value3 = value;
+                    break;
+                case 4:
+                    value4 = value;
+                    break;
+                case 5:
+                    value5 = value;
+                    break;
+                case 6:
+                    value6 = value;
+                    break;
+                case 7:
+                    value7 = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException();
+            }
+        }
+    }
+}
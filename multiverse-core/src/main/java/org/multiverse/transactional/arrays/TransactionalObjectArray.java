@@ -0,0 +1,204 @@
+package org.multiverse.transactional.arrays;
+
+import org.multiverse.annotations.NonTransactional;
+import org.multiverse.annotations.TransactionalMethod;
+import org.multiverse.annotations.TransactionalObject;
+
+/**
+ * A transactional object array. Unlike the {@link TransactionalReferenceArray} there is no transactional object for
+ * every element; the elements are stored in stripes of {@link #STRIPE_LENGTH} elements, and every stripe is a
+ * transactional object. So transactions only conflict if they write to the same stripe.
+ * <p/>
+ * The object array fields (like an Object[] or String[]) of a {@link TransactionalObject} are transformed to a
+ * TransactionalObjectArray if the array never escapes from the object, so an array element can be read and written transactionally without any change to
+ * the code.
+ * <p/>
+ * Just as with normal arrays, the length of the TransactionalObjectArray can't change after it is created.
+ *
+ * @author Peter Veentjer.
+ * @param <E>
+ */
+@TransactionalObject
+public final class TransactionalObjectArray<E> {
+
+    /**
+     * The number of elements stored in a single stripe.
+     */
+    public final static int STRIPE_LENGTH = 8;
+
+    @NonTransactional
+    private final Stripe[] stripes;
+
+    private final int length;
+
+    /**
+     * Creates a new TransactionalObjectArray with the specified length. All elements are null.
+     *
+     * @param length the length of the TransactionalObjectArray.
+     * @throws NegativeArraySizeException if length smaller than 0.
+     */
+    public TransactionalObjectArray(int length) {
+        if (length < 0) {
+            throw new NegativeArraySizeException(String.valueOf(length));
+        }
+
+        this.length = length;
+        this.stripes = new Stripe[length / STRIPE_LENGTH + (length % STRIPE_LENGTH == 0 ? 0 : 1)];
+        for (int k = 0; k < stripes.length; k++) {
+            stripes[k] = new Stripe();
+        }
+    }
+
+    /**
+     * Creates a new TransactionalObjectArray containing a copy of the elements of an array.
+     *
+     * @param values the elements to copy.
+     * @throws NullPointerException if values is null.
+     */
+    public TransactionalObjectArray(E[] values) {
+        this(values.length);
+
+        for (int k = 0; k < values.length; k++) {
+            stripes[k / STRIPE_LENGTH].set(k % STRIPE_LENGTH, values[k]);
+        }
+    }
+
+    /**
+     * Returns the length of this TransactionalObjectArray.
+     *
+     * @return the length of this TransactionalObjectArray.
+     */
+    @NonTransactional
+    public int length() {
+        //it doesn't need a transaction, so it is excluded.
+        return length;
+    }
+
+    /**
+     * Gets the element at the specified index.
+     *
+     * @param index the index of the element to get.
+     * @return the element at the specified index.
+     * @throws ArrayIndexOutOfBoundsException if the index is out of bounds.
+     */
+    @TransactionalMethod(readonly = true)
+    public E get(int index) {
+        checkIndex(index);
+        return (E) stripes[index / STRIPE_LENGTH].get(index % STRIPE_LENGTH);
+    }
+
+    /**
+     * Sets the element at the specified index.
+     *
+     * @param index the index of the element to set.
+     * @param value the new value.
+     * @return the previous value of the element.
+     * @throws ArrayIndexOutOfBoundsException if the index is out of bounds.
+     */
+    public E set(int index, E value) {
+        checkIndex(index);
+        return (E) stripes[index / STRIPE_LENGTH].set(index % STRIPE_LENGTH, value);
+    }
+
+    /**
+     * Returns an array containing the elements of this TransactionalObjectArray.
+     *
+     * @return the created array.
+     */
+    @TransactionalMethod(readonly = true)
+    public Object[] toArray() {
+        Object[] result = new Object[length];
+        for (int k = 0; k < length; k++) {
+            result[k] = stripes[k / STRIPE_LENGTH].get(k % STRIPE_LENGTH);
+        }
+        return result;
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true)
+    public String toString() {
+        StringBuffer sb = new StringBuffer("[");
+        for (int k = 0; k < length; k++) {
+            if (k > 0) {
+                sb.append(", ");
+            }
+            sb.append(stripes[k / STRIPE_LENGTH].get(k % STRIPE_LENGTH));
+        }
+        sb.append("]");
+        return sb.toString();
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= length) {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+    }
+
+    @TransactionalObject
+    static final class Stripe {
+
+        private Object value0, value1, value2, value3, value4, value5, value6, value7;
+
+        @TransactionalMethod(readonly = true)
+        Object get(int offset) {
+            switch (offset) {
+                case 0:
+                    return value0;
+                case 1:
+                    return value1;
+                case 2:
+                    return value2;
+                case 3:
+                    return value3;
+                case 4:
+                    return value4;
+                case 5:
+                    return value5;
+                case 6:
+                    return value6;
+                case 7:
+                    return value7;
+                default:
+                    throw new IllegalArgumentException();
+            }
+        }
+
+        Object set(int offset, Object value) {
+            Object oldValue = get(offset);
+            if (oldValue == value) {
+                //a write that doesn't change anything, doesn't need to open the stripe for writing.
+                return oldValue;
+            }
+
+            switch (offset) {
+                case 0:
+                    value0 = value;
+                    break;
+                case 1:
+                    value1 = value;
+                    break;
+                case 2:
+                    value2 = value;
+                    break;
+                case 3:
+                    value3 = value;
+                    break;
+                case 4:
+                    value4 = value;
+                    break;
+                case 5:
+                    value5 = value;
+                    break;
+                case 6:
+                    value6 = value;
+                    break;
+                case 7:
+                    value7 = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException();
+            }
+            return oldValue;
+        }
+    }
+}
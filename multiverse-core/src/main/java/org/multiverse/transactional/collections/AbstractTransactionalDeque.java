@@ -1,12 +1,10 @@
 package org.multiverse.transactional.collections;
 
+import org.multiverse.annotations.NonTransactional;
 import org.multiverse.annotations.TransactionalMethod;
 import org.multiverse.utils.TodoException;
 
-import java.util.Arrays;
-import java.util.Collection;
-import java.util.Iterator;
-import java.util.NoSuchElementException;
+import java.util.*;
 import java.util.concurrent.TimeUnit;
 
 import static org.multiverse.api.StmUtils.retry;
@@ -249,23 +247,108 @@ public abstract class AbstractTransactionalDeque<E>
     }
 
     @Override
+    @NonTransactional
     public int drainTo(Collection<? super E> c) {
-        if (isEmpty()) {
-            return 0;
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    @NonTransactional
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        return BlockingSupport.drainTo(this, c, maxElements, new BlockingSupport.Drain<E>() {
+            @Override
+            public List<E> drainFirst(int maxElements) {
+                return AbstractTransactionalDeque.this.drainFirst(maxElements);
+            }
+        });
+    }
+
+    @TransactionalMethod(readonly = false)
+    List<E> drainFirst(int maxElements) {
+        List<E> result = new ArrayList<E>();
+        if (maxElements > 0 && !isEmpty()) {
+            doDrainFirst(result, maxElements);
         }
+        return result;
+    }
 
-        for (E item : this) {
-            c.add(item);
+    /**
+     * Removes up to maxElements items from the head and adds them to c. This implementation removes the items one
+     * by one, subclasses can override it to unlink all items in one go.
+     *
+     * @param c           the collection to add the items to.
+     * @param maxElements the maximum number of items to remove.
+     * @return the number of items removed.
+     */
+    protected int doDrainFirst(Collection<? super E> c, int maxElements) {
+        int count = 0;
+        while (count < maxElements && !isEmpty()) {
+            c.add(doRemoveFirst());
+            count++;
         }
+        return count;
+    }
+
+    @Override
+    public boolean offerAll(Collection<? extends E> c) {
+        BlockingSupport.checkBatch(this, c);
 
-        int oldSize = size();
-        clear();
-        return oldSize;
+        if (c.isEmpty()) {
+            return true;
+        }
+
+        if (remainingCapacity() < c.size()) {
+            return false;
+        }
+
+        doAddAllLast(c);
+        return true;
     }
 
     @Override
-    public int drainTo(Collection<? super E> c, int maxElements) {
-        throw new TodoException();
+    public void putAll(Collection<? extends E> c) throws InterruptedException {
+        BlockingSupport.checkBatch(this, c);
+
+        if (c.isEmpty()) {
+            return;
+        }
+
+        if (remainingCapacity() < c.size()) {
+            if (c.size() > getMaxCapacity()) {
+                throw new IllegalArgumentException("The number of items exceeds the maximum capacity");
+            }
+
+            //force load or the size to listen on that field
+            size();
+            retry();
+        }
+
+        doAddAllLast(c);
+    }
+
+    /**
+     * Adds all items at the tail. This implementation adds the items one by one, subclasses can override it to
+     * link all items in one go.
+     *
+     * @param c the items to add, none of them is null.
+     */
+    protected void doAddAllLast(Collection<? extends E> c) {
+        for (E item : c) {
+            doAddLast(item);
+        }
+    }
+
+    /**
+     * Returns the maximum number of items this TransactionalDeque can store.
+     *
+     * @return the maximum capacity.
+     */
+    public abstract int getMaxCapacity();
+
+    @Override
+    @NonTransactional
+    public List<E> takeBatch(int maxElements, long timeout, TimeUnit unit) throws InterruptedException {
+        return BlockingSupport.takeBatch(this, maxElements, timeout, unit);
     }
 
     @Override
@@ -0,0 +1,173 @@
+package org.multiverse.transactional.collections;
+
+import org.multiverse.annotations.TransactionalMethod;
+import org.multiverse.api.Transaction;
+import org.multiverse.api.exceptions.RetryTimeoutException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.multiverse.api.StmUtils.retry;
+import static org.multiverse.api.ThreadLocalTransaction.getThreadLocalTransaction;
+
+/**
+ * Contains the blocking logic with a timeout and the batch transfer logic that is shared by the
+ * {@link TransactionalQueue} implementations (and the {@link TransactionalArrayList}).
+ * <p/>
+ * A blocking call with a timeout is a non transactional method that calls a transactional method that tracks
+ * reads, and converts the {@link RetryTimeoutException} to the result of a timed out call (like null, false or an
+ * empty list). The transactional method calls {@link #awaitWithTimeout(long)} when it needs to wait.
+ *
+ * @author Peter Veentjer.
+ */
+final class BlockingSupport {
+
+    /**
+     * Takes up to maxElements items from the queue. If the queue is empty, it waits till an item is available or
+     * the timeout has expired.
+     *
+     * @param queue       the queue to take the items from.
+     * @param maxElements the maximum number of items to take.
+     * @param timeout     the maximum time to wait.
+     * @param unit        the TimeUnit of the timeout.
+     * @return the items taken, in queue order. The list is empty if the timeout expired.
+     * @throws NullPointerException     if unit is null.
+     * @throws IllegalArgumentException if maxElements is smaller than 1 or timeout is smaller than 0.
+     * @throws InterruptedException     if the thread was interrupted while waiting.
+     * @see TransactionalQueue#takeBatch(int, long, TimeUnit)
+     */
+    static <E> List<E> takeBatch(TransactionalQueue<E> queue, int maxElements, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        if (unit == null) {
+            throw new NullPointerException();
+        }
+
+        if (maxElements < 1) {
+            throw new IllegalArgumentException("maxElements can't be smaller than 1");
+        }
+
+        if (timeout < 0) {
+            throw new IllegalArgumentException("timeout can't be smaller than 0");
+        }
+
+        try {
+            return doTakeBatch(queue, maxElements, unit.toNanos(timeout));
+        } catch (RetryTimeoutException e) {
+            return new ArrayList<E>(0);
+        }
+    }
+
+    @TransactionalMethod(readonly = false, trackReads = true)
+    static <E> List<E> doTakeBatch(TransactionalQueue<E> queue, int maxElements, long timeoutNs)
+            throws InterruptedException {
+        if (queue.isEmpty()) {
+            if (timeoutNs == 0) {
+                return new ArrayList<E>(0);
+            }
+
+            awaitWithTimeout(timeoutNs);
+        }
+
+        //the list is created in the transaction, so an attempt that is restarted doesn't see the items of an
+        //earlier attempt.
+        List<E> result = new ArrayList<E>();
+        queue.drainTo(result, maxElements);
+        return result;
+    }
+
+    /**
+     * Lets the transaction of the calling thread wait (a retry) till one of the tracked reads has changed or the
+     * timeout has expired. When the timeout expires, the transaction fails with a {@link RetryTimeoutException}.
+     * <p/>
+     * The remaining timeout is kept over the attempts of the transaction and only decreases, so it only is set on
+     * the first attempt.
+     *
+     * @param timeoutNs the timeout in nanoseconds.
+     */
+    static void awaitWithTimeout(long timeoutNs) {
+        Transaction tx = getThreadLocalTransaction();
+        tx.setRemainingTimeoutNs(Math.min(timeoutNs, tx.getRemainingTimeoutNs()));
+        retry();
+    }
+
+    /**
+     * Removes up to maxElements items from the start of a collection and adds them to c.
+     * <p/>
+     * If c is a {@link TransactionalCollection}, the removal and the adds are done in a single transaction. Otherwise
+     * the items are removed in a transaction and added to c after that transaction has completed, so they are not
+     * added again when it is restarted. If a transaction is running, that is the running transaction; see
+     * {@link TransactionalQueue#drainTo(Collection, int)} for what that means.
+     *
+     * @param collection  the collection to remove the items from.
+     * @param c           the collection to add the items to.
+     * @param maxElements the maximum number of items to remove.
+     * @param drain       removes the items from the collection.
+     * @return the number of items removed.
+     * @throws NullPointerException     if c is null.
+     * @throws IllegalArgumentException if c is the collection itself.
+     */
+    static <E> int drainTo(Collection<E> collection, Collection<? super E> c, int maxElements, Drain<E> drain) {
+        if (c == null) {
+            throw new NullPointerException();
+        }
+
+        if (c == collection) {
+            throw new IllegalArgumentException();
+        }
+
+        if (c instanceof TransactionalCollection) {
+            return drainToTransactional(c, maxElements, drain);
+        }
+
+        List<E> drained = drain.drainFirst(maxElements);
+        c.addAll(drained);
+        return drained.size();
+    }
+
+    @TransactionalMethod(readonly = false)
+    static <E> int drainToTransactional(Collection<? super E> c, int maxElements, Drain<E> drain) {
+        List<E> drained = drain.drainFirst(maxElements);
+        c.addAll(drained);
+        return drained.size();
+    }
+
+    /**
+     * Checks the items of a batch that is going to be added to a collection.
+     *
+     * @param collection the collection the items are added to.
+     * @param c          the items to add.
+     * @throws NullPointerException     if one of the items is null.
+     * @throws IllegalArgumentException if c is the collection itself.
+     */
+    static void checkBatch(Collection<?> collection, Collection<?> c) {
+        if (c == collection) {
+            throw new IllegalArgumentException();
+        }
+
+        for (Object item : c) {
+            if (item == null) {
+                throw new NullPointerException();
+            }
+        }
+    }
+
+    /**
+     * Removes the first items of a collection for {@link BlockingSupport#drainTo(Collection, Collection, int, Drain)}.
+     */
+    interface Drain<E> {
+
+        /**
+         * Removes up to maxElements items from the start of the collection. It is a transactional method that
+         * joins a running transaction.
+         *
+         * @param maxElements the maximum number of items to remove.
+         * @return the removed items, in order.
+         */
+        List<E> drainFirst(int maxElements);
+    }
+
+    private BlockingSupport() {
+    }
+}
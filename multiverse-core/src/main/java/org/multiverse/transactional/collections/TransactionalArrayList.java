@@ -4,8 +4,9 @@ import org.multiverse.annotations.NonTransactional;
 import org.multiverse.annotations.TransactionalMethod;
 import org.multiverse.annotations.TransactionalObject;
 import org.multiverse.api.programmatic.ProgrammaticLongRef;
+import org.multiverse.api.programmatic.ProgrammaticRef;
 import org.multiverse.api.programmatic.ProgrammaticRefFactory;
-import org.multiverse.transactional.arrays.TransactionalReferenceArray;
+import org.multiverse.transactional.arrays.TransactionalObjectArray;
 import org.multiverse.utils.TodoException;
 
 import java.lang.reflect.Array;
@@ -17,19 +18,37 @@ import static org.multiverse.api.ThreadLocalTransaction.getThreadLocalTransactio
 /**
  * A {@link TransactionalList} based on a (transactional) array. It is the transactional version of the
  * {@link java.util.ArrayList}.
+ * <p/>
+ * The items are stored in fixed size chunks. Each chunk is a {@link TransactionalObjectArray}, so it stores its
+ * items in a few striped transactional objects instead of a reference per item. A transaction copies a stripe of a
+ * chunk once, on the first write to it; all following writes to that stripe in the same transaction change that
+ * copy. A growth of the capacity only copies the references to the chunks, and an insert or remove in the middle
+ * of the list writes every stripe behind it once.
+ * <p/>
+ * The price is that transactions that change different items in the same stripe
+ * ({@link TransactionalObjectArray#STRIPE_LENGTH} items) conflict.
  *
  * @author Peter Veentjer.
  * @param <E>
  */
 public final class TransactionalArrayList<E> implements TransactionalList<E> {
 
-    private final static ProgrammaticRefFactory sizeFactory = getGlobalStmInstance()
+    /**
+     * The number of items stored in a single chunk.
+     */
+    public final static int CHUNK_SIZE = 32;
+
+    private final static int CHUNK_SHIFT = 5;
+
+    private final static int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final static ProgrammaticRefFactory refFactory = getGlobalStmInstance()
             .getProgrammaticRefFactoryBuilder()
             .build();
 
-    private TransactionalReferenceArray<E> array;
+    private final ProgrammaticRef<Chunks> chunks;
 
-    private final ProgrammaticLongRef size = sizeFactory.atomicCreateLongRef(0);
+    private final ProgrammaticLongRef size = refFactory.atomicCreateLongRef(0);
 
     /**
      * Creates a new TransactionalArrayList with capacity 10. This is the same initial capacity as
@@ -73,7 +92,7 @@ public final class TransactionalArrayList<E> implements TransactionalList<E> {
      * @param capacity the initial capacity of the TransactionalArrayList.
      */
     public TransactionalArrayList(int capacity) {
-        this.array = new TransactionalReferenceArray<E>(capacity);
+        this.chunks = refFactory.atomicCreateRef(new Chunks(chunkCount(capacity)));
     }
 
     @Override
@@ -96,22 +115,56 @@ public final class TransactionalArrayList<E> implements TransactionalList<E> {
     public boolean add(E e) {
         int s = size();
         ensureCapacity(s + 1);
-        array.set(s, e);
+        setItem(s, e);
         size.commutingInc(1);
         return true;
     }
 
     private void ensureCapacity(int minCapacity) {
-        if (minCapacity > array.length()) {
+        Chunks current = chunks.get();
+        int oldChunkCount = current.items.length;
+        if (minCapacity > oldChunkCount * CHUNK_SIZE) {
+            int newChunkCount = (oldChunkCount * 3) / 2 + 1;
+            if (newChunkCount < chunkCount(minCapacity)) {
+                newChunkCount = chunkCount(minCapacity);
+            }
+
+            //the references to the chunks are copied, the chunks themselves are not.
+            chunks.set(current.grow(newChunkCount));
+        }
+    }
 
-            int oldCapacity = array.length();
+    private static int chunkCount(int capacity) {
+        return (capacity + CHUNK_SIZE - 1) >>> CHUNK_SHIFT;
+    }
 
-            int newCapacity = (oldCapacity * 3) / 2 + 1;
-            if (newCapacity < minCapacity) {
-                newCapacity = minCapacity;
-            }
+    private E getItem(int index) {
+        return (E) chunks.get().items[index >>> CHUNK_SHIFT].get(index & CHUNK_MASK);
+    }
+
+    private E setItem(int index, E item) {
+        return (E) chunks.get().items[index >>> CHUNK_SHIFT].set(index & CHUNK_MASK, item);
+    }
+
+    /**
+     * Copies the items between fromIndex (inclusive) and toIndex (exclusive) into the array, starting at offset.
+     */
+    private void readRange(int fromIndex, int toIndex, Object[] target, int offset) {
+        TransactionalObjectArray<Object>[] items = chunks.get().items;
+        for (int index = fromIndex; index < toIndex; index++) {
+            target[offset++] = items[index >>> CHUNK_SHIFT].get(index & CHUNK_MASK);
+        }
+    }
 
-            array = array.copyToBiggerArray(newCapacity);
+    /**
+     * Writes the items starting at index. Every stripe of a chunk that is touched is copied once by the
+     * transaction, no matter how many of its items are written.
+     */
+    private void writeRange(int index, Object[] items) {
+        TransactionalObjectArray<Object>[] chunkItems = chunks.get().items;
+        for (Object item : items) {
+            chunkItems[index >>> CHUNK_SHIFT].set(index & CHUNK_MASK, item);
+            index++;
         }
     }
 
@@ -123,7 +176,7 @@ public final class TransactionalArrayList<E> implements TransactionalList<E> {
             throw new IndexOutOfBoundsException();
         }
 
-        return array.get(index);
+        return getItem(index);
     }
 
     @Override
@@ -136,7 +189,7 @@ public final class TransactionalArrayList<E> implements TransactionalList<E> {
         int copiedSize = size();
 
         for (int k = 0; k < copiedSize; k++) {
-            E element = array.get(k);
+            E element = getItem(k);
             if (equals(element, o)) {
                 return k;
             }
@@ -150,7 +203,7 @@ public final class TransactionalArrayList<E> implements TransactionalList<E> {
         int copiedSize = size();
 
         for (int k = copiedSize - 1; k >= 0; k--) {
-            E element = array.get(k);
+            E element = getItem(k);
             if (equals(element, o)) {
                 return k;
             }
@@ -170,7 +223,7 @@ public final class TransactionalArrayList<E> implements TransactionalList<E> {
             throw new IndexOutOfBoundsException();
         }
 
-        return array.set(index, element);
+        return setItem(index, element);
     }
 
     @Override
@@ -184,15 +237,10 @@ public final class TransactionalArrayList<E> implements TransactionalList<E> {
         }
 
         int oldSize = size();
-        int newSize = oldSize + c.size();
-        ensureCapacity(newSize);
-        size.commutingInc(c.size());
-
-        Iterator<? extends E> it = c.iterator();
-        for (int k = oldSize; k < newSize; k++) {
-            array.set(k, it.next());
-        }
-
+        Object[] items = c.toArray();
+        ensureCapacity(oldSize + items.length);
+        size.commutingInc(items.length);
+        writeRange(oldSize, items);
         return true;
     }
 
@@ -202,16 +250,16 @@ public final class TransactionalArrayList<E> implements TransactionalList<E> {
             return;
         }
 
-        int localSize = size();
-        for (int k = 0; k < localSize; k++) {
-            array.set(0, null);
-        }
+        //the chunks are replaced instead of emptied, so only a single reference is written.
+        chunks.set(new Chunks(chunks.get().items.length));
         size.set(0);
     }
 
     @Override
     public Object[] toArray() {
-        return array.toArray(size());
+        Object[] result = new Object[size()];
+        readRange(0, result.length, result, 0);
+        return result;
     }
 
     @Override
@@ -221,7 +269,7 @@ public final class TransactionalArrayList<E> implements TransactionalList<E> {
         T[] r = a.length >= localSize ? a : (T[]) Array.newInstance(a.getClass().getComponentType(), localSize);
 
         for (int k = 0; k < localSize; k++) {
-            r[k] = (T) array.get(k);
+            r[k] = (T) getItem(k);
         }
 
         for (int k = localSize; k < a.length; k++) {
@@ -291,13 +339,11 @@ public final class TransactionalArrayList<E> implements TransactionalList<E> {
             throw new IndexOutOfBoundsException();
         }
 
-        E item = array.get(index);
-
-        if (index < localSize - 1) {
-            array.shiftLeft(index + 1, localSize - 1);
-        } else {
-            array.set(index, null);
-        }
+        //the items behind the index are moved one to the left and the last slot is cleared.
+        Object[] items = new Object[localSize - index];
+        readRange(index + 1, localSize, items, 0);
+        E item = getItem(index);
+        writeRange(index, items);
 
         size.inc(getThreadLocalTransaction(), -1);
         return item;
@@ -313,10 +359,12 @@ public final class TransactionalArrayList<E> implements TransactionalList<E> {
 
         ensureCapacity(localSize + 1);
 
-        array.shiftRight(index, localSize - 1);
+        Object[] items = new Object[localSize - index + 1];
+        items[0] = element;
+        readRange(index, localSize, items, 1);
+        writeRange(index, items);
 
         size.inc(getThreadLocalTransaction(), 1);
-        array.set(index, element);
     }
 
     @Override
@@ -335,13 +383,74 @@ public final class TransactionalArrayList<E> implements TransactionalList<E> {
             return false;
         }
 
-        ensureCapacity(localSize + c.size());
+        Object[] inserted = c.toArray();
+        int count = inserted.length;
+        ensureCapacity(localSize + count);
 
-        //array.shiftRight(index, size - index);
-        //array.set(index, element);
-        //size+=c.size();
-        //return true;
-        throw new TodoException();
+        //the items behind the index are moved in a single pass, instead of one shift per inserted item.
+        Object[] items = new Object[localSize - index + count];
+        System.arraycopy(inserted, 0, items, 0, count);
+        readRange(index, localSize, items, count);
+        writeRange(index, items);
+
+        size.commutingInc(count);
+        return true;
+    }
+
+    /**
+     * Removes all items and adds them to the collection. See {@link #drainTo(java.util.Collection, int)}.
+     *
+     * @param c the collection to add the items to.
+     * @return the number of items removed.
+     * @throws NullPointerException     if c is null.
+     * @throws IllegalArgumentException if c is this TransactionalArrayList.
+     */
+    @NonTransactional
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Removes up to maxElements items from the start of this TransactionalArrayList and adds them to the
+     * collection. The remaining items are moved to the front in a single pass and the size is changed once, so
+     * a batch costs a single transaction instead of one {@link #remove(int)} per item.
+     * <p/>
+     * The items are added to the collection just like {@link TransactionalQueue#drainTo(Collection, int)} does.
+     *
+     * @param c           the collection to add the items to.
+     * @param maxElements the maximum number of items to remove.
+     * @return the number of items removed.
+     * @throws NullPointerException     if c is null.
+     * @throws IllegalArgumentException if c is this TransactionalArrayList.
+     */
+    @NonTransactional
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        return BlockingSupport.drainTo(this, c, maxElements, new BlockingSupport.Drain<E>() {
+            @Override
+            public List<E> drainFirst(int maxElements) {
+                return TransactionalArrayList.this.drainFirst(maxElements);
+            }
+        });
+    }
+
+    @TransactionalMethod(readonly = false)
+    List<E> drainFirst(int maxElements) {
+        int localSize = size();
+        int count = Math.min(localSize, maxElements);
+        if (count <= 0) {
+            return new ArrayList<E>(0);
+        }
+
+        Object[] drained = new Object[count];
+        readRange(0, count, drained, 0);
+
+        //the remaining items are moved to the front and the freed slots at the end are cleared.
+        Object[] items = new Object[localSize];
+        readRange(count, localSize, items, 0);
+        writeRange(0, items);
+
+        size.commutingInc(-count);
+        return Arrays.asList((E[]) drained);
     }
 
     @Override
@@ -409,7 +518,7 @@ public final class TransactionalArrayList<E> implements TransactionalList<E> {
 
         boolean changed = false;
         for (int k = 0; k < localSize; k++) {
-            E item = array.get(k);
+            E item = getItem(k);
             if (!c.contains(item)) {
                 remove(k);
                 k--;
@@ -431,7 +540,7 @@ public final class TransactionalArrayList<E> implements TransactionalList<E> {
         }
 
         for (int k = 0; k < localSize; k++) {
-            E item = array.get(k);
+            E item = getItem(k);
             hashCode = 31 * hashCode + (item == null ? 0 : item.hashCode());
         }
 
@@ -461,7 +570,7 @@ public final class TransactionalArrayList<E> implements TransactionalList<E> {
 
         Iterator thatIt = that.iterator();
         for (int k = 0; k < localSize; k++) {
-            if (!equals(array.get(k), thatIt.next())) {
+            if (!equals(getItem(k), thatIt.next())) {
                 return false;
             }
         }
@@ -479,7 +588,7 @@ public final class TransactionalArrayList<E> implements TransactionalList<E> {
 
         StringBuffer sb = new StringBuffer("[");
         for (int k = 0; k < localSize; k++) {
-            sb.append(array.get(k));
+            sb.append(getItem(k));
 
             if (k < localSize - 1) {
                 sb.append(", ");
@@ -488,4 +597,29 @@ public final class TransactionalArrayList<E> implements TransactionalList<E> {
         sb.append("]");
         return sb.toString();
     }
+
+    /**
+     * The references to the chunks. It is immutable, a growth of the capacity creates a new Chunks that shares
+     * the references of the existing chunks.
+     */
+    static final class Chunks {
+        final TransactionalObjectArray<Object>[] items;
+
+        Chunks(int chunkCount) {
+            this(new TransactionalObjectArray[chunkCount], 0);
+        }
+
+        private Chunks(TransactionalObjectArray<Object>[] items, int firstNew) {
+            for (int k = firstNew; k < items.length; k++) {
+                items[k] = new TransactionalObjectArray<Object>(CHUNK_SIZE);
+            }
+            this.items = items;
+        }
+
+        Chunks grow(int chunkCount) {
+            TransactionalObjectArray<Object>[] newItems = new TransactionalObjectArray[chunkCount];
+            System.arraycopy(items, 0, newItems, 0, items.length);
+            return new Chunks(newItems, items.length);
+        }
+    }
 }
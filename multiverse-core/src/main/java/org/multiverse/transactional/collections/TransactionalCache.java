@@ -0,0 +1,449 @@
+package org.multiverse.transactional.collections;
+
+import org.multiverse.annotations.NonTransactional;
+import org.multiverse.annotations.TransactionalMethod;
+import org.multiverse.annotations.TransactionalObject;
+import org.multiverse.api.Transaction;
+import org.multiverse.api.lifecycle.TransactionLifecycleEvent;
+import org.multiverse.api.lifecycle.TransactionLifecycleListener;
+import org.multiverse.api.programmatic.ProgrammaticLongRef;
+import org.multiverse.api.programmatic.ProgrammaticRefFactory;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.lang.String.format;
+import static org.multiverse.api.GlobalStmInstance.getGlobalStmInstance;
+import static org.multiverse.api.ThreadLocalTransaction.getThreadLocalTransaction;
+
+/**
+ * A cache with a maximum size that evicts entries when a new entry is added to a full cache. The entries are stored
+ * in a {@link TransactionalHashMap}, so adding an entry, the eviction it causes and the change that caused it all
+ * commit or abort together.
+ * <p/>
+ * <h2>Eviction</h2>
+ * The entry to evict is chosen by sampling: the entries in a few randomly chosen buckets are compared, and the
+ * entry that is least recently used ({@link EvictionPolicy#LRU}) or least frequently used
+ * ({@link EvictionPolicy#LFU}) is evicted. So the eviction is approximate, but it doesn't need to maintain an ordered
+ * structure; if the sample size is at least the maximum size, it is exact.
+ * <p/>
+ * The last access time and the access count of an entry are hints that are not managed by the STM. So a
+ * {@link #get(Object)} doesn't write anything, can be executed in a readonly transaction and never conflicts with
+ * other transactions. The price is that the access of a transaction that aborts is still counted.
+ * <p/>
+ * The size is read without being tracked by the transaction, so adding entries doesn't conflict on the size. The
+ * entries a transaction already added, evicted or removed itself are counted on top of that size, so a transaction
+ * that adds multiple entries evicts exactly enough. The cache still can exceed the maximum size by the entries
+ * added by concurrent transactions; the next addition evicts the excess.
+ * <p/>
+ * <h2>Statistics</h2>
+ * The number of evictions is changed using commuting increments, so it only includes the evictions of committed
+ * transactions. The hits and misses are counted for every attempt of a transaction.
+ * <p/>
+ * Null keys and values are not allowed.
+ *
+ * @author Peter Veentjer.
+ * @param <K> the key type for the cache
+ * @param <V> the value type for the cache
+ */
+@TransactionalObject
+public final class TransactionalCache<K, V> {
+
+    /**
+     * The strategy used to choose the entry to evict.
+     */
+    public enum EvictionPolicy {
+        /**
+         * Evicts the least recently used entry of the sample.
+         */
+        LRU,
+
+        /**
+         * Evicts the least frequently used entry of the sample. Entries with the same number of accesses are
+         * evicted in least recently used order.
+         */
+        LFU
+    }
+
+    /**
+     * The default number of entries compared to choose the entry to evict.
+     */
+    public final static int DEFAULT_SAMPLE_SIZE = 8;
+
+    private final static ProgrammaticRefFactory refFactory = getGlobalStmInstance()
+            .getProgrammaticRefFactoryBuilder()
+            .build();
+
+    private final TransactionalHashMap<K, CacheEntry<V>> map;
+
+    private final int maxSize;
+
+    private final EvictionPolicy evictionPolicy;
+
+    private final int sampleSize;
+
+    private final ProgrammaticLongRef evictionCount = refFactory.atomicCreateLongRef(0);
+
+    //the statistics and the access hints are not transactional, so reads never become writes.
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    //a logical clock that gives every access a unique time, used for the LRU order.
+    private final AtomicLong accessClock = new AtomicLong();
+
+    private final Random random = new Random();
+
+    //the change of the size made by each running transaction, see evictForInsert.
+    private final ConcurrentMap<Transaction, SizeChange> sizeChanges = new ConcurrentHashMap<Transaction, SizeChange>();
+
+    /**
+     * Creates a new TransactionalCache with LRU eviction.
+     *
+     * @param maxSize the maximum number of entries.
+     * @throws IllegalArgumentException if maxSize smaller than 1.
+     */
+    public TransactionalCache(int maxSize) {
+        this(maxSize, EvictionPolicy.LRU);
+    }
+
+    /**
+     * Creates a new TransactionalCache with the {@link #DEFAULT_SAMPLE_SIZE}.
+     *
+     * @param maxSize        the maximum number of entries.
+     * @param evictionPolicy the policy used to choose the entry to evict.
+     * @throws IllegalArgumentException if maxSize smaller than 1.
+     * @throws NullPointerException     if evictionPolicy is null.
+     */
+    public TransactionalCache(int maxSize, EvictionPolicy evictionPolicy) {
+        this(maxSize, evictionPolicy, DEFAULT_SAMPLE_SIZE);
+    }
+
+    /**
+     * Creates a new TransactionalCache.
+     *
+     * @param maxSize        the maximum number of entries.
+     * @param evictionPolicy the policy used to choose the entry to evict.
+     * @param sampleSize     the number of entries compared to choose the entry to evict. A bigger sample gives a
+     *                       better eviction but makes the eviction more expensive.
+     * @throws IllegalArgumentException if maxSize or sampleSize smaller than 1.
+     * @throws NullPointerException     if evictionPolicy is null.
+     */
+    public TransactionalCache(int maxSize, EvictionPolicy evictionPolicy, int sampleSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException(format("maxSize can't be smaller than 1, maxSize was %s", maxSize));
+        }
+
+        if (evictionPolicy == null) {
+            throw new NullPointerException();
+        }
+
+        if (sampleSize < 1) {
+            throw new IllegalArgumentException(
+                    format("sampleSize can't be smaller than 1, sampleSize was %s", sampleSize));
+        }
+
+        this.maxSize = maxSize;
+        this.evictionPolicy = evictionPolicy;
+        this.sampleSize = sampleSize;
+        this.map = new TransactionalHashMap<K, CacheEntry<V>>((int) (maxSize / 0.75f) + 1);
+    }
+
+    /**
+     * Returns the maximum number of entries of this TransactionalCache.
+     *
+     * @return the maximum size.
+     */
+    @NonTransactional
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the policy used to choose the entry to evict.
+     *
+     * @return the eviction policy.
+     */
+    @NonTransactional
+    public EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    /**
+     * Returns the number of entries compared to choose the entry to evict.
+     *
+     * @return the sample size.
+     */
+    @NonTransactional
+    public int getSampleSize() {
+        return sampleSize;
+    }
+
+    /**
+     * Returns the number of entries.
+     *
+     * @return the number of entries.
+     */
+    @TransactionalMethod(readonly = true)
+    public int size() {
+        return map.size();
+    }
+
+    /**
+     * Returns the number of entries without looking at a transaction running in the ThreadLocalTransaction.
+     *
+     * @return the number of entries.
+     */
+    @NonTransactional
+    public int atomicSize() {
+        return map.atomicSize();
+    }
+
+    /**
+     * Returns the value stored for the key and records the access. The access is not managed by the STM, so this
+     * call never writes.
+     *
+     * @param key the key of the value to get.
+     * @return the value, or null if the cache doesn't contain the key.
+     * @throws NullPointerException if key is null.
+     */
+    @TransactionalMethod(readonly = true)
+    public V get(K key) {
+        CacheEntry<V> entry = map.get(key);
+        if (entry == null) {
+            missCount.incrementAndGet();
+            return null;
+        }
+
+        hitCount.incrementAndGet();
+        entry.touch(accessClock.incrementAndGet());
+        return entry.value;
+    }
+
+    /**
+     * Checks if the cache contains the key. It doesn't count as an access of the entry and isn't counted as a hit
+     * or miss.
+     *
+     * @param key the key to check.
+     * @return true if the cache contains the key.
+     * @throws NullPointerException if key is null.
+     */
+    @TransactionalMethod(readonly = true)
+    public boolean containsKey(K key) {
+        return map.containsKey(key);
+    }
+
+    /**
+     * Stores the value for the key. If the key is new and the cache is full, an entry is evicted in the same
+     * transaction.
+     *
+     * @param key   the key.
+     * @param value the value.
+     * @return the previous value, or null if the key is new.
+     * @throws NullPointerException if key or value is null.
+     */
+    public V put(K key, V value) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+
+        CacheEntry<V> old = map.get(key);
+        if (old == null) {
+            evictForInsert();
+            map.put(key, new CacheEntry<V>(value, accessClock.incrementAndGet(), 0));
+            return null;
+        }
+
+        //the access count is kept, so an update doesn't make an entry a candidate for LFU eviction.
+        map.put(key, new CacheEntry<V>(value, accessClock.incrementAndGet(), old.accessCount));
+        return old.value;
+    }
+
+    /**
+     * Stores the value for the key if the cache doesn't contain the key. If the cache is full, an entry is evicted
+     * in the same transaction.
+     *
+     * @param key   the key.
+     * @param value the value.
+     * @return the current value, or null if the value was stored.
+     * @throws NullPointerException if key or value is null.
+     */
+    public V putIfAbsent(K key, V value) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+
+        CacheEntry<V> old = map.get(key);
+        if (old != null) {
+            return old.value;
+        }
+
+        evictForInsert();
+        map.put(key, new CacheEntry<V>(value, accessClock.incrementAndGet(), 0));
+        return null;
+    }
+
+    /**
+     * Removes the key from the cache. This isn't counted as an eviction.
+     *
+     * @param key the key to remove.
+     * @return the removed value, or null if the cache didn't contain the key.
+     * @throws NullPointerException if key is null.
+     */
+    public V remove(K key) {
+        CacheEntry<V> old = map.remove(key);
+        if (old == null) {
+            return null;
+        }
+
+        getSizeChange().delta--;
+        return old.value;
+    }
+
+    /**
+     * Removes all entries. This isn't counted as an eviction.
+     */
+    public void clear() {
+        map.clear();
+        getSizeChange().delta = -map.atomicSize();
+    }
+
+    /**
+     * Returns the number of gets that found the key.
+     *
+     * @return the number of hits.
+     */
+    @NonTransactional
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Returns the number of gets that didn't find the key.
+     *
+     * @return the number of misses.
+     */
+    @NonTransactional
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Returns the number of entries that were evicted by committed transactions.
+     *
+     * @return the number of evictions.
+     */
+    @NonTransactional
+    public long getEvictionCount() {
+        return evictionCount.atomicGet();
+    }
+
+    /**
+     * Makes room for a new entry, and counts the entry as added by the transaction. The committed size is read
+     * without being tracked, so it doesn't conflict with the commuting increments of other transactions; the
+     * change of the size made by this transaction is added to it.
+     */
+    private void evictForInsert() {
+        SizeChange sizeChange = getSizeChange();
+        int excess = map.atomicSize() + sizeChange.delta + 1 - maxSize;
+        for (int k = 0; k < excess; k++) {
+            if (!evictOne()) {
+                break;
+            }
+            sizeChange.delta--;
+        }
+        sizeChange.delta++;
+    }
+
+    /**
+     * Returns the change of the size made by the running transaction. It is forgotten when the transaction
+     * commits or aborts.
+     */
+    private SizeChange getSizeChange() {
+        Transaction tx = getThreadLocalTransaction();
+        if (tx == null) {
+            return new SizeChange();
+        }
+
+        SizeChange sizeChange = sizeChanges.get(tx);
+        if (sizeChange == null) {
+            sizeChange = new SizeChange();
+            sizeChanges.put(tx, sizeChange);
+            tx.registerLifecycleListener(sizeChange);
+        }
+        return sizeChange;
+    }
+
+    private boolean evictOne() {
+        List<TransactionalHashMap.Node<K, CacheEntry<V>>> sample = map.sampleNodes(random, sampleSize);
+
+        TransactionalHashMap.Node<K, CacheEntry<V>> victim = null;
+        for (TransactionalHashMap.Node<K, CacheEntry<V>> node : sample) {
+            if (victim == null || isBetterVictim(node.value, victim.value)) {
+                victim = node;
+            }
+        }
+
+        if (victim == null) {
+            return false;
+        }
+
+        map.remove(victim.key);
+        evictionCount.commutingInc(1);
+        return true;
+    }
+
+    private boolean isBetterVictim(CacheEntry<V> entry, CacheEntry<V> victim) {
+        if (evictionPolicy == EvictionPolicy.LFU && entry.accessCount != victim.accessCount) {
+            return entry.accessCount < victim.accessCount;
+        }
+
+        return entry.lastAccess < victim.lastAccess;
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true)
+    public String toString() {
+        return format("TransactionalCache(size=%s, maxSize=%s, evictionPolicy=%s)",
+                map.size(), maxSize, evictionPolicy);
+    }
+
+    /**
+     * The number of entries a single transaction added minus the number of entries it evicted or removed. It is
+     * only used by the thread running the transaction.
+     */
+    private class SizeChange implements TransactionLifecycleListener {
+        int delta;
+
+        @Override
+        public void notify(Transaction tx, TransactionLifecycleEvent event) {
+            if (event == TransactionLifecycleEvent.PostCommit || event == TransactionLifecycleEvent.PostAbort) {
+                sizeChanges.remove(tx);
+            }
+        }
+    }
+
+    /**
+     * The value stored in the TransactionalHashMap. The value is immutable, the access hints are not transactional.
+     */
+    static final class CacheEntry<V> {
+        final V value;
+        volatile long lastAccess;
+        //a racy increment; a lost increment only makes the count less precise.
+        volatile long accessCount;
+
+        CacheEntry(V value, long lastAccess, long accessCount) {
+            this.value = value;
+            this.lastAccess = lastAccess;
+            this.accessCount = accessCount;
+        }
+
+        void touch(long time) {
+            lastAccess = time;
+            accessCount++;
+        }
+    }
+}
@@ -0,0 +1,915 @@
+package org.multiverse.transactional.collections;
+
+import org.multiverse.annotations.NonTransactional;
+import org.multiverse.annotations.TransactionalMethod;
+import org.multiverse.annotations.TransactionalObject;
+import org.multiverse.api.programmatic.ProgrammaticLongRef;
+import org.multiverse.api.programmatic.ProgrammaticRefFactory;
+import org.multiverse.transactional.arrays.TransactionalReferenceArray;
+
+import java.util.*;
+
+import static java.lang.String.format;
+import static org.multiverse.api.GlobalStmInstance.getGlobalStmInstance;
+
+/**
+ * A {@link TransactionalMap} based on a hash table. It is the transactional version of the
+ * {@link java.util.concurrent.ConcurrentHashMap}.
+ * <p/>
+ * Every bucket of the hash table is a transactional reference to an immutable chain of entries. So transactions
+ * that change different buckets don't conflict. The size is stored in a {@link ProgrammaticLongRef} that is
+ * changed using commuting increments, so a put or remove doesn't conflict on the size either (unless the size is
+ * read in the same transaction).
+ * <p/>
+ * If the number of entries exceeds the capacity times the load factor, the table is doubled. The entries are not
+ * copied to the new table in a single transaction; transactions that add an entry while the map is being resized,
+ * each move {@link #TRANSFER_CHUNK} buckets of the old table to the new one. Until a bucket is moved, its entries
+ * are found in the old table. Moving the buckets causes conflicts between the transactions that add entries, but
+ * only until the resize is completed.
+ * <p/>
+ * Just like the ConcurrentHashMap, null keys and values are not allowed. The iterators of the views (like the
+ * {@link #keySet()}) iterate over a copy of the entries that is made when the iterator is created, so they never
+ * throw a {@link ConcurrentModificationException}. Removing an entry with the iterator removes the key from the
+ * TransactionalHashMap.
+ *
+ * @author Peter Veentjer.
+ * @param <K> the key type for the map
+ * @param <V> the value type for the map
+ */
+@TransactionalObject
+public final class TransactionalHashMap<K, V> implements TransactionalMap<K, V> {
+
+    /**
+     * The maximum number of buckets of the hash table.
+     */
+    public final static int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * The number of buckets that are moved to the new hash table by a transaction that adds an entry to a map that
+     * is being resized.
+     */
+    public final static int TRANSFER_CHUNK = 16;
+
+    private final static ProgrammaticRefFactory sizeFactory = getGlobalStmInstance()
+            .getProgrammaticRefFactoryBuilder()
+            .build();
+
+    //the head of a bucket of the old table that has been moved to the new table.
+    private final static Node MOVED = new Node(0, null, null, null);
+
+    private final float loadFactor;
+
+    private final ProgrammaticLongRef size = sizeFactory.atomicCreateLongRef(0);
+
+    private Table<K, V> table;
+
+    /**
+     * Creates a new TransactionalHashMap with capacity 16 and load factor 0.75. This is the same initial capacity
+     * and load factor as {@link java.util.HashMap#HashMap()}.
+     */
+    public TransactionalHashMap() {
+        this(16, 0.75f);
+    }
+
+    /**
+     * Creates a new TransactionalHashMap that contains the entries of the provided map.
+     *
+     * @param map the map containing the entries to copy.
+     * @throws NullPointerException if map is null, or contains a null key or value.
+     */
+    public TransactionalHashMap(Map<? extends K, ? extends V> map) {
+        this(Math.max((int) (map.size() / 0.75f) + 1, 16), 0.75f);
+
+        putAll(map);
+    }
+
+    /**
+     * Creates a new TransactionalHashMap with the provided initial capacity and load factor 0.75.
+     *
+     * @param initialCapacity the initial number of buckets. It is rounded up to a power of 2.
+     * @throws IllegalArgumentException if initialCapacity smaller than 0.
+     */
+    public TransactionalHashMap(int initialCapacity) {
+        this(initialCapacity, 0.75f);
+    }
+
+    /**
+     * Creates a new TransactionalHashMap.
+     *
+     * @param initialCapacity the initial number of buckets. It is rounded up to a power of 2.
+     * @param loadFactor      the maximum number of entries per bucket (on average) before the hash table is
+     *                        resized.
+     * @throws IllegalArgumentException if initialCapacity smaller than 0 or loadFactor not larger than 0.
+     */
+    public TransactionalHashMap(int initialCapacity, float loadFactor) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException(
+                    format("initialCapacity can't be smaller than 0, initialCapacity was %s", initialCapacity));
+        }
+
+        if (loadFactor <= 0 || Float.isNaN(loadFactor)) {
+            throw new IllegalArgumentException(
+                    format("loadFactor must be larger than 0, loadFactor was %s", loadFactor));
+        }
+
+        int capacity = 1;
+        while (capacity < initialCapacity && capacity < MAXIMUM_CAPACITY) {
+            capacity <<= 1;
+        }
+
+        this.loadFactor = loadFactor;
+        this.table = new Table<K, V>(new TransactionalReferenceArray<Node<K, V>>(capacity), null);
+    }
+
+    /**
+     * Returns the load factor of this TransactionalHashMap.
+     *
+     * @return the load factor.
+     */
+    @NonTransactional
+    public float getLoadFactor() {
+        return loadFactor;
+    }
+
+    /**
+     * Returns the number of buckets of the hash table. While the TransactionalHashMap is being resized, the number
+     * of buckets of the new hash table is returned.
+     *
+     * @return the number of buckets.
+     */
+    @TransactionalMethod(readonly = true)
+    public int getCapacity() {
+        return table.buckets.length();
+    }
+
+    /**
+     * Checks if this TransactionalHashMap is being resized, so not all buckets are moved to the new hash table
+     * yet.
+     *
+     * @return true if this TransactionalHashMap is being resized.
+     */
+    @TransactionalMethod(readonly = true)
+    public boolean isResizing() {
+        return table.old != null;
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true)
+    public int size() {
+        return (int) size.get();
+    }
+
+    @Override
+    @NonTransactional
+    public int atomicSize() {
+        return (int) size.atomicGet();
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true)
+    public boolean isEmpty() {
+        return size.get() == 0;
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true)
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true)
+    public boolean containsValue(Object value) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+
+        for (Node<K, V> node : copyNodes()) {
+            if (value.equals(node.value)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true)
+    public V get(Object key) {
+        int hash = hash(key);
+        TransactionalReferenceArray<Node<K, V>> buckets = getBuckets(table, hash);
+        Node<K, V> node = find(buckets.get(indexFor(hash, buckets)), hash, key);
+        return node == null ? null : node.value;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        return doPut(key, value, false);
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        return doPut(key, value, true);
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> m) {
+        if (m == null) {
+            throw new NullPointerException();
+        }
+
+        for (Map.Entry<? extends K, ? extends V> entry : m.entrySet()) {
+            doPut(entry.getKey(), entry.getValue(), false);
+        }
+    }
+
+    private V doPut(K key, V value, boolean onlyIfAbsent) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+
+        int hash = hash(key);
+        TransactionalReferenceArray<Node<K, V>> buckets = getBuckets(table, hash);
+        int index = indexFor(hash, buckets);
+        Node<K, V> head = buckets.get(index);
+        Node<K, V> found = find(head, hash, key);
+
+        if (found != null) {
+            if (!onlyIfAbsent && found.value != value) {
+                buckets.set(index, replace(head, found, value));
+            }
+            return found.value;
+        }
+
+        buckets.set(index, new Node<K, V>(hash, key, value, head));
+        size.commutingInc(1);
+        afterInsert();
+        return null;
+    }
+
+    @Override
+    public V remove(Object key) {
+        int hash = hash(key);
+        TransactionalReferenceArray<Node<K, V>> buckets = getBuckets(table, hash);
+        int index = indexFor(hash, buckets);
+        Node<K, V> head = buckets.get(index);
+        Node<K, V> found = find(head, hash, key);
+
+        if (found == null) {
+            return null;
+        }
+
+        buckets.set(index, remove(head, found));
+        size.commutingInc(-1);
+        return found.value;
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        if (value == null) {
+            //no value is null, so nothing can be removed; just like the ConcurrentHashMap.
+            return false;
+        }
+
+        int hash = hash(key);
+        TransactionalReferenceArray<Node<K, V>> buckets = getBuckets(table, hash);
+        int index = indexFor(hash, buckets);
+        Node<K, V> head = buckets.get(index);
+        Node<K, V> found = find(head, hash, key);
+
+        if (found == null || !value.equals(found.value)) {
+            return false;
+        }
+
+        buckets.set(index, remove(head, found));
+        size.commutingInc(-1);
+        return true;
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        if (oldValue == null || newValue == null) {
+            throw new NullPointerException();
+        }
+
+        int hash = hash(key);
+        TransactionalReferenceArray<Node<K, V>> buckets = getBuckets(table, hash);
+        int index = indexFor(hash, buckets);
+        Node<K, V> head = buckets.get(index);
+        Node<K, V> found = find(head, hash, key);
+
+        if (found == null || !oldValue.equals(found.value)) {
+            return false;
+        }
+
+        buckets.set(index, replace(head, found, newValue));
+        return true;
+    }
+
+    @Override
+    public V replace(K key, V value) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+
+        int hash = hash(key);
+        TransactionalReferenceArray<Node<K, V>> buckets = getBuckets(table, hash);
+        int index = indexFor(hash, buckets);
+        Node<K, V> head = buckets.get(index);
+        Node<K, V> found = find(head, hash, key);
+
+        if (found == null) {
+            return null;
+        }
+
+        buckets.set(index, replace(head, found, value));
+        return found.value;
+    }
+
+    @Override
+    public void clear() {
+        //the buckets are cleared one by one instead of replacing the table, so a concurrent transaction that changes
+        //a bucket conflicts with the clear.
+        Table<K, V> t = table;
+        long removed = 0;
+        if (t.old != null) {
+            removed += clear(t.old);
+        }
+        removed += clear(t.buckets);
+
+        if (removed > 0) {
+            size.commutingInc(-removed);
+        }
+    }
+
+    private static <K, V> long clear(TransactionalReferenceArray<Node<K, V>> buckets) {
+        long removed = 0;
+        for (int k = 0; k < buckets.length(); k++) {
+            Node<K, V> head = buckets.get(k);
+            if (head != null && head != MOVED) {
+                for (Node<K, V> node = head; node != null; node = node.next) {
+                    removed++;
+                }
+                buckets.set(k, null);
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true)
+    public Set<K> keySet() {
+        return new KeySet<K, V>(this);
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true)
+    public Collection<V> values() {
+        return new Values<K, V>(this);
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true)
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new EntrySet<K, V>(this);
+    }
+
+    /**
+     * Returns a copy of the entries of this TransactionalHashMap.
+     *
+     * @return the copied entries.
+     */
+    @TransactionalMethod(readonly = true)
+    List<Node<K, V>> copyNodes() {
+        List<Node<K, V>> result = new ArrayList<Node<K, V>>();
+
+        Table<K, V> t = table;
+        if (t.old == null) {
+            copyNodes(t.buckets, result);
+        } else {
+            //the buckets of the old table that are moved, are skipped, so every entry is found once.
+            copyNodes(t.old, result);
+            copyNodes(t.buckets, result);
+        }
+
+        return result;
+    }
+
+    private static <K, V> void copyNodes(TransactionalReferenceArray<Node<K, V>> buckets, List<Node<K, V>> result) {
+        for (int k = 0; k < buckets.length(); k++) {
+            Node<K, V> head = buckets.get(k);
+            if (head != MOVED) {
+                for (Node<K, V> node = head; node != null; node = node.next) {
+                    result.add(node);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the entries found in the buckets after a randomly chosen bucket, till at least sampleSize entries are
+     * found or all buckets are scanned. Used by the {@link TransactionalCache} to choose an entry to evict without
+     * copying all entries.
+     *
+     * @param random     the Random used to choose the first bucket.
+     * @param sampleSize the minimum number of entries to return if the map contains that many entries.
+     * @return the sampled entries.
+     */
+    @TransactionalMethod(readonly = true)
+    List<Node<K, V>> sampleNodes(Random random, int sampleSize) {
+        List<Node<K, V>> result = new ArrayList<Node<K, V>>(sampleSize);
+
+        Table<K, V> t = table;
+        if (t.old != null) {
+            sampleNodes(t.old, random.nextInt(t.old.length()), sampleSize, result);
+        }
+        sampleNodes(t.buckets, random.nextInt(t.buckets.length()), sampleSize, result);
+        return result;
+    }
+
+    private static <K, V> void sampleNodes(TransactionalReferenceArray<Node<K, V>> buckets, int start,
+                                           int sampleSize, List<Node<K, V>> result) {
+        for (int k = 0; k < buckets.length() && result.size() < sampleSize; k++) {
+            Node<K, V> head = buckets.get((start + k) & (buckets.length() - 1));
+            if (head != MOVED) {
+                for (Node<K, V> node = head; node != null; node = node.next) {
+                    result.add(node);
+                }
+            }
+        }
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true)
+    public String toString() {
+        List<Node<K, V>> nodes = copyNodes();
+        if (nodes.isEmpty()) {
+            return "{}";
+        }
+
+        StringBuffer sb = new StringBuffer("{");
+        boolean first = true;
+        for (Node<K, V> node : nodes) {
+            if (!first) {
+                sb.append(", ");
+            }
+            first = false;
+            sb.append(node.key == this ? "(this Map)" : node.key);
+            sb.append('=');
+            sb.append(node.value == this ? "(this Map)" : node.value);
+        }
+        sb.append('}');
+        return sb.toString();
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true)
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+
+        if (!(o instanceof Map)) {
+            return false;
+        }
+
+        Map<?, ?> that = (Map<?, ?>) o;
+        List<Node<K, V>> nodes = copyNodes();
+        if (nodes.size() != that.size()) {
+            return false;
+        }
+
+        for (Node<K, V> node : nodes) {
+            if (!node.value.equals(that.get(node.key))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true)
+    public int hashCode() {
+        int result = 0;
+        for (Node<K, V> node : copyNodes()) {
+            result += node.hashCode();
+        }
+        return result;
+    }
+
+    // ==================== resizing ===================================
+
+    /**
+     * Starts a resize if the TransactionalHashMap has become too big, or moves the next TRANSFER_CHUNK buckets to
+     * the new table if a resize is in progress.
+     */
+    private void afterInsert() {
+        Table<K, V> t = table;
+
+        if (t.old == null) {
+            int capacity = t.buckets.length();
+            //the atomicSize is used to prevent that the size increment doesn't commute anymore. If the size isn't
+            //completely accurate, the resize just is started a bit later.
+            if (capacity >= MAXIMUM_CAPACITY || atomicSize() <= capacity * loadFactor) {
+                return;
+            }
+
+            t = new Table<K, V>(new TransactionalReferenceArray<Node<K, V>>(capacity * 2), t.buckets);
+            table = t;
+        }
+
+        int oldCapacity = t.old.length();
+        int firstIndex = (int) t.transferIndex.get();
+        int lastIndex = Math.min(firstIndex + TRANSFER_CHUNK, oldCapacity);
+        for (int k = firstIndex; k < lastIndex; k++) {
+            transfer(t, k);
+        }
+
+        if (lastIndex == oldCapacity) {
+            table = new Table<K, V>(t.buckets, null);
+        } else {
+            t.transferIndex.set(lastIndex);
+        }
+    }
+
+    /**
+     * Moves a bucket of the old table to the new table. Since the new table is twice the size of the old table, the
+     * entries of the bucket end up in 2 buckets of the new table; buckets that only are used after the bucket of the
+     * old table has been moved.
+     *
+     * @param t     the table
+     * @param index the index of the bucket in the old table.
+     */
+    private static <K, V> void transfer(Table<K, V> t, int index) {
+        Node<K, V> head = t.old.get(index);
+        if (head == MOVED) {
+            return;
+        }
+
+        int oldCapacity = t.old.length();
+        Node<K, V> low = null;
+        Node<K, V> high = null;
+        for (Node<K, V> node = head; node != null; node = node.next) {
+            if ((node.hash & oldCapacity) == 0) {
+                low = new Node<K, V>(node.hash, node.key, node.value, low);
+            } else {
+                high = new Node<K, V>(node.hash, node.key, node.value, high);
+            }
+        }
+
+        if (low != null) {
+            t.buckets.set(index, low);
+        }
+
+        if (high != null) {
+            t.buckets.set(index + oldCapacity, high);
+        }
+
+        t.old.set(index, MOVED);
+    }
+
+    // ==================== support methods ===================================
+
+    private static int hash(Object key) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+
+        //spreads the higher bits to the lower bits, since the index of a bucket only uses the lower bits.
+        int h = key.hashCode();
+        h ^= (h >>> 20) ^ (h >>> 12);
+        return h ^ (h >>> 7) ^ (h >>> 4);
+    }
+
+    private static int indexFor(int hash, TransactionalReferenceArray buckets) {
+        return hash & (buckets.length() - 1);
+    }
+
+    /**
+     * Returns the buckets that contain the entry with the given hash: the old table if the bucket has not been
+     * moved yet, the new table otherwise.
+     */
+    private static <K, V> TransactionalReferenceArray<Node<K, V>> getBuckets(Table<K, V> t, int hash) {
+        if (t.old != null && t.old.get(indexFor(hash, t.old)) != MOVED) {
+            return t.old;
+        }
+
+        return t.buckets;
+    }
+
+    private static <K, V> Node<K, V> find(Node<K, V> head, int hash, Object key) {
+        for (Node<K, V> node = head; node != null; node = node.next) {
+            if (node.hash == hash && key.equals(node.key)) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns a copy of the chain starting with head, where the found node is replaced by a node with a new
+     * value. The nodes after the found node are shared.
+     */
+    private static <K, V> Node<K, V> replace(Node<K, V> head, Node<K, V> found, V value) {
+        if (head == found) {
+            return new Node<K, V>(found.hash, found.key, value, found.next);
+        }
+
+        return new Node<K, V>(head.hash, head.key, head.value, replace(head.next, found, value));
+    }
+
+    /**
+     * Returns a copy of the chain starting with head, without the found node. The nodes after the found node are
+     * shared.
+     */
+    private static <K, V> Node<K, V> remove(Node<K, V> head, Node<K, V> found) {
+        if (head == found) {
+            return found.next;
+        }
+
+        return new Node<K, V>(head.hash, head.key, head.value, remove(head.next, found));
+    }
+
+    /**
+     * The buckets of the hash table, and the buckets of the old hash table while the TransactionalHashMap is being
+     * resized. A Table is immutable; a new Table is created when a resize starts or completes.
+     */
+    static final class Table<K, V> {
+        final TransactionalReferenceArray<Node<K, V>> buckets;
+        final TransactionalReferenceArray<Node<K, V>> old;
+        //the index of the next bucket of the old table to move.
+        final ProgrammaticLongRef transferIndex;
+
+        Table(TransactionalReferenceArray<Node<K, V>> buckets, TransactionalReferenceArray<Node<K, V>> old) {
+            this.buckets = buckets;
+            this.old = old;
+            this.transferIndex = old == null ? null : sizeFactory.atomicCreateLongRef(0);
+        }
+    }
+
+    /**
+     * An immutable entry in the chain of a bucket.
+     */
+    static final class Node<K, V> implements Map.Entry<K, V> {
+        final int hash;
+        final K key;
+        final V value;
+        final Node<K, V> next;
+
+        Node(int hash, K key, V value, Node<K, V> next) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+
+        @Override
+        public V setValue(V value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+
+            Map.Entry that = (Map.Entry) o;
+            return key.equals(that.getKey()) && value.equals(that.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode() ^ value.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+
+    // ==================== views ===================================
+
+    /**
+     * An iterator over a copy of the entries. Removing an entry removes the key from the map.
+     */
+    abstract static class NodeIterator<K, V, E> implements Iterator<E> {
+        private final TransactionalHashMap<K, V> map;
+        private final Iterator<Node<K, V>> it;
+        private Node<K, V> current;
+
+        NodeIterator(TransactionalHashMap<K, V> map) {
+            this.map = map;
+            this.it = map.copyNodes().iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return it.hasNext();
+        }
+
+        Node<K, V> nextNode() {
+            current = it.next();
+            return current;
+        }
+
+        @Override
+        public void remove() {
+            if (current == null) {
+                throw new IllegalStateException();
+            }
+
+            map.remove(current.key);
+            current = null;
+        }
+    }
+
+    static final class KeySet<K, V> extends AbstractSet<K> {
+        private final TransactionalHashMap<K, V> map;
+
+        KeySet(TransactionalHashMap<K, V> map) {
+            this.map = map;
+        }
+
+        @Override
+        public Iterator<K> iterator() {
+            return new NodeIterator<K, V, K>(map) {
+                @Override
+                public K next() {
+                    return nextNode().key;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return map.containsKey(o);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            return map.remove(o) != null;
+        }
+
+        @Override
+        public void clear() {
+            map.clear();
+        }
+    }
+
+    static final class Values<K, V> extends AbstractCollection<V> {
+        private final TransactionalHashMap<K, V> map;
+
+        Values(TransactionalHashMap<K, V> map) {
+            this.map = map;
+        }
+
+        @Override
+        public Iterator<V> iterator() {
+            return new NodeIterator<K, V, V>(map) {
+                @Override
+                public V next() {
+                    return nextNode().value;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return map.containsValue(o);
+        }
+
+        @Override
+        public void clear() {
+            map.clear();
+        }
+    }
+
+    static final class EntrySet<K, V> extends AbstractSet<Map.Entry<K, V>> {
+        private final TransactionalHashMap<K, V> map;
+
+        EntrySet(TransactionalHashMap<K, V> map) {
+            this.map = map;
+        }
+
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new NodeIterator<K, V, Map.Entry<K, V>>(map) {
+                @Override
+                public Map.Entry<K, V> next() {
+                    return new WriteThroughEntry<K, V>(map, nextNode());
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+
+            Map.Entry entry = (Map.Entry) o;
+            Object value = map.get(entry.getKey());
+            return value != null && value.equals(entry.getValue());
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+
+            Map.Entry entry = (Map.Entry) o;
+            return map.remove(entry.getKey(), entry.getValue());
+        }
+
+        @Override
+        public void clear() {
+            map.clear();
+        }
+    }
+
+    /**
+     * An entry returned by the iterator of the entrySet. Setting the value puts the value in the map.
+     */
+    static final class WriteThroughEntry<K, V> implements Map.Entry<K, V> {
+        private final TransactionalHashMap<K, V> map;
+        private final K key;
+        private V value;
+
+        WriteThroughEntry(TransactionalHashMap<K, V> map, Node<K, V> node) {
+            this.map = map;
+            this.key = node.key;
+            this.value = node.value;
+        }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+
+        @Override
+        public V setValue(V value) {
+            if (value == null) {
+                throw new NullPointerException();
+            }
+
+            V oldValue = this.value;
+            this.value = value;
+            map.put(key, value);
+            return oldValue;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+
+            Map.Entry that = (Map.Entry) o;
+            return key.equals(that.getKey()) && value.equals(that.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode() ^ value.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+}
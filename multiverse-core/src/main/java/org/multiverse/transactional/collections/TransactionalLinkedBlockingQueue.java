@@ -0,0 +1,689 @@
+package org.multiverse.transactional.collections;
+
+import org.multiverse.annotations.NonTransactional;
+import org.multiverse.annotations.TransactionalMethod;
+import org.multiverse.annotations.TransactionalObject;
+import org.multiverse.api.exceptions.RetryTimeoutException;
+import org.multiverse.api.programmatic.ProgrammaticLongRef;
+import org.multiverse.api.programmatic.ProgrammaticRef;
+import org.multiverse.api.programmatic.ProgrammaticRefFactory;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.multiverse.api.GlobalStmInstance.getGlobalStmInstance;
+import static org.multiverse.api.StmUtils.retry;
+
+/**
+ * A {@link TransactionalQueue} based on linked nodes where producers and consumers don't conflict. It is the
+ * transactional version of the two lock queue (used by the {@link java.util.concurrent.LinkedBlockingQueue}):
+ * <ol>
+ * <li>the head always points to a dummy node, and the first item is stored in the node after it. A take only
+ * changes the head, so the dummy node is never changed by a consumer.</li>
+ * <li>a put only changes the next of the last node and the tail.</li>
+ * <li>the head, the tail and the next of every node are separate transactional references, so they are
+ * versioned independently.</li>
+ * <li>the size is changed using commuting increments.</li>
+ * </ol>
+ * So a put and a take can be executed concurrently without causing a write conflict, even if the queue is empty
+ * or only contains a single item. Producers do conflict with other producers, and consumers with other consumers.
+ * <p/>
+ * The maximum capacity can be strict or relaxed. If it is strict, the size is read in the transaction, so the
+ * commuting increments on the size are not possible and every put and take conflict. If it is relaxed, the size
+ * is read without being tracked by the transaction and the number of items stored could exceed the maximum
+ * capacity. The relaxed maximum capacity is the default, since with a strict one producers and consumers conflict
+ * again.
+ * <p/>
+ * The iterators iterate over a copy of the nodes made in a readonly transaction that doesn't track reads, so they
+ * never throw a {@link ConcurrentModificationException}.
+ * <p/>
+ * Null items are not allowed.
+ *
+ * @author Peter Veentjer.
+ * @param <E>
+ * @see TransactionalLinkedList
+ */
+@TransactionalObject
+public final class TransactionalLinkedBlockingQueue<E> implements TransactionalQueue<E> {
+
+    private final static ProgrammaticRefFactory refFactory = getGlobalStmInstance()
+            .getProgrammaticRefFactoryBuilder()
+            .build();
+
+    private final int maxCapacity;
+
+    private final boolean relaxedMaximumCapacity;
+
+    //the head always points to the dummy node, the first item is stored in the next of the dummy node.
+    private final ProgrammaticRef<Node<E>> head;
+
+    private final ProgrammaticRef<Node<E>> tail;
+
+    private final ProgrammaticLongRef size = refFactory.atomicCreateLongRef(0);
+
+    /**
+     * Creates a new TransactionalLinkedBlockingQueue with unbound capacity.
+     */
+    public TransactionalLinkedBlockingQueue() {
+        this(Integer.MAX_VALUE, true);
+    }
+
+    /**
+     * Creates a new TransactionalLinkedBlockingQueue with unbound capacity and the provided items.
+     *
+     * @param items the items to store in this TransactionalLinkedBlockingQueue.
+     * @throws NullPointerException if items is null or contains a null item.
+     */
+    public TransactionalLinkedBlockingQueue(Collection<? extends E> items) {
+        this(Integer.MAX_VALUE, true);
+
+        if (items == null) {
+            throw new NullPointerException();
+        }
+
+        for (E item : items) {
+            add(item);
+        }
+    }
+
+    /**
+     * Creates a new TransactionalLinkedBlockingQueue with the provided maximum capacity.
+     * <p/>
+     * It is relaxed on the maximum capacity, so puts and takes don't conflict, but the number of items stored
+     * could exceed the maximum capacity. See the {@link #TransactionalLinkedBlockingQueue(int, boolean)} for a strict
+     * maximum capacity.
+     *
+     * @param maxCapacity the maximum capacity of the queue.
+     * @throws IllegalArgumentException if maxCapacity smaller than 0.
+     */
+    public TransactionalLinkedBlockingQueue(int maxCapacity) {
+        this(maxCapacity, true);
+    }
+
+    /**
+     * Creates a new TransactionalLinkedBlockingQueue.
+     *
+     * @param maxCapacity            the maximum number of items stored in this TransactionalLinkedBlockingQueue.
+     * @param relaxedMaximumCapacity if the TransactionalLinkedBlockingQueue should be relaxed with its maxCapacity.
+     *                               If it is strict, puts and takes conflict. If it is relaxed, then the number of
+     *                               items stored could exceed the maxCapacity.
+     * @throws IllegalArgumentException if maxCapacity is smaller than 0.
+     */
+    public TransactionalLinkedBlockingQueue(int maxCapacity, boolean relaxedMaximumCapacity) {
+        if (maxCapacity < 0) {
+            throw new IllegalArgumentException("maxCapacity can't be smaller than 0");
+        }
+
+        this.maxCapacity = maxCapacity;
+        this.relaxedMaximumCapacity = relaxedMaximumCapacity;
+
+        Node<E> dummy = new Node<E>(null);
+        this.head = refFactory.atomicCreateRef(dummy);
+        this.tail = refFactory.atomicCreateRef(dummy);
+    }
+
+    /**
+     * Checks if this TransactionalLinkedBlockingQueue uses a relaxed maximum capacity. Meaning that the number
+     * of items in the TransactionalLinkedBlockingQueue could exceed the maximum capacity.
+     *
+     * @return true if a relaxed maximum capacity is used.
+     */
+    @NonTransactional
+    public boolean hasRelaxedMaxCapacity() {
+        return relaxedMaximumCapacity;
+    }
+
+    @NonTransactional
+    public int getMaxCapacity() {
+        return maxCapacity;
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true, trackReads = false)
+    public int size() {
+        return (int) size.get();
+    }
+
+    @Override
+    @NonTransactional
+    public int atomicSize() {
+        return (int) size.atomicGet();
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true)
+    public boolean isEmpty() {
+        //the size is not read, so a commuting increment on the size can still be applied.
+        return head.get().next.get() == null;
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true)
+    public int remainingCapacity() {
+        if (relaxedMaximumCapacity) {
+            return Math.max(0, maxCapacity - (int) size.atomicGet());
+        } else {
+            return Math.max(0, maxCapacity - (int) size.get());
+        }
+    }
+
+    private boolean hasNoStorageCapacity() {
+        return remainingCapacity() == 0;
+    }
+
+    @Override
+    public boolean add(E e) {
+        if (hasNoStorageCapacity()) {
+            throw new IllegalStateException("Queue full");
+        }
+
+        enqueue(e);
+        return true;
+    }
+
+    @Override
+    public boolean offer(E e) {
+        if (hasNoStorageCapacity()) {
+            return false;
+        }
+
+        enqueue(e);
+        return true;
+    }
+
+    @Override
+    @TransactionalMethod(trackReads = true)
+    public void put(E e) throws InterruptedException {
+        if (hasNoStorageCapacity()) {
+            //force a tracked read of the size to listen on, with a relaxed maximum capacity it isn't tracked.
+            size.get();
+            retry();
+        }
+
+        enqueue(e);
+    }
+
+    @Override
+    @NonTransactional
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        if (e == null || unit == null) {
+            throw new NullPointerException();
+        }
+
+        try {
+            return doOffer(e, unit.toNanos(timeout));
+        } catch (RetryTimeoutException ex) {
+            return false;
+        }
+    }
+
+    @TransactionalMethod(trackReads = true)
+    boolean doOffer(E e, long timeoutNs) throws InterruptedException {
+        if (hasNoStorageCapacity()) {
+            if (timeoutNs <= 0) {
+                return false;
+            }
+
+            //force a tracked read of the size to listen on, with a relaxed maximum capacity it isn't tracked.
+            size.get();
+            BlockingSupport.awaitWithTimeout(timeoutNs);
+        }
+
+        enqueue(e);
+        return true;
+    }
+
+    @Override
+    @TransactionalMethod(trackReads = true)
+    public E take() throws InterruptedException {
+        if (isEmpty()) {
+            retry();
+        }
+
+        return dequeue();
+    }
+
+    @Override
+    public E poll() {
+        if (isEmpty()) {
+            return null;
+        }
+
+        return dequeue();
+    }
+
+    @Override
+    @NonTransactional
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        if (unit == null) {
+            throw new NullPointerException();
+        }
+
+        try {
+            return doPoll(unit.toNanos(timeout));
+        } catch (RetryTimeoutException e) {
+            return null;
+        }
+    }
+
+    @TransactionalMethod(trackReads = true)
+    E doPoll(long timeoutNs) throws InterruptedException {
+        if (isEmpty()) {
+            if (timeoutNs <= 0) {
+                return null;
+            }
+
+            BlockingSupport.awaitWithTimeout(timeoutNs);
+        }
+
+        return dequeue();
+    }
+
+    @Override
+    public E remove() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+
+        return dequeue();
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true)
+    public E element() {
+        E item = peek();
+        if (item == null) {
+            throw new NoSuchElementException();
+        }
+
+        return item;
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true)
+    public E peek() {
+        Node<E> first = head.get().next.get();
+        return first == null ? null : first.value;
+    }
+
+    @Override
+    @NonTransactional
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    @NonTransactional
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        return BlockingSupport.drainTo(this, c, maxElements, new BlockingSupport.Drain<E>() {
+            @Override
+            public List<E> drainFirst(int maxElements) {
+                return dequeueAll(maxElements);
+            }
+        });
+    }
+
+    @Override
+    public boolean offerAll(Collection<? extends E> c) {
+        BlockingSupport.checkBatch(this, c);
+
+        if (c.isEmpty()) {
+            return true;
+        }
+
+        if (remainingCapacity() < c.size()) {
+            return false;
+        }
+
+        enqueueAll(c);
+        return true;
+    }
+
+    @Override
+    @TransactionalMethod(trackReads = true)
+    public void putAll(Collection<? extends E> c) throws InterruptedException {
+        BlockingSupport.checkBatch(this, c);
+
+        if (c.isEmpty()) {
+            return;
+        }
+
+        if (remainingCapacity() < c.size()) {
+            if (c.size() > maxCapacity) {
+                throw new IllegalArgumentException("The number of items exceeds the maximum capacity");
+            }
+
+            //force a tracked read of the size to listen on, with a relaxed maximum capacity it isn't tracked.
+            size.get();
+            retry();
+        }
+
+        enqueueAll(c);
+    }
+
+    @Override
+    @NonTransactional
+    public List<E> takeBatch(int maxElements, long timeout, TimeUnit unit) throws InterruptedException {
+        return BlockingSupport.takeBatch(this, maxElements, timeout, unit);
+    }
+
+    private void enqueue(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+
+        Node<E> node = new Node<E>(e);
+        tail.get().next.set(node);
+        tail.set(node);
+        size.commutingInc(1);
+    }
+
+    private E dequeue() {
+        //the first node becomes the new dummy node. Its item isn't cleared because that would be a write on a
+        //node that a producer could be writing, it is released when the next item is taken.
+        Node<E> first = head.get().next.get();
+        head.set(first);
+        size.commutingInc(-1);
+        return first.value;
+    }
+
+    private void enqueueAll(Collection<? extends E> c) {
+        //the chain is built from the back, so every node is created with its next node and no transactional
+        //writes are needed for nodes that are not visible to other transactions yet.
+        List<E> items = new ArrayList<E>(c);
+        Node<E> first = null;
+        Node<E> last = null;
+        for (int k = items.size() - 1; k >= 0; k--) {
+            first = new Node<E>(items.get(k), first);
+            if (last == null) {
+                last = first;
+            }
+        }
+
+        //the new chain of nodes is linked to the tail in one go.
+        tail.get().next.set(first);
+        tail.set(last);
+        size.commutingInc(items.size());
+    }
+
+    @TransactionalMethod(readonly = false)
+    List<E> dequeueAll(int maxElements) {
+        List<E> result = new ArrayList<E>();
+        Node<E> last = head.get();
+        while (result.size() < maxElements) {
+            Node<E> next = last.next.get();
+            if (next == null) {
+                break;
+            }
+
+            result.add(next.value);
+            last = next;
+        }
+
+        if (result.isEmpty()) {
+            return result;
+        }
+
+        //the last drained node becomes the new dummy node, so only the head is written.
+        head.set(last);
+        size.commutingInc(-result.size());
+        return result;
+    }
+
+    @Override
+    public void clear() {
+        Node<E> last = head.get();
+        int removed = 0;
+        for (Node<E> node = last.next.get(); node != null; node = node.next.get()) {
+            last = node;
+            removed++;
+        }
+
+        if (removed == 0) {
+            return;
+        }
+
+        //the last node becomes the dummy node, so only the head is written and there is no write conflict with
+        //a concurrent put. The next of the last node is read though, so a put that commits first can still cause
+        //the clear to be restarted when it loads that next.
+        head.set(last);
+        size.commutingInc(-removed);
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends E> c) {
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+
+        boolean modified = false;
+        for (E item : c) {
+            if (add(item)) {
+                modified = true;
+            }
+        }
+        return modified;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (o == null) {
+            return false;
+        }
+
+        Node<E> pred = head.get();
+        for (Node<E> node = pred.next.get(); node != null; node = node.next.get()) {
+            if (o.equals(node.value)) {
+                unlink(pred, node);
+                return true;
+            }
+            pred = node;
+        }
+
+        return false;
+    }
+
+    /**
+     * Removes the node if it still is part of this TransactionalLinkedBlockingQueue. Used by the iterator.
+     *
+     * @param target the node to remove.
+     * @return true if the node was removed, false if it already was removed.
+     */
+    boolean removeNode(Node<E> target) {
+        Node<E> pred = head.get();
+        for (Node<E> node = pred.next.get(); node != null; node = node.next.get()) {
+            if (node == target) {
+                unlink(pred, node);
+                return true;
+            }
+            pred = node;
+        }
+
+        return false;
+    }
+
+    private void unlink(Node<E> pred, Node<E> node) {
+        if (pred == head.get()) {
+            //the first node is removed just like a take, so it conflicts with a concurrent take.
+            head.set(node);
+        } else {
+            pred.next.set(node.next.get());
+            //the next of the removed node is changed as well, so that a concurrent put on the removed node or the
+            //concurrent removal of the next node conflicts instead of being lost.
+            node.next.set(null);
+            if (tail.get() == node) {
+                tail.set(pred);
+            }
+        }
+
+        size.commutingInc(-1);
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        boolean modified = false;
+        for (Node<E> node : copyNodes()) {
+            if (c.contains(node.value)) {
+                removeNode(node);
+                modified = true;
+            }
+        }
+        return modified;
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        boolean modified = false;
+        for (Node<E> node : copyNodes()) {
+            if (!c.contains(node.value)) {
+                removeNode(node);
+                modified = true;
+            }
+        }
+        return modified;
+    }
+
+    /**
+     * Returns a copy of the nodes containing an item. The copy is made in a readonly transaction that doesn't
+     * track reads, unless there already is a transaction running.
+     *
+     * @return the nodes containing an item, in queue order.
+     */
+    @TransactionalMethod(readonly = true, trackReads = false)
+    List<Node<E>> copyNodes() {
+        List<Node<E>> result = new ArrayList<Node<E>>();
+        for (Node<E> node = head.get().next.get(); node != null; node = node.next.get()) {
+            result.add(node);
+        }
+        return result;
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true, trackReads = false)
+    public boolean contains(Object o) {
+        if (o == null) {
+            return false;
+        }
+
+        for (Node<E> node = head.get().next.get(); node != null; node = node.next.get()) {
+            if (o.equals(node.value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true, trackReads = false)
+    public boolean containsAll(Collection<?> c) {
+        for (Object item : c) {
+            if (!contains(item)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    @NonTransactional
+    public Iterator<E> iterator() {
+        return new IteratorImpl<E>(this, copyNodes());
+    }
+
+    @Override
+    @NonTransactional
+    public Object[] toArray() {
+        List<Node<E>> nodes = copyNodes();
+        Object[] result = new Object[nodes.size()];
+        for (int k = 0; k < result.length; k++) {
+            result[k] = nodes.get(k).value;
+        }
+        return result;
+    }
+
+    @Override
+    @NonTransactional
+    public <T> T[] toArray(T[] a) {
+        List<Node<E>> nodes = copyNodes();
+        T[] result = a.length >= nodes.size()
+                ? a
+                : (T[]) java.lang.reflect.Array.newInstance(a.getClass().getComponentType(), nodes.size());
+
+        for (int k = 0; k < nodes.size(); k++) {
+            result[k] = (T) nodes.get(k).value;
+        }
+
+        if (result.length > nodes.size()) {
+            result[nodes.size()] = null;
+        }
+        return result;
+    }
+
+    @Override
+    @NonTransactional
+    public String toString() {
+        List<Node<E>> nodes = copyNodes();
+        StringBuilder sb = new StringBuilder();
+        sb.append('[');
+        for (int k = 0; k < nodes.size(); k++) {
+            if (k > 0) {
+                sb.append(", ");
+            }
+            sb.append(nodes.get(k).value);
+        }
+        return sb.append(']').toString();
+    }
+
+    static final class IteratorImpl<E> implements Iterator<E> {
+
+        private final TransactionalLinkedBlockingQueue<E> queue;
+        private final List<Node<E>> nodes;
+        private int index;
+        private Node<E> current;
+
+        IteratorImpl(TransactionalLinkedBlockingQueue<E> queue, List<Node<E>> nodes) {
+            this.queue = queue;
+            this.nodes = nodes;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return index < nodes.size();
+        }
+
+        @Override
+        public E next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            current = nodes.get(index);
+            index++;
+            return current.value;
+        }
+
+        @Override
+        public void remove() {
+            if (current == null) {
+                throw new IllegalStateException();
+            }
+
+            queue.removeNode(current);
+            current = null;
+        }
+    }
+
+    static final class Node<E> {
+        final E value;
+        final ProgrammaticRef<Node<E>> next;
+
+        Node(E value) {
+            this(value, null);
+        }
+
+        Node(E value, Node<E> next) {
+            this.value = value;
+            this.next = refFactory.atomicCreateRef(next);
+        }
+    }
+}
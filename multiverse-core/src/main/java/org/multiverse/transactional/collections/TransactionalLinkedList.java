@@ -211,6 +211,7 @@ public final class TransactionalLinkedList<E> extends AbstractTransactionalDeque
         tail = null;
     }
 
+    @Override
     @TransactionalMethod(readonly = true)
     public int getMaxCapacity() {
         return maxCapacity;
@@ -256,6 +257,68 @@ public final class TransactionalLinkedList<E> extends AbstractTransactionalDeque
         mod.changeMod();
     }
 
+    @Override
+    protected void doAddAllLast(Collection<? extends E> c) {
+        Node<E> first = null;
+        Node<E> last = null;
+        int count = 0;
+        for (E item : c) {
+            Node<E> node = new Node<E>(item);
+            if (first == null) {
+                first = node;
+            } else {
+                last.next = node;
+                node.prev = last;
+            }
+            last = node;
+            count++;
+        }
+
+        if (first == null) {
+            return;
+        }
+
+        //the new chain of nodes is linked to the tail in one go.
+        if (head == null) {
+            head = first;
+        } else {
+            tail.next = first;
+            first.prev = tail;
+        }
+        tail = last;
+
+        size.commutingInc(count);
+        mod.changeMod();
+    }
+
+    @Override
+    protected int doDrainFirst(Collection<? super E> c, int maxElements) {
+        int count = 0;
+        Node<E> node = head;
+        while (node != null && count < maxElements) {
+            c.add(node.value);
+            node = node.next;
+            count++;
+        }
+
+        if (count == 0) {
+            return 0;
+        }
+
+        //the drained chain of nodes is unlinked from the head in one go.
+        if (node == null) {
+            head = null;
+            tail = null;
+        } else {
+            node.prev = null;
+            head = node;
+        }
+
+        size.commutingInc(-count);
+        mod.changeMod();
+        return count;
+    }
+
     public Node<E> getHead() {
         return head;
     }
@@ -0,0 +1,998 @@
+package org.multiverse.transactional.collections;
+
+import org.multiverse.annotations.NonTransactional;
+import org.multiverse.annotations.TransactionalMethod;
+import org.multiverse.annotations.TransactionalObject;
+import org.multiverse.api.programmatic.ProgrammaticLongRef;
+import org.multiverse.api.programmatic.ProgrammaticRef;
+import org.multiverse.api.programmatic.ProgrammaticRefFactory;
+
+import java.util.*;
+
+import static java.lang.String.format;
+import static org.multiverse.api.GlobalStmInstance.getGlobalStmInstance;
+
+/**
+ * A {@link TransactionalMap} based on a hash array mapped trie (HAMT) of immutable nodes.
+ * <p/>
+ * The trie is split in a fixed number of subtries; the lower bits of the hash of a key select the subtrie, and every
+ * subtrie is stored in its own transactional reference. A change never modifies a node, it copies the path from the
+ * root of the subtrie to the changed entry and shares all other nodes. So transactions that change different
+ * subtries don't conflict. Just like the {@link TransactionalHashMap}, the size is stored in a
+ * {@link ProgrammaticLongRef} that is changed using commuting increments.
+ * <p/>
+ * Because the nodes are immutable, a {@link #snapshot()} only needs to read the subtries, no matter how many entries
+ * the map contains. The returned {@link Snapshot} is an immutable map that can be used outside of a transaction, for
+ * example to export the content of the map while other transactions keep changing it.
+ * <p/>
+ * Null keys and values are not allowed. The iterators of the views (like the {@link #keySet()}) iterate over a
+ * snapshot that is made when the iterator is created, so they never throw a
+ * {@link ConcurrentModificationException}. Removing an entry with the iterator removes the key from the
+ * TransactionalPersistentMap.
+ *
+ * @author Peter Veentjer.
+ * @param <K> the key type for the map
+ * @param <V> the value type for the map
+ */
+@TransactionalObject
+public final class TransactionalPersistentMap<K, V> implements TransactionalMap<K, V> {
+
+    /**
+     * The default number of subtries.
+     */
+    public final static int DEFAULT_CONCURRENCY_LEVEL = 32;
+
+    /**
+     * The maximum number of subtries.
+     */
+    public final static int MAXIMUM_CONCURRENCY_LEVEL = 1 << 16;
+
+    //the number of hash bits used by a node of the trie.
+    private final static int BITS = 5;
+
+    private final static int MASK = (1 << BITS) - 1;
+
+    private final static ProgrammaticRefFactory refFactory = getGlobalStmInstance()
+            .getProgrammaticRefFactoryBuilder()
+            .build();
+
+    @NonTransactional
+    private final ProgrammaticRef<Node<K, V>>[] roots;
+
+    //the number of hash bits used to select the subtrie.
+    private final int rootBits;
+
+    private final ProgrammaticLongRef size = refFactory.atomicCreateLongRef(0);
+
+    /**
+     * Creates a new TransactionalPersistentMap with the {@link #DEFAULT_CONCURRENCY_LEVEL}.
+     */
+    public TransactionalPersistentMap() {
+        this(DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * Creates a new TransactionalPersistentMap that contains the entries of the provided map.
+     *
+     * @param map the map containing the entries to copy.
+     * @throws NullPointerException if map is null, or contains a null key or value.
+     */
+    public TransactionalPersistentMap(Map<? extends K, ? extends V> map) {
+        this(DEFAULT_CONCURRENCY_LEVEL);
+
+        putAll(map);
+    }
+
+    /**
+     * Creates a new TransactionalPersistentMap.
+     *
+     * @param concurrencyLevel the number of subtries, so the number of transactions that can change the map without
+     *                         conflicting (if they all change a different subtrie). It is rounded up to a power of 2.
+     *                         More subtries make a snapshot more expensive.
+     * @throws IllegalArgumentException if concurrencyLevel smaller than 1.
+     */
+    public TransactionalPersistentMap(int concurrencyLevel) {
+        if (concurrencyLevel < 1) {
+            throw new IllegalArgumentException(
+                    format("concurrencyLevel can't be smaller than 1, concurrencyLevel was %s", concurrencyLevel));
+        }
+
+        int bits = 0;
+        while ((1 << bits) < concurrencyLevel && (1 << bits) < MAXIMUM_CONCURRENCY_LEVEL) {
+            bits++;
+        }
+
+        this.rootBits = bits;
+        this.roots = new ProgrammaticRef[1 << bits];
+        for (int k = 0; k < roots.length; k++) {
+            roots[k] = refFactory.atomicCreateRef();
+        }
+    }
+
+    /**
+     * Returns the number of subtries of this TransactionalPersistentMap.
+     *
+     * @return the number of subtries.
+     */
+    @NonTransactional
+    public int getConcurrencyLevel() {
+        return roots.length;
+    }
+
+    /**
+     * Returns an immutable copy of this TransactionalPersistentMap. The nodes of the trie are shared with the map,
+     * so only the subtries need to be read and the cost doesn't depend on the number of entries. The subtries are
+     * read in a single transaction, so the snapshot is consistent.
+     *
+     * @return the snapshot.
+     */
+    @TransactionalMethod(readonly = true, trackReads = false)
+    public Snapshot<K, V> snapshot() {
+        Node<K, V>[] nodes = new Node[roots.length];
+        for (int k = 0; k < roots.length; k++) {
+            nodes[k] = roots[k].get();
+        }
+        return new Snapshot<K, V>(nodes, rootBits);
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true)
+    public int size() {
+        return (int) size.get();
+    }
+
+    @Override
+    @NonTransactional
+    public int atomicSize() {
+        return (int) size.atomicGet();
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true)
+    public boolean isEmpty() {
+        return size.get() == 0;
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true)
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true)
+    public boolean containsValue(Object value) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+
+        return snapshot().containsValue(value);
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true)
+    public V get(Object key) {
+        int hash = hash(key);
+        Leaf<K, V> found = find(roots[hash & (roots.length - 1)].get(), hash, rootBits, key);
+        return found == null ? null : found.value;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        return doPut(key, value, false);
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        return doPut(key, value, true);
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> m) {
+        if (m == null) {
+            throw new NullPointerException();
+        }
+
+        for (Map.Entry<? extends K, ? extends V> entry : m.entrySet()) {
+            doPut(entry.getKey(), entry.getValue(), false);
+        }
+    }
+
+    private V doPut(K key, V value, boolean onlyIfAbsent) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+
+        int hash = hash(key);
+        ProgrammaticRef<Node<K, V>> root = roots[hash & (roots.length - 1)];
+        Node<K, V> node = root.get();
+        Leaf<K, V> found = find(node, hash, rootBits, key);
+
+        if (found != null) {
+            if (!onlyIfAbsent && found.value != value) {
+                root.set(node.put(hash, rootBits, key, value));
+            }
+            return found.value;
+        }
+
+        root.set(node == null ? new Leaf<K, V>(hash, key, value) : node.put(hash, rootBits, key, value));
+        size.commutingInc(1);
+        return null;
+    }
+
+    @Override
+    public V remove(Object key) {
+        int hash = hash(key);
+        ProgrammaticRef<Node<K, V>> root = roots[hash & (roots.length - 1)];
+        Node<K, V> node = root.get();
+        Leaf<K, V> found = find(node, hash, rootBits, key);
+
+        if (found == null) {
+            return null;
+        }
+
+        root.set(node.remove(hash, rootBits, key));
+        size.commutingInc(-1);
+        return found.value;
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+
+        int hash = hash(key);
+        ProgrammaticRef<Node<K, V>> root = roots[hash & (roots.length - 1)];
+        Node<K, V> node = root.get();
+        Leaf<K, V> found = find(node, hash, rootBits, key);
+
+        if (found == null || !value.equals(found.value)) {
+            return false;
+        }
+
+        root.set(node.remove(hash, rootBits, key));
+        size.commutingInc(-1);
+        return true;
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        if (oldValue == null || newValue == null) {
+            throw new NullPointerException();
+        }
+
+        int hash = hash(key);
+        ProgrammaticRef<Node<K, V>> root = roots[hash & (roots.length - 1)];
+        Node<K, V> node = root.get();
+        Leaf<K, V> found = find(node, hash, rootBits, key);
+
+        if (found == null || !oldValue.equals(found.value)) {
+            return false;
+        }
+
+        root.set(node.put(hash, rootBits, key, newValue));
+        return true;
+    }
+
+    @Override
+    public V replace(K key, V value) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+
+        int hash = hash(key);
+        ProgrammaticRef<Node<K, V>> root = roots[hash & (roots.length - 1)];
+        Node<K, V> node = root.get();
+        Leaf<K, V> found = find(node, hash, rootBits, key);
+
+        if (found == null) {
+            return null;
+        }
+
+        root.set(node.put(hash, rootBits, key, value));
+        return found.value;
+    }
+
+    @Override
+    public void clear() {
+        //the subtries are cleared one by one, so a concurrent transaction that changes a subtrie conflicts with the
+        //clear.
+        long removed = 0;
+        for (ProgrammaticRef<Node<K, V>> root : roots) {
+            Node<K, V> node = root.get();
+            if (node != null) {
+                removed += node.size();
+                root.set(null);
+            }
+        }
+
+        if (removed > 0) {
+            size.commutingInc(-removed);
+        }
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true)
+    public Set<K> keySet() {
+        return new KeySet<K, V>(this);
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true)
+    public Collection<V> values() {
+        return new Values<K, V>(this);
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true)
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new EntrySet<K, V>(this);
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true)
+    public String toString() {
+        return snapshot().toString();
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true)
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+
+        return snapshot().equals(o);
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true)
+    public int hashCode() {
+        return snapshot().hashCode();
+    }
+
+    // ==================== support methods ===================================
+
+    private static int hash(Object key) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+
+        //spreads the higher bits to the lower bits, since the subtrie is selected using the lower bits.
+        int h = key.hashCode();
+        h ^= (h >>> 20) ^ (h >>> 12);
+        return h ^ (h >>> 7) ^ (h >>> 4);
+    }
+
+    private static <K, V> Leaf<K, V> find(Node<K, V> node, int hash, int shift, Object key) {
+        return node == null ? null : node.find(hash, shift, key);
+    }
+
+    /**
+     * Creates the node containing 2 nodes with a different hash. The nodes are placed as deep in the trie as needed
+     * to tell them apart.
+     */
+    private static <K, V> Node<K, V> merge(int hash1, Node<K, V> node1, int hash2, Node<K, V> node2, int shift) {
+        int index1 = (hash1 >>> shift) & MASK;
+        int index2 = (hash2 >>> shift) & MASK;
+
+        if (index1 == index2) {
+            return new BitmapNode<K, V>(1 << index1, new Node[]{merge(hash1, node1, hash2, node2, shift + BITS)});
+        }
+
+        Node<K, V>[] children = index1 < index2 ? new Node[]{node1, node2} : new Node[]{node2, node1};
+        return new BitmapNode<K, V>((1 << index1) | (1 << index2), children);
+    }
+
+    // ==================== nodes ===================================
+
+    /**
+     * An immutable node of the trie. A change returns a new node that shares the unchanged children.
+     */
+    abstract static class Node<K, V> {
+
+        /**
+         * Returns the number of entries in this node and its children.
+         */
+        abstract int size();
+
+        abstract Leaf<K, V> find(int hash, int shift, Object key);
+
+        /**
+         * Returns a node that contains the entry. If the key already is stored, its value is replaced.
+         */
+        abstract Node<K, V> put(int hash, int shift, K key, V value);
+
+        /**
+         * Returns a node without the key, or null if the node becomes empty. The key must be stored in the node.
+         */
+        abstract Node<K, V> remove(int hash, int shift, Object key);
+
+        abstract void addChildren(Deque<Node<K, V>> stack);
+    }
+
+    /**
+     * A node containing a single entry.
+     */
+    static final class Leaf<K, V> extends Node<K, V> implements Map.Entry<K, V> {
+        final int hash;
+        final K key;
+        final V value;
+
+        Leaf(int hash, K key, V value) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        int size() {
+            return 1;
+        }
+
+        @Override
+        Leaf<K, V> find(int hash, int shift, Object key) {
+            return this.hash == hash && this.key.equals(key) ? this : null;
+        }
+
+        @Override
+        Node<K, V> put(int hash, int shift, K key, V value) {
+            Leaf<K, V> entry = new Leaf<K, V>(hash, key, value);
+
+            if (this.hash != hash) {
+                return merge(this.hash, this, hash, entry, shift);
+            }
+
+            if (this.key.equals(key)) {
+                return entry;
+            }
+
+            return new CollisionNode<K, V>(hash, new Leaf[]{this, entry});
+        }
+
+        @Override
+        Node<K, V> remove(int hash, int shift, Object key) {
+            return null;
+        }
+
+        @Override
+        void addChildren(Deque<Node<K, V>> stack) {
+        }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+
+        @Override
+        public V setValue(V value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+
+            Map.Entry that = (Map.Entry) o;
+            return key.equals(that.getKey()) && value.equals(that.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode() ^ value.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+
+    /**
+     * A node containing the entries of different keys with the same hash.
+     */
+    static final class CollisionNode<K, V> extends Node<K, V> {
+        final int hash;
+        final Leaf<K, V>[] entries;
+
+        CollisionNode(int hash, Leaf<K, V>[] entries) {
+            this.hash = hash;
+            this.entries = entries;
+        }
+
+        @Override
+        int size() {
+            return entries.length;
+        }
+
+        @Override
+        Leaf<K, V> find(int hash, int shift, Object key) {
+            if (this.hash != hash) {
+                return null;
+            }
+
+            for (Leaf<K, V> entry : entries) {
+                if (entry.key.equals(key)) {
+                    return entry;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        Node<K, V> put(int hash, int shift, K key, V value) {
+            Leaf<K, V> entry = new Leaf<K, V>(hash, key, value);
+
+            if (this.hash != hash) {
+                return merge(this.hash, this, hash, entry, shift);
+            }
+
+            for (int k = 0; k < entries.length; k++) {
+                if (entries[k].key.equals(key)) {
+                    Leaf<K, V>[] update = entries.clone();
+                    update[k] = entry;
+                    return new CollisionNode<K, V>(hash, update);
+                }
+            }
+
+            Leaf<K, V>[] update = new Leaf[entries.length + 1];
+            System.arraycopy(entries, 0, update, 0, entries.length);
+            update[entries.length] = entry;
+            return new CollisionNode<K, V>(hash, update);
+        }
+
+        @Override
+        Node<K, V> remove(int hash, int shift, Object key) {
+            int index = 0;
+            while (!entries[index].key.equals(key)) {
+                index++;
+            }
+
+            if (entries.length == 2) {
+                return entries[1 - index];
+            }
+
+            Leaf<K, V>[] update = new Leaf[entries.length - 1];
+            System.arraycopy(entries, 0, update, 0, index);
+            System.arraycopy(entries, index + 1, update, index, entries.length - index - 1);
+            return new CollisionNode<K, V>(hash, update);
+        }
+
+        @Override
+        void addChildren(Deque<Node<K, V>> stack) {
+            for (Leaf<K, V> entry : entries) {
+                stack.push(entry);
+            }
+        }
+    }
+
+    /**
+     * A node with a child for every distinct value of the {@link #BITS} hash bits used by its level. The bitmap
+     * contains a bit for every child that exists, so the children array has no empty slots.
+     */
+    static final class BitmapNode<K, V> extends Node<K, V> {
+        final int bitmap;
+        final Node<K, V>[] children;
+        final int size;
+
+        BitmapNode(int bitmap, Node<K, V>[] children) {
+            this.bitmap = bitmap;
+            this.children = children;
+            int s = 0;
+            for (Node<K, V> child : children) {
+                s += child.size();
+            }
+            this.size = s;
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+
+        @Override
+        Leaf<K, V> find(int hash, int shift, Object key) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+
+            return children[index(bit)].find(hash, shift + BITS, key);
+        }
+
+        @Override
+        Node<K, V> put(int hash, int shift, K key, V value) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            int index = index(bit);
+
+            if ((bitmap & bit) == 0) {
+                Node<K, V>[] update = new Node[children.length + 1];
+                System.arraycopy(children, 0, update, 0, index);
+                update[index] = new Leaf<K, V>(hash, key, value);
+                System.arraycopy(children, index, update, index + 1, children.length - index);
+                return new BitmapNode<K, V>(bitmap | bit, update);
+            }
+
+            Node<K, V>[] update = children.clone();
+            update[index] = children[index].put(hash, shift + BITS, key, value);
+            return new BitmapNode<K, V>(bitmap, update);
+        }
+
+        @Override
+        Node<K, V> remove(int hash, int shift, Object key) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            int index = index(bit);
+            Node<K, V> child = children[index].remove(hash, shift + BITS, key);
+
+            if (child == null) {
+                if (children.length == 1) {
+                    return null;
+                }
+
+                //a single entry or collision node doesn't need a parent, it can be found at any level.
+                if (children.length == 2 && !(children[1 - index] instanceof BitmapNode)) {
+                    return children[1 - index];
+                }
+
+                Node<K, V>[] update = new Node[children.length - 1];
+                System.arraycopy(children, 0, update, 0, index);
+                System.arraycopy(children, index + 1, update, index, children.length - index - 1);
+                return new BitmapNode<K, V>(bitmap & ~bit, update);
+            }
+
+            if (children.length == 1 && !(child instanceof BitmapNode)) {
+                return child;
+            }
+
+            Node<K, V>[] update = children.clone();
+            update[index] = child;
+            return new BitmapNode<K, V>(bitmap, update);
+        }
+
+        @Override
+        void addChildren(Deque<Node<K, V>> stack) {
+            for (Node<K, V> child : children) {
+                stack.push(child);
+            }
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+    }
+
+    // ==================== snapshot ===================================
+
+    /**
+     * An immutable copy of a TransactionalPersistentMap, created by {@link TransactionalPersistentMap#snapshot()}.
+     * It shares the nodes with the map, and it isn't transactional: it can be read without a transaction and never
+     * changes. All methods that change the map throw an {@link UnsupportedOperationException}.
+     *
+     * @param <K> the key type for the map
+     * @param <V> the value type for the map
+     */
+    public static final class Snapshot<K, V> extends AbstractMap<K, V> {
+        private final Node<K, V>[] roots;
+        private final int rootBits;
+        private final int size;
+        private Set<Map.Entry<K, V>> entrySet;
+
+        Snapshot(Node<K, V>[] roots, int rootBits) {
+            this.roots = roots;
+            this.rootBits = rootBits;
+            int s = 0;
+            for (Node<K, V> root : roots) {
+                if (root != null) {
+                    s += root.size();
+                }
+            }
+            this.size = s;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public V get(Object key) {
+            int hash = hash(key);
+            Leaf<K, V> found = find(roots[hash & (roots.length - 1)], hash, rootBits, key);
+            return found == null ? null : found.value;
+        }
+
+        @Override
+        public Set<Map.Entry<K, V>> entrySet() {
+            if (entrySet == null) {
+                entrySet = new AbstractSet<Map.Entry<K, V>>() {
+                    @Override
+                    public Iterator<Map.Entry<K, V>> iterator() {
+                        return (Iterator) new EntryIterator<K, V>(roots);
+                    }
+
+                    @Override
+                    public int size() {
+                        return size;
+                    }
+                };
+            }
+            return entrySet;
+        }
+    }
+
+    /**
+     * Iterates over the entries of the trie, depth first.
+     */
+    static final class EntryIterator<K, V> implements Iterator<Leaf<K, V>> {
+        private final Deque<Node<K, V>> stack = new ArrayDeque<Node<K, V>>();
+        private Leaf<K, V> next;
+
+        EntryIterator(Node<K, V>[] roots) {
+            for (Node<K, V> root : roots) {
+                if (root != null) {
+                    stack.push(root);
+                }
+            }
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+            while (next == null && !stack.isEmpty()) {
+                Node<K, V> node = stack.pop();
+                if (node instanceof Leaf) {
+                    next = (Leaf<K, V>) node;
+                } else {
+                    node.addChildren(stack);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Leaf<K, V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+
+            Leaf<K, V> result = next;
+            advance();
+            return result;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    // ==================== views ===================================
+
+    /**
+     * An iterator over a snapshot of the entries. Removing an entry removes the key from the map.
+     */
+    abstract static class SnapshotIterator<K, V, E> implements Iterator<E> {
+        private final TransactionalPersistentMap<K, V> map;
+        private final EntryIterator<K, V> it;
+        private Leaf<K, V> current;
+
+        SnapshotIterator(TransactionalPersistentMap<K, V> map) {
+            this.map = map;
+            this.it = new EntryIterator<K, V>(map.snapshot().roots);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return it.hasNext();
+        }
+
+        Leaf<K, V> nextEntry() {
+            current = it.next();
+            return current;
+        }
+
+        @Override
+        public void remove() {
+            if (current == null) {
+                throw new IllegalStateException();
+            }
+
+            map.remove(current.key);
+            current = null;
+        }
+    }
+
+    static final class KeySet<K, V> extends AbstractSet<K> {
+        private final TransactionalPersistentMap<K, V> map;
+
+        KeySet(TransactionalPersistentMap<K, V> map) {
+            this.map = map;
+        }
+
+        @Override
+        public Iterator<K> iterator() {
+            return new SnapshotIterator<K, V, K>(map) {
+                @Override
+                public K next() {
+                    return nextEntry().key;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return map.containsKey(o);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            return map.remove(o) != null;
+        }
+
+        @Override
+        public void clear() {
+            map.clear();
+        }
+    }
+
+    static final class Values<K, V> extends AbstractCollection<V> {
+        private final TransactionalPersistentMap<K, V> map;
+
+        Values(TransactionalPersistentMap<K, V> map) {
+            this.map = map;
+        }
+
+        @Override
+        public Iterator<V> iterator() {
+            return new SnapshotIterator<K, V, V>(map) {
+                @Override
+                public V next() {
+                    return nextEntry().value;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return map.containsValue(o);
+        }
+
+        @Override
+        public void clear() {
+            map.clear();
+        }
+    }
+
+    static final class EntrySet<K, V> extends AbstractSet<Map.Entry<K, V>> {
+        private final TransactionalPersistentMap<K, V> map;
+
+        EntrySet(TransactionalPersistentMap<K, V> map) {
+            this.map = map;
+        }
+
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new SnapshotIterator<K, V, Map.Entry<K, V>>(map) {
+                @Override
+                public Map.Entry<K, V> next() {
+                    return new WriteThroughEntry<K, V>(map, nextEntry());
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+
+            Map.Entry entry = (Map.Entry) o;
+            Object value = map.get(entry.getKey());
+            return value != null && value.equals(entry.getValue());
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+
+            Map.Entry entry = (Map.Entry) o;
+            return map.remove(entry.getKey(), entry.getValue());
+        }
+
+        @Override
+        public void clear() {
+            map.clear();
+        }
+    }
+
+    /**
+     * An entry returned by the iterator of the entrySet. Setting the value puts the value in the map.
+     */
+    static final class WriteThroughEntry<K, V> implements Map.Entry<K, V> {
+        private final TransactionalPersistentMap<K, V> map;
+        private final K key;
+        private V value;
+
+        WriteThroughEntry(TransactionalPersistentMap<K, V> map, Leaf<K, V> entry) {
+            this.map = map;
+            this.key = entry.key;
+            this.value = entry.value;
+        }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+
+        @Override
+        public V setValue(V value) {
+            if (value == null) {
+                throw new NullPointerException();
+            }
+
+            V oldValue = this.value;
+            this.value = value;
+            map.put(key, value);
+            return oldValue;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+
+            Map.Entry that = (Map.Entry) o;
+            return key.equals(that.getKey()) && value.equals(that.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode() ^ value.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+}
@@ -0,0 +1,504 @@
+package org.multiverse.transactional.collections;
+
+import org.multiverse.annotations.NonTransactional;
+import org.multiverse.annotations.TransactionalMethod;
+import org.multiverse.annotations.TransactionalObject;
+import org.multiverse.api.exceptions.RetryTimeoutException;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.multiverse.api.StmUtils.retry;
+
+/**
+ * An unbound {@link TransactionalQueue} that orders its items by priority. It is the transactional version of the
+ * {@link java.util.concurrent.PriorityBlockingQueue}: the head of the queue is the least item according to the
+ * natural ordering or the provided {@link Comparator}, and items with the same priority are taken in insertion
+ * order.
+ * <p/>
+ * The items are stored in a {@link TransactionalSkipListMap} instead of a heap. A heap stores its items in an
+ * array and every insert or take moves items around the root, so all transactions would conflict. In the skip
+ * list an offer only changes the links of the nodes directly in front of the new item, so it still is O(log n),
+ * but offers of items with a different priority don't conflict. A take only changes the links of the head of the
+ * skip list, so it conflicts with other takes and with offers of a new least item. The size is changed using
+ * commuting increments.
+ * <p/>
+ * A {@link #take()} on an empty queue blocks using the retry mechanism, so it can be combined with other
+ * transactional operations.
+ * <p/>
+ * The iterators iterate over a copy of the items made in a readonly transaction that doesn't track reads, so they
+ * never throw a {@link ConcurrentModificationException}. Unlike the iterator of the PriorityBlockingQueue, the
+ * items are returned in priority order.
+ * <p/>
+ * Null items are not allowed.
+ *
+ * @author Peter Veentjer.
+ * @param <E>
+ * @see TransactionalLinkedBlockingQueue
+ */
+@TransactionalObject
+public final class TransactionalPriorityBlockingQueue<E> implements TransactionalQueue<E> {
+
+    private final Comparator<? super E> comparator;
+
+    //the key of an item also contains a sequence number, so items with the same priority can be stored and are
+    //taken in insertion order.
+    private final TransactionalSkipListMap<Key<E>, E> map;
+
+    //only used to create unique keys, so it doesn't need to be transactional.
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Creates a new TransactionalPriorityBlockingQueue that orders its items according to their natural ordering.
+     */
+    public TransactionalPriorityBlockingQueue() {
+        this((Comparator<? super E>) null);
+    }
+
+    /**
+     * Creates a new TransactionalPriorityBlockingQueue that orders its items using the comparator.
+     *
+     * @param comparator the Comparator used to order the items. If null, the natural ordering is used.
+     */
+    public TransactionalPriorityBlockingQueue(Comparator<? super E> comparator) {
+        this.comparator = comparator;
+        this.map = new TransactionalSkipListMap<Key<E>, E>(new KeyComparator<E>(comparator));
+    }
+
+    /**
+     * Creates a new TransactionalPriorityBlockingQueue that orders its items according to their natural ordering
+     * and contains the provided items.
+     *
+     * @param items the items to store in this TransactionalPriorityBlockingQueue.
+     * @throws NullPointerException if items is null or contains a null item.
+     */
+    public TransactionalPriorityBlockingQueue(Collection<? extends E> items) {
+        this((Comparator<? super E>) null);
+
+        if (items == null) {
+            throw new NullPointerException();
+        }
+
+        for (E item : items) {
+            add(item);
+        }
+    }
+
+    /**
+     * Returns the comparator used to order the items.
+     *
+     * @return the comparator, or null if the natural ordering is used.
+     */
+    @NonTransactional
+    public Comparator<? super E> comparator() {
+        return comparator;
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true, trackReads = false)
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    @NonTransactional
+    public int atomicSize() {
+        return map.atomicSize();
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true)
+    public boolean isEmpty() {
+        //the size is not read, so a commuting increment on the size can still be applied.
+        return map.isEmpty();
+    }
+
+    @Override
+    @NonTransactional
+    public int remainingCapacity() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public boolean add(E e) {
+        return offer(e);
+    }
+
+    @Override
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+
+        map.put(new Key<E>(e, sequence.incrementAndGet()), e);
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The TransactionalPriorityBlockingQueue is unbound, so this call never blocks.
+     */
+    @Override
+    public void put(E e) {
+        offer(e);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The TransactionalPriorityBlockingQueue is unbound, so this call never blocks.
+     */
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) {
+        return offer(e);
+    }
+
+    @Override
+    @TransactionalMethod(trackReads = true)
+    public E take() throws InterruptedException {
+        Map.Entry<Key<E>, E> first = map.pollFirstEntry();
+        if (first == null) {
+            retry();
+        }
+
+        return first.getValue();
+    }
+
+    @Override
+    public E poll() {
+        Map.Entry<Key<E>, E> first = map.pollFirstEntry();
+        return first == null ? null : first.getValue();
+    }
+
+    @Override
+    @NonTransactional
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        if (unit == null) {
+            throw new NullPointerException();
+        }
+
+        try {
+            return doPoll(unit.toNanos(timeout));
+        } catch (RetryTimeoutException e) {
+            return null;
+        }
+    }
+
+    @TransactionalMethod(trackReads = true)
+    E doPoll(long timeoutNs) throws InterruptedException {
+        Map.Entry<Key<E>, E> first = map.pollFirstEntry();
+        if (first == null) {
+            if (timeoutNs <= 0) {
+                return null;
+            }
+
+            BlockingSupport.awaitWithTimeout(timeoutNs);
+        }
+
+        return first.getValue();
+    }
+
+    @Override
+    public E remove() {
+        E item = poll();
+        if (item == null) {
+            throw new NoSuchElementException();
+        }
+
+        return item;
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true)
+    public E element() {
+        E item = peek();
+        if (item == null) {
+            throw new NoSuchElementException();
+        }
+
+        return item;
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true)
+    public E peek() {
+        Map.Entry<Key<E>, E> first = map.firstEntry();
+        return first == null ? null : first.getValue();
+    }
+
+    @Override
+    @NonTransactional
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    @NonTransactional
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        return BlockingSupport.drainTo(this, c, maxElements, new BlockingSupport.Drain<E>() {
+            @Override
+            public List<E> drainFirst(int maxElements) {
+                return pollFirst(maxElements);
+            }
+        });
+    }
+
+    @TransactionalMethod(readonly = false)
+    List<E> pollFirst(int maxElements) {
+        List<E> result = new ArrayList<E>();
+        while (result.size() < maxElements) {
+            Map.Entry<Key<E>, E> first = map.pollFirstEntry();
+            if (first == null) {
+                break;
+            }
+
+            result.add(first.getValue());
+        }
+        return result;
+    }
+
+    @Override
+    public boolean offerAll(Collection<? extends E> c) {
+        BlockingSupport.checkBatch(this, c);
+
+        for (E item : c) {
+            offer(item);
+        }
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The TransactionalPriorityBlockingQueue is unbound, so this call never blocks.
+     */
+    @Override
+    public void putAll(Collection<? extends E> c) {
+        offerAll(c);
+    }
+
+    @Override
+    @NonTransactional
+    public List<E> takeBatch(int maxElements, long timeout, TimeUnit unit) throws InterruptedException {
+        return BlockingSupport.takeBatch(this, maxElements, timeout, unit);
+    }
+
+    @Override
+    public void clear() {
+        map.clear();
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends E> c) {
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+
+        boolean modified = false;
+        for (E item : c) {
+            if (add(item)) {
+                modified = true;
+            }
+        }
+        return modified;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (o == null) {
+            return false;
+        }
+
+        for (Key<E> key : copyKeys()) {
+            if (o.equals(key.item)) {
+                map.remove(key);
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        boolean modified = false;
+        for (Key<E> key : copyKeys()) {
+            if (c.contains(key.item)) {
+                map.remove(key);
+                modified = true;
+            }
+        }
+        return modified;
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        boolean modified = false;
+        for (Key<E> key : copyKeys()) {
+            if (!c.contains(key.item)) {
+                map.remove(key);
+                modified = true;
+            }
+        }
+        return modified;
+    }
+
+    /**
+     * Returns a copy of the keys of the items. The copy is made in a readonly transaction that doesn't track
+     * reads, unless there already is a transaction running.
+     *
+     * @return the keys, in priority order.
+     */
+    @TransactionalMethod(readonly = true, trackReads = false)
+    List<Key<E>> copyKeys() {
+        return new ArrayList<Key<E>>(map.keySet());
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true, trackReads = false)
+    public boolean contains(Object o) {
+        if (o == null) {
+            return false;
+        }
+
+        for (Key<E> key : copyKeys()) {
+            if (o.equals(key.item)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true, trackReads = false)
+    public boolean containsAll(Collection<?> c) {
+        for (Object item : c) {
+            if (!contains(item)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    @NonTransactional
+    public Iterator<E> iterator() {
+        return new IteratorImpl<E>(map, copyKeys());
+    }
+
+    @Override
+    @NonTransactional
+    public Object[] toArray() {
+        List<Key<E>> keys = copyKeys();
+        Object[] result = new Object[keys.size()];
+        for (int k = 0; k < result.length; k++) {
+            result[k] = keys.get(k).item;
+        }
+        return result;
+    }
+
+    @Override
+    @NonTransactional
+    public <T> T[] toArray(T[] a) {
+        List<Key<E>> keys = copyKeys();
+        T[] result = a.length >= keys.size()
+                ? a
+                : (T[]) java.lang.reflect.Array.newInstance(a.getClass().getComponentType(), keys.size());
+
+        for (int k = 0; k < keys.size(); k++) {
+            result[k] = (T) keys.get(k).item;
+        }
+
+        if (result.length > keys.size()) {
+            result[keys.size()] = null;
+        }
+        return result;
+    }
+
+    @Override
+    @NonTransactional
+    public String toString() {
+        List<Key<E>> keys = copyKeys();
+        StringBuilder sb = new StringBuilder();
+        sb.append('[');
+        for (int k = 0; k < keys.size(); k++) {
+            if (k > 0) {
+                sb.append(", ");
+            }
+            sb.append(keys.get(k).item);
+        }
+        return sb.append(']').toString();
+    }
+
+    static final class IteratorImpl<E> implements Iterator<E> {
+
+        private final TransactionalSkipListMap<Key<E>, E> map;
+        private final List<Key<E>> keys;
+        private int index;
+        private Key<E> current;
+
+        IteratorImpl(TransactionalSkipListMap<Key<E>, E> map, List<Key<E>> keys) {
+            this.map = map;
+            this.keys = keys;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return index < keys.size();
+        }
+
+        @Override
+        public E next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            current = keys.get(index);
+            index++;
+            return current.item;
+        }
+
+        @Override
+        public void remove() {
+            if (current == null) {
+                throw new IllegalStateException();
+            }
+
+            map.remove(current);
+            current = null;
+        }
+    }
+
+    static final class Key<E> {
+        final E item;
+        final long sequence;
+
+        Key(E item, long sequence) {
+            this.item = item;
+            this.sequence = sequence;
+        }
+    }
+
+    static final class KeyComparator<E> implements Comparator<Key<E>> {
+        private final Comparator<? super E> comparator;
+
+        KeyComparator(Comparator<? super E> comparator) {
+            this.comparator = comparator;
+        }
+
+        @Override
+        public int compare(Key<E> key1, Key<E> key2) {
+            int result = comparator == null
+                    ? ((Comparable<? super E>) key1.item).compareTo(key2.item)
+                    : comparator.compare(key1.item, key2.item);
+
+            if (result != 0) {
+                return result;
+            }
+
+            return key1.sequence < key2.sequence ? -1 : (key1.sequence == key2.sequence ? 0 : 1);
+        }
+    }
+}
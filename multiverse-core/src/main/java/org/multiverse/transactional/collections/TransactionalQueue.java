@@ -3,6 +3,7 @@ package org.multiverse.transactional.collections;
 import org.multiverse.annotations.TransactionalMethod;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
 
@@ -47,9 +48,72 @@ public interface TransactionalQueue<E> extends BlockingQueue<E>, TransactionalCo
     @Override
     int drainTo(Collection<? super E> c);
 
+    /**
+     * Removes up to maxElements items from this TransactionalQueue and adds them to the collection.
+     * <p/>
+     * If the collection is a {@link TransactionalCollection}, the items are added to it in the same transaction
+     * as the removal, so both commit (or roll back) together. Otherwise the items are added after the removal has
+     * committed, so they are not added again when the transaction is restarted; if adding to the collection fails,
+     * the removed items are in neither collection.
+     * <p/>
+     * If a transaction is running, the removal is part of it, and a collection that is not a
+     * TransactionalCollection gets the items right away, before that transaction commits. So if the running
+     * transaction is aborted, the items are back in this TransactionalQueue but also stay in the collection, and
+     * if it is restarted, they are added again. In a running transaction only use a TransactionalCollection or a
+     * collection that is created in the same transaction (like a local list in a transactional method).
+     *
+     * @param c           the collection to add the items to.
+     * @param maxElements the maximum number of items to remove.
+     * @return the number of items removed.
+     * @throws NullPointerException     if c is null.
+     * @throws IllegalArgumentException if c is this TransactionalQueue.
+     */
     @Override
     int drainTo(Collection<? super E> c, int maxElements);
 
+    /**
+     * Inserts all items at the tail of this TransactionalQueue if there is enough capacity for all of them. The
+     * items are added in a single transaction, so they are linked in one go and the consumers see all of them
+     * at once.
+     *
+     * @param c the items to insert.
+     * @return true if the items were inserted, false if there isn't enough capacity for all of them (in that case
+     *         no item is inserted).
+     * @throws NullPointerException     if c is null or contains a null item.
+     * @throws IllegalArgumentException if c is this TransactionalQueue.
+     */
+    boolean offerAll(Collection<? extends E> c);
+
+    /**
+     * Inserts all items at the tail of this TransactionalQueue, waiting until there is enough capacity for all of
+     * them. The items are added in a single transaction, so there is a single commit and a single wakeup of the
+     * waiting consumers.
+     *
+     * @param c the items to insert.
+     * @throws InterruptedException     if interrupted while waiting.
+     * @throws NullPointerException     if c is null or contains a null item.
+     * @throws IllegalArgumentException if c is this TransactionalQueue, or if c contains more items than the
+     *                                  maximum capacity.
+     */
+    void putAll(Collection<? extends E> c) throws InterruptedException;
+
+    /**
+     * Removes up to maxElements items from the head of this TransactionalQueue, waiting up to the timeout until at
+     * least one item is available. The items are removed in a single transaction.
+     * <p/>
+     * If there is a running transaction, the waiting is done by that transaction and the timeout is placed on it.
+     *
+     * @param maxElements the maximum number of items to remove.
+     * @param timeout     how long to wait for an item, in units of unit. If 0, there is no waiting.
+     * @param unit        the TimeUnit of the timeout.
+     * @return the removed items, in queue order. The list is empty if no item became available before the
+     *         timeout.
+     * @throws InterruptedException     if interrupted while waiting.
+     * @throws NullPointerException     if unit is null.
+     * @throws IllegalArgumentException if maxElements is smaller than 1 or the timeout is negative.
+     */
+    List<E> takeBatch(int maxElements, long timeout, TimeUnit unit) throws InterruptedException;
+
     @Override
     E remove();
 
@@ -0,0 +1,572 @@
+package org.multiverse.transactional.collections;
+
+import org.multiverse.annotations.NonTransactional;
+import org.multiverse.annotations.TransactionalMethod;
+import org.multiverse.annotations.TransactionalObject;
+import org.multiverse.api.exceptions.RetryTimeoutException;
+import org.multiverse.api.programmatic.ProgrammaticLongRef;
+import org.multiverse.api.programmatic.ProgrammaticRef;
+import org.multiverse.api.programmatic.ProgrammaticRefFactory;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.multiverse.api.GlobalStmInstance.getGlobalStmInstance;
+import static org.multiverse.api.StmUtils.retry;
+
+/**
+ * A bounded {@link TransactionalQueue} that stores its items in a ring of preallocated slots. It is the transactional
+ * version of the {@link java.util.concurrent.ArrayBlockingQueue}, but producers and consumers don't write the same
+ * fields:
+ * <ol>
+ * <li>the producers and the consumers each have their own sequence. The item with sequence s is stored in slot
+ * s % capacity, and the number of items is the put sequence minus the take sequence.</li>
+ * <li>a put only changes the put sequence and the slot of the new item, a take only changes the take sequence
+ * and the slot of the taken item. A slot is written by a put and a take at the same time only if the ring is
+ * empty or full, and then one of them can't be executed.</li>
+ * <li>the sequences only increase, so a put that reads a take sequence that is being changed concurrently only
+ * sees less free capacity than there is, and a take only sees fewer items.</li>
+ * </ol>
+ * So unlike the {@link TransactionalLinkedList} with a maximum capacity, the capacity is strict and a put and a take
+ * don't cause write conflicts with each other. They still can cause read conflicts: a put reads the take sequence
+ * and a take reads the put sequence, so if the other one commits before the sequence is read, the read fails with
+ * an {@link org.multiverse.api.exceptions.OldVersionNotFoundReadConflict} and the transaction is retried. Producers
+ * do conflict with other producers, and consumers with other consumers.
+ * <p/>
+ * The slots are created when the TransactionalRingBuffer is created, so apart from the transaction itself no
+ * objects are created for an item that is put or taken.
+ * <p/>
+ * Removing an item that is not at the head of the ring (for example with {@link #remove(Object)}) moves all items
+ * after it one slot back and conflicts with the producers.
+ * <p/>
+ * The iterators iterate over a copy of the items made in a readonly transaction that doesn't track reads, so they
+ * never throw a {@link ConcurrentModificationException}.
+ * <p/>
+ * Null items are not allowed.
+ *
+ * @author Peter Veentjer.
+ * @param <E>
+ * @see TransactionalLinkedBlockingQueue
+ */
+@TransactionalObject
+public final class TransactionalRingBuffer<E> implements TransactionalQueue<E> {
+
+    private final static ProgrammaticRefFactory refFactory = getGlobalStmInstance()
+            .getProgrammaticRefFactoryBuilder()
+            .build();
+
+    @NonTransactional
+    private final ProgrammaticRef<E>[] slots;
+
+    //the sequence of the next item to put.
+    private final ProgrammaticLongRef putSequence = refFactory.atomicCreateLongRef(0);
+
+    //the sequence of the next item to take.
+    private final ProgrammaticLongRef takeSequence = refFactory.atomicCreateLongRef(0);
+
+    /**
+     * Creates a new TransactionalRingBuffer with the provided capacity.
+     *
+     * @param capacity the maximum number of items stored in the TransactionalRingBuffer.
+     * @throws IllegalArgumentException if capacity smaller than 1.
+     */
+    public TransactionalRingBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity can't be smaller than 1");
+        }
+
+        slots = new ProgrammaticRef[capacity];
+        for (int k = 0; k < capacity; k++) {
+            slots[k] = refFactory.atomicCreateRef();
+        }
+    }
+
+    /**
+     * Returns the maximum number of items that can be stored in this TransactionalRingBuffer.
+     *
+     * @return the capacity.
+     */
+    @NonTransactional
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    private ProgrammaticRef<E> slot(long sequence) {
+        return slots[(int) (sequence % slots.length)];
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true)
+    public int size() {
+        return (int) (putSequence.get() - takeSequence.get());
+    }
+
+    @Override
+    @NonTransactional
+    public int atomicSize() {
+        //the take sequence is read first, so the put sequence is never older and the size is never negative.
+        long take = takeSequence.atomicGet();
+        return (int) (putSequence.atomicGet() - take);
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true)
+    public boolean isEmpty() {
+        return putSequence.get() == takeSequence.get();
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true)
+    public int remainingCapacity() {
+        return slots.length - size();
+    }
+
+    @Override
+    public boolean add(E e) {
+        if (!offer(e)) {
+            throw new IllegalStateException("Queue full");
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+
+        if (remainingCapacity() == 0) {
+            return false;
+        }
+
+        enqueue(e);
+        return true;
+    }
+
+    @Override
+    @TransactionalMethod(trackReads = true)
+    public void put(E e) throws InterruptedException {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+
+        if (remainingCapacity() == 0) {
+            retry();
+        }
+
+        enqueue(e);
+    }
+
+    @Override
+    @NonTransactional
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        if (e == null || unit == null) {
+            throw new NullPointerException();
+        }
+
+        try {
+            return doOffer(e, unit.toNanos(timeout));
+        } catch (RetryTimeoutException ex) {
+            return false;
+        }
+    }
+
+    @TransactionalMethod(trackReads = true)
+    boolean doOffer(E e, long timeoutNs) throws InterruptedException {
+        if (remainingCapacity() == 0) {
+            if (timeoutNs <= 0) {
+                return false;
+            }
+
+            BlockingSupport.awaitWithTimeout(timeoutNs);
+        }
+
+        enqueue(e);
+        return true;
+    }
+
+    @Override
+    @TransactionalMethod(trackReads = true)
+    public E take() throws InterruptedException {
+        if (isEmpty()) {
+            retry();
+        }
+
+        return dequeue();
+    }
+
+    @Override
+    public E poll() {
+        if (isEmpty()) {
+            return null;
+        }
+
+        return dequeue();
+    }
+
+    @Override
+    @NonTransactional
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        if (unit == null) {
+            throw new NullPointerException();
+        }
+
+        try {
+            return doPoll(unit.toNanos(timeout));
+        } catch (RetryTimeoutException e) {
+            return null;
+        }
+    }
+
+    @TransactionalMethod(trackReads = true)
+    E doPoll(long timeoutNs) throws InterruptedException {
+        if (isEmpty()) {
+            if (timeoutNs <= 0) {
+                return null;
+            }
+
+            BlockingSupport.awaitWithTimeout(timeoutNs);
+        }
+
+        return dequeue();
+    }
+
+    @Override
+    public E remove() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+
+        return dequeue();
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true)
+    public E element() {
+        E item = peek();
+        if (item == null) {
+            throw new NoSuchElementException();
+        }
+
+        return item;
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true)
+    public E peek() {
+        if (isEmpty()) {
+            return null;
+        }
+
+        return slot(takeSequence.get()).get();
+    }
+
+    @Override
+    @NonTransactional
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    @NonTransactional
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        return BlockingSupport.drainTo(this, c, maxElements, new BlockingSupport.Drain<E>() {
+            @Override
+            public List<E> drainFirst(int maxElements) {
+                return dequeueAll(maxElements);
+            }
+        });
+    }
+
+    @Override
+    public boolean offerAll(Collection<? extends E> c) {
+        BlockingSupport.checkBatch(this, c);
+
+        if (remainingCapacity() < c.size()) {
+            return false;
+        }
+
+        enqueueAll(c);
+        return true;
+    }
+
+    @Override
+    @TransactionalMethod(trackReads = true)
+    public void putAll(Collection<? extends E> c) throws InterruptedException {
+        BlockingSupport.checkBatch(this, c);
+
+        if (remainingCapacity() < c.size()) {
+            if (c.size() > slots.length) {
+                throw new IllegalArgumentException("The number of items exceeds the capacity");
+            }
+
+            retry();
+        }
+
+        enqueueAll(c);
+    }
+
+    @Override
+    @NonTransactional
+    public List<E> takeBatch(int maxElements, long timeout, TimeUnit unit) throws InterruptedException {
+        return BlockingSupport.takeBatch(this, maxElements, timeout, unit);
+    }
+
+    private void enqueue(E e) {
+        long put = putSequence.get();
+        slot(put).set(e);
+        putSequence.set(put + 1);
+    }
+
+    private E dequeue() {
+        long take = takeSequence.get();
+        ProgrammaticRef<E> slot = slot(take);
+        E item = slot.get();
+        //the slot is cleared so the item can be garbage collected.
+        slot.set(null);
+        takeSequence.set(take + 1);
+        return item;
+    }
+
+    private void enqueueAll(Collection<? extends E> c) {
+        long put = putSequence.get();
+        for (E item : c) {
+            slot(put).set(item);
+            put++;
+        }
+        putSequence.set(put);
+    }
+
+    @TransactionalMethod(readonly = false)
+    List<E> dequeueAll(int maxElements) {
+        long take = takeSequence.get();
+        long put = putSequence.get();
+        List<E> result = new ArrayList<E>();
+        while (result.size() < maxElements && take < put) {
+            ProgrammaticRef<E> slot = slot(take);
+            result.add(slot.get());
+            slot.set(null);
+            take++;
+        }
+
+        if (!result.isEmpty()) {
+            takeSequence.set(take);
+        }
+        return result;
+    }
+
+    @Override
+    public void clear() {
+        long take = takeSequence.get();
+        long put = putSequence.get();
+        if (take == put) {
+            return;
+        }
+
+        for (long sequence = take; sequence < put; sequence++) {
+            slot(sequence).set(null);
+        }
+
+        //only the take sequence is changed, so it doesn't cause write conflicts with concurrent puts (a put that
+        //reads the take sequence after this commit still gets a read conflict).
+        takeSequence.set(put);
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends E> c) {
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+
+        boolean modified = false;
+        for (E item : c) {
+            if (add(item)) {
+                modified = true;
+            }
+        }
+        return modified;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (o == null) {
+            return false;
+        }
+
+        long put = putSequence.get();
+        for (long sequence = takeSequence.get(); sequence < put; sequence++) {
+            if (o.equals(slot(sequence).get())) {
+                removeAt(sequence);
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Removes the item if it still is stored in this TransactionalRingBuffer. Used by the iterator.
+     *
+     * @param target the item to remove.
+     * @return true if the item was removed, false if it already was removed.
+     */
+    boolean removeItem(E target) {
+        long put = putSequence.get();
+        for (long sequence = takeSequence.get(); sequence < put; sequence++) {
+            if (slot(sequence).get() == target) {
+                removeAt(sequence);
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void removeAt(long sequence) {
+        long take = takeSequence.get();
+        if (sequence == take) {
+            //the head is removed just like a take, so it doesn't cause write conflicts with the producers.
+            dequeue();
+            return;
+        }
+
+        long put = putSequence.get();
+        for (long k = sequence + 1; k < put; k++) {
+            slot(k - 1).set(slot(k).get());
+        }
+        slot(put - 1).set(null);
+        putSequence.set(put - 1);
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        boolean modified = false;
+        for (E item : copyItems()) {
+            if (c.contains(item)) {
+                removeItem(item);
+                modified = true;
+            }
+        }
+        return modified;
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        boolean modified = false;
+        for (E item : copyItems()) {
+            if (!c.contains(item)) {
+                removeItem(item);
+                modified = true;
+            }
+        }
+        return modified;
+    }
+
+    /**
+     * Returns a copy of the items. The copy is made in a readonly transaction that doesn't track reads, unless
+     * there already is a transaction running.
+     *
+     * @return the items, in queue order.
+     */
+    @TransactionalMethod(readonly = true, trackReads = false)
+    List<E> copyItems() {
+        long put = putSequence.get();
+        long take = takeSequence.get();
+        List<E> result = new ArrayList<E>((int) (put - take));
+        for (long sequence = take; sequence < put; sequence++) {
+            result.add(slot(sequence).get());
+        }
+        return result;
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true, trackReads = false)
+    public boolean contains(Object o) {
+        if (o == null) {
+            return false;
+        }
+
+        long put = putSequence.get();
+        for (long sequence = takeSequence.get(); sequence < put; sequence++) {
+            if (o.equals(slot(sequence).get())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true, trackReads = false)
+    public boolean containsAll(Collection<?> c) {
+        for (Object item : c) {
+            if (!contains(item)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    @NonTransactional
+    public Iterator<E> iterator() {
+        return new IteratorImpl<E>(this, copyItems());
+    }
+
+    @Override
+    @NonTransactional
+    public Object[] toArray() {
+        return copyItems().toArray();
+    }
+
+    @Override
+    @NonTransactional
+    public <T> T[] toArray(T[] a) {
+        return copyItems().toArray(a);
+    }
+
+    @Override
+    @NonTransactional
+    public String toString() {
+        return copyItems().toString();
+    }
+
+    static final class IteratorImpl<E> implements Iterator<E> {
+
+        private final TransactionalRingBuffer<E> ringBuffer;
+        private final List<E> items;
+        private int index;
+        private E current;
+
+        IteratorImpl(TransactionalRingBuffer<E> ringBuffer, List<E> items) {
+            this.ringBuffer = ringBuffer;
+            this.items = items;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return index < items.size();
+        }
+
+        @Override
+        public E next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            current = items.get(index);
+            index++;
+            return current;
+        }
+
+        @Override
+        public void remove() {
+            if (current == null) {
+                throw new IllegalStateException();
+            }
+
+            ringBuffer.removeItem(current);
+            current = null;
+        }
+    }
+}
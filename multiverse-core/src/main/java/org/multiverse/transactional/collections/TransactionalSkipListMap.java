@@ -0,0 +1,1265 @@
+package org.multiverse.transactional.collections;
+
+import org.multiverse.annotations.NonTransactional;
+import org.multiverse.annotations.TransactionalMethod;
+import org.multiverse.annotations.TransactionalObject;
+import org.multiverse.api.programmatic.ProgrammaticLongRef;
+import org.multiverse.api.programmatic.ProgrammaticRef;
+import org.multiverse.api.programmatic.ProgrammaticRefFactory;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.multiverse.api.GlobalStmInstance.getGlobalStmInstance;
+
+/**
+ * A {@link TransactionalMap} that keeps its keys sorted, based on a skip list. It is the transactional version of
+ * the {@link java.util.concurrent.ConcurrentSkipListMap}.
+ * <p/>
+ * Unlike a balanced tree, a skip list doesn't need to rebalance after an insert or remove; something that would
+ * cause conflicts on the nodes near the root. Every forward link of a node and every value is a transactional
+ * reference, so an insert only changes the links of the nodes directly in front of the new node. Transactions that
+ * insert or remove keys in different key ranges therefore don't conflict (except for the rare insert of a very
+ * high node). The size is changed using commuting increments.
+ * <p/>
+ * The iterators of the views (like the {@link #keySet()} or the {@link #subMap(Object, boolean, Object, boolean)})
+ * iterate over a copy of the entries in range. The copy is made in a readonly transaction that doesn't track
+ * reads, so a large range scan doesn't build a big read set. The entries returned by the navigation methods (like
+ * the {@link #firstEntry()}) are snapshots and don't support {@link java.util.Map.Entry#setValue(Object)}.
+ * <p/>
+ * Just like the ConcurrentSkipListMap, null keys and values are not allowed.
+ *
+ * @author Peter Veentjer.
+ * @param <K> the key type for the map
+ * @param <V> the value type for the map
+ */
+@TransactionalObject
+public final class TransactionalSkipListMap<K, V> implements TransactionalMap<K, V>, NavigableMap<K, V> {
+
+    /**
+     * The maximum number of levels of the skip list.
+     */
+    public final static int MAX_LEVEL = 32;
+
+    private final static ProgrammaticRefFactory refFactory = getGlobalStmInstance()
+            .getProgrammaticRefFactoryBuilder()
+            .build();
+
+    //the relations used by the getNear method.
+    final static int LT = 0;
+    final static int LE = 1;
+    final static int GE = 2;
+    final static int GT = 3;
+
+    private final Comparator<? super K> comparator;
+
+    private final Node<K, V> head = new Node<K, V>(null, null, MAX_LEVEL);
+
+    private final ProgrammaticLongRef size = refFactory.atomicCreateLongRef(0);
+
+    //the highest level of a node that ever was created. It only is used to skip the empty levels of the head, so
+    //it doesn't need to be transactional.
+    private final AtomicInteger levelHint = new AtomicInteger(1);
+
+    private final Random random = new Random();
+
+    /**
+     * Creates a new TransactionalSkipListMap that orders the keys according to their natural ordering.
+     */
+    public TransactionalSkipListMap() {
+        this((Comparator<? super K>) null);
+    }
+
+    /**
+     * Creates a new TransactionalSkipListMap that orders the keys using the comparator.
+     *
+     * @param comparator the Comparator used to order the keys. If null, the natural ordering is used.
+     */
+    public TransactionalSkipListMap(Comparator<? super K> comparator) {
+        this.comparator = comparator;
+    }
+
+    /**
+     * Creates a new TransactionalSkipListMap that contains the entries of the provided map, and orders the keys
+     * according to their natural ordering.
+     *
+     * @param map the map containing the entries to copy.
+     * @throws NullPointerException if map is null, or contains a null key or value.
+     */
+    public TransactionalSkipListMap(Map<? extends K, ? extends V> map) {
+        this((Comparator<? super K>) null);
+
+        putAll(map);
+    }
+
+    @Override
+    @NonTransactional
+    public Comparator<? super K> comparator() {
+        return comparator;
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true)
+    public int size() {
+        return (int) size.get();
+    }
+
+    @Override
+    @NonTransactional
+    public int atomicSize() {
+        return (int) size.atomicGet();
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true)
+    public boolean isEmpty() {
+        return head.next[0].get() == null;
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true)
+    public boolean containsKey(Object key) {
+        return findNode(key) != null;
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true)
+    public boolean containsValue(Object value) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+
+        for (Node<K, V> node = head.next[0].get(); node != null; node = node.next[0].get()) {
+            if (value.equals(node.value.get())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true)
+    public V get(Object key) {
+        Node<K, V> node = findNode(key);
+        return node == null ? null : node.value.get();
+    }
+
+    @Override
+    public V put(K key, V value) {
+        return doPut(key, value, false);
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        return doPut(key, value, true);
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> m) {
+        if (m == null) {
+            throw new NullPointerException();
+        }
+
+        for (Map.Entry<? extends K, ? extends V> entry : m.entrySet()) {
+            doPut(entry.getKey(), entry.getValue(), false);
+        }
+    }
+
+    private V doPut(K key, V value, boolean onlyIfAbsent) {
+        if (key == null || value == null) {
+            throw new NullPointerException();
+        }
+
+        int level = randomLevel();
+        int levels = raiseLevelHint(level);
+        Node<K, V>[] preds = new Node[levels];
+        Node<K, V> found = findPredecessors(key, preds, levels).next[0].get();
+
+        if (found != null && compare(found.key, key) == 0) {
+            V oldValue = found.value.get();
+            if (!onlyIfAbsent && oldValue != value) {
+                found.value.set(value);
+            }
+            return oldValue;
+        }
+
+        Node<K, V> node = new Node<K, V>(key, value, level);
+        for (int l = 0; l < level; l++) {
+            node.next[l] = refFactory.atomicCreateRef(preds[l].next[l].get());
+            preds[l].next[l].set(node);
+        }
+
+        size.commutingInc(1);
+        return null;
+    }
+
+    @Override
+    public V remove(Object key) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+
+        int levels = levelHint.get();
+        Node<K, V>[] preds = new Node[levels];
+        Node<K, V> found = findPredecessors(key, preds, levels).next[0].get();
+        if (found == null || compare(found.key, key) != 0) {
+            return null;
+        }
+
+        return unlink(found, preds);
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        if (key == null || value == null) {
+            throw new NullPointerException();
+        }
+
+        int levels = levelHint.get();
+        Node<K, V>[] preds = new Node[levels];
+        Node<K, V> found = findPredecessors(key, preds, levels).next[0].get();
+        if (found == null || compare(found.key, key) != 0 || !value.equals(found.value.get())) {
+            return false;
+        }
+
+        unlink(found, preds);
+        return true;
+    }
+
+    /**
+     * Removes a node from the skip list. The links and the value of the removed node are cleared as well, so a
+     * concurrent transaction that inserts a node directly after the removed node, or changes its value, conflicts
+     * with the remove.
+     *
+     * @param node  the node to remove.
+     * @param preds the predecessors of the node on every level.
+     * @return the value of the removed node.
+     */
+    private V unlink(Node<K, V> node, Node<K, V>[] preds) {
+        for (int l = 0; l < node.next.length; l++) {
+            preds[l].next[l].set(node.next[l].get());
+            node.next[l].set(null);
+        }
+
+        V oldValue = node.value.get();
+        node.value.set(null);
+        size.commutingInc(-1);
+        return oldValue;
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        if (oldValue == null || newValue == null) {
+            throw new NullPointerException();
+        }
+
+        Node<K, V> node = findNode(key);
+        if (node == null || !oldValue.equals(node.value.get())) {
+            return false;
+        }
+
+        node.value.set(newValue);
+        return true;
+    }
+
+    @Override
+    public V replace(K key, V value) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+
+        Node<K, V> node = findNode(key);
+        if (node == null) {
+            return null;
+        }
+
+        return node.value.set(value);
+    }
+
+    @Override
+    public void clear() {
+        clear(null, false, null, false);
+    }
+
+    // ==================== navigation ===================================
+
+    @Override
+    @TransactionalMethod(readonly = true)
+    public Map.Entry<K, V> firstEntry() {
+        Node<K, V> first = head.next[0].get();
+        return first == null ? null : first.snapshot();
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true)
+    public Map.Entry<K, V> lastEntry() {
+        Node<K, V> x = head;
+        for (int l = levelHint.get() - 1; l >= 0; l--) {
+            for (Node<K, V> next = x.next[l].get(); next != null; next = x.next[l].get()) {
+                x = next;
+            }
+        }
+        return x == head ? null : x.snapshot();
+    }
+
+    @Override
+    public Map.Entry<K, V> pollFirstEntry() {
+        return pollEntry(null, false, null, false, false);
+    }
+
+    @Override
+    public Map.Entry<K, V> pollLastEntry() {
+        return pollEntry(null, false, null, false, true);
+    }
+
+    @Override
+    @NonTransactional
+    public K firstKey() {
+        return key(firstEntry());
+    }
+
+    @Override
+    @NonTransactional
+    public K lastKey() {
+        return key(lastEntry());
+    }
+
+    @Override
+    @NonTransactional
+    public Map.Entry<K, V> lowerEntry(K key) {
+        return getNear(key, LT);
+    }
+
+    @Override
+    @NonTransactional
+    public K lowerKey(K key) {
+        return keyOrNull(getNear(key, LT));
+    }
+
+    @Override
+    @NonTransactional
+    public Map.Entry<K, V> floorEntry(K key) {
+        return getNear(key, LE);
+    }
+
+    @Override
+    @NonTransactional
+    public K floorKey(K key) {
+        return keyOrNull(getNear(key, LE));
+    }
+
+    @Override
+    @NonTransactional
+    public Map.Entry<K, V> ceilingEntry(K key) {
+        return getNear(key, GE);
+    }
+
+    @Override
+    @NonTransactional
+    public K ceilingKey(K key) {
+        return keyOrNull(getNear(key, GE));
+    }
+
+    @Override
+    @NonTransactional
+    public Map.Entry<K, V> higherEntry(K key) {
+        return getNear(key, GT);
+    }
+
+    @Override
+    @NonTransactional
+    public K higherKey(K key) {
+        return keyOrNull(getNear(key, GT));
+    }
+
+    /**
+     * Returns the entry that has the relation rel with the key; for example with GE the entry with the lowest key
+     * that is greater than or equal to the key.
+     *
+     * @param key the key
+     * @param rel the relation (LT, LE, GE or GT).
+     * @return a snapshot of the found entry, or null if there is no such entry.
+     */
+    @TransactionalMethod(readonly = true)
+    Map.Entry<K, V> getNear(Object key, int rel) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+
+        Node<K, V> pred = findPredecessors(key, null, levelHint.get());
+        Node<K, V> next = pred.next[0].get();
+        boolean equal = next != null && compare(next.key, key) == 0;
+
+        Node<K, V> result;
+        switch (rel) {
+            case LT:
+                result = pred;
+                break;
+            case LE:
+                result = equal ? next : pred;
+                break;
+            case GE:
+                result = next;
+                break;
+            case GT:
+                result = equal ? next.next[0].get() : next;
+                break;
+            default:
+                throw new IllegalArgumentException();
+        }
+
+        return result == null || result == head ? null : result.snapshot();
+    }
+
+    // ==================== views ===================================
+
+    @Override
+    @NonTransactional
+    public NavigableSet<K> keySet() {
+        return new KeySet<K>(this);
+    }
+
+    @Override
+    @NonTransactional
+    public NavigableSet<K> navigableKeySet() {
+        return new KeySet<K>(this);
+    }
+
+    @Override
+    @NonTransactional
+    public NavigableSet<K> descendingKeySet() {
+        return new KeySet<K>(descendingMap());
+    }
+
+    @Override
+    @NonTransactional
+    public Collection<V> values() {
+        return all().values();
+    }
+
+    @Override
+    @NonTransactional
+    public Set<Map.Entry<K, V>> entrySet() {
+        return all().entrySet();
+    }
+
+    @Override
+    @NonTransactional
+    public NavigableMap<K, V> descendingMap() {
+        return new SubMap<K, V>(this, null, false, null, false, true);
+    }
+
+    @Override
+    @NonTransactional
+    public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        return all().subMap(fromKey, fromInclusive, toKey, toInclusive);
+    }
+
+    @Override
+    @NonTransactional
+    public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+        return all().headMap(toKey, inclusive);
+    }
+
+    @Override
+    @NonTransactional
+    public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+        return all().tailMap(fromKey, inclusive);
+    }
+
+    @Override
+    @NonTransactional
+    public SortedMap<K, V> subMap(K fromKey, K toKey) {
+        return subMap(fromKey, true, toKey, false);
+    }
+
+    @Override
+    @NonTransactional
+    public SortedMap<K, V> headMap(K toKey) {
+        return headMap(toKey, false);
+    }
+
+    @Override
+    @NonTransactional
+    public SortedMap<K, V> tailMap(K fromKey) {
+        return tailMap(fromKey, true);
+    }
+
+    @NonTransactional
+    private SubMap<K, V> all() {
+        return new SubMap<K, V>(this, null, false, null, false, false);
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true, trackReads = false)
+    public String toString() {
+        return all().toString();
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true, trackReads = false)
+    public boolean equals(Object o) {
+        return o == this || all().equals(o);
+    }
+
+    @Override
+    @TransactionalMethod(readonly = true, trackReads = false)
+    public int hashCode() {
+        return all().hashCode();
+    }
+
+    // ==================== range operations ===================================
+
+    /**
+     * Returns a copy of the entries in a range of keys. A null bound means that the range is not bound on that
+     * side.
+     * <p/>
+     * The copy is made in a readonly transaction that doesn't track reads, so copying a big range doesn't cause a
+     * big read set.
+     *
+     * @param lo          the lowest key of the range, or null.
+     * @param loInclusive if the lowest key is part of the range.
+     * @param hi          the highest key of the range, or null.
+     * @param hiInclusive if the highest key is part of the range.
+     * @param descending  if the entries should be returned in descending order.
+     * @return the copied entries.
+     */
+    @TransactionalMethod(readonly = true, trackReads = false)
+    List<Map.Entry<K, V>> copyEntries(K lo, boolean loInclusive, K hi, boolean hiInclusive, boolean descending) {
+        List<Map.Entry<K, V>> result = new ArrayList<Map.Entry<K, V>>();
+
+        for (Node<K, V> node = findFirstInRange(lo, loInclusive);
+             node != null && !isTooHigh(node.key, hi, hiInclusive);
+             node = node.next[0].get()) {
+            result.add(node.snapshot());
+        }
+
+        if (descending) {
+            Collections.reverse(result);
+        }
+        return result;
+    }
+
+    /**
+     * Removes the first or last entry in a range of keys.
+     *
+     * @return a snapshot of the removed entry, or null if the range is empty.
+     */
+    Map.Entry<K, V> pollEntry(K lo, boolean loInclusive, K hi, boolean hiInclusive, boolean last) {
+        Map.Entry<K, V> entry;
+        if (last) {
+            entry = hi == null ? lastEntry() : getNear(hi, hiInclusive ? LE : LT);
+            if (entry != null && lo != null && isTooLow(entry.getKey(), lo, loInclusive)) {
+                entry = null;
+            }
+        } else {
+            Node<K, V> first = findFirstInRange(lo, loInclusive);
+            entry = first == null || isTooHigh(first.key, hi, hiInclusive) ? null : first.snapshot();
+        }
+
+        if (entry != null) {
+            remove(entry.getKey());
+        }
+        return entry;
+    }
+
+    /**
+     * Removes all entries in a range of keys.
+     */
+    void clear(K lo, boolean loInclusive, K hi, boolean hiInclusive) {
+        int levels = levelHint.get();
+        Node<K, V>[] preds = new Node[levels];
+
+        Node<K, V> node;
+        if (lo == null) {
+            Arrays.fill(preds, head);
+            node = head.next[0].get();
+        } else {
+            node = findPredecessors(lo, preds, levels).next[0].get();
+            if (!loInclusive && node != null && compare(node.key, lo) == 0) {
+                for (int l = 0; l < node.next.length; l++) {
+                    preds[l] = node;
+                }
+                node = node.next[0].get();
+            }
+        }
+
+        //the predecessors of the removed nodes stay the same, since the removed nodes are not kept.
+        while (node != null && !isTooHigh(node.key, hi, hiInclusive)) {
+            Node<K, V> next = node.next[0].get();
+            unlink(node, preds);
+            node = next;
+        }
+    }
+
+    private Node<K, V> findFirstInRange(K lo, boolean loInclusive) {
+        if (lo == null) {
+            return head.next[0].get();
+        }
+
+        Node<K, V> node = findPredecessors(lo, null, levelHint.get()).next[0].get();
+        if (!loInclusive && node != null && compare(node.key, lo) == 0) {
+            node = node.next[0].get();
+        }
+        return node;
+    }
+
+    boolean isTooLow(Object key, K lo, boolean loInclusive) {
+        if (lo == null) {
+            return false;
+        }
+
+        int c = compare(key, lo);
+        return c < 0 || (c == 0 && !loInclusive);
+    }
+
+    boolean isTooHigh(Object key, K hi, boolean hiInclusive) {
+        if (hi == null) {
+            return false;
+        }
+
+        int c = compare(key, hi);
+        return c > 0 || (c == 0 && !hiInclusive);
+    }
+
+    // ==================== support methods ===================================
+
+    int compare(Object key1, Object key2) {
+        if (comparator != null) {
+            return comparator.compare((K) key1, (K) key2);
+        }
+
+        return ((Comparable) key1).compareTo(key2);
+    }
+
+    private Node<K, V> findNode(Object key) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+
+        Node<K, V> node = findPredecessors(key, null, levelHint.get()).next[0].get();
+        return node != null && compare(node.key, key) == 0 ? node : null;
+    }
+
+    /**
+     * Finds the nodes with the highest key that is smaller than the key, on every level.
+     *
+     * @param key    the key to look for.
+     * @param preds  the array to store the found nodes in, or null if only the node on the lowest level is needed.
+     * @param levels the number of levels to search.
+     * @return the found node on the lowest level (the head if there is no smaller key).
+     */
+    private Node<K, V> findPredecessors(Object key, Node<K, V>[] preds, int levels) {
+        Node<K, V> x = head;
+        for (int l = levels - 1; l >= 0; l--) {
+            for (Node<K, V> next = x.next[l].get(); next != null && compare(next.key, key) < 0;
+                 next = x.next[l].get()) {
+                x = next;
+            }
+
+            if (preds != null) {
+                preds[l] = x;
+            }
+        }
+        return x;
+    }
+
+    private int randomLevel() {
+        int bits = random.nextInt();
+        int level = 1;
+        while (level < MAX_LEVEL && (bits & 1) != 0) {
+            level++;
+            bits >>>= 1;
+        }
+        return level;
+    }
+
+    /**
+     * Makes sure the levelHint is at least level. The hint is raised before the node is inserted, so a
+     * transaction never sees a node on a level above the hint.
+     *
+     * @return the number of levels that need to be searched.
+     */
+    private int raiseLevelHint(int level) {
+        while (true) {
+            int hint = levelHint.get();
+            if (level <= hint || levelHint.compareAndSet(hint, level)) {
+                return Math.max(level, hint);
+            }
+        }
+    }
+
+    private static <K> K key(Map.Entry<K, ?> entry) {
+        if (entry == null) {
+            throw new NoSuchElementException();
+        }
+        return entry.getKey();
+    }
+
+    private static <K> K keyOrNull(Map.Entry<K, ?> entry) {
+        return entry == null ? null : entry.getKey();
+    }
+
+    /**
+     * A node of the skip list. The head of the skip list is a node without key and value.
+     */
+    static final class Node<K, V> {
+        final K key;
+        final ProgrammaticRef<V> value;
+        final ProgrammaticRef<Node<K, V>>[] next;
+
+        Node(K key, V value, int level) {
+            this.key = key;
+            this.value = refFactory.atomicCreateRef(value);
+            this.next = new ProgrammaticRef[level];
+            if (key == null) {
+                for (int l = 0; l < level; l++) {
+                    next[l] = refFactory.atomicCreateRef();
+                }
+            }
+        }
+
+        Map.Entry<K, V> snapshot() {
+            return new AbstractMap.SimpleImmutableEntry<K, V>(key, value.get());
+        }
+    }
+
+    /**
+     * A view on a range of keys of the TransactionalSkipListMap, in ascending or descending order. A null bound
+     * means that the range is not bound on that side. The bounds are in the order of the TransactionalSkipListMap,
+     * so for a descending SubMap the lo bound is the last key.
+     */
+    static final class SubMap<K, V> extends AbstractMap<K, V> implements NavigableMap<K, V> {
+        private final TransactionalSkipListMap<K, V> map;
+        private final K lo;
+        private final boolean loInclusive;
+        private final K hi;
+        private final boolean hiInclusive;
+        private final boolean descending;
+
+        SubMap(TransactionalSkipListMap<K, V> map, K lo, boolean loInclusive, K hi, boolean hiInclusive,
+               boolean descending) {
+            if (lo != null && hi != null && map.compare(lo, hi) > 0) {
+                throw new IllegalArgumentException("inconsistent range");
+            }
+
+            this.map = map;
+            this.lo = lo;
+            this.loInclusive = loInclusive;
+            this.hi = hi;
+            this.hiInclusive = hiInclusive;
+            this.descending = descending;
+        }
+
+        private boolean inRange(Object key) {
+            return !map.isTooLow(key, lo, loInclusive) && !map.isTooHigh(key, hi, hiInclusive);
+        }
+
+        private void checkInRange(Object key) {
+            if (key == null) {
+                throw new NullPointerException();
+            }
+
+            if (!inRange(key)) {
+                throw new IllegalArgumentException("key out of range");
+            }
+        }
+
+        private Map.Entry<K, V> lowest() {
+            Map.Entry<K, V> entry = lo == null ? map.firstEntry() : map.getNear(lo, loInclusive ? GE : GT);
+            return entry == null || map.isTooHigh(entry.getKey(), hi, hiInclusive) ? null : entry;
+        }
+
+        private Map.Entry<K, V> highest() {
+            Map.Entry<K, V> entry = hi == null ? map.lastEntry() : map.getNear(hi, hiInclusive ? LE : LT);
+            return entry == null || map.isTooLow(entry.getKey(), lo, loInclusive) ? null : entry;
+        }
+
+        /**
+         * Returns the entry in range that has the relation rel (in the order of the map) with the key.
+         */
+        private Map.Entry<K, V> near(K key, int rel) {
+            if (key == null) {
+                throw new NullPointerException();
+            }
+
+            boolean below = rel == LT || rel == LE;
+            if (map.isTooLow(key, lo, loInclusive)) {
+                return below ? null : lowest();
+            }
+
+            if (map.isTooHigh(key, hi, hiInclusive)) {
+                return below ? highest() : null;
+            }
+
+            Map.Entry<K, V> entry = map.getNear(key, rel);
+            return entry == null || !inRange(entry.getKey()) ? null : entry;
+        }
+
+        private SubMap<K, V> newSubMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+            if (descending) {
+                K tmpKey = fromKey;
+                fromKey = toKey;
+                toKey = tmpKey;
+                boolean tmpInclusive = fromInclusive;
+                fromInclusive = toInclusive;
+                toInclusive = tmpInclusive;
+            }
+
+            if (fromKey == null) {
+                fromKey = lo;
+                fromInclusive = loInclusive;
+            } else {
+                checkBound(fromKey, fromInclusive);
+            }
+
+            if (toKey == null) {
+                toKey = hi;
+                toInclusive = hiInclusive;
+            } else {
+                checkBound(toKey, toInclusive);
+            }
+
+            return new SubMap<K, V>(map, fromKey, fromInclusive, toKey, toInclusive, descending);
+        }
+
+        /**
+         * Checks if the bound of a new SubMap is in range. An exclusive bound also can be equal to a bound of this
+         * SubMap, so the new SubMap never contains keys that are not in range.
+         */
+        private void checkBound(K key, boolean inclusive) {
+            boolean inRange = inclusive
+                    ? inRange(key)
+                    : !map.isTooLow(key, lo, true) && !map.isTooHigh(key, hi, true);
+
+            if (!inRange) {
+                throw new IllegalArgumentException("key out of range");
+            }
+        }
+
+        @Override
+        public Comparator<? super K> comparator() {
+            Comparator<? super K> comparator = map.comparator();
+            if (descending) {
+                comparator = Collections.reverseOrder(comparator);
+            }
+            return comparator;
+        }
+
+        @Override
+        public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+            if (fromKey == null || toKey == null) {
+                throw new NullPointerException();
+            }
+
+            return newSubMap(fromKey, fromInclusive, toKey, toInclusive);
+        }
+
+        @Override
+        public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+            if (toKey == null) {
+                throw new NullPointerException();
+            }
+
+            return newSubMap(null, false, toKey, inclusive);
+        }
+
+        @Override
+        public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+            if (fromKey == null) {
+                throw new NullPointerException();
+            }
+
+            return newSubMap(fromKey, inclusive, null, false);
+        }
+
+        @Override
+        public SortedMap<K, V> subMap(K fromKey, K toKey) {
+            return subMap(fromKey, true, toKey, false);
+        }
+
+        @Override
+        public SortedMap<K, V> headMap(K toKey) {
+            return headMap(toKey, false);
+        }
+
+        @Override
+        public SortedMap<K, V> tailMap(K fromKey) {
+            return tailMap(fromKey, true);
+        }
+
+        @Override
+        public NavigableMap<K, V> descendingMap() {
+            return new SubMap<K, V>(map, lo, loInclusive, hi, hiInclusive, !descending);
+        }
+
+        @Override
+        public Map.Entry<K, V> lowerEntry(K key) {
+            return near(key, descending ? GT : LT);
+        }
+
+        @Override
+        public K lowerKey(K key) {
+            return keyOrNull(lowerEntry(key));
+        }
+
+        @Override
+        public Map.Entry<K, V> floorEntry(K key) {
+            return near(key, descending ? GE : LE);
+        }
+
+        @Override
+        public K floorKey(K key) {
+            return keyOrNull(floorEntry(key));
+        }
+
+        @Override
+        public Map.Entry<K, V> ceilingEntry(K key) {
+            return near(key, descending ? LE : GE);
+        }
+
+        @Override
+        public K ceilingKey(K key) {
+            return keyOrNull(ceilingEntry(key));
+        }
+
+        @Override
+        public Map.Entry<K, V> higherEntry(K key) {
+            return near(key, descending ? LT : GT);
+        }
+
+        @Override
+        public K higherKey(K key) {
+            return keyOrNull(higherEntry(key));
+        }
+
+        @Override
+        public Map.Entry<K, V> firstEntry() {
+            return descending ? highest() : lowest();
+        }
+
+        @Override
+        public Map.Entry<K, V> lastEntry() {
+            return descending ? lowest() : highest();
+        }
+
+        @Override
+        public K firstKey() {
+            return key(firstEntry());
+        }
+
+        @Override
+        public K lastKey() {
+            return key(lastEntry());
+        }
+
+        @Override
+        public Map.Entry<K, V> pollFirstEntry() {
+            return map.pollEntry(lo, loInclusive, hi, hiInclusive, descending);
+        }
+
+        @Override
+        public Map.Entry<K, V> pollLastEntry() {
+            return map.pollEntry(lo, loInclusive, hi, hiInclusive, !descending);
+        }
+
+        @Override
+        public NavigableSet<K> navigableKeySet() {
+            return new KeySet<K>(this);
+        }
+
+        @Override
+        public NavigableSet<K> keySet() {
+            return new KeySet<K>(this);
+        }
+
+        @Override
+        public NavigableSet<K> descendingKeySet() {
+            return new KeySet<K>(descendingMap());
+        }
+
+        @Override
+        public Set<Map.Entry<K, V>> entrySet() {
+            return new EntrySet<K, V>(this);
+        }
+
+        List<Map.Entry<K, V>> copyEntries() {
+            return map.copyEntries(lo, loInclusive, hi, hiInclusive, descending);
+        }
+
+        @Override
+        public int size() {
+            return copyEntries().size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return lowest() == null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            if (key == null) {
+                throw new NullPointerException();
+            }
+
+            return inRange(key) && map.containsKey(key);
+        }
+
+        @Override
+        public V get(Object key) {
+            if (key == null) {
+                throw new NullPointerException();
+            }
+
+            return inRange(key) ? map.get(key) : null;
+        }
+
+        @Override
+        public V put(K key, V value) {
+            checkInRange(key);
+            return map.put(key, value);
+        }
+
+        @Override
+        public V remove(Object key) {
+            if (key == null) {
+                throw new NullPointerException();
+            }
+
+            return inRange(key) ? map.remove(key) : null;
+        }
+
+        @Override
+        public void clear() {
+            map.clear(lo, loInclusive, hi, hiInclusive);
+        }
+    }
+
+    static final class EntrySet<K, V> extends AbstractSet<Map.Entry<K, V>> {
+        private final SubMap<K, V> subMap;
+
+        EntrySet(SubMap<K, V> subMap) {
+            this.subMap = subMap;
+        }
+
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator<K, V>(subMap);
+        }
+
+        @Override
+        public int size() {
+            return subMap.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return subMap.isEmpty();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+
+            Map.Entry entry = (Map.Entry) o;
+            V value = subMap.get(entry.getKey());
+            return value != null && value.equals(entry.getValue());
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+
+            Map.Entry entry = (Map.Entry) o;
+            return subMap.inRange(entry.getKey()) && subMap.map.remove(entry.getKey(), entry.getValue());
+        }
+
+        @Override
+        public void clear() {
+            subMap.clear();
+        }
+    }
+
+    /**
+     * An iterator over a copy of the entries of a SubMap. Removing an entry removes the key from the map.
+     */
+    static final class EntryIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+        private final SubMap<K, V> subMap;
+        private final Iterator<Map.Entry<K, V>> it;
+        private Map.Entry<K, V> current;
+
+        EntryIterator(SubMap<K, V> subMap) {
+            this.subMap = subMap;
+            this.it = subMap.copyEntries().iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return it.hasNext();
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            current = it.next();
+            return current;
+        }
+
+        @Override
+        public void remove() {
+            if (current == null) {
+                throw new IllegalStateException();
+            }
+
+            subMap.map.remove(current.getKey());
+            current = null;
+        }
+    }
+
+    /**
+     * The keys of a NavigableMap (the TransactionalSkipListMap or a SubMap) as NavigableSet.
+     */
+    static final class KeySet<K> extends AbstractSet<K> implements NavigableSet<K> {
+        private final NavigableMap<K, ?> map;
+
+        KeySet(NavigableMap<K, ?> map) {
+            this.map = map;
+        }
+
+        @Override
+        public Iterator<K> iterator() {
+            final Iterator<? extends Map.Entry<K, ?>> it = map.entrySet().iterator();
+            return new Iterator<K>() {
+                @Override
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                @Override
+                public K next() {
+                    return it.next().getKey();
+                }
+
+                @Override
+                public void remove() {
+                    it.remove();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return map.isEmpty();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return map.containsKey(o);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            return map.remove(o) != null;
+        }
+
+        @Override
+        public void clear() {
+            map.clear();
+        }
+
+        @Override
+        public K lower(K k) {
+            return map.lowerKey(k);
+        }
+
+        @Override
+        public K floor(K k) {
+            return map.floorKey(k);
+        }
+
+        @Override
+        public K ceiling(K k) {
+            return map.ceilingKey(k);
+        }
+
+        @Override
+        public K higher(K k) {
+            return map.higherKey(k);
+        }
+
+        @Override
+        public K pollFirst() {
+            return keyOrNull(map.pollFirstEntry());
+        }
+
+        @Override
+        public K pollLast() {
+            return keyOrNull(map.pollLastEntry());
+        }
+
+        @Override
+        public Comparator<? super K> comparator() {
+            return map.comparator();
+        }
+
+        @Override
+        public K first() {
+            return map.firstKey();
+        }
+
+        @Override
+        public K last() {
+            return map.lastKey();
+        }
+
+        @Override
+        public NavigableSet<K> descendingSet() {
+            return new KeySet<K>(map.descendingMap());
+        }
+
+        @Override
+        public Iterator<K> descendingIterator() {
+            return descendingSet().iterator();
+        }
+
+        @Override
+        public NavigableSet<K> subSet(K fromElement, boolean fromInclusive, K toElement, boolean toInclusive) {
+            return new KeySet<K>(map.subMap(fromElement, fromInclusive, toElement, toInclusive));
+        }
+
+        @Override
+        public NavigableSet<K> headSet(K toElement, boolean inclusive) {
+            return new KeySet<K>(map.headMap(toElement, inclusive));
+        }
+
+        @Override
+        public NavigableSet<K> tailSet(K fromElement, boolean inclusive) {
+            return new KeySet<K>(map.tailMap(fromElement, inclusive));
+        }
+
+        @Override
+        public SortedSet<K> subSet(K fromElement, K toElement) {
+            return subSet(fromElement, true, toElement, false);
+        }
+
+        @Override
+        public SortedSet<K> headSet(K toElement) {
+            return headSet(toElement, false);
+        }
+
+        @Override
+        public SortedSet<K> tailSet(K fromElement) {
+            return tailSet(fromElement, true);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package org.multiverse.transactional.executors;
+
+import org.multiverse.api.Stm;
+import org.multiverse.api.Transaction;
+import org.multiverse.api.TransactionFactory;
+import org.multiverse.templates.InvisibleCheckedException;
+import org.multiverse.templates.TransactionBoilerplate;
+import org.multiverse.templates.TransactionalCallable;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+
+/**
+ * Executes batches of {@link KeyedTask}s deterministically. Before a batch is executed, it is ordered in groups of
+ * tasks that don't conflict (their declared key sets don't overlap), in the style of Calvin. Tasks that conflict
+ * are placed in different groups and executed in the order they were submitted. The groups are executed one
+ * after another, and the tasks within a group are executed in parallel on the provided {@link Executor} (normally a
+ * {@link TransactionalThreadPoolExecutor}).
+ * <p/>
+ * Because the tasks within a group can't conflict, the transactions never have to be re-executed. Under heavy
+ * contention this performs better than optimistic execution where conflicting transactions are aborted and retried
+ * over and over again. The transactions that are used don't track reads and allow write skew, so there is almost no
+ * validation needed on commit.
+ * <p/>
+ * <h3>Key declarations</h3>
+ * The correctness depends on complete key declarations: the keys of a task need to cover everything it reads or
+ * writes (see {@link KeyedTask}). The stm still detects write conflicts, but a task that reads something that is
+ * written by another task in the same group, without declaring it, could see a state that doesn't match any serial
+ * order. If the keys can't be trusted, use the constructor that accepts a TransactionFactory and provide one that
+ * tracks reads and doesn't allow write skew.
+ * <p/>
+ * <h3>Failures</h3>
+ * Each task is executed in its own transaction, so a failing task doesn't prevent the other tasks from being
+ * committed. When the batch completes, the exception of the first task (in submission order) that failed is thrown.
+ * If the Executor refuses a task (for example because it has been shut down), the tasks of the current group that
+ * already were submitted are awaited, the remaining groups are not executed and the exception of the Executor is
+ * thrown.
+ * <p/>
+ * DeterministicBatchExecutor is thread-safe, although concurrent batches are not ordered with respect to each
+ * other.
+ *
+ * @author Peter Veentjer.
+ */
+public final class DeterministicBatchExecutor {
+
+    private final TransactionFactory txFactory;
+    private final Executor executor;
+
+    /**
+     * Creates a DeterministicBatchExecutor that creates a suitable TransactionFactory on the provided stm.
+     *
+     * @param stm      the Stm the tasks are executed on.
+     * @param executor the Executor used to execute the tasks.
+     * @throws NullPointerException if stm or executor is null.
+     */
+    public DeterministicBatchExecutor(Stm stm, Executor executor) {
+        this(stm.getTransactionFactoryBuilder()
+                .setReadonly(false)
+                .setReadTrackingEnabled(false)
+                .setWriteSkewAllowed(true)
+                .setSpeculativeConfigurationEnabled(false)
+                .setFamilyName(DeterministicBatchExecutor.class.getName())
+                .build(), executor);
+    }
+
+    /**
+     * Creates a DeterministicBatchExecutor.
+     *
+     * @param txFactory the TransactionFactory used to create the transactions for the tasks.
+     * @param executor  the Executor used to execute the tasks.
+     * @throws NullPointerException if txFactory or executor is null.
+     */
+    public DeterministicBatchExecutor(TransactionFactory txFactory, Executor executor) {
+        if (txFactory == null || executor == null) {
+            throw new NullPointerException();
+        }
+
+        this.txFactory = txFactory;
+        this.executor = executor;
+    }
+
+    /**
+     * Executes the batch of tasks and waits till all of them have completed. The wait can't be interrupted.
+     *
+     * @param batch the tasks to execute, in the order they were submitted.
+     * @throws NullPointerException      if batch or one of its tasks is null.
+     * @throws java.util.concurrent.RejectedExecutionException
+     *                                   if the Executor refuses to execute a task.
+     * @throws InvisibleCheckedException if the first failing task failed with a checked exception. Unchecked
+     *                                   exceptions and errors are rethrown as is.
+     */
+    public void execute(List<? extends KeyedTask> batch) {
+        if (batch == null) {
+            throw new NullPointerException();
+        }
+
+        List<List<Job>> groups = createGroups(batch);
+
+        Throwable[] failures = new Throwable[batch.size()];
+        for (List<Job> group : groups) {
+            executeGroup(group, failures);
+        }
+
+        for (Throwable failure : failures) {
+            if (failure != null) {
+                rethrow(failure);
+            }
+        }
+    }
+
+    private static void rethrow(Throwable failure) {
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        } else {
+            throw new InvisibleCheckedException((Exception) failure);
+        }
+    }
+
+    /**
+     * Orders the batch in conflict free groups. A task is placed in the group directly after the last group that
+     * contains a task it conflicts with, so conflicting tasks keep their submission order.
+     *
+     * @param batch the batch to order.
+     * @return the groups, in the order they need to be executed.
+     */
+    static List<List<Job>> createGroups(List<? extends KeyedTask> batch) {
+        List<List<Job>> groups = new ArrayList<List<Job>>();
+        Map<Object, Integer> lastGroupByKey = new HashMap<Object, Integer>();
+
+        int index = 0;
+        for (KeyedTask task : batch) {
+            if (task == null) {
+                throw new NullPointerException("task with index " + index + " is null");
+            }
+
+            int groupIndex = 0;
+            for (Object key : task.getKeys()) {
+                Integer lastGroup = lastGroupByKey.get(key);
+                if (lastGroup != null && lastGroup + 1 > groupIndex) {
+                    groupIndex = lastGroup + 1;
+                }
+            }
+
+            for (Object key : task.getKeys()) {
+                lastGroupByKey.put(key, groupIndex);
+            }
+
+            if (groupIndex == groups.size()) {
+                groups.add(new ArrayList<Job>());
+            }
+            groups.get(groupIndex).add(new Job(task, index));
+            index++;
+        }
+
+        return groups;
+    }
+
+    private void executeGroup(List<Job> group, Throwable[] failures) {
+        final CountDownLatch completedLatch = new CountDownLatch(group.size());
+        int submittedCount = 0;
+        Throwable submitFailure = null;
+        for (final Job job : group) {
+            try {
+                submit(job, failures, completedLatch);
+                submittedCount++;
+            } catch (Throwable ex) {
+                submitFailure = ex;
+                break;
+            }
+        }
+
+        //the jobs that never were submitted never count down themselves.
+        for (int k = submittedCount; k < group.size(); k++) {
+            completedLatch.countDown();
+        }
+
+        boolean interrupted = false;
+        while (true) {
+            try {
+                completedLatch.await();
+                break;
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (submitFailure != null) {
+            rethrow(submitFailure);
+        }
+    }
+
+    private void submit(final Job job, final Throwable[] failures, final CountDownLatch completedLatch) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    new TransactionBoilerplate(txFactory).executeChecked(new TransactionalCallable<Object>() {
+                        @Override
+                        public Object call(Transaction tx) throws Exception {
+                            job.task.execute(tx);
+                            return null;
+                        }
+                    });
+                } catch (Throwable ex) {
+                    failures[job.index] = ex;
+                } finally {
+                    completedLatch.countDown();
+                }
+            }
+        });
+    }
+
+    static final class Job {
+        final KeyedTask task;
+        final int index;
+
+        Job(KeyedTask task, int index) {
+            this.task = task;
+            this.index = index;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package org.multiverse.transactional.executors;
+
+import org.multiverse.api.Transaction;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A task with a declared set of keys that is executed by the {@link DeterministicBatchExecutor}. The keys
+ * identify everything the task reads or writes (for example the account numbers of a transfer). Two tasks
+ * conflict if their key sets overlap.
+ * <p/>
+ * The correctness of the execution depends on complete key declarations. If a task reads or writes something that
+ * isn't declared, it could run in parallel with a task it conflicts with. The outcome then is not deterministic
+ * anymore, and with the default transactions of the DeterministicBatchExecutor (no read tracking, write skew
+ * allowed) a conflict between a read and a write is not detected at all.
+ *
+ * @author Peter Veentjer.
+ */
+public abstract class KeyedTask {
+
+    private final Set<Object> keys;
+
+    /**
+     * Creates a KeyedTask with the given keys.
+     *
+     * @param keys the keys of the task.
+     * @throws NullPointerException if keys is null.
+     */
+    public KeyedTask(Object... keys) {
+        this(Arrays.asList(keys));
+    }
+
+    /**
+     * Creates a KeyedTask with the given keys.
+     *
+     * @param keys the keys of the task.
+     * @throws NullPointerException if keys is null.
+     */
+    public KeyedTask(Collection<?> keys) {
+        if (keys == null) {
+            throw new NullPointerException();
+        }
+
+        this.keys = Collections.unmodifiableSet(new HashSet<Object>(keys));
+    }
+
+    /**
+     * Returns an unmodifiable set containing the declared keys of this task.
+     *
+     * @return the declared keys.
+     */
+    public final Set<Object> getKeys() {
+        return keys;
+    }
+
+    /**
+     * Executes the task.
+     *
+     * @param tx the Transaction the task is executed in.
+     * @throws Exception if the task failed.
+     */
+    public abstract void execute(Transaction tx) throws Exception;
+}
@@ -0,0 +1,359 @@
+package org.multiverse.transactional.executors;
+
+import org.multiverse.api.Stm;
+import org.multiverse.api.Transaction;
+import org.multiverse.api.TransactionConfiguration;
+import org.multiverse.api.TransactionFactory;
+import org.multiverse.api.exceptions.ControlFlowError;
+import org.multiverse.api.programmatic.ProgrammaticLongRef;
+import org.multiverse.templates.InvisibleCheckedException;
+import org.multiverse.templates.TransactionBoilerplate;
+import org.multiverse.templates.TransactionalCallable;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.lang.String.format;
+import static org.multiverse.api.ThreadLocalTransaction.clearThreadLocalTransaction;
+import static org.multiverse.api.ThreadLocalTransaction.setThreadLocalTransaction;
+
+/**
+ * Executes the iterations of a loop in parallel as transactions, but commits them strictly in the order of the
+ * iterations. So the outcome is the same as executing the loop sequentially (deterministic parallelism).
+ * <p/>
+ * <h3>How it works</h3>
+ * A number of workers take the next iteration, execute it speculatively in a new transaction and wait till it is
+ * the turn of that iteration to commit. If the iteration read something that was changed by an earlier iteration
+ * after its transaction started, the commit fails with a write skew conflict and the iteration is executed again.
+ * Since all earlier iterations have committed at that moment, the re-execution sees their changes. So loops
+ * where the iterations rarely conflict (like a replay of a ledger on different accounts) are executed with almost
+ * no re-executions.
+ * <p/>
+ * To make sure the reads of an iteration are always validated, even if the iteration doesn't write anything, each
+ * worker writes the index of the iteration to its own commit marker. That is why the transactions need to be
+ * update transactions with read tracking enabled and write skew not allowed.
+ * <p/>
+ * <h3>Failures</h3>
+ * If an iteration throws an exception or an error, it is executed again when it is its turn (it could have been
+ * caused by an inconsistent view on earlier iterations). If it fails again, the loop is stopped and the throwable
+ * is thrown to the caller. All iterations before the failing iteration are committed, none of the iterations after
+ * it are.
+ * <p/>
+ * <h3>Threads</h3>
+ * The iterations are executed on the provided {@link Executor} (for example a {@link TransactionalThreadPoolExecutor}
+ * or a {@link java.util.concurrent.ThreadPoolExecutor}). The Executor should be able to run at least 'parallelism'
+ * tasks concurrently. The thread that calls the execute method waits till the loop completes.
+ * <p/>
+ * SpeculativeLoopExecutor is thread-safe.
+ *
+ * @author Peter Veentjer.
+ */
+public final class SpeculativeLoopExecutor {
+
+    private final TransactionFactory txFactory;
+    private final Executor executor;
+    private final int parallelism;
+
+    /**
+     * Creates a SpeculativeLoopExecutor that creates a suitable TransactionFactory on the provided stm.
+     *
+     * @param stm         the Stm to execute the iterations on.
+     * @param executor    the Executor used to execute the iterations.
+     * @param parallelism the maximum number of iterations that are executed in parallel.
+     * @throws NullPointerException     if stm or executor is null.
+     * @throws IllegalArgumentException if parallelism is smaller than 1.
+     */
+    public SpeculativeLoopExecutor(Stm stm, Executor executor, int parallelism) {
+        this(stm.getTransactionFactoryBuilder()
+                .setReadonly(false)
+                .setReadTrackingEnabled(true)
+                .setWriteSkewAllowed(false)
+                .setSpeculativeConfigurationEnabled(false)
+                .setFamilyName(SpeculativeLoopExecutor.class.getName())
+                .build(), executor, parallelism);
+    }
+
+    /**
+     * Creates a SpeculativeLoopExecutor.
+     *
+     * @param txFactory   the TransactionFactory used to create the transactions for the iterations.
+     * @param executor    the Executor used to execute the iterations.
+     * @param parallelism the maximum number of iterations that are executed in parallel.
+     * @throws NullPointerException     if txFactory or executor is null.
+     * @throws IllegalArgumentException if parallelism is smaller than 1, or if the transactions created by the
+     *                                  txFactory are readonly, don't track reads or allow write skew.
+     */
+    public SpeculativeLoopExecutor(TransactionFactory txFactory, Executor executor, int parallelism) {
+        if (txFactory == null || executor == null) {
+            throw new NullPointerException();
+        }
+
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism can't be smaller than 1, parallelism was " + parallelism);
+        }
+
+        TransactionConfiguration config = txFactory.getTransactionConfiguration();
+        if (config.isReadonly() || !config.isReadTrackingEnabled() || config.isWriteSkewAllowed()) {
+            String msg = format("TransactionFactory with familyName '%s' should create update transactions with " +
+                    "read tracking enabled and write skew not allowed", config.getFamilyName());
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.txFactory = txFactory;
+        this.executor = executor;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Returns the maximum number of iterations that are executed in parallel.
+     *
+     * @return the parallelism.
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Executes the iterations from (inclusive) till to (exclusive) and waits till all of them have committed. The
+     * wait can't be interrupted.
+     *
+     * @param from the index of the first iteration (inclusive).
+     * @param to   the index of the last iteration (exclusive).
+     * @param body the body of the loop.
+     * @throws NullPointerException     if body is null.
+     * @throws IllegalArgumentException if from is larger than to.
+     * @throws InvisibleCheckedException if an iteration failed with a checked exception. Unchecked exceptions and
+     *                                  errors are rethrown as is.
+     */
+    public void execute(int from, int to, TransactionalLoopBody body) {
+        if (body == null) {
+            throw new NullPointerException();
+        }
+
+        if (from > to) {
+            throw new IllegalArgumentException(format("from %s can't be larger than to %s", from, to));
+        }
+
+        if (from == to) {
+            return;
+        }
+
+        int workerCount = Math.min(parallelism, to - from);
+        Loop loop = new Loop(from, to, body, workerCount);
+        for (int k = 0; k < workerCount; k++) {
+            executor.execute(loop.new Worker(createCommitMarker()));
+        }
+
+        loop.awaitCompletion();
+
+        Throwable failure = loop.failure;
+        if (failure != null) {
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            } else if (failure instanceof Error) {
+                throw (Error) failure;
+            } else {
+                throw new InvisibleCheckedException((Exception) failure);
+            }
+        }
+    }
+
+    private ProgrammaticLongRef createCommitMarker() {
+        return txFactory.getStm().getProgrammaticRefFactoryBuilder().build().atomicCreateLongRef(-1);
+    }
+
+    private final class Loop {
+
+        private final AtomicInteger nextIteration;
+        private final int to;
+        private final TransactionalLoopBody body;
+        private final CountDownLatch completedLatch;
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition turnCondition = lock.newCondition();
+
+        //guarded by the lock
+        private int nextToCommit;
+        //guarded by the lock
+        private Throwable failure;
+
+        Loop(int from, int to, TransactionalLoopBody body, int workerCount) {
+            this.nextIteration = new AtomicInteger(from);
+            this.nextToCommit = from;
+            this.to = to;
+            this.body = body;
+            this.completedLatch = new CountDownLatch(workerCount);
+        }
+
+        void awaitCompletion() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    completedLatch.await();
+                    break;
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Waits till it is the turn of the iteration to commit.
+         *
+         * @param iteration the iteration that wants to commit.
+         * @return true if it is the turn of the iteration, false if the loop has failed.
+         */
+        boolean awaitTurn(int iteration) {
+            lock.lock();
+            try {
+                while (failure == null && nextToCommit != iteration) {
+                    turnCondition.awaitUninterruptibly();
+                }
+                return failure == null;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void signalCommitted() {
+            lock.lock();
+            try {
+                nextToCommit++;
+                turnCondition.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void signalFailure(Throwable cause) {
+            lock.lock();
+            try {
+                if (failure == null) {
+                    failure = cause;
+                }
+                turnCondition.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        boolean hasFailed() {
+            lock.lock();
+            try {
+                return failure != null;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private final class Worker implements Runnable {
+
+            private final ProgrammaticLongRef commitMarker;
+
+            Worker(ProgrammaticLongRef commitMarker) {
+                this.commitMarker = commitMarker;
+            }
+
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        int iteration = nextIteration.getAndIncrement();
+                        if (iteration >= to || hasFailed()) {
+                            return;
+                        }
+
+                        try {
+                            if (!execute(iteration)) {
+                                return;
+                            }
+                        } catch (Throwable ex) {
+                            //the other workers are waiting for this iteration, so they need to be notified. Else
+                            //they would wait forever.
+                            signalFailure(ex);
+                            return;
+                        }
+                    }
+                } finally {
+                    completedLatch.countDown();
+                }
+            }
+
+            /**
+             * Executes and commits a single iteration.
+             *
+             * @param iteration the iteration to execute.
+             * @return true if the iteration was committed, false if the loop has failed.
+             * @throws Exception if the iteration failed when it was its turn.
+             */
+            private boolean execute(int iteration) throws Exception {
+                Transaction tx = speculate(iteration);
+
+                if (!awaitTurn(iteration)) {
+                    if (tx != null) {
+                        tx.abort();
+                    }
+                    return false;
+                }
+
+                commit(tx, iteration);
+                signalCommitted();
+                return true;
+            }
+
+            /**
+             * Executes the iteration without committing it.
+             *
+             * @param iteration the iteration to execute.
+             * @return the active transaction, or null if the speculative execution failed.
+             */
+            private Transaction speculate(int iteration) {
+                Transaction tx = txFactory.start();
+                setThreadLocalTransaction(tx);
+                try {
+                    body.execute(tx, iteration);
+                    commitMarker.set(tx, iteration);
+                    return tx;
+                } catch (ControlFlowError ignore) {
+                    //a conflict or a retry; it will be dealt with when it is the turn of the iteration.
+                } catch (Throwable ignore) {
+                    //could be caused by an inconsistent view (also an error like a StackOverflowError); it will be
+                    //executed again when it is its turn.
+                } finally {
+                    clearThreadLocalTransaction();
+                }
+
+                tx.abort();
+                return null;
+            }
+
+            private void commit(Transaction tx, final int iteration) throws Exception {
+                if (tx != null) {
+                    try {
+                        tx.commit();
+                        return;
+                    } catch (ControlFlowError conflict) {
+                        //an earlier iteration (or some other transaction) has changed what this iteration has
+                        //read, so it needs to be executed again.
+                    }
+                }
+
+                //all earlier iterations are committed, so the re-execution sees their changes.
+                new TransactionBoilerplate(txFactory).executeChecked(new TransactionalCallable<Object>() {
+                    @Override
+                    public Object call(Transaction tx) throws Exception {
+                        body.execute(tx, iteration);
+                        return null;
+                    }
+                });
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package org.multiverse.transactional.executors;
+
+import org.multiverse.api.Transaction;
+
+/**
+ * The body of a loop that is executed by the {@link SpeculativeLoopExecutor}. Each iteration is executed in its own
+ * transaction. The same iteration can be executed more than once (if it conflicts with an earlier iteration), so
+ * the body should not have side effects outside of the transaction.
+ *
+ * @author Peter Veentjer.
+ */
+public interface TransactionalLoopBody {
+
+    /**
+     * Executes a single iteration of the loop.
+     *
+     * @param tx        the Transaction the iteration is executed in.
+     * @param iteration the index of the iteration.
+     * @throws Exception if the iteration failed. When this happens, the loop is stopped.
+     */
+    void execute(Transaction tx, int iteration) throws Exception;
+}
@@ -5,6 +5,7 @@ import org.multiverse.annotations.TransactionalObject;
 import org.multiverse.api.Transaction;
 import org.multiverse.api.lifecycle.TransactionLifecycleEvent;
 import org.multiverse.api.lifecycle.TransactionLifecycleListener;
+import org.multiverse.transactional.collections.TransactionalLinkedBlockingQueue;
 import org.multiverse.transactional.collections.TransactionalLinkedList;
 import org.multiverse.transactional.collections.TransactionalQueue;
 
@@ -67,7 +68,7 @@ public final class TransactionalThreadPoolExecutor extends AbstractExecutorServi
      * memory instead of rejecting tasks.
      */
     public TransactionalThreadPoolExecutor() {
-        this(new TransactionalLinkedList<Runnable>(1000 * 1000, true), 1);
+        this(new TransactionalLinkedBlockingQueue<Runnable>(1000 * 1000, true), 1);
     }
 
     /**
@@ -80,7 +81,7 @@ public final class TransactionalThreadPoolExecutor extends AbstractExecutorServi
      * @throws IllegalArgumentException if poolSize smaller than 0.
      */
     public TransactionalThreadPoolExecutor(int poolSize) {
-        this(new TransactionalLinkedList<Runnable>(1000 * 1000, true), poolSize);
+        this(new TransactionalLinkedBlockingQueue<Runnable>(1000 * 1000, true), poolSize);
     }
 
     /**
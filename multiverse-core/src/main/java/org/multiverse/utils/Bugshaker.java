@@ -26,6 +26,10 @@ public class Bugshaker {
     /**
      * Delays a number of microseconds. Having a delay smaller than a microsecond doesn't provide
      * value since the minimum delay is a few microseconds.
+     * <p/>
+     * The delay is not shortened by a pending unpark of the thread (for example left behind by a latch) or by
+     * a spurious wakeup; the thread parks again until the delay has passed. An interrupt does end the delay
+     * (the interrupt status is not cleared).
      *
      * @param delayUs the number of microseconds to delay.
      */
@@ -34,8 +38,11 @@ public class Bugshaker {
             return;
         }
 
-        long nanos = delayUs * 1000;
-        LockSupport.parkNanos(nanos);
+        long deadlineNs = System.nanoTime() + delayUs * 1000;
+        long remainingNs;
+        while ((remainingNs = deadlineNs - System.nanoTime()) > 0 && !Thread.currentThread().isInterrupted()) {
+            LockSupport.parkNanos(remainingNs);
+        }
     }
 
     //we don't want any instances
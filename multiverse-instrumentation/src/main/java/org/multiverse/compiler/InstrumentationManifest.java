@@ -0,0 +1,242 @@
+package org.multiverse.compiler;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+import static org.multiverse.utils.IOUtils.closeQuietly;
+
+/**
+ * The InstrumentationManifest keeps track of the classes the {@link MultiverseCompiler} has instrumented, so that
+ * classes that have not changed since the last run can be skipped.
+ * <p/>
+ * For every class the manifest contains the hash of the bytecode written by the compiler and the hashes of the
+ * classes (in the same target directory) its instrumentation depended on. A class is up to date if its current
+ * bytecode and the current bytecode of all its dependencies still match these hashes. Dependencies outside
+ * the target directory (the jars on the classpath) are not tracked.
+ * <p/>
+ * The manifest is bound to the name and version of the Instrumentor; if another Instrumentor is used, all
+ * entries are discarded.
+ * <p/>
+ * The manifest is a simple text file: the first line contains the instrumentor, every other line contains
+ * a class followed by its hash and the dependencies with their hashes:
+ * <pre>
+ * instrumentor AlphaStmInstrumentor-0.6
+ * com/Foo 3f2a.. com/Bar=9c01.. com/Baz=77e4..
+ * </pre>
+ * <p/>
+ * The InstrumentationManifest is threadsafe.
+ *
+ * @author Peter Veentjer
+ */
+public final class InstrumentationManifest {
+
+    private final static String INSTRUMENTOR = "instrumentor";
+
+    /**
+     * Loads the InstrumentationManifest from a file. If the file doesn't exist, can't be read or was written for
+     * a different instrumentor, an empty InstrumentationManifest is returned.
+     *
+     * @param file         the file containing the manifest.
+     * @param instrumentor the name and version of the instrumentor that is going to be used.
+     * @return the loaded InstrumentationManifest.
+     * @throws NullPointerException if file or instrumentor is null.
+     */
+    public static InstrumentationManifest load(File file, String instrumentor) {
+        if (file == null || instrumentor == null) {
+            throw new NullPointerException();
+        }
+
+        InstrumentationManifest manifest = new InstrumentationManifest(instrumentor);
+        if (!file.isFile()) {
+            return manifest;
+        }
+
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+
+            String header = reader.readLine();
+            if (header == null || !header.equals(INSTRUMENTOR + ' ' + instrumentor)) {
+                return manifest;
+            }
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] tokens = line.split(" ");
+                if (tokens.length < 2) {
+                    continue;
+                }
+
+                Map<String, String> dependencies = new HashMap<String, String>();
+                for (int k = 2; k < tokens.length; k++) {
+                    int index = tokens[k].lastIndexOf('=');
+                    if (index > 0) {
+                        dependencies.put(tokens[k].substring(0, index), tokens[k].substring(index + 1));
+                    }
+                }
+                manifest.entries.put(tokens[0], new Entry(tokens[1], dependencies));
+            }
+            return manifest;
+        } catch (IOException e) {
+            //a manifest that can't be read only means that all classes are instrumented again.
+            return new InstrumentationManifest(instrumentor);
+        } finally {
+            closeQuietly(reader);
+        }
+    }
+
+    private final String instrumentor;
+    private final Map<String, Entry> entries = Collections.synchronizedMap(new TreeMap<String, Entry>());
+
+    /**
+     * Creates an empty InstrumentationManifest.
+     *
+     * @param instrumentor the name and version of the instrumentor.
+     * @throws NullPointerException if instrumentor is null.
+     */
+    public InstrumentationManifest(String instrumentor) {
+        if (instrumentor == null) {
+            throw new NullPointerException();
+        }
+        this.instrumentor = instrumentor;
+    }
+
+    /**
+     * Checks if a class has been recorded in this manifest.
+     *
+     * @param className the name of the class (in internal form).
+     * @return true if it is recorded, false otherwise.
+     */
+    public boolean contains(String className) {
+        return entries.containsKey(className);
+    }
+
+    /**
+     * Checks if a class is up to date: its bytecode and the bytecode of all its dependencies didn't change since
+     * it was recorded.
+     *
+     * @param className the name of the class (in internal form).
+     * @param hashes    the current hashes of the classes in the target directory (class name to hash). A
+     *                  dependency that is not found, has been removed.
+     * @return true if the class is up to date, false otherwise.
+     */
+    public boolean isUpToDate(String className, Map<String, String> hashes) {
+        Entry entry = entries.get(className);
+        if (entry == null) {
+            return false;
+        }
+
+        if (!entry.hash.equals(hashes.get(className))) {
+            return false;
+        }
+
+        for (Map.Entry<String, String> dependency : entry.dependencies.entrySet()) {
+            if (!dependency.getValue().equals(hashes.get(dependency.getKey()))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Records the result of instrumenting a class.
+     *
+     * @param className    the name of the class (in internal form).
+     * @param hash         the hash of the bytecode of the class after instrumentation.
+     * @param dependencies the hashes of the classes the instrumentation depended on.
+     * @throws NullPointerException if className, hash or dependencies is null.
+     */
+    public void put(String className, String hash, Map<String, String> dependencies) {
+        if (className == null || hash == null || dependencies == null) {
+            throw new NullPointerException();
+        }
+
+        entries.put(className, new Entry(hash, new HashMap<String, String>(dependencies)));
+    }
+
+    /**
+     * Removes all classes that are not in the given set of classes (because they have been removed from the
+     * target directory).
+     *
+     * @param classNames the names of the classes that still exist.
+     */
+    public void retainAll(Set<String> classNames) {
+        entries.keySet().retainAll(classNames);
+    }
+
+    /**
+     * Writes this InstrumentationManifest to a file. The manifest first is written to a temporary file and
+     * then renamed, so a failing compiler never leaves a partially written manifest behind.
+     *
+     * @param file the file to write to.
+     * @throws IOException if something fails while writing.
+     */
+    public void save(File file) throws IOException {
+        File tmpFile = new File(file.getPath() + ".tmp");
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmpFile), "UTF-8"));
+        try {
+            writer.write(INSTRUMENTOR + ' ' + instrumentor + '\n');
+
+            synchronized (entries) {
+                for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                    writer.write(entry.getKey());
+                    writer.write(' ');
+                    writer.write(entry.getValue().hash);
+                    for (Map.Entry<String, String> dependency : entry.getValue().dependencies.entrySet()) {
+                        writer.write(' ');
+                        writer.write(dependency.getKey());
+                        writer.write('=');
+                        writer.write(dependency.getValue());
+                    }
+                    writer.write('\n');
+                }
+            }
+        } finally {
+            closeQuietly(writer);
+        }
+
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Failed to delete old manifest " + file);
+        }
+
+        if (!tmpFile.renameTo(file)) {
+            throw new IOException("Failed to rename " + tmpFile + " to " + file);
+        }
+    }
+
+    /**
+     * Calculates the hash of some bytecode.
+     *
+     * @param bytecode the bytecode to calculate the hash for.
+     * @return the hash in hexadecimal form.
+     */
+    public static String hash(byte[] bytecode) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+
+        byte[] hash = digest.digest(bytecode);
+        StringBuffer sb = new StringBuffer(hash.length * 2);
+        for (byte b : hash) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    private static final class Entry {
+        private final String hash;
+        private final Map<String, String> dependencies;
+
+        private Entry(String hash, Map<String, String> dependencies) {
+            this.hash = hash;
+            this.dependencies = dependencies;
+        }
+    }
+}
@@ -2,16 +2,18 @@ package org.multiverse.compiler;
 
 import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
-import org.multiverse.instrumentation.Clazz;
-import org.multiverse.instrumentation.FileSystemFiler;
-import org.multiverse.instrumentation.Instrumentor;
-import org.multiverse.instrumentation.SystemOutImportantInstrumenterLogger;
+import org.multiverse.instrumentation.*;
 import org.multiverse.instrumentation.asm.AsmUtils;
+import org.multiverse.instrumentation.metadata.ClassMetadata;
+import org.multiverse.instrumentation.metadata.MetadataIndex;
+import org.multiverse.instrumentation.metadata.MetadataRepository;
 import org.objectweb.asm.tree.ClassNode;
 
 import java.io.*;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.*;
+import java.util.concurrent.*;
 
 import static java.lang.String.format;
 import static org.multiverse.utils.SystemOut.println;
@@ -24,6 +26,10 @@ import static org.multiverse.utils.SystemOut.println;
  * <p/>
  * Another advange is that the same Instrumentor can be used for the MultiverseJavaAgent
  * and the MultiverseCompiler.
+ * <p/>
+ * Classes are instrumented in parallel and, if a manifest file is provided, classes that didn't change since the
+ * last run are skipped and classes that did change are instrumented again from their original bytecode. See
+ * {@link #instrument(java.io.File, org.multiverse.instrumentation.Instrumentor, int, java.io.File)}.
  *
  * @author Peter Veentjer
  */
@@ -37,12 +43,13 @@ public final class MultiverseCompiler {
 
     private ClassLoader compilerClassLoader;
 
+    private List<String> originalClassNames;
+
     private void run(MultiverseCompilerArguments cli) {
         println("Multiverse: Starting compiler");
 
         Instrumentor instrumentor = createInstrumentor(cli.instrumentorName);
         File targetDirectory = new File(cli.targetDirectory);
-        compilerClassLoader = new DummyClassLoader(targetDirectory, MultiverseCompiler.class.getClassLoader());
 
         if (!targetDirectory.isDirectory()) {
             println("Multiverse: Target directory '%s' is not found, skipping instrumentation", targetDirectory);
@@ -65,12 +72,20 @@ public final class MultiverseCompiler {
                 instrumentor.getName(),
                 instrumentor.getVersion());
 
-        instrumentor.setFiler(new FileSystemFiler(targetDirectory));
+        if (cli.threadCount < 1) {
+            String msg = format("Multiverse: Thread count should be at least 1, found %s", cli.threadCount);
+            throw new IllegalArgumentException(msg);
+        }
 
         println("Multiverse: Compiler started successfully");
-        println("Multiverse: Instrumenting targetDirectory %s", targetDirectory);
+        println("Multiverse: Instrumenting targetDirectory %s using %s threads", targetDirectory, cli.threadCount);
+
+        File manifestFile = cli.manifestFile == null ? null : new File(cli.manifestFile);
+        instrument(targetDirectory, instrumentor, cli.threadCount, manifestFile);
 
-        applyRecursive(targetDirectory, instrumentor);
+        if (cli.writeMetadataIndex) {
+            writeMetadataIndex(targetDirectory, instrumentor);
+        }
     }
 
     private static MultiverseCompilerArguments createCli(String[] args) {
@@ -87,48 +102,331 @@ public final class MultiverseCompiler {
         }
     }
 
-    public void applyRecursive(File directory, Instrumentor instrumentor) {
+    /**
+     * Instruments all classes in the target directory.
+     * <p/>
+     * The original bytecode of all classes is read before anything is instrumented, and the metadata of these
+     * classes is always extracted from these originals. So classes don't depend on the order in which they are
+     * instrumented and can be instrumented in parallel, sharing the (threadsafe)
+     * {@link org.multiverse.instrumentation.metadata.MetadataRepository} of the Instrumentor. Instrumented classes
+     * are written to a temporary file first and then renamed, so a failing compiler doesn't leave partially
+     * written class files behind.
+     * <p/>
+     * If a manifest file is provided, classes that didn't change since the last run (and of which the classes
+     * they depend on didn't change either) are skipped. See the {@link InstrumentationManifest}. The original
+     * bytecode of every instrumented class is kept in the {@link OriginalBytecodeStore} of the manifest, so a
+     * class that already is instrumented but depends on a changed class is instrumented again from its original.
+     * If that original is not found, the instrumentation fails because the class can't be brought up to date
+     * without a clean build.
+     *
+     * @param targetDirectory the directory containing the classes to instrument.
+     * @param instrumentor    the Instrumentor that does the actual instrumentation.
+     * @param threadCount     the number of threads used for instrumenting.
+     * @param manifestFile    the file containing the InstrumentationManifest, or null if every class should be
+     *                        instrumented.
+     * @throws RuntimeException if the instrumentation of one or more classes failed.
+     * @throws CompileException  if a manifest file is provided and a class that already is instrumented needs to
+     *                           be instrumented again, but its original bytecode is not found.
+     */
+    public void instrument(File targetDirectory, Instrumentor instrumentor, int threadCount, File manifestFile) {
+        Map<String, byte[]> current = new TreeMap<String, byte[]>();
+        Map<String, File> files = new HashMap<String, File>();
+        loadRecursive(targetDirectory, "", current, files);
+        originalClassNames = new LinkedList<String>(current.keySet());
+
+        InstrumentationManifest manifest = null;
+        OriginalBytecodeStore originalStore = null;
+        Map<String, String> hashes = null;
+        Map<String, byte[]> originals = current;
+        if (manifestFile != null) {
+            String instrumentorId = instrumentor.getName() + '-' + instrumentor.getVersion();
+            manifest = InstrumentationManifest.load(manifestFile, instrumentorId);
+            originalStore = OriginalBytecodeStore.forManifest(manifestFile);
+            hashes = hash(current);
+            originals = restoreOriginals(current, hashes, originalStore);
+        }
+
+        compilerClassLoader = new DummyClassLoader(
+                targetDirectory, originals, MultiverseCompiler.class.getClassLoader());
+
+        //the bytecode of all classes after this run, used for the hashes in the manifest.
+        final Map<String, byte[]> results = new ConcurrentHashMap<String, byte[]>(current);
+        final Map<String, Set<String>> dependencies = new ConcurrentHashMap<String, Set<String>>();
+
+        instrumentor.setFiler(new RecordingFiler(new FileSystemFiler(targetDirectory), results));
+
+        List<Future> futures = new LinkedList<Future>();
+        List<String> classNames = new LinkedList<String>();
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        int skipped = 0;
+        try {
+            for (Map.Entry<String, byte[]> entry : originals.entrySet()) {
+                String className = entry.getKey();
+
+                if (manifest != null) {
+                    if (manifest.isUpToDate(className, hashes)) {
+                        skipped++;
+                        continue;
+                    }
+
+                    ensureNotInstrumented(className, entry.getValue(), originalStore);
+                }
+
+                Runnable task = new InstrumentTask(
+                        className, entry.getValue(), files.get(className), instrumentor,
+                        originalStore, results, dependencies);
+                futures.add(executor.submit(task));
+                classNames.add(className);
+            }
+
+            awaitCompletion(futures, classNames);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (manifest != null) {
+            println("Multiverse: Skipped %s unchanged classes", skipped);
+            updateManifest(manifest, manifestFile, results, dependencies);
+            originalStore.retainAll(new HashSet<String>(hash(results).values()));
+        }
+    }
+
+    /**
+     * Replaces the bytecode of every class that was instrumented in a previous run by its original bytecode.
+     * Classes that changed since then (because javac compiled them again) are not found in the store and are
+     * originals themselves.
+     */
+    private static Map<String, byte[]> restoreOriginals(Map<String, byte[]> current, Map<String, String> hashes,
+                                                        OriginalBytecodeStore originalStore) {
+        Map<String, byte[]> originals = new TreeMap<String, byte[]>();
+        for (Map.Entry<String, byte[]> entry : current.entrySet()) {
+            byte[] original = originalStore.find(hashes.get(entry.getKey()));
+            originals.put(entry.getKey(), original == null ? entry.getValue() : original);
+        }
+        return originals;
+    }
+
+    private static void ensureNotInstrumented(String className, byte[] bytecode, OriginalBytecodeStore originalStore) {
+        ClassNode classNode = AsmUtils.loadAsClassNode(bytecode);
+        if (AsmUtils.getVisibleAnnotation(classNode, InstrumentationStamp.class) == null) {
+            return;
+        }
+
+        String msg = format("Multiverse: Class %s needs to be instrumented again because it or one of the classes " +
+                "it depends on changed, but it already is instrumented and its original bytecode is not found in %s. " +
+                "A clean build is needed", className, originalStore.getDirectory());
+        throw new CompileException(msg);
+    }
+
+    /**
+     * Writes a {@link MetadataIndex} containing the metadata of all classes that existed in the target directory
+     * before they were instrumented. The index is stored as the resource {@link MetadataIndex#RESOURCE} so the
+     * MultiverseJavaAgent finds it together with the classes.
+     * <p/>
+     * Should be called after {@link #instrument(java.io.File, org.multiverse.instrumentation.Instrumentor, int,
+     * java.io.File)}.
+     *
+     * @param targetDirectory the directory containing the classes.
+     * @param instrumentor    the Instrumentor that instrumented the classes.
+     */
+    public void writeMetadataIndex(File targetDirectory, Instrumentor instrumentor) {
+        MetadataRepository metadataRepository = instrumentor.getMetadataRepository();
+        List<ClassMetadata> classes = new LinkedList<ClassMetadata>();
+        for (String className : originalClassNames) {
+            classes.add(metadataRepository.loadClassMetadata(compilerClassLoader, className));
+        }
+
+        File file = new File(targetDirectory, MetadataIndex.RESOURCE);
+        File tmpFile = new File(file.getPath() + ".tmp");
+        try {
+            file.getParentFile().mkdirs();
+            OutputStream out = new FileOutputStream(tmpFile);
+            try {
+                MetadataIndex.write(classes, out);
+            } finally {
+                out.close();
+            }
+
+            if (!tmpFile.renameTo(file) && !(file.delete() && tmpFile.renameTo(file))) {
+                throw new IOException(format("Failed to replace %s by %s", file, tmpFile));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(format("Multiverse: Failed to write metadata index %s", file), e);
+        }
+
+        println("Multiverse: Written metadata index of %s classes to %s", classes.size(), file);
+    }
+
+    private static void awaitCompletion(List<Future> futures, List<String> classNames) {
+        RuntimeException failure = null;
+        Iterator<String> classNameIt = classNames.iterator();
+        for (Future future : futures) {
+            String className = classNameIt.next();
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Multiverse: Interrupted while instrumenting", e);
+            } catch (ExecutionException e) {
+                println("Multiverse: Failed to instrument class %s", className);
+                if (failure == null) {
+                    String msg = format("Multiverse: Failed to instrument class %s", className);
+                    failure = new RuntimeException(msg, e.getCause());
+                }
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static void updateManifest(InstrumentationManifest manifest, File manifestFile,
+                                       Map<String, byte[]> results, Map<String, Set<String>> dependencies) {
+        Map<String, String> hashes = hash(results);
+
+        for (Map.Entry<String, Set<String>> entry : dependencies.entrySet()) {
+            Map<String, String> dependencyHashes = new HashMap<String, String>();
+            for (String dependency : entry.getValue()) {
+                //only dependencies in the target directory are tracked.
+                String hash = hashes.get(dependency);
+                if (hash != null && !dependency.equals(entry.getKey())) {
+                    dependencyHashes.put(dependency, hash);
+                }
+            }
+
+            manifest.put(entry.getKey(), hashes.get(entry.getKey()), dependencyHashes);
+        }
+
+        manifest.retainAll(hashes.keySet());
+
+        try {
+            manifest.save(manifestFile);
+        } catch (IOException e) {
+            throw new RuntimeException(format("Multiverse: Failed to write manifest %s", manifestFile), e);
+        }
+    }
+
+    private static Map<String, String> hash(Map<String, byte[]> classes) {
+        Map<String, String> hashes = new HashMap<String, String>();
+        for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+            hashes.put(entry.getKey(), InstrumentationManifest.hash(entry.getValue()));
+        }
+        return hashes;
+    }
+
+    private static void loadRecursive(File directory, String path, Map<String, byte[]> originals,
+                                      Map<String, File> files) {
         for (File file : directory.listFiles()) {
+            String name = file.getName();
             if (file.isDirectory()) {
-                applyRecursive(file, instrumentor);
-            } else if (file.getName().endsWith(".class")) {
-                transform(file, instrumentor);
+                loadRecursive(file, path + name + '/', originals, files);
+            } else if (name.endsWith(".class")) {
+                String className = path + name.substring(0, name.length() - ".class".length());
+                originals.put(className, AsmUtils.loadAsBytecode(file));
+                files.put(className, file);
             }
         }
     }
 
-    private void transform(File file, Instrumentor clazzCompiler) {
-        Clazz clazz = load(file);
-        Clazz result = clazzCompiler.process(clazz);
-        write(file, result);
+    /**
+     * Instruments a single class.
+     */
+    private class InstrumentTask implements Runnable {
+        private final String className;
+        private final byte[] bytecode;
+        private final File file;
+        private final Instrumentor instrumentor;
+        private final OriginalBytecodeStore originalStore;
+        private final Map<String, byte[]> results;
+        private final Map<String, Set<String>> dependencies;
+
+        InstrumentTask(String className, byte[] bytecode, File file, Instrumentor instrumentor,
+                       OriginalBytecodeStore originalStore, Map<String, byte[]> results,
+                       Map<String, Set<String>> dependencies) {
+            this.className = className;
+            this.bytecode = bytecode;
+            this.file = file;
+            this.instrumentor = instrumentor;
+            this.originalStore = originalStore;
+            this.results = results;
+            this.dependencies = dependencies;
+        }
+
+        @Override
+        public void run() {
+            Clazz clazz = new Clazz(className);
+            clazz.setBytecode(bytecode);
+            clazz.setClassLoader(compilerClassLoader);
+
+            MetadataRepository metadataRepository = instrumentor.getMetadataRepository();
+            Set<String> previous = metadataRepository.startRecordingDependencies();
+            Clazz result;
+            try {
+                result = instrumentor.process(clazz);
+            } finally {
+                dependencies.put(className, metadataRepository.stopRecordingDependencies(previous));
+            }
+
+            if (result == clazz) {
+                //the class was not changed, so the class file is the original.
+                return;
+            }
+
+            if (originalStore != null) {
+                //the original is stored before the class file is replaced, so an instrumented class file
+                //never exists without its original.
+                originalStore.store(InstrumentationManifest.hash(result.getBytecode()), bytecode);
+            }
+
+            write(file, result);
+            results.put(className, result.getBytecode());
+        }
     }
 
-    private Clazz load(File file) {
-        ClassNode node = AsmUtils.loadAsClassNode(file);
-        Clazz clazz = new Clazz(node.name);
-        clazz.setBytecode(AsmUtils.toBytecode(node));
-        clazz.setClassLoader(compilerClassLoader);
-        return clazz;
+    /**
+     * A {@link Filer} that records the created classes so they are included in the manifest.
+     */
+    private static class RecordingFiler implements Filer {
+        private final Filer target;
+        private final Map<String, byte[]> results;
+
+        RecordingFiler(Filer target, Map<String, byte[]> results) {
+            this.target = target;
+            this.results = results;
+        }
+
+        @Override
+        public void createClassFile(Clazz clazz) {
+            target.createClassFile(clazz);
+            results.put(clazz.getName(), clazz.getBytecode());
+        }
     }
 
     class DummyClassLoader extends ClassLoader {
         private final File rootDirectory;
+        private final Map<String, byte[]> originals;
 
-        protected DummyClassLoader(File rootDirectory, ClassLoader parent) {
+        protected DummyClassLoader(File rootDirectory, Map<String, byte[]> originals, ClassLoader parent) {
             super(parent);
             this.rootDirectory = rootDirectory;
+            this.originals = originals;
         }
 
         public Class findClass(String className) throws ClassNotFoundException {
-            String filename = className.replace('.', '/') + ".class";
-            File file = new File(rootDirectory, filename);
+            byte[] bytecode = originals.get(className.replace('.', '/'));
+            if (bytecode == null) {
+                String filename = className.replace('.', '/') + ".class";
+                File file = new File(rootDirectory, filename);
+
+                if (!file.exists()) {
+                    return super.findClass(className);
+                }
 
-            if (!file.exists()) {
-                return super.findClass(className);
+                ClassNode node = AsmUtils.loadAsClassNode(file);
+                bytecode = AsmUtils.toBytecode(node);
             }
 
-            ClassNode node = AsmUtils.loadAsClassNode(file);
-            byte[] bytecode = AsmUtils.toBytecode(node);
             return defineClass(className, bytecode, 0, bytecode.length, null);
         }
 
@@ -142,6 +440,16 @@ public final class MultiverseCompiler {
                 String end = resource.substring(indexOfLastDot);
                 filename = begin + end;
             }
+
+            //the original bytecode is used, so the result doesn't depend on classes that already have
+            //been instrumented (or are being written) by other threads.
+            if (filename.endsWith(".class")) {
+                byte[] bytecode = originals.get(filename.substring(0, filename.length() - ".class".length()));
+                if (bytecode != null) {
+                    return new ByteArrayInputStream(bytecode);
+                }
+            }
+
             File file = new File(rootDirectory, filename);
 
             if (file.exists()) {
@@ -157,10 +465,19 @@ public final class MultiverseCompiler {
     }
 
     public void write(File file, Clazz clazz) {
+        File tmpFile = new File(file.getPath() + ".tmp");
         try {
-            FileOutputStream out = new FileOutputStream(file);
-            out.write(clazz.getBytecode());
-            out.close();
+            FileOutputStream out = new FileOutputStream(tmpFile);
+            try {
+                out.write(clazz.getBytecode());
+            } finally {
+                out.close();
+            }
+
+            //on some platforms a rename doesn't replace an existing file.
+            if (!tmpFile.renameTo(file) && !(file.delete() && tmpFile.renameTo(file))) {
+                throw new IOException(format("Failed to replace %s by %s", file, tmpFile));
+            }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
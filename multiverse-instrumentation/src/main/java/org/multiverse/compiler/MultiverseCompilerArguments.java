@@ -21,6 +21,19 @@ public class MultiverseCompilerArguments {
             "org.multiverse.stms.alpha.instrumentation.AlphaStmInstrumentor", required = false)
     public String instrumentorName = "org.multiverse.stms.alpha.instrumentation.AlphaStmInstrumentor";
 
+    @Option(name = "-t", usage = "the number of threads used for instrumenting. Defaults to the number of " +
+            "processors", required = false)
+    public int threadCount = Runtime.getRuntime().availableProcessors();
+
+    @Option(name = "-m", usage = "the manifest file used to skip classes that didn't change since the last run. " +
+            "The original bytecode of the instrumented classes is kept in the directory <manifest>.originals. " +
+            "If not set, all classes are instrumented", required = false)
+    public String manifestFile;
+
+    @Option(name = "-x", usage = "write a metadata index of the classes to META-INF/multiverse/metadata.idx in " +
+            "the target directory, so the javaagent doesn't need to parse them again", required = false)
+    public boolean writeMetadataIndex;
+
     @Argument(required = true, index = 0, metaVar = "TARGET_DIRECTORY",
             usage = "target directory with the classes to transform")
     public String targetDirectory;
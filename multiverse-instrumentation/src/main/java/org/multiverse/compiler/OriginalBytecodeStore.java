@@ -0,0 +1,145 @@
+package org.multiverse.compiler;
+
+import java.io.*;
+import java.util.Set;
+
+import static java.lang.String.format;
+import static org.multiverse.utils.IOUtils.closeQuietly;
+
+/**
+ * The OriginalBytecodeStore keeps the original (not instrumented) bytecode of the classes the
+ * {@link MultiverseCompiler} has instrumented, so that a class that already is instrumented can be instrumented
+ * again when one of the classes it depends on changed.
+ * <p/>
+ * The original bytecode is stored in a directory next to the {@link InstrumentationManifest}, in a file named after
+ * the hash of the instrumented bytecode. So the original of a class file is found by the hash of its current
+ * content, and a class that has been compiled again by javac (and so has a different hash) never is mixed up with
+ * the original of the instrumented class it replaced.
+ * <p/>
+ * The OriginalBytecodeStore is threadsafe.
+ *
+ * @author Peter Veentjer
+ */
+public final class OriginalBytecodeStore {
+
+    /**
+     * Creates the OriginalBytecodeStore that belongs to an InstrumentationManifest file. The originals are
+     * stored in the directory '&lt;manifest&gt;.originals' next to the manifest.
+     *
+     * @param manifestFile the file containing the InstrumentationManifest.
+     * @return the created OriginalBytecodeStore.
+     * @throws NullPointerException if manifestFile is null.
+     */
+    public static OriginalBytecodeStore forManifest(File manifestFile) {
+        return new OriginalBytecodeStore(new File(manifestFile.getPath() + ".originals"));
+    }
+
+    private final File directory;
+
+    /**
+     * Creates an OriginalBytecodeStore.
+     *
+     * @param directory the directory the original bytecode is stored in. It is created when needed.
+     * @throws NullPointerException if directory is null.
+     */
+    public OriginalBytecodeStore(File directory) {
+        if (directory == null) {
+            throw new NullPointerException();
+        }
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the directory the original bytecode is stored in.
+     *
+     * @return the directory.
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Finds the original bytecode of an instrumented class.
+     *
+     * @param hash the hash of the instrumented bytecode.
+     * @return the original bytecode, or null if it isn't found.
+     * @throws RuntimeException if something fails while reading.
+     */
+    public byte[] find(String hash) {
+        File file = new File(directory, hash);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        InputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException(format("Multiverse: Failed to read original bytecode %s", file), e);
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Stores the original bytecode of an instrumented class. The bytecode first is written to a temporary file
+     * and then renamed, so a failing compiler never leaves a partially written original behind.
+     *
+     * @param hash     the hash of the instrumented bytecode.
+     * @param original the original bytecode.
+     * @throws NullPointerException if hash or original is null.
+     * @throws RuntimeException     if something fails while writing.
+     */
+    public void store(String hash, byte[] original) {
+        if (hash == null || original == null) {
+            throw new NullPointerException();
+        }
+
+        File file = new File(directory, hash);
+        File tmpFile = new File(directory, hash + '.' + Thread.currentThread().getId() + ".tmp");
+        try {
+            directory.mkdirs();
+            OutputStream out = new FileOutputStream(tmpFile);
+            try {
+                out.write(original);
+            } finally {
+                out.close();
+            }
+
+            //the same hash always belongs to the same original, so an existing file can be kept.
+            if (!tmpFile.renameTo(file) && !file.isFile()) {
+                throw new IOException(format("Failed to rename %s to %s", tmpFile, file));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(format("Multiverse: Failed to store original bytecode %s", file), e);
+        } finally {
+            tmpFile.delete();
+        }
+    }
+
+    /**
+     * Removes all originals that don't belong to one of the given hashes (because the instrumented class they
+     * belong to has been removed or replaced).
+     *
+     * @param hashes the hashes of the instrumented bytecode that still exists.
+     */
+    public void retainAll(Set<String> hashes) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        for (File file : files) {
+            if (!hashes.contains(file.getName())) {
+                file.delete();
+            }
+        }
+    }
+}
@@ -11,6 +11,14 @@ public interface Environment {
 
     boolean optimize();
 
+    /**
+     * If the instrumented classes should be prepared for profile guided reinstrumentation (see the
+     * {@link org.multiverse.javaagent.ProfileGuidedReinstrumentor}).
+     *
+     * @return true if profiling is enabled, false otherwise.
+     */
+    boolean profilingEnabled();
+
     Filer getFiler();
 
     /**
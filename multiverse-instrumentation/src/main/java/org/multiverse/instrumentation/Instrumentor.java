@@ -1,5 +1,9 @@
 package org.multiverse.instrumentation;
 
+import org.multiverse.api.TransactionFactory;
+import org.multiverse.instrumentation.metadata.MetadataRepository;
+import org.multiverse.instrumentation.metadata.MethodProfile;
+
 import java.io.File;
 
 /**
@@ -105,5 +109,36 @@ public interface Instrumentor {
      */
     Clazz process(Clazz originalClazz);
 
+    /**
+     * Returns the MetadataRepository this Instrumentor uses to look up information about the classes it
+     * instruments.
+     *
+     * @return the MetadataRepository.
+     */
+    MetadataRepository getMetadataRepository();
+
     void setOptimize(boolean optimize);
+
+    /**
+     * Sets if the instrumented classes should be prepared for profile guided reinstrumentation. If enabled, the
+     * shape of the instrumented classes (fields and methods) doesn't depend on the {@link MethodProfile} of the
+     * transactional methods, so the classes can be retransformed once a profile is available.
+     *
+     * @param profilingEnabled true if profiling should be enabled.
+     * @see org.multiverse.javaagent.ProfileGuidedReinstrumentor
+     */
+    void setProfilingEnabled(boolean profilingEnabled);
+
+    boolean isProfilingEnabled();
+
+    /**
+     * Creates a MethodProfile of a transactional method based on what the TransactionFactory of that method has
+     * learned.
+     *
+     * @param transactionFactory the TransactionFactory of the transactional method.
+     * @return the created MethodProfile, or null if this Instrumentor doesn't know how to profile the
+     *         TransactionFactory.
+     * @throws NullPointerException if transactionFactory is null.
+     */
+    MethodProfile createProfile(TransactionFactory transactionFactory);
 }
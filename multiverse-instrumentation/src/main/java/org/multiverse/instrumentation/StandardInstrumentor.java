@@ -1,7 +1,9 @@
 package org.multiverse.instrumentation;
 
+import org.multiverse.api.TransactionFactory;
 import org.multiverse.instrumentation.asm.AsmUtils;
 import org.multiverse.instrumentation.metadata.MetadataRepository;
+import org.multiverse.instrumentation.metadata.MethodProfile;
 
 import java.io.File;
 import java.util.LinkedList;
@@ -24,6 +26,7 @@ public class StandardInstrumentor implements Instrumentor {
     private InstrumenterLogger log = new NullInstrumenterLogger();
     private final String stmName;
     private boolean optimize = false;
+    private boolean profilingEnabled = false;
     private String excluded = "";
     private String included = "";
 
@@ -208,11 +211,41 @@ public class StandardInstrumentor implements Instrumentor {
         this.filer = filer;
     }
 
+    @Override
+    public MetadataRepository getMetadataRepository() {
+        return metadataRepository;
+    }
+
     @Override
     public void setOptimize(boolean optimize) {
         this.optimize = optimize;
     }
 
+    @Override
+    public void setProfilingEnabled(boolean profilingEnabled) {
+        this.profilingEnabled = profilingEnabled;
+    }
+
+    @Override
+    public boolean isProfilingEnabled() {
+        return profilingEnabled;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The StandardInstrumentor doesn't know the TransactionFactories of the stm it instruments for, so null is
+     * returned. Subclasses can override it.
+     */
+    @Override
+    public MethodProfile createProfile(TransactionFactory transactionFactory) {
+        if (transactionFactory == null) {
+            throw new NullPointerException();
+        }
+
+        return null;
+    }
+
     @Override
     public Clazz process(Clazz originalClazz) {
         if (originalClazz.getClassLoader() == null) {
@@ -286,6 +319,11 @@ public class StandardInstrumentor implements Instrumentor {
             return optimize;
         }
 
+        @Override
+        public boolean profilingEnabled() {
+            return profilingEnabled;
+        }
+
         @Override
         public boolean dumpBytecode() {
             return dumpBytecode;
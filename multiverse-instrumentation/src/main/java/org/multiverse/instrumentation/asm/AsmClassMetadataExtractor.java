@@ -81,6 +81,12 @@ public final class AsmClassMetadataExtractor implements ClassMetadataExtractor,
             for (MethodNode methodNode : (List<MethodNode>) classNode.methods) {
                 extractMethodMetadata(classMetadata, methodNode);
             }
+
+            if (classMetadata.isTransactionalObject()) {
+                for (String fieldName : TransactionalArrayFieldAnalyzer.findTransactionalArrayFields(classNode)) {
+                    classMetadata.getFieldMetadata(fieldName).setIsTransactionalArray(true);
+                }
+            }
         }
 
         return classMetadata;
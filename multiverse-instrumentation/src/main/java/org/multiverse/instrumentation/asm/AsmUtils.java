@@ -558,7 +558,8 @@ public final class AsmUtils implements Opcodes {
             return;
         }
 
-        if (!parent.mkdirs()) {
+        //the directories could have been created concurrently by another thread.
+        if (!parent.mkdirs() && !parent.isDirectory()) {
             throw new IOException("Failed to make parent directories for file " + file);
         }
     }
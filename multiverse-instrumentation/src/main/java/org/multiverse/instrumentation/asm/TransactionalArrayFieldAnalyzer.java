@@ -0,0 +1,394 @@
+package org.multiverse.instrumentation.asm;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.*;
+import org.objectweb.asm.tree.analysis.Analyzer;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+import org.objectweb.asm.tree.analysis.SourceInterpreter;
+import org.objectweb.asm.tree.analysis.SourceValue;
+import org.objectweb.asm.tree.analysis.Value;
+
+import java.util.*;
+
+import static org.multiverse.instrumentation.asm.AsmClassMetadataExtractor.hasFieldGranularity;
+import static org.multiverse.instrumentation.asm.AsmClassMetadataExtractor.isExcluded;
+import static org.multiverse.instrumentation.asm.AsmClassMetadataExtractor.isVolatile;
+
+/**
+ * Finds the array fields of a transactional object that can be transformed to a transactional array (like the
+ * {@link org.multiverse.transactional.arrays.TransactionalIntArray}), so the elements are read and written
+ * transactionally.
+ * <p/>
+ * A field qualifies if:
+ * <ol>
+ * <li>it is a private, non static, non volatile field of type int[], long[] or a one dimensional object array
+ * (like an Object[] or String[]) that isn't excluded and doesn't have field granularity</li>
+ * <li>the array never escapes from the object. So the array loaded from the field (directly or through a local
+ * variable) only is used to read or write an element, to get the length, to check for null or to store it in
+ * another qualifying field. And the field only is assigned with null, an array created in the same method (that
+ * is used in the same way) or the array of another qualifying field.</li>
+ * </ol>
+ * If the array escapes (for example it is returned, passed to a method or stored in a field of another object)
+ * the field is not transformed, so the instrumentation doesn't change the behavior of the class.
+ * <p/>
+ * The analysis of a single method (see {@link #analyze(String, MethodNode, Map)}) also is used to find the
+ * instructions that need to be transformed.
+ *
+ * @author Peter Veentjer
+ */
+public final class TransactionalArrayFieldAnalyzer implements Opcodes {
+
+    /**
+     * Returns the internal name of the transactional array a field with the given desc is transformed to.
+     *
+     * @param arrayDesc the desc of the array field.
+     * @return the internal name of the transactional array, or null if the array type is not supported.
+     */
+    public static String getTransactionalArrayName(String arrayDesc) {
+        if (arrayDesc.equals("[I")) {
+            return "org/multiverse/transactional/arrays/TransactionalIntArray";
+        } else if (arrayDesc.equals("[J")) {
+            return "org/multiverse/transactional/arrays/TransactionalLongArray";
+        } else if (arrayDesc.startsWith("[L")) {
+            return "org/multiverse/transactional/arrays/TransactionalObjectArray";
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Finds the fields of a transactional object that can be transformed to a transactional array.
+     *
+     * @param classNode the ClassNode of the transactional object.
+     * @return the names of the fields that can be transformed.
+     */
+    public static Set<String> findTransactionalArrayFields(ClassNode classNode) {
+        Map<String, String> fields = new HashMap<String, String>();
+        for (FieldNode fieldNode : (List<FieldNode>) classNode.fields) {
+            if (isCandidate(fieldNode)) {
+                fields.put(fieldNode.name, fieldNode.desc);
+            }
+        }
+
+        //rejecting a field can cause the rejection of another field (if it stores the array of the rejected field),
+        //so it is repeated until nothing changes.
+        boolean changed = !fields.isEmpty();
+        while (changed) {
+            changed = false;
+            for (MethodNode methodNode : (List<MethodNode>) classNode.methods) {
+                MethodAnalysis analysis = analyze(classNode.name, methodNode, fields);
+                for (String rejected : analysis.getRejectedFields()) {
+                    if (fields.remove(rejected) != null) {
+                        changed = true;
+                    }
+                }
+            }
+        }
+
+        return fields.keySet();
+    }
+
+    private static boolean isCandidate(FieldNode fieldNode) {
+        return AsmUtils.isPrivate(fieldNode.access)
+                && !AsmUtils.isStatic(fieldNode.access)
+                && !isVolatile(fieldNode)
+                && !AsmUtils.isSynthetic(fieldNode.access)
+                && !isExcluded(fieldNode)
+                && !hasFieldGranularity(fieldNode)
+                && getTransactionalArrayName(fieldNode.desc) != null;
+    }
+
+    /**
+     * Analyzes how the arrays of transactional array fields are used by a method.
+     *
+     * @param className  the name of the class containing the fields and the method.
+     * @param methodNode the method to analyze.
+     * @param fields     the names of the transactional array fields mapped to the desc of the array.
+     * @return the MethodAnalysis.
+     */
+    public static MethodAnalysis analyze(String className, MethodNode methodNode, Map<String, String> fields) {
+        MethodAnalysis result = new MethodAnalysis();
+        if (fields.isEmpty() || methodNode.instructions.size() == 0) {
+            return result;
+        }
+
+        UsageRecordingInterpreter interpreter = new UsageRecordingInterpreter();
+        try {
+            new Analyzer(interpreter).analyze(className, methodNode);
+        } catch (AnalyzerException e) {
+            //it can't be determined how the arrays are used.
+            result.rejectedFields.addAll(fields.keySet());
+            return result;
+        }
+
+        //the instructions that place a transactional array on the stack, mapped to the accessed fields.
+        Map<AbstractInsnNode, Set<String>> arrays = new HashMap<AbstractInsnNode, Set<String>>();
+        for (int k = 0; k < methodNode.instructions.size(); k++) {
+            AbstractInsnNode insn = methodNode.instructions.get(k);
+            if (insn.getOpcode() == GETFIELD && getField(className, insn, fields) != null) {
+                addField(arrays, insn, ((FieldInsnNode) insn).name);
+            }
+        }
+
+        //the arrays that are created and stored in a field are transactional arrays as well.
+        for (Usage usage : interpreter.usages) {
+            String field = usage.operand == 1 ? getField(className, usage.insn, fields) : null;
+            if (usage.insn.getOpcode() != PUTFIELD || field == null) {
+                continue;
+            }
+
+            String desc = fields.get(field);
+            for (Object source : usage.value.insns) {
+                AbstractInsnNode sourceInsn = (AbstractInsnNode) source;
+                if (isArrayCreation(sourceInsn, desc)) {
+                    addField(arrays, sourceInsn, field);
+                } else if (sourceInsn.getOpcode() != ACONST_NULL && !isFieldLoad(className, sourceInsn, desc, fields)) {
+                    result.rejectedFields.add(field);
+                }
+            }
+        }
+
+        for (Usage usage : interpreter.usages) {
+            Set<String> accessedFields = new HashSet<String>();
+            boolean onlyTransactionalArrays = true;
+            for (Object source : usage.value.insns) {
+                Set<String> sourceFields = arrays.get(source);
+                if (sourceFields != null) {
+                    accessedFields.addAll(sourceFields);
+                } else if (((AbstractInsnNode) source).getOpcode() != ACONST_NULL) {
+                    onlyTransactionalArrays = false;
+                }
+            }
+
+            if (accessedFields.isEmpty()) {
+                continue;
+            }
+
+            Set<String> descs = new HashSet<String>();
+            for (String accessedField : accessedFields) {
+                descs.add(fields.get(accessedField));
+            }
+
+            if (!onlyTransactionalArrays || descs.size() > 1
+                    || !isAllowedUsage(className, usage, descs.iterator().next(), fields)) {
+                result.rejectedFields.addAll(accessedFields);
+            } else if (needsTransformation(usage.insn)) {
+                result.accesses.put(usage.insn, descs.iterator().next());
+            }
+        }
+
+        for (Map.Entry<AbstractInsnNode, Set<String>> entry : arrays.entrySet()) {
+            if (entry.getKey().getOpcode() != GETFIELD) {
+                result.creations.put(entry.getKey(), fields.get(entry.getValue().iterator().next()));
+            }
+        }
+
+        return result;
+    }
+
+    private static void addField(Map<AbstractInsnNode, Set<String>> arrays, AbstractInsnNode insn, String field) {
+        Set<String> fields = arrays.get(insn);
+        if (fields == null) {
+            fields = new HashSet<String>();
+            arrays.put(insn, fields);
+        }
+        fields.add(field);
+    }
+
+    private static String getField(String className, AbstractInsnNode insn, Map<String, String> fields) {
+        if (!(insn instanceof FieldInsnNode)) {
+            return null;
+        }
+
+        FieldInsnNode fieldInsn = (FieldInsnNode) insn;
+        if (!fieldInsn.owner.equals(className) || !fields.containsKey(fieldInsn.name)) {
+            return null;
+        }
+
+        return fieldInsn.name;
+    }
+
+    private static boolean isFieldLoad(String className, AbstractInsnNode insn, String desc, Map<String, String> fields) {
+        String field = getField(className, insn, fields);
+        return insn.getOpcode() == GETFIELD && field != null && desc.equals(fields.get(field));
+    }
+
+    private static boolean isArrayCreation(AbstractInsnNode insn, String desc) {
+        switch (insn.getOpcode()) {
+            case NEWARRAY:
+                int operand = ((IntInsnNode) insn).operand;
+                return (operand == T_INT && desc.equals("[I")) || (operand == T_LONG && desc.equals("[J"));
+            case ANEWARRAY:
+                return desc.equals("[" + Type.getObjectType(((TypeInsnNode) insn).desc).getDescriptor());
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isAllowedUsage(String className, Usage usage, String desc, Map<String, String> fields) {
+        switch (usage.insn.getOpcode()) {
+            case IALOAD:
+            case IASTORE:
+                return usage.operand == 0 && desc.equals("[I");
+            case LALOAD:
+            case LASTORE:
+                return usage.operand == 0 && desc.equals("[J");
+            case AALOAD:
+            case AASTORE:
+                return usage.operand == 0 && desc.startsWith("[L");
+            case ARRAYLENGTH:
+            case IFNULL:
+            case IFNONNULL:
+            case ASTORE:
+                return true;
+            case CHECKCAST:
+                return desc.equals(((TypeInsnNode) usage.insn).desc);
+            case PUTFIELD:
+                String field = getField(className, usage.insn, fields);
+                return usage.operand == 1 && field != null && desc.equals(fields.get(field));
+            default:
+                return false;
+        }
+    }
+
+    private static boolean needsTransformation(AbstractInsnNode insn) {
+        switch (insn.getOpcode()) {
+            case PUTFIELD:
+            case IFNULL:
+            case IFNONNULL:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * The result of the analysis of a single method.
+     */
+    public static final class MethodAnalysis {
+
+        private final Set<String> rejectedFields = new HashSet<String>();
+        private final Map<AbstractInsnNode, String> creations = new HashMap<AbstractInsnNode, String>();
+        private final Map<AbstractInsnNode, String> accesses = new HashMap<AbstractInsnNode, String>();
+
+        /**
+         * Returns the fields that can't be transformed because of the way the method uses them.
+         *
+         * @return the rejected fields.
+         */
+        public Set<String> getRejectedFields() {
+            return rejectedFields;
+        }
+
+        /**
+         * Returns the NEWARRAY and ANEWARRAY instructions that create an array for a transactional array field,
+         * mapped to the desc of the array.
+         *
+         * @return the array creations.
+         */
+        public Map<AbstractInsnNode, String> getCreations() {
+            return creations;
+        }
+
+        /**
+         * Returns the instructions that use the array of a transactional array field and need to be transformed
+         * (like an IALOAD, ARRAYLENGTH or a CHECKCAST), mapped to the desc of the array. An ASTORE is included as
+         * well, since the debug information of the local variable needs to be changed. The PUTFIELD and null
+         * check instructions are not included.
+         *
+         * @return the array accesses.
+         */
+        public Map<AbstractInsnNode, String> getAccesses() {
+            return accesses;
+        }
+    }
+
+    private static final class Usage {
+        private final AbstractInsnNode insn;
+        private final int operand;
+        private final SourceValue value;
+
+        private Usage(AbstractInsnNode insn, int operand, SourceValue value) {
+            this.insn = insn;
+            this.operand = operand;
+            this.value = value;
+        }
+    }
+
+    /**
+     * A SourceInterpreter that records every value used by an instruction. A value that is copied (duplicated on
+     * the stack, stored in or loaded from a local variable) or an array that is cast to an array type keeps its
+     * sources, so the original sources of a used value are known. A parameter of the method has an unknown
+     * source.
+     */
+    private static final class UsageRecordingInterpreter extends SourceInterpreter {
+
+        //the source of the values that are not created by an instruction (like the parameters of the method).
+        private final static AbstractInsnNode UNKNOWN_SOURCE = new InsnNode(NOP);
+
+        private final List<Usage> usages = new LinkedList<Usage>();
+
+        @Override
+        public Value newValue(Type type) {
+            if (type == null || type == Type.VOID_TYPE) {
+                return super.newValue(type);
+            }
+
+            //a parameter can't be told apart from the value of a field, if the sources of both values are merged.
+            Set<AbstractInsnNode> insns = new HashSet<AbstractInsnNode>();
+            insns.add(UNKNOWN_SOURCE);
+            return new SourceValue(type.getSize(), insns);
+        }
+
+        @Override
+        public Value copyOperation(AbstractInsnNode insn, Value value) {
+            if (insn.getOpcode() == ASTORE) {
+                record(insn, 0, value);
+            }
+            return value;
+        }
+
+        @Override
+        public Value unaryOperation(AbstractInsnNode insn, Value value) {
+            record(insn, 0, value);
+            if (insn.getOpcode() == CHECKCAST && ((TypeInsnNode) insn).desc.startsWith("[")) {
+                return value;
+            }
+            return super.unaryOperation(insn, value);
+        }
+
+        @Override
+        public Value binaryOperation(AbstractInsnNode insn, Value value1, Value value2) {
+            record(insn, 0, value1);
+            record(insn, 1, value2);
+            return super.binaryOperation(insn, value1, value2);
+        }
+
+        @Override
+        public Value ternaryOperation(AbstractInsnNode insn, Value value1, Value value2, Value value3) {
+            record(insn, 0, value1);
+            record(insn, 1, value2);
+            record(insn, 2, value3);
+            return super.ternaryOperation(insn, value1, value2, value3);
+        }
+
+        @Override
+        public Value naryOperation(AbstractInsnNode insn, List values) {
+            for (int k = 0; k < values.size(); k++) {
+                record(insn, k, (Value) values.get(k));
+            }
+            return super.naryOperation(insn, values);
+        }
+
+        private void record(AbstractInsnNode insn, int operand, Value value) {
+            SourceValue sourceValue = (SourceValue) value;
+            if (!sourceValue.insns.isEmpty()) {
+                usages.add(new Usage(insn, operand, sourceValue));
+            }
+        }
+    }
+
+    private TransactionalArrayFieldAnalyzer() {
+    }
+}
@@ -2,6 +2,8 @@ package org.multiverse.instrumentation.metadata;
 
 import org.objectweb.asm.Opcodes;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -47,6 +49,24 @@ public final class ClassMetadata {
         return method;
     }
 
+    /**
+     * Returns the metadata of the fields declared in this class (so not the ones of the superclass).
+     *
+     * @return the FieldMetadata of the declared fields.
+     */
+    public Collection<FieldMetadata> getFields() {
+        return Collections.unmodifiableCollection(fields.values());
+    }
+
+    /**
+     * Returns the metadata of the methods declared in this class (so not the ones of the superclass).
+     *
+     * @return the MethodMetadata of the declared methods.
+     */
+    public Collection<MethodMetadata> getMethods() {
+        return Collections.unmodifiableCollection(methods.values());
+    }
+
     public List<ClassMetadata> getInterfaces() {
         return interfaces;
     }
@@ -127,6 +147,16 @@ public final class ClassMetadata {
         return false;
     }
 
+    public boolean hasTransactionalArrayFields() {
+        for (FieldMetadata field : fields.values()) {
+            if (field.isTransactionalArray()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
     public boolean hasManagedFieldsWithObjectGranularity() {
         for (FieldMetadata field : fields.values()) {
             if (field.isManagedField() && !field.hasFieldGranularity()) {
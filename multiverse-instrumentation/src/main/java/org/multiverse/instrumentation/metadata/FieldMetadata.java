@@ -12,6 +12,7 @@ public final class FieldMetadata {
     private String desc;
     private boolean hasFieldGranularity;
     private boolean isManagedField;
+    private boolean isTransactionalArray;
     private int access;
 
     public FieldMetadata(ClassMetadata classMetadata, String name) {
@@ -63,6 +64,21 @@ public final class FieldMetadata {
         return isManagedField;
     }
 
+    public void setIsTransactionalArray(boolean transactionalArray) {
+        this.isTransactionalArray = transactionalArray;
+    }
+
+    /**
+     * Checks if this field is an array field that is transformed to a transactional array (see the
+     * {@link org.multiverse.instrumentation.asm.TransactionalArrayFieldAnalyzer}). The desc of this FieldMetadata
+     * still is the desc of the original array field.
+     *
+     * @return true if this field is transformed to a transactional array.
+     */
+    public boolean isTransactionalArray() {
+        return isTransactionalArray;
+    }
+
     public boolean isManagedFieldWithObjectGranularity() {
         return isManagedField && !hasFieldGranularity;
     }
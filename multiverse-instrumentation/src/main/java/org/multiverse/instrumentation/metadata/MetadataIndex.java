@@ -0,0 +1,354 @@
+package org.multiverse.instrumentation.metadata;
+
+import org.multiverse.api.TraceLevel;
+
+import java.io.*;
+import java.net.URL;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.lang.String.format;
+
+/**
+ * A prebuilt binary index containing the {@link ClassMetadata} of a set of classes. The index can be produced at
+ * compile time (see the MultiverseCompiler) and stored together with the classes as the resource
+ * {@link #RESOURCE}, so the {@link MetadataRepository} doesn't need to read and parse the classes with ASM again
+ * when they are loaded.
+ * <p/>
+ * When the index is read, only the names of the classes are read; the ClassMetadata of a class is created on
+ * demand. The superclass and interfaces are resolved through the MetadataRepository, so they can come from
+ * another index or be extracted the normal way.
+ * <p/>
+ * An index can be bound to a location (the URL of the jar or directory containing it). The index then only is
+ * used for a class if the ClassLoader finds that class in the same location, so a class that is shadowed by
+ * another one with the same name is not described by the wrong metadata.
+ * <p/>
+ * The MetadataIndex is immutable once read, and therefor threadsafe.
+ *
+ * @author Peter Veentjer
+ */
+public final class MetadataIndex {
+
+    /**
+     * The name of the resource the index is stored under.
+     */
+    public final static String RESOURCE = "META-INF/multiverse/metadata.idx";
+
+    private final static int MAGIC = 0x4D564958;
+    private final static int FORMAT_VERSION = 2;
+
+    private final static byte NULL = 0;
+    private final static byte TRUE = 1;
+    private final static byte FALSE = 2;
+
+    /**
+     * Writes the ClassMetadata of a set of classes as a binary index.
+     *
+     * @param classes the ClassMetadata to write.
+     * @param out     the OutputStream to write to. The stream is not closed.
+     * @throws IOException          if something fails while writing.
+     * @throws NullPointerException if classes or out is null.
+     */
+    public static void write(Collection<ClassMetadata> classes, OutputStream out) throws IOException {
+        if (classes == null || out == null) {
+            throw new NullPointerException();
+        }
+
+        DataOutputStream dataOut = new DataOutputStream(new BufferedOutputStream(out));
+        dataOut.writeInt(MAGIC);
+        dataOut.writeInt(FORMAT_VERSION);
+        dataOut.writeInt(classes.size());
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        for (ClassMetadata classMetadata : classes) {
+            buffer.reset();
+            writeClass(classMetadata, new DataOutputStream(buffer));
+
+            dataOut.writeUTF(classMetadata.getName());
+            dataOut.writeInt(buffer.size());
+            buffer.writeTo(dataOut);
+        }
+        dataOut.flush();
+    }
+
+    private static void writeClass(ClassMetadata classMetadata, DataOutputStream out) throws IOException {
+        out.writeInt(classMetadata.getAccess());
+        out.writeBoolean(classMetadata.isIgnoredClass());
+        out.writeBoolean(classMetadata.isTransactionalObject());
+
+        ClassMetadata superClassMetadata = classMetadata.getSuperClassMetadata();
+        writeNullableUTF(out, superClassMetadata == null ? null : superClassMetadata.getName());
+
+        List<ClassMetadata> interfaces = classMetadata.getInterfaces();
+        out.writeInt(interfaces.size());
+        for (ClassMetadata interfaceMetadata : interfaces) {
+            out.writeUTF(interfaceMetadata.getName());
+        }
+
+        Collection<FieldMetadata> fields = classMetadata.getFields();
+        out.writeInt(fields.size());
+        for (FieldMetadata field : fields) {
+            out.writeUTF(field.getName());
+            writeNullableUTF(out, field.getDesc());
+            out.writeInt(field.getAccess());
+            out.writeBoolean(field.isManagedField());
+            out.writeBoolean(field.hasFieldGranularity());
+            out.writeBoolean(field.isTransactionalArray());
+        }
+
+        Collection<MethodMetadata> methods = classMetadata.getMethods();
+        out.writeInt(methods.size());
+        for (MethodMetadata method : methods) {
+            out.writeUTF(method.getName());
+            out.writeUTF(method.getDesc());
+            out.writeInt(method.getAccess());
+
+            List<String> exceptions = method.getExceptions();
+            out.writeInt(exceptions.size());
+            for (String exception : exceptions) {
+                out.writeUTF(exception);
+            }
+
+            out.writeByte(method.getMethodType().ordinal());
+            FieldMetadata getterSetterField = method.getGetterSetterField();
+            writeNullableUTF(out, getterSetterField == null ? null : getterSetterField.getName());
+
+            TransactionMetadata transactionMetadata = method.getTransactionalMetadata();
+            out.writeBoolean(transactionMetadata != null);
+            if (transactionMetadata != null) {
+                writeBoolean(out, transactionMetadata.readOnly);
+                out.writeBoolean(transactionMetadata.writeSkew);
+                writeBoolean(out, transactionMetadata.trackReads);
+                writeBoolean(out, transactionMetadata.interruptible);
+                writeNullableUTF(out, transactionMetadata.familyName);
+                out.writeInt(transactionMetadata.maxRetries);
+                out.writeBoolean(transactionMetadata.speculativeConfigurationEnabled);
+                out.writeLong(transactionMetadata.timeoutNs);
+                TraceLevel traceLevel = transactionMetadata.traceLevel;
+                writeNullableUTF(out, traceLevel == null ? null : traceLevel.name());
+            }
+        }
+    }
+
+    /**
+     * Reads a MetadataIndex.
+     *
+     * @param in       the InputStream to read from. The stream is not closed.
+     * @param location the location (the URL of the jar or directory) that contains the classes described by
+     *                 the index. If null, the index is used for every class it contains.
+     * @return the read MetadataIndex.
+     * @throws IOException          if something fails while reading, or if the data is not a valid index.
+     * @throws NullPointerException if in is null.
+     */
+    public static MetadataIndex read(InputStream in, String location) throws IOException {
+        if (in == null) {
+            throw new NullPointerException();
+        }
+
+        DataInputStream dataIn = new DataInputStream(new BufferedInputStream(in));
+        if (dataIn.readInt() != MAGIC) {
+            throw new IOException("Not a metadata index");
+        }
+
+        int version = dataIn.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException(format("Unsupported metadata index version %s, expected %s",
+                    version, FORMAT_VERSION));
+        }
+
+        int count = dataIn.readInt();
+        Map<String, byte[]> classes = new HashMap<String, byte[]>(count * 2);
+        for (int k = 0; k < count; k++) {
+            String className = dataIn.readUTF();
+            byte[] data = new byte[dataIn.readInt()];
+            dataIn.readFully(data);
+            classes.put(className, data);
+        }
+
+        return new MetadataIndex(classes, location);
+    }
+
+    /**
+     * Reads the MetadataIndex stored as a resource. The location of the index is derived from the URL.
+     *
+     * @param url the URL of the resource.
+     * @return the read MetadataIndex.
+     * @throws IOException if something fails while reading.
+     */
+    public static MetadataIndex read(URL url) throws IOException {
+        String s = url.toString();
+        String location = s.endsWith(RESOURCE) ? s.substring(0, s.length() - RESOURCE.length()) : null;
+
+        InputStream in = url.openStream();
+        try {
+            return read(in, location);
+        } finally {
+            in.close();
+        }
+    }
+
+    private final Map<String, byte[]> classes;
+    private final String location;
+
+    private MetadataIndex(Map<String, byte[]> classes, String location) {
+        this.classes = classes;
+        this.location = location;
+    }
+
+    /**
+     * Returns the location of the classes described by this index.
+     *
+     * @return the location, or null if the index is not bound to a location.
+     */
+    public String getLocation() {
+        return location;
+    }
+
+    /**
+     * Returns the number of classes in this index.
+     *
+     * @return the number of classes.
+     */
+    public int size() {
+        return classes.size();
+    }
+
+    /**
+     * Checks if this index contains the ClassMetadata of a class.
+     *
+     * @param className the name of the class (in internal form).
+     * @return true if it is contained, false otherwise.
+     */
+    public boolean contains(String className) {
+        return classes.containsKey(className);
+    }
+
+    /**
+     * Creates the ClassMetadata of a class from this index.
+     *
+     * @param className   the name of the class (in internal form).
+     * @param classLoader the ClassLoader the class is loaded by.
+     * @param repository  the MetadataRepository used to resolve the superclass and interfaces.
+     * @return the created ClassMetadata, or null if the class is not in this index or if the ClassLoader doesn't
+     *         find the class in the location of this index.
+     */
+    public ClassMetadata create(String className, ClassLoader classLoader, MetadataRepository repository) {
+        byte[] data = classes.get(className);
+        if (data == null) {
+            return null;
+        }
+
+        if (location != null) {
+            if (classLoader == null) {
+                return null;
+            }
+
+            URL url = classLoader.getResource(className + ".class");
+            if (url == null || !url.toString().startsWith(location)) {
+                return null;
+            }
+        }
+
+        try {
+            return readClass(className, new DataInputStream(new ByteArrayInputStream(data)), classLoader, repository);
+        } catch (IOException e) {
+            //the data is read from memory, so this only happens if the entry is corrupt (for example truncated).
+            String msg = format("Corrupt metadata index entry for class %s", className);
+            throw new IllegalStateException(msg, e);
+        }
+    }
+
+    private static ClassMetadata readClass(String className, DataInputStream in, ClassLoader classLoader,
+                                           MetadataRepository repository) throws IOException {
+        ClassMetadata classMetadata = new ClassMetadata(className);
+        classMetadata.setAccess(in.readInt());
+        classMetadata.setIgnoredClass(in.readBoolean());
+        classMetadata.setIsTransactionalObject(in.readBoolean());
+
+        String superName = readNullableUTF(in);
+        if (superName != null) {
+            classMetadata.setSuperClassMetadata(repository.loadClassMetadata(classLoader, superName));
+        }
+
+        int interfaceCount = in.readInt();
+        for (int k = 0; k < interfaceCount; k++) {
+            classMetadata.getInterfaces().add(repository.loadClassMetadata(classLoader, in.readUTF()));
+        }
+
+        int fieldCount = in.readInt();
+        for (int k = 0; k < fieldCount; k++) {
+            FieldMetadata field = classMetadata.createFieldMetadata(in.readUTF());
+            field.setDesc(readNullableUTF(in));
+            field.setAccess(in.readInt());
+            field.setIsManaged(in.readBoolean());
+            field.setHasFieldGranularity(in.readBoolean());
+            field.setIsTransactionalArray(in.readBoolean());
+        }
+
+        int methodCount = in.readInt();
+        for (int k = 0; k < methodCount; k++) {
+            MethodMetadata method = classMetadata.createMethodMetadata(in.readUTF(), in.readUTF());
+            method.setAccess(in.readInt());
+
+            int exceptionCount = in.readInt();
+            for (int l = 0; l < exceptionCount; l++) {
+                method.addException(in.readUTF());
+            }
+
+            MethodType methodType = MethodType.values()[in.readByte()];
+            String getterSetterFieldName = readNullableUTF(in);
+            //the field could be declared in a superclass, so it is looked up like the extractor does.
+            FieldMetadata getterSetterField = getterSetterFieldName == null
+                    ? null
+                    : classMetadata.getFieldMetadata(getterSetterFieldName);
+            method.setGetterSetter(methodType, getterSetterField);
+
+            if (in.readBoolean()) {
+                TransactionMetadata transactionMetadata = new TransactionMetadata();
+                transactionMetadata.readOnly = readBoolean(in);
+                transactionMetadata.writeSkew = in.readBoolean();
+                transactionMetadata.trackReads = readBoolean(in);
+                transactionMetadata.interruptible = readBoolean(in);
+                transactionMetadata.familyName = readNullableUTF(in);
+                transactionMetadata.maxRetries = in.readInt();
+                transactionMetadata.speculativeConfigurationEnabled = in.readBoolean();
+                transactionMetadata.timeoutNs = in.readLong();
+                String traceLevel = readNullableUTF(in);
+                transactionMetadata.traceLevel = traceLevel == null ? null : TraceLevel.valueOf(traceLevel);
+                method.setTransactionalMetadata(transactionMetadata);
+            }
+        }
+
+        return classMetadata;
+    }
+
+    private static void writeNullableUTF(DataOutputStream out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) {
+            out.writeUTF(s);
+        }
+    }
+
+    private static String readNullableUTF(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeBoolean(DataOutputStream out, Boolean b) throws IOException {
+        out.writeByte(b == null ? NULL : (b ? TRUE : FALSE));
+    }
+
+    private static Boolean readBoolean(DataInputStream in) throws IOException {
+        switch (in.readByte()) {
+            case NULL:
+                return null;
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            default:
+                throw new IOException("Corrupt metadata index, unexpected boolean value");
+        }
+    }
+}
@@ -3,22 +3,52 @@ package org.multiverse.instrumentation.metadata;
 import org.multiverse.instrumentation.asm.AsmClassMetadataExtractor;
 import org.objectweb.asm.Type;
 
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.multiverse.utils.SystemOut.println;
 
 /**
  * A repository for storing metadata about classes (and interfaces) and their internal structure.
  * <p/>
- * Once metadata is extracted, it is stored so it can be reused.
+ * Once metadata is extracted, it is stored so it can be reused. The metadata is stored per ClassLoader; a
+ * ClassLoader is only weakly referenced, so the metadata of a ClassLoader that is garbage collected doesn't leak.
+ * <p/>
+ * The repository can be seeded with prebuilt {@link MetadataIndex} instances for a ClassLoader, see
+ * {@link #addIndex(ClassLoader, MetadataIndex)}. If index lookup is enabled, the indexes that are found as the
+ * resource {@link MetadataIndex#RESOURCE} through a ClassLoader are added automatically the first time that
+ * ClassLoader is seen. Only if a class is not found in an index, it is read and parsed by the
+ * {@link ClassMetadataExtractor}.
+ * <p/>
+ * The MetadataRepository is threadsafe, so it can be shared between threads that instrument classes
+ * concurrently (like the parallel {@link org.multiverse.compiler.MultiverseCompiler} or a JVM that loads classes
+ * in parallel). A lookup of metadata that already is available doesn't block.
  *
  * @author Peter Veentjer.
  */
 public final class MetadataRepository {
 
-    private final ConcurrentMap<Multikey, ClassMetadata> map = new ConcurrentHashMap<Multikey, ClassMetadata>();
+    private final ConcurrentMap<LoaderKey, LoaderMetadata> loaders = new ConcurrentHashMap<LoaderKey, LoaderMetadata>();
+
+    private final ReferenceQueue<ClassLoader> collectedLoaders = new ReferenceQueue<ClassLoader>();
+
+    private final LoaderMetadata bootstrapMetadata = new LoaderMetadata();
 
     private final ClassMetadataExtractor extractor;
 
+    private final ThreadLocal<Set<String>> recordedDependencies = new ThreadLocal<Set<String>>();
+
+    private volatile boolean indexLookupEnabled;
+
     public MetadataRepository() {
         this(new AsmClassMetadataExtractor());
     }
@@ -39,6 +69,42 @@ public final class MetadataRepository {
         this.extractor.init(this);
     }
 
+    /**
+     * Checks if the indexes that can be found through a ClassLoader are used.
+     *
+     * @return true if index lookup is enabled, false otherwise.
+     */
+    public boolean isIndexLookupEnabled() {
+        return indexLookupEnabled;
+    }
+
+    /**
+     * Enables or disables the lookup of the indexes that can be found through a ClassLoader as the resource
+     * {@link MetadataIndex#RESOURCE}. The lookup is done the first time a ClassLoader is seen, so this should be
+     * set before the repository is used. It is disabled by default.
+     *
+     * @param indexLookupEnabled true if index lookup should be enabled, false otherwise.
+     */
+    public void setIndexLookupEnabled(boolean indexLookupEnabled) {
+        this.indexLookupEnabled = indexLookupEnabled;
+    }
+
+    /**
+     * Adds a MetadataIndex that is used for classes loaded by a ClassLoader. Indexes are used in the order they
+     * are added. Metadata that already has been loaded is not changed.
+     *
+     * @param classLoader the ClassLoader (null indicates the bootstrap ClassLoader).
+     * @param index       the MetadataIndex to add.
+     * @throws NullPointerException if index is null.
+     */
+    public void addIndex(ClassLoader classLoader, MetadataIndex index) {
+        if (index == null) {
+            throw new NullPointerException();
+        }
+
+        getLoaderMetadata(classLoader).indexes.add(index);
+    }
+
     /**
      * Loads the ClassMetadata for the given Clazz.
      *
@@ -66,14 +132,172 @@ public final class MetadataRepository {
             throw new NullPointerException();
         }
 
-        Multikey key = new Multikey(classLoader, className);
+        LoaderMetadata loaderMetadata = getLoaderMetadata(classLoader);
 
-        ClassMetadata classMetadata = map.get(key);
+        ClassMetadata classMetadata = loaderMetadata.classes.get(className);
         if (classMetadata == null) {
-            classMetadata = extractor.extract(className, classLoader);
-            map.put(key, classMetadata);
+            classMetadata = loaderMetadata.findInIndex(className, classLoader, this);
+            if (classMetadata == null) {
+                classMetadata = extractor.extract(className, classLoader);
+            }
+
+            //another thread could have loaded the same metadata concurrently, only one of them is used.
+            ClassMetadata found = loaderMetadata.classes.putIfAbsent(className, classMetadata);
+            if (found != null) {
+                classMetadata = found;
+            }
+        }
+
+        Set<String> dependencies = recordedDependencies.get();
+        if (dependencies != null) {
+            recordDependency(dependencies, classMetadata);
         }
 
         return classMetadata;
     }
+
+    private LoaderMetadata getLoaderMetadata(ClassLoader classLoader) {
+        if (classLoader == null) {
+            return bootstrapMetadata;
+        }
+
+        LoaderMetadata loaderMetadata = loaders.get(new LoaderKey(classLoader, null));
+        if (loaderMetadata != null) {
+            return loaderMetadata;
+        }
+
+        expungeCollectedLoaders();
+
+        //the indexes are added before the LoaderMetadata is published, so no thread extracts metadata that
+        //could have been found in an index.
+        loaderMetadata = new LoaderMetadata();
+        if (indexLookupEnabled) {
+            addIndexes(classLoader, loaderMetadata);
+        }
+
+        LoaderMetadata found = loaders.putIfAbsent(new LoaderKey(classLoader, collectedLoaders), loaderMetadata);
+        return found == null ? loaderMetadata : found;
+    }
+
+    private static void addIndexes(ClassLoader classLoader, LoaderMetadata loaderMetadata) {
+        Enumeration<URL> urls;
+        try {
+            urls = classLoader.getResources(MetadataIndex.RESOURCE);
+        } catch (IOException e) {
+            //the index is an optimization, so the metadata will be extracted the normal way.
+            return;
+        }
+
+        while (urls.hasMoreElements()) {
+            URL url = urls.nextElement();
+            try {
+                loaderMetadata.indexes.add(MetadataIndex.read(url));
+            } catch (IOException e) {
+                //a broken index is ignored.
+                println("Multiverse: Ignoring metadata index %s because it can't be read: %s", url, e.getMessage());
+            }
+        }
+    }
+
+    private void expungeCollectedLoaders() {
+        Object ref;
+        while ((ref = collectedLoaders.poll()) != null) {
+            loaders.remove(ref);
+        }
+    }
+
+    private static void recordDependency(Set<String> dependencies, ClassMetadata classMetadata) {
+        if (!dependencies.add(classMetadata.getName())) {
+            return;
+        }
+
+        //the metadata also depends on the superclass and interfaces, and since they could already be in the
+        //repository, they would not be loaded (and recorded) again.
+        if (classMetadata.getSuperClassMetadata() != null) {
+            recordDependency(dependencies, classMetadata.getSuperClassMetadata());
+        }
+
+        for (ClassMetadata interfaceMetadata : classMetadata.getInterfaces()) {
+            recordDependency(dependencies, interfaceMetadata);
+        }
+    }
+
+    /**
+     * Starts recording the names of the classes the current thread loads the ClassMetadata for (including their
+     * superclasses and interfaces). This can be used to find out which classes the instrumentation of a class
+     * depends on.
+     * <p/>
+     * Recordings can be nested (a class could be loaded while another one is instrumented), so the returned value
+     * should be passed to {@link #stopRecordingDependencies(java.util.Set)}.
+     *
+     * @return the recording that was active before this call (can be null).
+     */
+    public Set<String> startRecordingDependencies() {
+        Set<String> previous = recordedDependencies.get();
+        recordedDependencies.set(new HashSet<String>());
+        return previous;
+    }
+
+    /**
+     * Stops recording the dependencies for the current thread.
+     *
+     * @param previous the value returned by the matching {@link #startRecordingDependencies()}.
+     * @return the names of the recorded classes (in internal form).
+     */
+    public Set<String> stopRecordingDependencies(Set<String> previous) {
+        Set<String> recorded = recordedDependencies.get();
+        recordedDependencies.set(previous);
+        return recorded;
+    }
+
+    /**
+     * The metadata of the classes loaded by a single ClassLoader.
+     */
+    private static final class LoaderMetadata {
+        private final ConcurrentMap<String, ClassMetadata> classes = new ConcurrentHashMap<String, ClassMetadata>();
+        private final List<MetadataIndex> indexes = new CopyOnWriteArrayList<MetadataIndex>();
+
+        private ClassMetadata findInIndex(String className, ClassLoader classLoader, MetadataRepository repository) {
+            for (MetadataIndex index : indexes) {
+                ClassMetadata classMetadata = index.create(className, classLoader, repository);
+                if (classMetadata != null) {
+                    return classMetadata;
+                }
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * A weak reference to a ClassLoader that uses identity for equals and hashcode, so it can be used as key in
+     * a ConcurrentMap.
+     */
+    private static final class LoaderKey extends WeakReference<ClassLoader> {
+        private final int hashCode;
+
+        private LoaderKey(ClassLoader classLoader, ReferenceQueue<ClassLoader> queue) {
+            super(classLoader, queue);
+            this.hashCode = System.identityHashCode(classLoader);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object thatObj) {
+            if (thatObj == this) {
+                return true;
+            }
+
+            if (!(thatObj instanceof LoaderKey)) {
+                return false;
+            }
+
+            ClassLoader classLoader = get();
+            return classLoader != null && classLoader == ((LoaderKey) thatObj).get();
+        }
+    }
 }
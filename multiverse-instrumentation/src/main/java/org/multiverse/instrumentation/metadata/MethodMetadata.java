@@ -23,6 +23,10 @@ public final class MethodMetadata {
     private final List<String> exceptions = new LinkedList<String>();
     private MethodType getterSetter = MethodType.unknown;
     private FieldMetadata getterSetterField;
+    private volatile Boolean inferredReadonly;
+    private volatile String transactionFactoryField;
+    private volatile String profiledTransactionFactoryField;
+    private volatile MethodProfile profile;
 
     public MethodMetadata(ClassMetadata classMetadata, String name, String desc) {
         this.classMetadata = classMetadata;
@@ -43,6 +47,59 @@ public final class MethodMetadata {
         this.getterSetter = getterSetter;
     }
 
+    /**
+     * Returns the result of the {@link ReadonlyInference} for this method.
+     *
+     * @return true if the method never writes, false if it could write and null if it is not inferred yet.
+     */
+    public Boolean getInferredReadonly() {
+        return inferredReadonly;
+    }
+
+    public void setInferredReadonly(Boolean inferredReadonly) {
+        this.inferredReadonly = inferredReadonly;
+    }
+
+    /**
+     * Returns the name of the static field containing the TransactionFactory of this transactional method.
+     *
+     * @return the name of the field, or null if the method is not instrumented (yet).
+     */
+    public String getTransactionFactoryField() {
+        return transactionFactoryField;
+    }
+
+    public void setTransactionFactoryField(String transactionFactoryField) {
+        this.transactionFactoryField = transactionFactoryField;
+    }
+
+    /**
+     * Returns the name of the static field the TransactionFactory created with the {@link #getProfile() profile}
+     * is stored in.
+     *
+     * @return the name of the field, or null if the method is not instrumented (yet) or profiling is disabled.
+     */
+    public String getProfiledTransactionFactoryField() {
+        return profiledTransactionFactoryField;
+    }
+
+    public void setProfiledTransactionFactoryField(String profiledTransactionFactoryField) {
+        this.profiledTransactionFactoryField = profiledTransactionFactoryField;
+    }
+
+    /**
+     * Returns the MethodProfile containing the runtime behavior of this transactional method.
+     *
+     * @return the MethodProfile, or null if the method is not profiled.
+     */
+    public MethodProfile getProfile() {
+        return profile;
+    }
+
+    public void setProfile(MethodProfile profile) {
+        this.profile = profile;
+    }
+
     public TransactionMetadata getTransactionMetadata() {
         return transactionMetadata;
     }
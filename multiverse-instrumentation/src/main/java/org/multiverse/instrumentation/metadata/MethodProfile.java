@@ -0,0 +1,107 @@
+package org.multiverse.instrumentation.metadata;
+
+import static java.lang.String.format;
+
+/**
+ * The runtime behavior of the transactions of a transactional method, as learned by the speculative configuration of
+ * its {@link org.multiverse.api.TransactionFactory}. It is used to instrument the method again with settings that
+ * don't need to be learned (see the {@link org.multiverse.javaagent.ProfileGuidedReinstrumentor}).
+ * <p/>
+ * Only behavior that can't change the outcome of a transaction is recorded: a method that has been seen writing
+ * gets an update transaction, but a method that didn't write (yet) still is executed speculatively.
+ * <p/>
+ * A MethodProfile is immutable.
+ *
+ * @author Peter Veentjer
+ */
+public final class MethodProfile {
+
+    private final boolean update;
+    private final boolean readTrackingEnabled;
+    private final int size;
+
+    /**
+     * Creates a MethodProfile.
+     *
+     * @param update              if the method needed an update transaction.
+     * @param readTrackingEnabled if the method needed read tracking (for a retry for example).
+     * @param size                the number of transactional objects the transactions of the method needed.
+     * @throws IllegalArgumentException if size smaller than 1.
+     */
+    public MethodProfile(boolean update, boolean readTrackingEnabled, int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException(format("size can't be smaller than 1, size was %s", size));
+        }
+
+        this.update = update;
+        this.readTrackingEnabled = readTrackingEnabled;
+        this.size = size;
+    }
+
+    public boolean isUpdate() {
+        return update;
+    }
+
+    public boolean isReadTrackingEnabled() {
+        return readTrackingEnabled;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Checks if this MethodProfile contains something that was learned. A profile of a method that doesn't need
+     * an update transaction, read tracking or a transaction for more than 1 transactional object, is executed
+     * in the same way as a method without a profile.
+     *
+     * @return true if something was learned, false otherwise.
+     */
+    public boolean isLearned() {
+        return update || readTrackingEnabled || size > 1;
+    }
+
+    /**
+     * Combines this MethodProfile with a MethodProfile that was learned later. Behavior that was learned once
+     * doesn't need to be learned again, so the result contains everything that was learned by both.
+     *
+     * @param that the MethodProfile to combine with.
+     * @return the combined MethodProfile.
+     * @throws NullPointerException if that is null.
+     */
+    public MethodProfile merge(MethodProfile that) {
+        return new MethodProfile(
+                update || that.update,
+                readTrackingEnabled || that.readTrackingEnabled,
+                Math.max(size, that.size));
+    }
+
+    @Override
+    public boolean equals(Object thatObj) {
+        if (thatObj == this) {
+            return true;
+        }
+
+        if (!(thatObj instanceof MethodProfile)) {
+            return false;
+        }
+
+        MethodProfile that = (MethodProfile) thatObj;
+        return that.update == update
+                && that.readTrackingEnabled == readTrackingEnabled
+                && that.size == size;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = update ? 1 : 0;
+        result = 31 * result + (readTrackingEnabled ? 1 : 0);
+        result = 31 * result + size;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return format("MethodProfile(update=%s, readTrackingEnabled=%s, size=%s)", update, readTrackingEnabled, size);
+    }
+}
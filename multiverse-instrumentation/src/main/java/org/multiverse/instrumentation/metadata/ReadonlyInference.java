@@ -0,0 +1,298 @@
+package org.multiverse.instrumentation.metadata;
+
+import org.multiverse.instrumentation.asm.AsmUtils;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.*;
+
+import java.util.*;
+
+/**
+ * Infers statically if a method never writes to transactional objects, so a transactional method can be executed
+ * in a readonly transaction without relying on speculative readonly detection (which needs a
+ * {@link org.multiverse.api.exceptions.SpeculativeConfigurationFailure} and a restart of the transaction the first
+ * time the method writes).
+ * <p/>
+ * A method never writes if:
+ * <ol>
+ * <li>it doesn't do a PUTFIELD on a managed field of a transactional object</li>
+ * <li>it doesn't create a transactional object</li>
+ * <li>it doesn't store an array element or create an array in a class with fields that are transformed to
+ * transactional arrays (the array could be one of those fields).</li>
+ * <li>every method it calls never writes (checked recursively). A call that could be dispatched to an unknown
+ * implementation (a non final, non private instance method) only is accepted if the called method explicitly is
+ * a readonly transactional method. A called method that explicitly tracks reads is not accepted, since it could
+ * block. Calls to a small set of value classes in java.lang (like String, the
+ * boxed primitives and Math) and to methods that only inspect the transaction (like
+ * {@link org.multiverse.api.Transaction#getConfiguration()}) are accepted as well.</li>
+ * <li>it doesn't use the {@link org.multiverse.api.StmUtils} (for example to do a retry, which needs read
+ * tracking).</li>
+ * </ol>
+ * The analysis is conservative: if something can't be proven (for example the bytecode of a called method can't be
+ * found, or the call chain is too deep), the method is assumed to write. It is done on the original bytecode as
+ * provided by the ClassLoader, not on the bytecode that already is transformed by other instrumentation phases.
+ * <p/>
+ * The result is stored in the {@link MethodMetadata} so it is only calculated once. The ReadonlyInference is
+ * threadsafe.
+ *
+ * @author Peter Veentjer
+ */
+public final class ReadonlyInference implements Opcodes {
+
+    private final static int MAX_DEPTH = 32;
+
+    //not every supported ASM version defines this opcode.
+    private final static int INVOKEDYNAMIC = 186;
+
+    private final static Set<String> VALUE_CLASSES = new HashSet<String>(Arrays.asList(
+            "java/lang/String",
+            "java/lang/StringBuilder",
+            "java/lang/StringBuffer",
+            "java/lang/Math",
+            "java/lang/StrictMath",
+            "java/lang/Boolean",
+            "java/lang/Byte",
+            "java/lang/Character",
+            "java/lang/Short",
+            "java/lang/Integer",
+            "java/lang/Long",
+            "java/lang/Float",
+            "java/lang/Double"));
+
+    private final static Set<String> TRANSACTION_CONTROL_CLASSES = new HashSet<String>(Arrays.asList(
+            "org/multiverse/api/StmUtils",
+            "org/multiverse/api/exceptions/Retry"));
+
+    //methods that only inspect the transaction.
+    private final static Set<String> INSPECTING_METHODS = new HashSet<String>(Arrays.asList(
+            "org/multiverse/api/ThreadLocalTransaction.getThreadLocalTransaction",
+            "org/multiverse/api/ThreadLocalTransaction.getRequiredThreadLocalTransaction",
+            "org/multiverse/api/Transaction.getConfiguration",
+            "org/multiverse/api/Transaction.getStatus",
+            "org/multiverse/api/Transaction.getReadVersion",
+            "org/multiverse/api/TransactionConfiguration.*"));
+
+    private final MetadataRepository metadataRepository;
+
+    /**
+     * Creates a ReadonlyInference.
+     *
+     * @param metadataRepository the MetadataRepository used to lookup the metadata of accessed fields and called
+     *                           methods.
+     * @throws NullPointerException if metadataRepository is null.
+     */
+    public ReadonlyInference(MetadataRepository metadataRepository) {
+        if (metadataRepository == null) {
+            throw new NullPointerException();
+        }
+        this.metadataRepository = metadataRepository;
+    }
+
+    /**
+     * Checks if a method never writes to transactional objects.
+     *
+     * @param classLoader    the ClassLoader of the class containing the method.
+     * @param methodMetadata the MethodMetadata of the method to check.
+     * @return true if the method never writes, false if it could write.
+     * @throws NullPointerException if methodMetadata is null.
+     */
+    public boolean isNeverWriting(ClassLoader classLoader, MethodMetadata methodMetadata) {
+        if (methodMetadata == null) {
+            throw new NullPointerException();
+        }
+
+        Boolean inferred = methodMetadata.getInferredReadonly();
+        if (inferred != null) {
+            return inferred;
+        }
+
+        //the methods that are assumed to never write, because they are being analyzed (recursive calls).
+        Set<MethodMetadata> inProgress = new HashSet<MethodMetadata>();
+        //the methods that never write, if the methods in progress never write.
+        Set<MethodMetadata> neverWriting = new HashSet<MethodMetadata>();
+
+        boolean result = analyze(classLoader, methodMetadata, inProgress, neverWriting);
+
+        //if the method doesn't write, all assumptions made for recursive calls were valid. If it does write,
+        //the methods that depend on one of those assumptions could be wrong, so they are analyzed again if needed.
+        if (result) {
+            for (MethodMetadata method : neverWriting) {
+                method.setInferredReadonly(true);
+            }
+        }
+        methodMetadata.setInferredReadonly(result);
+        return result;
+    }
+
+    private boolean analyze(ClassLoader classLoader, MethodMetadata method, Set<MethodMetadata> inProgress,
+                            Set<MethodMetadata> neverWriting) {
+        Boolean inferred = method.getInferredReadonly();
+        if (inferred != null) {
+            return inferred;
+        }
+
+        if (inProgress.contains(method) || neverWriting.contains(method)) {
+            return true;
+        }
+
+        if (inProgress.size() >= MAX_DEPTH) {
+            return false;
+        }
+
+        TransactionMetadata transactionMetadata = method.getTransactionMetadata();
+        if (transactionMetadata != null && transactionMetadata.readOnly != null && !inProgress.isEmpty()) {
+            //the called method explicitly is configured, so that configuration is used. If it tracks reads it
+            //could block (a retry), and it would lose the read tracking when it joins the readonly transaction
+            //of the caller.
+            return transactionMetadata.readOnly && !Boolean.TRUE.equals(transactionMetadata.trackReads);
+        }
+
+        if (method.isAbstract() || method.isNative()) {
+            return false;
+        }
+
+        MethodNode methodNode = findMethodNode(classLoader, method);
+        if (methodNode == null) {
+            return false;
+        }
+
+        inProgress.add(method);
+        try {
+            boolean result = analyze(classLoader, method.getClassMetadata(), methodNode, inProgress, neverWriting);
+            if (!result) {
+                //a write doesn't depend on any assumption.
+                method.setInferredReadonly(false);
+            } else {
+                neverWriting.add(method);
+            }
+            return result;
+        } finally {
+            inProgress.remove(method);
+        }
+    }
+
+    private boolean analyze(ClassLoader classLoader, ClassMetadata classMetadata, MethodNode methodNode,
+                            Set<MethodMetadata> inProgress, Set<MethodMetadata> neverWriting) {
+        if (methodNode.instructions == null) {
+            return false;
+        }
+
+        for (int k = 0; k < methodNode.instructions.size(); k++) {
+            AbstractInsnNode insn = methodNode.instructions.get(k);
+            switch (insn.getOpcode()) {
+                case PUTFIELD:
+                    if (isManagedField(classLoader, (FieldInsnNode) insn)) {
+                        return false;
+                    }
+                    break;
+                case IASTORE:
+                case LASTORE:
+                case AASTORE:
+                case NEWARRAY:
+                case ANEWARRAY:
+                    if (classMetadata.hasTransactionalArrayFields()) {
+                        return false;
+                    }
+                    break;
+                case NEW:
+                    String type = ((TypeInsnNode) insn).desc;
+                    if (metadataRepository.loadClassMetadata(classLoader, type).isTransactionalObject()) {
+                        return false;
+                    }
+                    break;
+                case INVOKEVIRTUAL:
+                case INVOKESPECIAL:
+                case INVOKESTATIC:
+                case INVOKEINTERFACE:
+                    if (!isNeverWritingCall(classLoader, (MethodInsnNode) insn, inProgress, neverWriting)) {
+                        return false;
+                    }
+                    break;
+                case INVOKEDYNAMIC:
+                    //the target of the call is unknown.
+                    return false;
+                default:
+                    break;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean isManagedField(ClassLoader classLoader, FieldInsnNode insn) {
+        ClassMetadata owner = metadataRepository.loadClassMetadata(classLoader, insn.owner);
+        FieldMetadata field = owner.getFieldMetadata(insn.name);
+        return field == null || field.isManagedField();
+    }
+
+    private boolean isNeverWritingCall(ClassLoader classLoader, MethodInsnNode insn, Set<MethodMetadata> inProgress,
+                                       Set<MethodMetadata> neverWriting) {
+        if (insn.owner.startsWith("[")) {
+            //a call on an array (clone for example).
+            return true;
+        }
+
+        if (TRANSACTION_CONTROL_CLASSES.contains(insn.owner)) {
+            //a retry (blocking) needs read tracking and the other operations control the transaction itself.
+            return false;
+        }
+
+        if (INSPECTING_METHODS.contains(insn.owner + '.' + insn.name)
+                || INSPECTING_METHODS.contains(insn.owner + ".*")) {
+            return true;
+        }
+
+        if (VALUE_CLASSES.contains(insn.owner)) {
+            return true;
+        }
+
+        if (insn.getOpcode() == INVOKESPECIAL && insn.name.equals("<init>") && insn.owner.startsWith("java/")) {
+            //the construction of a java object (like an exception) never writes to transactional objects.
+            return true;
+        }
+
+        ClassMetadata owner = metadataRepository.loadClassMetadata(classLoader, insn.owner);
+        if (owner.isIgnoredClass()) {
+            return false;
+        }
+
+        MethodMetadata callee = owner.getMethodMetadata(insn.name, insn.desc);
+        if (callee == null) {
+            return false;
+        }
+
+        boolean staticallyBound = insn.getOpcode() == INVOKESTATIC
+                || insn.getOpcode() == INVOKESPECIAL
+                || callee.isFinal()
+                || AsmUtils.isPrivate(callee.getAccess());
+
+        if (!staticallyBound) {
+            //an override of the method could write, unless the method explicitly is readonly.
+            TransactionMetadata transactionMetadata = callee.getTransactionMetadata();
+            return transactionMetadata != null && Boolean.TRUE.equals(transactionMetadata.readOnly);
+        }
+
+        return analyze(classLoader, callee, inProgress, neverWriting);
+    }
+
+    private MethodNode findMethodNode(ClassLoader classLoader, MethodMetadata method) {
+        if (classLoader == null) {
+            return null;
+        }
+
+        ClassNode classNode;
+        try {
+            classNode = AsmUtils.loadAsClassNode(classLoader, method.getClassMetadata().getName());
+        } catch (RuntimeException e) {
+            //if the bytecode can't be loaded, nothing can be proven.
+            return null;
+        }
+
+        for (MethodNode methodNode : (List<MethodNode>) classNode.methods) {
+            if (methodNode.name.equals(method.getName()) && methodNode.desc.equals(method.getDesc())) {
+                return methodNode;
+            }
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,383 @@
+package org.multiverse.javaagent;
+
+import org.multiverse.instrumentation.Clazz;
+import org.multiverse.instrumentation.Instrumentor;
+
+import java.io.*;
+import java.net.URL;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.lang.String.format;
+import static org.multiverse.utils.IOUtils.closeQuietly;
+
+/**
+ * A persistent cache for the bytecode produced by an {@link Instrumentor}, so that the Javaagent doesn't need to
+ * instrument the same classes again on every start of the JVM.
+ * <p/>
+ * An entry is stored under a key that is based on the hash of the original bytecode and a fingerprint of the
+ * instrumentor (name, version, includes/excludes and the jars the instrumentation code is loaded from). An entry
+ * contains the instrumented bytecode (or a marker that the class was not modified), the extra classes that were
+ * created through the {@link JavaAgentFiler} and the hashes of the classes the instrumentation depended on (the
+ * classes the metadata was loaded for, like the superclass and the types of accessed fields).
+ * <p/>
+ * <h3>Invalidation</h3>
+ * An entry is only used if the hashes of all the dependencies still match, so if a dependency changes (for example
+ * a class becomes a TransactionalObject) the class is instrumented again and the entry is replaced. A different
+ * version of the instrumentor results in different keys, so old entries are never used again. Corrupt or
+ * unreadable entries are ignored and removed. The cache directory can always be removed safely.
+ * <p/>
+ * Entries are written to a temporary file first and then renamed, so multiple JVMs can share the same cache
+ * directory. A problem with the cache never causes the instrumentation to fail; it only is logged.
+ * <p/>
+ * InstrumentationCache is thread-safe.
+ *
+ * @author Peter Veentjer
+ */
+public final class InstrumentationCache {
+
+    private final static Logger logger = Logger.getLogger(InstrumentationCache.class.getName());
+
+    private final static int FORMAT_VERSION = 1;
+
+    private final static String MISSING = "missing";
+
+    private final File directory;
+    private final String fingerprint;
+
+    private final Map<ClassLoader, Map<String, String>> dependencyHashes =
+            new WeakHashMap<ClassLoader, Map<String, String>>();
+
+    /**
+     * Creates an InstrumentationCache that stores its entries in the given directory. If the directory doesn't
+     * exist, it is created.
+     *
+     * @param directory    the directory to store the entries in.
+     * @param instrumentor the Instrumentor that does the instrumentation.
+     * @throws NullPointerException     if directory or instrumentor is null.
+     * @throws IllegalArgumentException if the directory doesn't exist and can't be created.
+     */
+    public InstrumentationCache(File directory, Instrumentor instrumentor) {
+        if (directory == null || instrumentor == null) {
+            throw new NullPointerException();
+        }
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            String msg = format("Can't create the instrumentation cache directory '%s'", directory.getAbsolutePath());
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.directory = directory;
+        this.fingerprint = createFingerprint(instrumentor);
+    }
+
+    private static String createFingerprint(Instrumentor instrumentor) {
+        StringBuffer sb = new StringBuffer();
+        sb.append(FORMAT_VERSION);
+        sb.append('|').append(instrumentor.getName());
+        sb.append('|').append(instrumentor.getVersion());
+        sb.append('|').append(instrumentor.getIncluded());
+        sb.append('|').append(instrumentor.getExcluded());
+        //classes prepared for profile guided reinstrumentation have a different shape.
+        sb.append('|').append(instrumentor.isProfilingEnabled());
+        //the version of the instrumentor is not changed on every change of the instrumentation code, so the
+        //jars the code is loaded from are part of the fingerprint as well.
+        sb.append('|').append(getCodeSourceFingerprint(instrumentor.getClass()));
+        sb.append('|').append(getCodeSourceFingerprint(InstrumentationCache.class));
+        return sb.toString();
+    }
+
+    private static String getCodeSourceFingerprint(Class clazz) {
+        CodeSource codeSource = clazz.getProtectionDomain().getCodeSource();
+        if (codeSource == null || codeSource.getLocation() == null) {
+            return "unknown";
+        }
+
+        URL location = codeSource.getLocation();
+        if (!"file".equals(location.getProtocol())) {
+            return location.toString();
+        }
+
+        File file = new File(location.getPath());
+        return format("%s:%s:%s", file.getAbsolutePath(), file.length(), file.lastModified());
+    }
+
+    /**
+     * Returns the directory the entries are stored in.
+     *
+     * @return the cache directory.
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Finds the entry for the class. An entry is only returned if all dependencies are unchanged.
+     *
+     * @param classLoader the ClassLoader that loads the class.
+     * @param className   the name of the class (in internal form).
+     * @param bytecode    the original bytecode of the class.
+     * @return the found Entry, or null if there is no valid entry.
+     */
+    public Entry find(ClassLoader classLoader, String className, byte[] bytecode) {
+        String bytecodeHash = hash(bytecode);
+        File file = getFile(className, bytecodeHash);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        Entry entry;
+        try {
+            entry = read(file, className, bytecodeHash);
+        } catch (IOException ex) {
+            if (logger.isLoggable(Level.FINE)) {
+                logger.log(Level.FINE, format("Removing unreadable instrumentation cache entry '%s'", file), ex);
+            }
+            file.delete();
+            return null;
+        }
+
+        if (entry == null) {
+            file.delete();
+            return null;
+        }
+
+        for (Map.Entry<String, String> dependency : entry.dependencies.entrySet()) {
+            String currentHash = getDependencyHash(classLoader, dependency.getKey());
+            if (!currentHash.equals(dependency.getValue())) {
+                if (logger.isLoggable(Level.FINE)) {
+                    logger.fine(format("Instrumentation cache entry of class '%s' is invalid because dependency " +
+                            "'%s' has changed", className, dependency.getKey()));
+                }
+                return null;
+            }
+        }
+
+        return entry;
+    }
+
+    /**
+     * Stores the result of the instrumentation of a class.
+     *
+     * @param classLoader  the ClassLoader that loads the class.
+     * @param className    the name of the class (in internal form).
+     * @param bytecode     the original bytecode of the class.
+     * @param instrumented the instrumented bytecode, or null if the class was not modified.
+     * @param created      the extra classes that were created by the instrumentation.
+     * @param dependencies the names of the classes (in internal form) the instrumentation depended on.
+     */
+    public void store(ClassLoader classLoader, String className, byte[] bytecode, byte[] instrumented,
+                      List<Clazz> created, Set<String> dependencies) {
+        Map<String, String> dependencyHashes = new TreeMap<String, String>();
+        for (String dependency : dependencies) {
+            if (!dependency.equals(className)) {
+                dependencyHashes.put(dependency, getDependencyHash(classLoader, dependency));
+            }
+        }
+
+        Map<String, byte[]> createdClasses = new LinkedHashMap<String, byte[]>();
+        for (Clazz clazz : created) {
+            createdClasses.put(clazz.getName(), clazz.getBytecode());
+        }
+
+        String bytecodeHash = hash(bytecode);
+        File file = getFile(className, bytecodeHash);
+        File tmpFile = null;
+        try {
+            tmpFile = File.createTempFile("entry", ".tmp", directory);
+            write(tmpFile, className, bytecodeHash, new Entry(instrumented, createdClasses, dependencyHashes));
+
+            if (!tmpFile.renameTo(file)) {
+                //on some platforms a rename fails if the target already exists.
+                file.delete();
+                if (!tmpFile.renameTo(file)) {
+                    tmpFile.delete();
+                }
+            }
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, format("Failed to store instrumentation cache entry of class '%s'",
+                    className), ex);
+            if (tmpFile != null) {
+                tmpFile.delete();
+            }
+        }
+    }
+
+    private File getFile(String className, String bytecodeHash) {
+        return new File(directory, hash((className + '|' + bytecodeHash + '|' + fingerprint).getBytes()) + ".mvc");
+    }
+
+    private String getDependencyHash(ClassLoader classLoader, String className) {
+        Map<String, String> hashes;
+        synchronized (dependencyHashes) {
+            hashes = dependencyHashes.get(classLoader);
+            if (hashes == null) {
+                hashes = Collections.synchronizedMap(new HashMap<String, String>());
+                dependencyHashes.put(classLoader, hashes);
+            }
+        }
+
+        String hash = hashes.get(className);
+        if (hash == null) {
+            byte[] bytecode = loadBytecode(classLoader, className);
+            hash = bytecode == null ? MISSING : hash(bytecode);
+            hashes.put(className, hash);
+        }
+        return hash;
+    }
+
+    private static byte[] loadBytecode(ClassLoader classLoader, String className) {
+        String resource = className + ".class";
+        InputStream in = classLoader == null
+                ? ClassLoader.getSystemResourceAsStream(resource)
+                : classLoader.getResourceAsStream(resource);
+
+        if (in == null) {
+            return null;
+        }
+
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } catch (IOException ex) {
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private static String hash(byte[] bytes) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+
+        byte[] hash = digest.digest(bytes);
+        StringBuffer sb = new StringBuffer(hash.length * 2);
+        for (byte b : hash) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    private static void write(File file, String className, String bytecodeHash, Entry entry) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(className);
+            out.writeUTF(bytecodeHash);
+
+            out.writeBoolean(entry.bytecode != null);
+            if (entry.bytecode != null) {
+                writeBytes(out, entry.bytecode);
+            }
+
+            out.writeInt(entry.createdClasses.size());
+            for (Map.Entry<String, byte[]> created : entry.createdClasses.entrySet()) {
+                out.writeUTF(created.getKey());
+                writeBytes(out, created.getValue());
+            }
+
+            out.writeInt(entry.dependencies.size());
+            for (Map.Entry<String, String> dependency : entry.dependencies.entrySet()) {
+                out.writeUTF(dependency.getKey());
+                out.writeUTF(dependency.getValue());
+            }
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static Entry read(File file, String className, String bytecodeHash) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != FORMAT_VERSION
+                    || !className.equals(in.readUTF())
+                    || !bytecodeHash.equals(in.readUTF())) {
+                return null;
+            }
+
+            byte[] bytecode = in.readBoolean() ? readBytes(in) : null;
+
+            int createdCount = in.readInt();
+            Map<String, byte[]> createdClasses = new LinkedHashMap<String, byte[]>();
+            for (int k = 0; k < createdCount; k++) {
+                String name = in.readUTF();
+                createdClasses.put(name, readBytes(in));
+            }
+
+            int dependencyCount = in.readInt();
+            Map<String, String> dependencies = new HashMap<String, String>();
+            for (int k = 0; k < dependencyCount; k++) {
+                String name = in.readUTF();
+                dependencies.put(name, in.readUTF());
+            }
+
+            return new Entry(bytecode, createdClasses, dependencies);
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("negative length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * A cached result of the instrumentation of a single class.
+     */
+    public static final class Entry {
+
+        private final byte[] bytecode;
+        private final Map<String, byte[]> createdClasses;
+        private final Map<String, String> dependencies;
+
+        Entry(byte[] bytecode, Map<String, byte[]> createdClasses, Map<String, String> dependencies) {
+            this.bytecode = bytecode;
+            this.createdClasses = createdClasses;
+            this.dependencies = dependencies;
+        }
+
+        /**
+         * Returns the instrumented bytecode, or null if the class was not modified by the instrumentation.
+         *
+         * @return the instrumented bytecode.
+         */
+        public byte[] getBytecode() {
+            return bytecode;
+        }
+
+        /**
+         * Returns the extra classes that were created by the instrumentation (name in internal form mapped to the
+         * bytecode), in the order they were created.
+         *
+         * @return the created classes.
+         */
+        public Map<String, byte[]> getCreatedClasses() {
+            return createdClasses;
+        }
+    }
+}
@@ -3,6 +3,8 @@ package org.multiverse.javaagent;
 import org.multiverse.instrumentation.Clazz;
 import org.multiverse.instrumentation.Filer;
 
+import java.util.LinkedList;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -12,6 +14,8 @@ import static org.multiverse.instrumentation.ClassUtils.defineClass;
 /**
  * A {@link org.multiverse.instrumentation.Filer} implementation that feeds extra classes
  * that need to be generated to the JavaAgent.
+ * <p/>
+ * The created classes can be recorded per thread, so they can be stored in the {@link InstrumentationCache}.
  *
  * @author Peter Veentjer
  */
@@ -19,14 +23,68 @@ public final class JavaAgentFiler implements Filer {
 
     private final static Logger logger = Logger.getLogger(JavaAgentFiler.class.getName());
 
+    private final ThreadLocal<List<Clazz>> recordedClasses = new ThreadLocal<List<Clazz>>();
+    private final ThreadLocal<Boolean> definitionsSkipped = new ThreadLocal<Boolean>();
+
     @Override
     public void createClassFile(Clazz clazz) {
         if (logger.isLoggable(Level.FINE)) {
             logger.fine(format("Adding '%s' to the classloader", clazz.getName()));
         }
 
+        List<Clazz> recording = recordedClasses.get();
+        if (recording != null) {
+            recording.add(clazz);
+        }
+
+        if (Boolean.TRUE.equals(definitionsSkipped.get())) {
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine(format("Skipping the definition of '%s', it already is defined", clazz.getName()));
+            }
+            return;
+        }
+
         defineClass(clazz.getClassLoader(),
                 clazz.getName(),
                 clazz.getBytecode());
     }
+
+    /**
+     * Sets if the classes created by the current thread should not be defined. This is needed when a class is
+     * retransformed: the classes created while instrumenting it, already are defined when the class was
+     * instrumented for the first time.
+     *
+     * @param skipped true if the classes should not be defined.
+     * @return the previous value.
+     */
+    public boolean setDefinitionsSkipped(boolean skipped) {
+        boolean previous = Boolean.TRUE.equals(definitionsSkipped.get());
+        definitionsSkipped.set(skipped);
+        return previous;
+    }
+
+    /**
+     * Starts recording the classes that are created by the current thread. Recordings can be nested (defining a
+     * class could trigger the instrumentation of that class), so the returned value should be passed to
+     * {@link #stopRecording(java.util.List)}.
+     *
+     * @return the recording that was active before this call (can be null).
+     */
+    public List<Clazz> startRecording() {
+        List<Clazz> previous = recordedClasses.get();
+        recordedClasses.set(new LinkedList<Clazz>());
+        return previous;
+    }
+
+    /**
+     * Stops recording the created classes for the current thread.
+     *
+     * @param previous the value returned by the matching {@link #startRecording()}.
+     * @return the classes that were created since the recording was started, in the order they were created.
+     */
+    public List<Clazz> stopRecording(List<Clazz> previous) {
+        List<Clazz> recorded = recordedClasses.get();
+        recordedClasses.set(previous);
+        return recorded;
+    }
 }
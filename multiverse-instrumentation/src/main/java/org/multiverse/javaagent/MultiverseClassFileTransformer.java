@@ -2,10 +2,16 @@ package org.multiverse.javaagent;
 
 import org.multiverse.instrumentation.Clazz;
 import org.multiverse.instrumentation.Instrumentor;
+import org.multiverse.instrumentation.metadata.MetadataRepository;
 
 import java.lang.instrument.ClassFileTransformer;
 import java.lang.instrument.IllegalClassFormatException;
 import java.security.ProtectionDomain;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -19,27 +25,67 @@ public final class MultiverseClassFileTransformer implements ClassFileTransforme
     private final static Logger logger = Logger.getLogger(MultiverseClassFileTransformer.class.getName());
 
     private final Instrumentor compiler;
+    private final JavaAgentFiler filer;
+    private final InstrumentationCache cache;
+    private final Set<String> instrumentedClasses =
+            Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
     public MultiverseClassFileTransformer(Instrumentor compiler) {
+        this(compiler, null, null);
+    }
+
+    /**
+     * Creates a MultiverseClassFileTransformer that uses an {@link InstrumentationCache}.
+     *
+     * @param compiler the Instrumentor that does the instrumentation.
+     * @param filer    the JavaAgentFiler the compiler uses to create extra classes (needed for recording
+     *                 them in the cache). Is allowed to be null if cache is null.
+     * @param cache    the InstrumentationCache, is allowed to be null if no cache should be used. The cache is
+     *                 not used when the compiler has profiling enabled, since the classes replayed from the cache
+     *                 lack the metadata needed by the {@link ProfileGuidedReinstrumentor}.
+     * @throws NullPointerException if compiler is null, or if cache is not null and filer is null.
+     */
+    public MultiverseClassFileTransformer(Instrumentor compiler, JavaAgentFiler filer, InstrumentationCache cache) {
         if (compiler == null) {
             throw new NullPointerException();
         }
+
+        if (cache != null && filer == null) {
+            throw new NullPointerException();
+        }
+
         this.compiler = compiler;
+        this.filer = filer;
+        this.cache = cache;
     }
 
     @Override
     public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
                             ProtectionDomain protectionDomain, byte[] bytecode) throws IllegalClassFormatException {
         try {
-            if (logger.isLoggable(Level.FINE)) {
-                logger.fine(format("Instrumenting class %s", className));
+            if (classBeingRedefined != null) {
+                return reinstrument(loader, className, bytecode);
+            }
+
+            if (cache == null || loader == null || compiler.isProfilingEnabled()) {
+                return instrument(loader, className, bytecode);
+            }
+
+            InstrumentationCache.Entry entry;
+            try {
+                entry = cache.find(loader, className, bytecode);
+            } catch (RuntimeException ex) {
+                //a problem with the cache should never cause the instrumentation to fail.
+                logger.log(Level.WARNING, format("Failed to look up the instrumentation cache entry of class '%s', " +
+                        "the class is instrumented without the cache", className), ex);
+                return instrument(loader, className, bytecode);
+            }
+
+            if (entry != null) {
+                return replay(loader, className, entry);
             }
 
-            Clazz originalClazz = new Clazz(className);
-            originalClazz.setBytecode(bytecode);
-            originalClazz.setClassLoader(loader);
-            Clazz resultClazz = compiler.process(originalClazz);
-            return originalClazz == resultClazz ? null : resultClazz.getBytecode();
+            return instrumentAndCache(loader, className, bytecode);
         } catch (RuntimeException ex) {
             handleThrowable(className, ex);
             throw ex;
@@ -49,6 +95,101 @@ public final class MultiverseClassFileTransformer implements ClassFileTransforme
         }
     }
 
+    private byte[] instrument(ClassLoader loader, String className, byte[] bytecode) {
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine(format("Instrumenting class %s", className));
+        }
+
+        Clazz originalClazz = new Clazz(className);
+        originalClazz.setBytecode(bytecode);
+        originalClazz.setClassLoader(loader);
+        Clazz resultClazz = compiler.process(originalClazz);
+        if (originalClazz == resultClazz) {
+            return null;
+        }
+
+        instrumentedClasses.add(className);
+        return resultClazz.getBytecode();
+    }
+
+    /**
+     * Instruments a class that is retransformed (see the {@link ProfileGuidedReinstrumentor}). The provided
+     * bytecode is the original bytecode, so it needs to be instrumented completely again (the
+     * {@link org.multiverse.instrumentation.metadata.MethodProfile}s of the transactional methods could have
+     * changed, so the cache is not used). The classes created while instrumenting, already have been defined.
+     */
+    private byte[] reinstrument(ClassLoader loader, String className, byte[] bytecode) {
+        if (filer == null) {
+            return instrument(loader, className, bytecode);
+        }
+
+        boolean previous = filer.setDefinitionsSkipped(true);
+        try {
+            return instrument(loader, className, bytecode);
+        } finally {
+            filer.setDefinitionsSkipped(previous);
+        }
+    }
+
+    /**
+     * Checks if a class has been instrumented by this MultiverseClassFileTransformer.
+     *
+     * @param className the internal name of the class.
+     * @return true if the class has been instrumented, false otherwise.
+     */
+    public boolean isInstrumented(String className) {
+        return instrumentedClasses.contains(className);
+    }
+
+    private byte[] instrumentAndCache(ClassLoader loader, String className, byte[] bytecode) {
+        MetadataRepository metadataRepository = compiler.getMetadataRepository();
+
+        Set<String> previousDependencies = metadataRepository.startRecordingDependencies();
+        List<Clazz> previousCreated = filer.startRecording();
+        byte[] result;
+        Set<String> dependencies;
+        List<Clazz> created;
+        try {
+            result = instrument(loader, className, bytecode);
+        } finally {
+            dependencies = metadataRepository.stopRecordingDependencies(previousDependencies);
+            created = filer.stopRecording(previousCreated);
+        }
+
+        try {
+            cache.store(loader, className, bytecode, result, created, dependencies);
+        } catch (RuntimeException ex) {
+            //a problem with the cache should never cause the instrumentation to fail.
+            logger.log(Level.WARNING, format("Failed to store the instrumentation cache entry of class '%s'",
+                    className), ex);
+        }
+        return result;
+    }
+
+    private byte[] replay(ClassLoader loader, String className, InstrumentationCache.Entry entry) {
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine(format("Using cached instrumentation of class %s", className));
+        }
+
+        //the replayed classes should not end up in a recording of an enclosing instrumentation.
+        List<Clazz> previousCreated = filer.startRecording();
+        try {
+            for (Map.Entry<String, byte[]> created : entry.getCreatedClasses().entrySet()) {
+                Clazz clazz = new Clazz(created.getKey());
+                clazz.setBytecode(created.getValue());
+                clazz.setClassLoader(loader);
+                filer.createClassFile(clazz);
+            }
+        } finally {
+            filer.stopRecording(previousCreated);
+        }
+
+        if (entry.getBytecode() != null) {
+            instrumentedClasses.add(className);
+        }
+        return entry.getBytecode();
+    }
+
     private static void handleThrowable(String className, Throwable cause) {
         String msg = format("Failed while instrumenting class '%s'. " +
                 "It is not possible to abort the Javaagent instrumentation process, so the JVM is going to continue, " +
@@ -28,6 +28,14 @@ import static org.multiverse.utils.SystemOut.println;
  * org.multiverse.javaagent.include=pattern of classes to include, seperated by ; or , or : , defaults to
  * everything being included
  * org.multiverse.javaagent.exclude=pattern of classes to exclude, seperated by ; or , or :
+ * org.multiverse.javaagent.cacheDirectory=directory for caching instrumented classes between starts of the JVM
+ * (defaults to no caching), see {@link InstrumentationCache}
+ * org.multiverse.javaagent.metadataIndex=true/false use the prebuilt metadata indexes found on the classpath
+ * (defaults to true), see {@link org.multiverse.instrumentation.metadata.MetadataIndex}
+ * org.multiverse.javaagent.profile=true/false reinstrument the transactional methods using the behavior learned
+ * at runtime (defaults to false), see {@link ProfileGuidedReinstrumentor}
+ * org.multiverse.javaagent.profileWarmupMs=the number of milliseconds before the classes are reinstrumented
+ * (defaults to 30000)
  *
  * @author Peter Veentjer
  */
@@ -38,13 +46,67 @@ public final class MultiverseJavaAgent implements MultiverseConstants {
     public static void premain(String agentArgs, Instrumentation inst) throws UnmodifiableClassException {
         printMultiverseJavaAgentInfo();
 
-        Instrumentor compiler = loadClazzCompiler();
-        inst.addTransformer(new MultiverseClassFileTransformer(compiler));
+        JavaAgentFiler filer = new JavaAgentFiler();
+        Instrumentor compiler = loadClazzCompiler(filer);
+        boolean profile = isProfilingEnabled(inst);
+        compiler.setProfilingEnabled(profile);
+        InstrumentationCache cache = createInstrumentationCache(compiler, profile);
+        MultiverseClassFileTransformer transformer = new MultiverseClassFileTransformer(compiler, filer, cache);
+        inst.addTransformer(transformer, profile);
+
+        if (profile) {
+            startProfileGuidedReinstrumentation(inst, compiler, transformer);
+        }
 
         println("Multiverse: Multiverse Javaagent started successfully");
     }
 
-    private static Instrumentor loadClazzCompiler() {
+    private static boolean isProfilingEnabled(Instrumentation inst) {
+        if (!getSystemBooleanProperty("profile", false)) {
+            return false;
+        }
+
+        if (!inst.isRetransformClassesSupported()) {
+            println("Multiverse: Profile guided reinstrumentation disabled, the JVM doesn't support retransformation");
+            return false;
+        }
+
+        return true;
+    }
+
+    private static void startProfileGuidedReinstrumentation(Instrumentation inst, Instrumentor instrumentor,
+                                                            MultiverseClassFileTransformer transformer) {
+        long warmupMs = Long.parseLong(getSystemProperty("profileWarmupMs", "30000"));
+        println(format("Multiverse: Profile guided reinstrumentation enabled, classes are reinstrumented after %s ms",
+                warmupMs));
+
+        Thread thread = new Thread(
+                new ProfileGuidedReinstrumentor(inst, instrumentor, transformer, warmupMs),
+                "Multiverse-ProfileGuidedReinstrumentor");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static InstrumentationCache createInstrumentationCache(Instrumentor instrumentor, boolean profile) {
+        String cacheDirectory = getSystemProperty("cacheDirectory", "");
+        if (cacheDirectory.length() == 0) {
+            println("Multiverse: Instrumentation cache disabled");
+            return null;
+        }
+
+        if (profile) {
+            //classes replayed from the cache lack the metadata the ProfileGuidedReinstrumentor needs.
+            println("Multiverse: Instrumentation cache disabled, it can't be combined with profile guided "
+                    + "reinstrumentation");
+            return null;
+        }
+
+        File directory = new File(cacheDirectory);
+        println(format("Multiverse: Instrumented classes are cached in '%s'", directory.getAbsolutePath()));
+        return new InstrumentationCache(directory, instrumentor);
+    }
+
+    private static Instrumentor loadClazzCompiler(JavaAgentFiler filer) {
         Instrumentor instrumentor = createInstrumentor();
 
         boolean verbose = getSystemBooleanProperty("verbose", false);
@@ -53,7 +115,7 @@ public final class MultiverseJavaAgent implements MultiverseConstants {
             println("Multiverse: Verbose output enabled");
         }
 
-        instrumentor.setFiler(new JavaAgentFiler());
+        instrumentor.setFiler(filer);
         boolean dumpBytecode = getSystemBooleanProperty("dumpBytecode", false);
         instrumentor.setDumpBytecode(dumpBytecode);
         if (dumpBytecode) {
@@ -78,6 +140,10 @@ public final class MultiverseJavaAgent implements MultiverseConstants {
         String exclude = exclude();
         instrumentor.exclude(exclude);
         println("Multiverse: The following classes are excluded from instrumentation (exclude overrides includes) " + instrumentor.getExcluded());
+
+        boolean metadataIndex = getSystemBooleanProperty("metadataIndex", true);
+        instrumentor.getMetadataRepository().setIndexLookupEnabled(metadataIndex);
+        println("Multiverse: Prebuilt metadata indexes enabled = %s", metadataIndex);
         return instrumentor;
     }
 
@@ -0,0 +1,228 @@
+package org.multiverse.javaagent;
+
+import org.multiverse.api.TransactionFactory;
+import org.multiverse.instrumentation.Instrumentor;
+import org.multiverse.instrumentation.metadata.ClassMetadata;
+import org.multiverse.instrumentation.metadata.MethodMetadata;
+import org.multiverse.instrumentation.metadata.MethodProfile;
+
+import java.lang.instrument.Instrumentation;
+import java.lang.instrument.UnmodifiableClassException;
+import java.lang.reflect.Field;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.lang.String.format;
+
+/**
+ * Feeds the behavior of transactional methods that is learned at runtime back into the bytecode.
+ * <p/>
+ * The TransactionFactory of a transactional method speculatively learns if the method needs an update transaction,
+ * read tracking and how many transactional objects are accessed. Every time something is learned, the transaction
+ * fails and is executed again. And the transactions keep checking the speculative settings.
+ * <p/>
+ * After a warmup period, the ProfileGuidedReinstrumentor creates a {@link MethodProfile} of every transactional
+ * method of the instrumented classes (see {@link Instrumentor#createProfile(TransactionFactory)}), stores it in the
+ * {@link MethodMetadata} and retransforms the classes containing methods with a changed profile using the
+ * {@link Instrumentation#retransformClasses(Class[])}. The instrumentation of such a method creates a
+ * TransactionFactory that starts with the learned settings.
+ * <p/>
+ * The TransactionFactory created with the profile keeps learning, so {@link #reinstrument()} can be called again
+ * later: it profiles the TransactionFactory that currently is used by a method, and after a class is retransformed
+ * with a changed profile, the stored profiled TransactionFactory is cleared so it is created again with the new
+ * profile. An invocation that still executes the old code while the class is retransformed could store a
+ * TransactionFactory with the old profile; that only costs some performance until the next reinstrumentation.
+ * <p/>
+ * Since a retransformation is not allowed to change the fields or methods of a class, the Instrumentor needs to
+ * have profiling enabled (see {@link Instrumentor#setProfilingEnabled(boolean)}) before the classes are
+ * instrumented for the first time. For the same reason the {@link InstrumentationCache} is not used when profiling
+ * is enabled.
+ *
+ * @author Peter Veentjer
+ */
+public final class ProfileGuidedReinstrumentor implements Runnable {
+
+    private final static Logger logger = Logger.getLogger(ProfileGuidedReinstrumentor.class.getName());
+
+    private final Instrumentation instrumentation;
+    private final Instrumentor instrumentor;
+    private final MultiverseClassFileTransformer transformer;
+    private final long warmupMs;
+
+    /**
+     * Creates a ProfileGuidedReinstrumentor.
+     *
+     * @param instrumentation the Instrumentation used to retransform classes.
+     * @param instrumentor    the Instrumentor (with profiling enabled) that instruments the classes.
+     * @param transformer     the MultiverseClassFileTransformer that instruments the classes. It needs to be
+     *                        registered as a transformer that can retransform classes.
+     * @param warmupMs        the number of milliseconds to wait before the classes are profiled.
+     * @throws NullPointerException     if instrumentation, instrumentor or transformer is null.
+     * @throws IllegalArgumentException if warmupMs smaller than 0.
+     */
+    public ProfileGuidedReinstrumentor(Instrumentation instrumentation, Instrumentor instrumentor,
+                                       MultiverseClassFileTransformer transformer, long warmupMs) {
+        if (instrumentation == null || instrumentor == null || transformer == null) {
+            throw new NullPointerException();
+        }
+
+        if (warmupMs < 0) {
+            throw new IllegalArgumentException(format("warmupMs can't be smaller than 0, warmupMs was %s", warmupMs));
+        }
+
+        this.instrumentation = instrumentation;
+        this.instrumentor = instrumentor;
+        this.transformer = transformer;
+        this.warmupMs = warmupMs;
+    }
+
+    @Override
+    public void run() {
+        try {
+            Thread.sleep(warmupMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        int count = reinstrument();
+        logger.info(format("Reinstrumented %s classes using the profiles of their transactional methods", count));
+    }
+
+    /**
+     * Profiles the transactional methods of the instrumented classes and retransforms the classes that contain
+     * methods with a changed profile.
+     *
+     * @return the number of retransformed classes.
+     */
+    public int reinstrument() {
+        List<Class> changed = new LinkedList<Class>();
+        List<Field> profiledFields = new LinkedList<Field>();
+        for (Class clazz : instrumentation.getAllLoadedClasses()) {
+            if (clazz.getClassLoader() == null || !instrumentation.isModifiableClass(clazz)) {
+                continue;
+            }
+
+            String className = clazz.getName().replace('.', '/');
+            if (transformer.isInstrumented(className) && profile(clazz, className, profiledFields)) {
+                changed.add(clazz);
+            }
+        }
+
+        if (changed.isEmpty()) {
+            return 0;
+        }
+
+        try {
+            instrumentation.retransformClasses(changed.toArray(new Class[changed.size()]));
+        } catch (UnmodifiableClassException e) {
+            logger.log(Level.WARNING, "Failed to retransform the profiled classes", e);
+            return 0;
+        } catch (UnsupportedOperationException e) {
+            //the shape of a class was changed by the instrumentation.
+            logger.log(Level.WARNING, "Failed to retransform the profiled classes", e);
+            return 0;
+        }
+
+        //the retransformed methods create their profiled TransactionFactory again, using the new profile.
+        for (Field field : profiledFields) {
+            try {
+                field.set(null, null);
+            } catch (IllegalAccessException e) {
+                logger.log(Level.WARNING, format("Failed to clear the profiled TransactionFactory in '%s'", field), e);
+            }
+        }
+
+        return changed.size();
+    }
+
+    /**
+     * Profiles the transactional methods of a class.
+     *
+     * @param clazz          the class to profile.
+     * @param className      the internal name of the class.
+     * @param profiledFields the list the profiled TransactionFactory fields of the methods with a changed
+     *                       profile are added to.
+     * @return true if the profile of at least one method changed.
+     */
+    private boolean profile(Class clazz, String className, List<Field> profiledFields) {
+        ClassMetadata classMetadata = instrumentor.getMetadataRepository()
+                .loadClassMetadata(clazz.getClassLoader(), className);
+
+        boolean changed = false;
+        for (MethodMetadata methodMetadata : classMetadata.getMethods()) {
+            if (!methodMetadata.isTransactional() || methodMetadata.getTransactionFactoryField() == null) {
+                continue;
+            }
+
+            Field profiledField = getField(clazz, methodMetadata.getProfiledTransactionFactoryField());
+            TransactionFactory transactionFactory = getTransactionFactory(profiledField);
+            if (transactionFactory == null) {
+                //the method was not reinstrumented yet, or the profiled TransactionFactory was not created yet.
+                transactionFactory = getTransactionFactory(
+                        getField(clazz, methodMetadata.getTransactionFactoryField()));
+            }
+
+            if (transactionFactory == null) {
+                continue;
+            }
+
+            MethodProfile profile = instrumentor.createProfile(transactionFactory);
+            if (profile == null) {
+                continue;
+            }
+
+            //the profiled TransactionFactory doesn't learn what it already starts with.
+            MethodProfile previous = methodMetadata.getProfile();
+            if (previous != null) {
+                profile = previous.merge(profile);
+            }
+
+            if (!profile.isLearned() || profile.equals(previous)) {
+                continue;
+            }
+
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine(format("Profiled %s: %s", methodMetadata.toFullName(), profile));
+            }
+
+            methodMetadata.setProfile(profile);
+            if (profiledField != null) {
+                profiledFields.add(profiledField);
+            }
+            changed = true;
+        }
+
+        return changed;
+    }
+
+    private static Field getField(Class clazz, String fieldName) {
+        if (fieldName == null) {
+            return null;
+        }
+
+        try {
+            Field field = clazz.getDeclaredField(fieldName);
+            field.setAccessible(true);
+            return field;
+        } catch (NoSuchFieldException e) {
+            return null;
+        }
+    }
+
+    private static TransactionFactory getTransactionFactory(Field field) {
+        if (field == null) {
+            return null;
+        }
+
+        //reading the field initializes the class if that didn't happen yet; the TransactionFactory of such a class
+        //didn't learn anything, so it is not profiled.
+        try {
+            return (TransactionFactory) field.get(null);
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package org.multiverse.compiler;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Veentjer
+ */
+public class InstrumentationManifestTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("manifest", ".txt");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void whenFileNotExists_thenEmpty() {
+        InstrumentationManifest manifest = InstrumentationManifest.load(file, "foo-1");
+
+        assertFalse(manifest.contains("Foo"));
+    }
+
+    @Test
+    public void whenNotRecorded_thenNotUpToDate() {
+        InstrumentationManifest manifest = new InstrumentationManifest("foo-1");
+
+        assertFalse(manifest.isUpToDate("Foo", hashes("Foo", "1")));
+    }
+
+    @Test
+    public void whenClassAndDependenciesUnchanged_thenUpToDate() {
+        InstrumentationManifest manifest = new InstrumentationManifest("foo-1");
+        manifest.put("Foo", "1", hashes("Bar", "2"));
+
+        assertTrue(manifest.isUpToDate("Foo", hashes("Foo", "1", "Bar", "2")));
+    }
+
+    @Test
+    public void whenClassChanged_thenNotUpToDate() {
+        InstrumentationManifest manifest = new InstrumentationManifest("foo-1");
+        manifest.put("Foo", "1", hashes("Bar", "2"));
+
+        assertFalse(manifest.isUpToDate("Foo", hashes("Foo", "3", "Bar", "2")));
+    }
+
+    @Test
+    public void whenDependencyChanged_thenNotUpToDate() {
+        InstrumentationManifest manifest = new InstrumentationManifest("foo-1");
+        manifest.put("Foo", "1", hashes("Bar", "2"));
+
+        assertFalse(manifest.isUpToDate("Foo", hashes("Foo", "1", "Bar", "3")));
+    }
+
+    @Test
+    public void whenDependencyRemoved_thenNotUpToDate() {
+        InstrumentationManifest manifest = new InstrumentationManifest("foo-1");
+        manifest.put("Foo", "1", hashes("Bar", "2"));
+
+        assertFalse(manifest.isUpToDate("Foo", hashes("Foo", "1")));
+    }
+
+    @Test
+    public void whenSavedAndLoaded_thenEntriesRestored() throws IOException {
+        InstrumentationManifest manifest = new InstrumentationManifest("foo-1");
+        manifest.put("com/Foo", "1", hashes("com/Bar", "2", "com/Baz", "3"));
+        manifest.put("com/Bar", "2", new HashMap<String, String>());
+        manifest.save(file);
+
+        InstrumentationManifest loaded = InstrumentationManifest.load(file, "foo-1");
+
+        Map<String, String> current = hashes("com/Foo", "1", "com/Bar", "2", "com/Baz", "3");
+        assertTrue(loaded.isUpToDate("com/Foo", current));
+        assertTrue(loaded.isUpToDate("com/Bar", current));
+    }
+
+    @Test
+    public void whenLoadedWithOtherInstrumentor_thenEmpty() throws IOException {
+        InstrumentationManifest manifest = new InstrumentationManifest("foo-1");
+        manifest.put("Foo", "1", new HashMap<String, String>());
+        manifest.save(file);
+
+        InstrumentationManifest loaded = InstrumentationManifest.load(file, "foo-2");
+
+        assertFalse(loaded.contains("Foo"));
+    }
+
+    @Test
+    public void retainAll() {
+        InstrumentationManifest manifest = new InstrumentationManifest("foo-1");
+        manifest.put("Foo", "1", new HashMap<String, String>());
+        manifest.put("Bar", "2", new HashMap<String, String>());
+
+        manifest.retainAll(new HashSet<String>(asList("Foo")));
+
+        assertTrue(manifest.contains("Foo"));
+        assertFalse(manifest.contains("Bar"));
+    }
+
+    @Test
+    public void hash() {
+        assertEquals(InstrumentationManifest.hash(new byte[]{1, 2}), InstrumentationManifest.hash(new byte[]{1, 2}));
+        assertFalse(InstrumentationManifest.hash(new byte[]{1, 2}).equals(InstrumentationManifest.hash(new byte[]{2, 1})));
+    }
+
+    private static Map<String, String> hashes(String... keyValues) {
+        Map<String, String> result = new HashMap<String, String>();
+        for (int k = 0; k < keyValues.length; k += 2) {
+            result.put(keyValues[k], keyValues[k + 1]);
+        }
+        return result;
+    }
+}
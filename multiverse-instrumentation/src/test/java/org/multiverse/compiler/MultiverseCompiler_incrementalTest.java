@@ -0,0 +1,154 @@
+package org.multiverse.compiler;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.multiverse.instrumentation.*;
+import org.multiverse.instrumentation.asm.AsmUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Veentjer
+ */
+public class MultiverseCompiler_incrementalTest {
+
+    private final static String CLASS_NAME = Foo.class.getName().replace('.', '/');
+
+    private File targetDirectory;
+    private File classFile;
+    private File manifestFile;
+    private byte[] original;
+
+    @Before
+    public void setUp() throws IOException {
+        targetDirectory = File.createTempFile("classes", "");
+        targetDirectory.delete();
+        targetDirectory.mkdirs();
+
+        classFile = new File(targetDirectory, CLASS_NAME + ".class");
+        classFile.getParentFile().mkdirs();
+        original = AsmUtils.toBytecode(AsmUtils.loadAsClassNode(Foo.class));
+        writeClassFile(original);
+
+        manifestFile = new File(targetDirectory.getPath() + ".manifest");
+    }
+
+    @After
+    public void tearDown() {
+        delete(targetDirectory);
+        delete(OriginalBytecodeStore.forManifest(manifestFile).getDirectory());
+        manifestFile.delete();
+    }
+
+    @Test
+    public void whenUpToDate_thenSkipped() {
+        compile();
+        byte[] instrumented = AsmUtils.loadAsBytecode(classFile);
+
+        CountingInstrumentor instrumentor = compile();
+
+        assertTrue(instrumentor.instrumented.isEmpty());
+        assertArrayEquals(instrumented, AsmUtils.loadAsBytecode(classFile));
+    }
+
+    @Test
+    public void whenInstrumentedClassOutOfDate_thenInstrumentedAgainFromOriginal() {
+        compile();
+        byte[] instrumented = AsmUtils.loadAsBytecode(classFile);
+
+        //without a manifest, every class is out of date.
+        manifestFile.delete();
+        CountingInstrumentor instrumentor = compile();
+
+        assertEquals(asList(CLASS_NAME), instrumentor.instrumented);
+        assertArrayEquals(instrumented, AsmUtils.loadAsBytecode(classFile));
+    }
+
+    @Test
+    public void whenInstrumentedClassOutOfDateAndOriginalNotFound_thenCompileException() {
+        compile();
+        byte[] instrumented = AsmUtils.loadAsBytecode(classFile);
+
+        manifestFile.delete();
+        delete(OriginalBytecodeStore.forManifest(manifestFile).getDirectory());
+        try {
+            compile();
+            fail();
+        } catch (CompileException expected) {
+        }
+
+        assertArrayEquals(instrumented, AsmUtils.loadAsBytecode(classFile));
+    }
+
+    @Test
+    public void whenCompiledAgain_thenInstrumentedAndOldOriginalRemoved() throws IOException {
+        compile();
+        byte[] instrumented = AsmUtils.loadAsBytecode(classFile);
+
+        writeClassFile(original);
+        CountingInstrumentor instrumentor = compile();
+
+        assertEquals(asList(CLASS_NAME), instrumentor.instrumented);
+        assertArrayEquals(instrumented, AsmUtils.loadAsBytecode(classFile));
+        OriginalBytecodeStore store = OriginalBytecodeStore.forManifest(manifestFile);
+        assertEquals(1, store.getDirectory().list().length);
+        assertArrayEquals(original, store.find(InstrumentationManifest.hash(instrumented)));
+    }
+
+    private CountingInstrumentor compile() {
+        CountingInstrumentor instrumentor = new CountingInstrumentor();
+        new MultiverseCompiler().instrument(targetDirectory, instrumentor, 2, manifestFile);
+        return instrumentor;
+    }
+
+    private void writeClassFile(byte[] bytecode) throws IOException {
+        OutputStream out = new FileOutputStream(classFile);
+        try {
+            out.write(bytecode);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    public static class Foo {
+        int value;
+    }
+
+    /**
+     * Stamps the classes and records the classes that are instrumented (so that weren't stamped yet).
+     */
+    static class CountingInstrumentor extends StandardInstrumentor {
+        final List<String> instrumented = new CopyOnWriteArrayList<String>();
+
+        CountingInstrumentor() {
+            super("CountingInstrumentor", "1", "TestStm");
+            add(new PreventReinstrumentationInstrumentationPhase(this));
+            add(new AbstractInstrumentationPhase("CountingInstrumentationPhase") {
+                @Override
+                protected Clazz doInstrument(Environment environment, Clazz clazz) {
+                    instrumented.add(clazz.getName());
+                    return clazz;
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package org.multiverse.compiler;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Veentjer
+ */
+public class OriginalBytecodeStoreTest {
+
+    private File manifestFile;
+    private OriginalBytecodeStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        manifestFile = File.createTempFile("manifest", ".txt");
+        manifestFile.delete();
+        store = OriginalBytecodeStore.forManifest(manifestFile);
+    }
+
+    @After
+    public void tearDown() {
+        store.retainAll(new HashSet<String>());
+        store.getDirectory().delete();
+    }
+
+    @Test
+    public void whenCreatedForManifest_thenDirectoryNextToManifest() {
+        assertEquals(new File(manifestFile.getPath() + ".originals"), store.getDirectory());
+    }
+
+    @Test
+    public void whenNotStored_thenNull() {
+        assertNull(store.find("1"));
+    }
+
+    @Test
+    public void whenStored_thenFound() {
+        store.store("1", new byte[]{1, 2, 3});
+
+        assertArrayEquals(new byte[]{1, 2, 3}, store.find("1"));
+        assertNull(store.find("2"));
+    }
+
+    @Test
+    public void whenStoredTwice_thenFound() {
+        store.store("1", new byte[]{1, 2, 3});
+        store.store("1", new byte[]{1, 2, 3});
+
+        assertArrayEquals(new byte[]{1, 2, 3}, store.find("1"));
+        assertEquals(1, store.getDirectory().list().length);
+    }
+
+    @Test
+    public void whenRetainAll_thenOthersRemoved() {
+        store.store("1", new byte[]{1});
+        store.store("2", new byte[]{2});
+
+        store.retainAll(new HashSet<String>(asList("2")));
+
+        assertNull(store.find("1"));
+        assertArrayEquals(new byte[]{2}, store.find("2"));
+    }
+
+    @Test
+    public void whenRetainAllAndDirectoryNotExists_thenIgnored() {
+        store.retainAll(new HashSet<String>(asList("1")));
+
+        assertFalse(store.getDirectory().exists());
+    }
+}
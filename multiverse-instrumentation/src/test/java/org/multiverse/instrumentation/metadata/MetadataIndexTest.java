@@ -0,0 +1,214 @@
+package org.multiverse.instrumentation.metadata;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.multiverse.annotations.TransactionalMethod;
+import org.multiverse.annotations.TransactionalObject;
+import org.multiverse.instrumentation.asm.AsmClassMetadataExtractor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+import static org.objectweb.asm.Type.getInternalName;
+
+/**
+ * @author Peter Veentjer
+ */
+public class MetadataIndexTest {
+
+    private ClassLoader classLoader;
+
+    @Before
+    public void setUp() {
+        classLoader = MetadataIndexTest.class.getClassLoader();
+    }
+
+    @Test
+    public void whenWrittenAndRead_thenMetadataRestored() throws IOException {
+        MetadataIndex index = createIndex(null);
+
+        assertEquals(3, index.size());
+        assertTrue(index.contains(getInternalName(Person.class)));
+
+        RecordingExtractor extractor = new RecordingExtractor();
+        MetadataRepository repository = new MetadataRepository(extractor);
+        repository.addIndex(classLoader, index);
+
+        ClassMetadata person = repository.loadClassMetadata(Person.class);
+
+        assertFalse(extractor.extracted.contains(getInternalName(Person.class)));
+        assertTrue(person.isTransactionalObject());
+        assertEquals(getInternalName(Base.class), person.getSuperClassMetadata().getName());
+
+        FieldMetadata age = person.getFieldMetadata("age");
+        assertTrue(age.isManagedField());
+        assertEquals("I", age.getDesc());
+
+        MethodMetadata getAge = person.getMethodMetadata("getAge", "()I");
+        assertEquals(MethodType.getter, getAge.getMethodType());
+        assertSame(age, getAge.getGetterSetterField());
+        assertTrue(getAge.isTransactional());
+        assertEquals(Boolean.TRUE, getAge.getTransactionMetadata().readOnly);
+
+        MethodMetadata getName = person.getMethodMetadata("getName", "()Ljava/lang/String;");
+        assertSame(person.getSuperClassMetadata().getFieldMetadata("name"), getName.getGetterSetterField());
+    }
+
+    @Test
+    public void whenTransactionalArrayField_thenRestored() throws IOException {
+        RecordingExtractor extractor = new RecordingExtractor();
+        MetadataRepository repository = new MetadataRepository(extractor);
+        repository.addIndex(classLoader, createIndex(null));
+
+        ClassMetadata counters = repository.loadClassMetadata(Counters.class);
+
+        assertFalse(extractor.extracted.contains(getInternalName(Counters.class)));
+        assertTrue(counters.getFieldMetadata("counts").isTransactionalArray());
+        assertEquals("[J", counters.getFieldMetadata("counts").getDesc());
+        assertFalse(counters.getFieldMetadata("total").isTransactionalArray());
+        assertTrue(counters.hasTransactionalArrayFields());
+    }
+
+    @Test
+    public void whenOldFormatVersion_thenIOException() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DataOutputStream dataOut = new DataOutputStream(out);
+        dataOut.writeInt(0x4D564958);
+        dataOut.writeInt(1);
+        dataOut.writeInt(0);
+        dataOut.flush();
+
+        try {
+            MetadataIndex.read(new ByteArrayInputStream(out.toByteArray()), null);
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void whenClassNotInIndex_thenExtracted() throws IOException {
+        RecordingExtractor extractor = new RecordingExtractor();
+        MetadataRepository repository = new MetadataRepository(extractor);
+        repository.addIndex(classLoader, createIndex(null));
+
+        repository.loadClassMetadata(MetadataIndexTest.class);
+
+        assertTrue(extractor.extracted.contains(getInternalName(MetadataIndexTest.class)));
+    }
+
+    @Test
+    public void whenClassFoundInOtherLocation_thenIndexIgnored() throws IOException {
+        RecordingExtractor extractor = new RecordingExtractor();
+        MetadataRepository repository = new MetadataRepository(extractor);
+        repository.addIndex(classLoader, createIndex("file:/nonexisting/"));
+
+        repository.loadClassMetadata(Person.class);
+
+        assertTrue(extractor.extracted.contains(getInternalName(Person.class)));
+    }
+
+    @Test
+    public void whenIndexAddedForOtherClassLoader_thenIgnored() throws IOException {
+        RecordingExtractor extractor = new RecordingExtractor();
+        MetadataRepository repository = new MetadataRepository(extractor);
+        repository.addIndex(new ClassLoader(classLoader) {
+        }, createIndex(null));
+
+        repository.loadClassMetadata(Person.class);
+
+        assertTrue(extractor.extracted.contains(getInternalName(Person.class)));
+    }
+
+    @Test(expected = IOException.class)
+    public void whenNoIndex_thenIOException() throws IOException {
+        MetadataIndex.read(new ByteArrayInputStream(new byte[]{1, 2, 3, 4}), null);
+    }
+
+    @Test
+    public void whenLoadedConcurrently_thenSameMetadataReturned() throws InterruptedException {
+        final MetadataRepository repository = new MetadataRepository();
+        final ClassMetadata[] found = new ClassMetadata[8];
+
+        Thread[] threads = new Thread[found.length];
+        for (int k = 0; k < threads.length; k++) {
+            final int index = k;
+            threads[k] = new Thread() {
+                public void run() {
+                    found[index] = repository.loadClassMetadata(Person.class);
+                }
+            };
+            threads[k].start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (ClassMetadata classMetadata : found) {
+            assertSame(found[0], classMetadata);
+        }
+    }
+
+    private MetadataIndex createIndex(String location) throws IOException {
+        MetadataRepository repository = new MetadataRepository();
+        ClassMetadata base = repository.loadClassMetadata(Base.class);
+        ClassMetadata person = repository.loadClassMetadata(Person.class);
+        ClassMetadata counters = repository.loadClassMetadata(Counters.class);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MetadataIndex.write(asList(base, person, counters), out);
+        return MetadataIndex.read(new ByteArrayInputStream(out.toByteArray()), location);
+    }
+
+    static class RecordingExtractor implements ClassMetadataExtractor {
+        final AsmClassMetadataExtractor extractor = new AsmClassMetadataExtractor();
+        final Set<String> extracted = new HashSet<String>();
+
+        @Override
+        public void init(MetadataRepository metadataRepository) {
+            extractor.init(metadataRepository);
+        }
+
+        @Override
+        public ClassMetadata extract(String className, ClassLoader classLoader) {
+            extracted.add(className);
+            return extractor.extract(className, classLoader);
+        }
+    }
+
+    @TransactionalObject
+    static class Base {
+        String name;
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    @TransactionalObject
+    static class Person extends Base {
+        int age;
+
+        @TransactionalMethod(readonly = true)
+        public int getAge() {
+            return age;
+        }
+    }
+
+    @TransactionalObject
+    static class Counters {
+        private final long[] counts = new long[4];
+        private long total;
+
+        public void inc(int index) {
+            counts[index]++;
+            total++;
+        }
+    }
+}
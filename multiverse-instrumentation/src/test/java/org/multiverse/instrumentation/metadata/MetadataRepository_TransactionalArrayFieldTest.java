@@ -0,0 +1,209 @@
+package org.multiverse.instrumentation.metadata;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.multiverse.annotations.NonTransactional;
+import org.multiverse.annotations.TransactionalObject;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Veentjer
+ */
+public class MetadataRepository_TransactionalArrayFieldTest {
+    private MetadataRepository repository;
+
+    @Before
+    public void setUp() {
+        repository = new MetadataRepository();
+    }
+
+    private boolean isTransactionalArray(Class clazz, String field) {
+        ClassMetadata classMetadata = repository.loadClassMetadata(clazz);
+        return classMetadata.getFieldMetadata(field).isTransactionalArray();
+    }
+
+    @Test
+    public void whenNotTransactionalObject() {
+        assertFalse(isTransactionalArray(NonTransactionalObject.class, "values"));
+        assertFalse(repository.loadClassMetadata(NonTransactionalObject.class).hasTransactionalArrayFields());
+    }
+
+    static class NonTransactionalObject {
+        private int[] values = new int[10];
+
+        public int get(int index) {
+            return values[index];
+        }
+    }
+
+    @Test
+    public void whenElementsAccessed() {
+        assertTrue(isTransactionalArray(ElementsAccessed.class, "ints"));
+        assertTrue(isTransactionalArray(ElementsAccessed.class, "longs"));
+        assertTrue(isTransactionalArray(ElementsAccessed.class, "strings"));
+        assertTrue(repository.loadClassMetadata(ElementsAccessed.class).hasTransactionalArrayFields());
+    }
+
+    @TransactionalObject
+    static class ElementsAccessed {
+        private final int[] ints = new int[10];
+        private long[] longs = new long[]{1, 2, 3};
+        private String[] strings;
+
+        public void inc(int index) {
+            ints[index]++;
+            longs[index % longs.length] += 2;
+        }
+
+        public String getString(int index) {
+            if (strings == null) {
+                strings = new String[10];
+            }
+            return strings[index];
+        }
+    }
+
+    @Test
+    public void whenAccessedThroughLocalVariable() {
+        assertTrue(isTransactionalArray(AccessedThroughLocalVariable.class, "values"));
+    }
+
+    @TransactionalObject
+    static class AccessedThroughLocalVariable {
+        private final int[] values = new int[10];
+
+        public int sum() {
+            int sum = 0;
+            for (int value : values) {
+                sum += value;
+            }
+            return sum;
+        }
+    }
+
+    @Test
+    public void whenArrayReturned_thenNotTransformed() {
+        assertFalse(isTransactionalArray(ArrayReturned.class, "values"));
+        assertFalse(repository.loadClassMetadata(ArrayReturned.class).hasTransactionalArrayFields());
+    }
+
+    @TransactionalObject
+    static class ArrayReturned {
+        private int[] values = new int[10];
+
+        public int[] getValues() {
+            return values;
+        }
+    }
+
+    @Test
+    public void whenArrayPassedToMethod_thenNotTransformed() {
+        assertFalse(isTransactionalArray(ArrayPassedToMethod.class, "values"));
+    }
+
+    @TransactionalObject
+    static class ArrayPassedToMethod {
+        private final long[] values = new long[10];
+
+        public void clear() {
+            java.util.Arrays.fill(values, 0);
+        }
+    }
+
+    @Test
+    public void whenAssignedFromParameter_thenNotTransformed() {
+        assertFalse(isTransactionalArray(AssignedFromParameter.class, "values"));
+    }
+
+    @TransactionalObject
+    static class AssignedFromParameter {
+        private int[] values;
+
+        AssignedFromParameter(int[] values) {
+            this.values = values;
+        }
+
+        public int get(int index) {
+            return values[index];
+        }
+    }
+
+    @Test
+    public void whenMergedWithParameter_thenNotTransformed() {
+        assertFalse(isTransactionalArray(MergedWithParameter.class, "values"));
+    }
+
+    @TransactionalObject
+    static class MergedWithParameter {
+        private int[] values = new int[10];
+
+        public int get(int[] defaultValues, boolean useDefaults) {
+            int[] array = values;
+            if (useDefaults) {
+                array = defaultValues;
+            }
+            return array[0];
+        }
+    }
+
+    @Test
+    public void whenStoredInAnotherTransformedField() {
+        assertTrue(isTransactionalArray(StoredInAnotherField.class, "current"));
+        assertTrue(isTransactionalArray(StoredInAnotherField.class, "previous"));
+    }
+
+    @TransactionalObject
+    static class StoredInAnotherField {
+        private int[] current = new int[10];
+        private int[] previous;
+
+        public void swap() {
+            previous = current;
+            current = new int[10];
+        }
+    }
+
+    @Test
+    public void whenStoredInRejectedField_thenNotTransformed() {
+        assertFalse(isTransactionalArray(StoredInRejectedField.class, "values"));
+        assertFalse(isTransactionalArray(StoredInRejectedField.class, "escaping"));
+    }
+
+    @TransactionalObject
+    static class StoredInRejectedField {
+        private int[] values = new int[10];
+        private int[] escaping;
+
+        public void copy() {
+            escaping = values;
+        }
+
+        public int[] getEscaping() {
+            return escaping;
+        }
+    }
+
+    @Test
+    public void whenUnsupportedField_thenNotTransformed() {
+        assertFalse(isTransactionalArray(UnsupportedFields.class, "nonPrivate"));
+        assertFalse(isTransactionalArray(UnsupportedFields.class, "excluded"));
+        assertFalse(isTransactionalArray(UnsupportedFields.class, "volatileField"));
+        assertFalse(isTransactionalArray(UnsupportedFields.class, "multiDimensional"));
+        assertFalse(isTransactionalArray(UnsupportedFields.class, "bytes"));
+    }
+
+    @TransactionalObject
+    static class UnsupportedFields {
+        int[] nonPrivate = new int[10];
+        @NonTransactional
+        private int[] excluded = new int[10];
+        private volatile int[] volatileField = new int[10];
+        private int[][] multiDimensional = new int[10][10];
+        private byte[] bytes = new byte[10];
+
+        public int sum() {
+            return nonPrivate[0] + excluded[0] + volatileField[0] + multiDimensional[0][0] + bytes[0];
+        }
+    }
+}
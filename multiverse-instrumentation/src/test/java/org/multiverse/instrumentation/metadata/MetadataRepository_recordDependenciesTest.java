@@ -0,0 +1,67 @@
+package org.multiverse.instrumentation.metadata;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.multiverse.annotations.TransactionalObject;
+
+import java.util.Set;
+
+import static org.junit.Assert.*;
+import static org.objectweb.asm.Type.getInternalName;
+
+/**
+ * @author Peter Veentjer
+ */
+public class MetadataRepository_recordDependenciesTest {
+    private MetadataRepository repository;
+
+    @Before
+    public void setUp() {
+        repository = new MetadataRepository();
+    }
+
+    @Test
+    public void whenNotRecording_thenNothingRecorded() {
+        repository.loadClassMetadata(Sub.class);
+
+        assertNull(repository.stopRecordingDependencies(null));
+    }
+
+    @Test
+    public void whenRecording_thenLoadedClassAndSuperClassesRecorded() {
+        //load it before the recording is started, so the superclass metadata already is in the repository.
+        repository.loadClassMetadata(Sub.class);
+
+        Set<String> previous = repository.startRecordingDependencies();
+        repository.loadClassMetadata(Sub.class);
+        Set<String> recorded = repository.stopRecordingDependencies(previous);
+
+        assertNull(previous);
+        assertTrue(recorded.contains(getInternalName(Sub.class)));
+        assertTrue(recorded.contains(getInternalName(Base.class)));
+        assertTrue(recorded.contains(getInternalName(Object.class)));
+    }
+
+    @Test
+    public void whenNested_thenPreviousRecordingRestored() {
+        Set<String> outer = repository.startRecordingDependencies();
+        repository.loadClassMetadata(Base.class);
+
+        Set<String> previous = repository.startRecordingDependencies();
+        repository.loadClassMetadata(Object.class);
+        Set<String> inner = repository.stopRecordingDependencies(previous);
+
+        Set<String> recorded = repository.stopRecordingDependencies(outer);
+
+        assertEquals(1, inner.size());
+        assertTrue(recorded.contains(getInternalName(Base.class)));
+    }
+
+    @TransactionalObject
+    static class Base {
+        int value;
+    }
+
+    static class Sub extends Base {
+    }
+}
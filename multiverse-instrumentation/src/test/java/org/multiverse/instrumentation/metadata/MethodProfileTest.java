@@ -0,0 +1,57 @@
+package org.multiverse.instrumentation.metadata;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Veentjer
+ */
+public class MethodProfileTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void whenSizeSmallerThanOne_thenIllegalArgumentException() {
+        new MethodProfile(false, false, 0);
+    }
+
+    @Test
+    public void whenNothingLearned() {
+        MethodProfile profile = new MethodProfile(false, false, 1);
+        assertFalse(profile.isLearned());
+    }
+
+    @Test
+    public void whenLearned() {
+        assertTrue(new MethodProfile(true, false, 1).isLearned());
+        assertTrue(new MethodProfile(false, true, 1).isLearned());
+        assertTrue(new MethodProfile(false, false, 2).isLearned());
+    }
+
+    @Test
+    public void whenEqual() {
+        MethodProfile profile1 = new MethodProfile(true, false, 5);
+        MethodProfile profile2 = new MethodProfile(true, false, 5);
+
+        assertTrue(profile1.equals(profile2));
+        assertEquals(profile1.hashCode(), profile2.hashCode());
+    }
+
+    @Test
+    public void whenNotEqual() {
+        MethodProfile profile = new MethodProfile(true, false, 5);
+
+        assertFalse(profile.equals(null));
+        assertFalse(profile.equals(new MethodProfile(false, false, 5)));
+        assertFalse(profile.equals(new MethodProfile(true, true, 5)));
+        assertFalse(profile.equals(new MethodProfile(true, false, 6)));
+    }
+
+    @Test
+    public void merge() {
+        MethodProfile profile1 = new MethodProfile(true, false, 5);
+        MethodProfile profile2 = new MethodProfile(false, true, 3);
+
+        assertEquals(new MethodProfile(true, true, 5), profile1.merge(profile2));
+        assertEquals(new MethodProfile(true, true, 5), profile2.merge(profile1));
+    }
+}
@@ -0,0 +1,140 @@
+package org.multiverse.javaagent;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.multiverse.instrumentation.Clazz;
+import org.multiverse.instrumentation.StandardInstrumentor;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Veentjer
+ */
+public class InstrumentationCacheTest {
+
+    private File directory;
+    private StandardInstrumentor instrumentor;
+    private InstrumentationCache cache;
+    private DummyClassLoader classLoader;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("instrumentationcache", "");
+        directory.delete();
+        instrumentor = new StandardInstrumentor("test", "1", "teststm");
+        cache = new InstrumentationCache(directory, instrumentor);
+        classLoader = new DummyClassLoader();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void whenNothingStored_thenNotFound() {
+        assertNull(cache.find(classLoader, "Foo", new byte[]{1, 2, 3}));
+    }
+
+    @Test
+    public void whenStored_thenFound() {
+        byte[] original = {1, 2, 3};
+        byte[] instrumented = {4, 5, 6};
+        Clazz created = new Clazz("Foo__Tranlocal");
+        created.setBytecode(new byte[]{7, 8});
+
+        cache.store(classLoader, "Foo", original, instrumented, Arrays.asList(created), new HashSet<String>());
+
+        InstrumentationCache.Entry entry = cache.find(classLoader, "Foo", original);
+        assertNotNull(entry);
+        assertArrayEquals(instrumented, entry.getBytecode());
+        assertEquals(1, entry.getCreatedClasses().size());
+        assertArrayEquals(new byte[]{7, 8}, entry.getCreatedClasses().get("Foo__Tranlocal"));
+    }
+
+    @Test
+    public void whenNotModifiedStored_thenFoundWithoutBytecode() {
+        byte[] original = {1, 2, 3};
+
+        cache.store(classLoader, "Foo", original, null, new LinkedList<Clazz>(), new HashSet<String>());
+
+        InstrumentationCache.Entry entry = cache.find(classLoader, "Foo", original);
+        assertNotNull(entry);
+        assertNull(entry.getBytecode());
+        assertTrue(entry.getCreatedClasses().isEmpty());
+    }
+
+    @Test
+    public void whenOriginalBytecodeChanged_thenNotFound() {
+        cache.store(classLoader, "Foo", new byte[]{1, 2, 3}, new byte[]{4}, new LinkedList<Clazz>(),
+                new HashSet<String>());
+
+        assertNull(cache.find(classLoader, "Foo", new byte[]{1, 2, 4}));
+    }
+
+    @Test
+    public void whenInstrumentorVersionChanged_thenNotFound() {
+        byte[] original = {1, 2, 3};
+        cache.store(classLoader, "Foo", original, new byte[]{4}, new LinkedList<Clazz>(), new HashSet<String>());
+
+        StandardInstrumentor newInstrumentor = new StandardInstrumentor("test", "2", "teststm");
+        InstrumentationCache newCache = new InstrumentationCache(directory, newInstrumentor);
+
+        assertNull(newCache.find(classLoader, "Foo", original));
+    }
+
+    @Test
+    public void whenDependencyChanged_thenNotFound() {
+        byte[] original = {1, 2, 3};
+        classLoader.resources.put("Bar.class", new byte[]{10});
+        cache.store(classLoader, "Foo", original, new byte[]{4}, new LinkedList<Clazz>(),
+                new HashSet<String>(Arrays.asList("Bar")));
+
+        assertNotNull(cache.find(classLoader, "Foo", original));
+
+        //a new classloader with a changed version of the dependency (like after a restart of the jvm).
+        DummyClassLoader newClassLoader = new DummyClassLoader();
+        newClassLoader.resources.put("Bar.class", new byte[]{11});
+
+        assertNull(cache.find(newClassLoader, "Foo", original));
+    }
+
+    @Test
+    public void whenEntryCorrupt_thenNotFoundAndRemoved() throws IOException {
+        byte[] original = {1, 2, 3};
+        cache.store(classLoader, "Foo", original, new byte[]{4}, new LinkedList<Clazz>(), new HashSet<String>());
+
+        File[] files = directory.listFiles();
+        assertEquals(1, files.length);
+        FileOutputStream out = new FileOutputStream(files[0]);
+        out.write(new byte[]{0, 0});
+        out.close();
+
+        assertNull(cache.find(classLoader, "Foo", original));
+        assertEquals(0, directory.listFiles().length);
+    }
+
+    static class DummyClassLoader extends ClassLoader {
+        final Map<String, byte[]> resources = new HashMap<String, byte[]>();
+
+        @Override
+        public InputStream getResourceAsStream(String name) {
+            byte[] bytes = resources.get(name);
+            return bytes == null ? null : new ByteArrayInputStream(bytes);
+        }
+    }
+}
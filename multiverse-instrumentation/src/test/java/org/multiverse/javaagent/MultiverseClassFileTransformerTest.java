@@ -0,0 +1,133 @@
+package org.multiverse.javaagent;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.multiverse.instrumentation.Clazz;
+import org.multiverse.instrumentation.Environment;
+import org.multiverse.instrumentation.InstrumentationPhase;
+import org.multiverse.instrumentation.StandardInstrumentor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedList;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Veentjer
+ */
+public class MultiverseClassFileTransformerTest {
+
+    private File directory;
+    private FailingClassLoader classLoader;
+    private DependencyLoadingInstrumentor instrumentor;
+    private InstrumentationCache cache;
+    private MultiverseClassFileTransformer transformer;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("instrumentationcache", "");
+        directory.delete();
+        classLoader = new FailingClassLoader();
+        instrumentor = new DependencyLoadingInstrumentor();
+        cache = new InstrumentationCache(directory, instrumentor);
+        transformer = new MultiverseClassFileTransformer(instrumentor, new JavaAgentFiler(), cache);
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void whenCacheLookupFails_thenInstrumentedWithoutCache() throws Exception {
+        byte[] original = {1, 2, 3};
+        cache.store(new FailingClassLoader(), "Foo", original, new byte[]{4}, new LinkedList<Clazz>(),
+                new HashSet<String>(Arrays.asList("Bar")));
+
+        classLoader.failing = true;
+        byte[] result = transformer.transform(classLoader, "Foo", null, null, original);
+
+        assertNull(result);
+        assertEquals(1, instrumentor.phase.instrumentCount);
+    }
+
+    @Test
+    public void whenCacheStoreFails_thenInstrumentationResultReturned() throws Exception {
+        instrumentor.phase.failAfterLoadingDependency = true;
+
+        byte[] result = transformer.transform(classLoader, "Foo", null, null, new byte[]{1, 2, 3});
+
+        assertNull(result);
+        assertEquals(1, instrumentor.phase.instrumentCount);
+    }
+
+    @Test
+    public void whenProfilingEnabled_thenCacheNotUsed() throws Exception {
+        instrumentor.setProfilingEnabled(true);
+
+        transformer.transform(classLoader, "Foo", null, null, new byte[]{1, 2, 3});
+
+        assertEquals(0, directory.listFiles().length);
+        assertEquals(1, instrumentor.phase.instrumentCount);
+    }
+
+    static class DependencyLoadingInstrumentor extends StandardInstrumentor {
+        final DependencyLoadingPhase phase = new DependencyLoadingPhase();
+
+        DependencyLoadingInstrumentor() {
+            super("test", "1", "teststm");
+            add(phase);
+        }
+    }
+
+    /**
+     * A phase that doesn't change the class, but loads the metadata of 'Bar' so it becomes a dependency.
+     */
+    static class DependencyLoadingPhase implements InstrumentationPhase {
+        volatile int instrumentCount;
+        volatile boolean failAfterLoadingDependency;
+
+        @Override
+        public String getName() {
+            return "DependencyLoadingPhase";
+        }
+
+        @Override
+        public Clazz instrument(Environment environment, Clazz originalClazz) {
+            instrumentCount++;
+            FailingClassLoader loader = (FailingClassLoader) originalClazz.getClassLoader();
+            environment.getMetadataRepository().loadClassMetadata(loader, "Bar");
+            if (failAfterLoadingDependency) {
+                loader.failing = true;
+            }
+            return originalClazz;
+        }
+    }
+
+    /**
+     * A ClassLoader that fails the first resource lookup after failing has been set.
+     */
+    static class FailingClassLoader extends ClassLoader {
+        volatile boolean failing;
+
+        @Override
+        public InputStream getResourceAsStream(String name) {
+            if (failing) {
+                failing = false;
+                throw new IllegalStateException();
+            }
+            return null;
+        }
+    }
+}